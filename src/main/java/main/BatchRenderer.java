@@ -0,0 +1,235 @@
+package main;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.Group;
+import javafx.scene.PerspectiveCamera;
+import javafx.scene.Scene;
+import javafx.scene.SceneAntialiasing;
+import javafx.scene.SubScene;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Rotate;
+import javafx.scene.transform.Scale;
+import javafx.scene.transform.Translate;
+import javafx.stage.Stage;
+import pdbmodel.Atom;
+import pdbmodel.Bond;
+import pdbmodel.PDBEntry;
+import pdbmodel.PDBParser;
+import pdbview3d.MyGraphView3D;
+
+import javax.imageio.ImageIO;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders an image of every PDB file in a directory without opening the viewer. The files are parsed by a fixed
+ * number of worker threads, while one hidden stage and sub scene are reused for all of them: each parsed structure is
+ * swapped into the scene on the JavaFX application thread, fit to the image, and taken a snapshot of, which the
+ * workers then write to a PNG file. Only a few parsed structures are kept waiting for the scene at a time.
+ * <p>
+ * Usage: {@code BatchRenderer <input directory> <output directory> [--width=px] [--height=px] [--rotate-x=degrees]
+ * [--rotate-y=degrees] [--workers=n]}
+ * <p>
+ * The stage is never shown. To run without any display, start with Monocle's headless platform, i.e. {@code
+ * -Dglass.platform=Monocle -Dmonocle.platform=Headless -Dprism.order=sw}.
+ *
+ * @author Patrick Grupp
+ */
+public class BatchRenderer extends Application {
+
+    private static final double PANEDEPTH = 5000;
+
+    /**
+     * Fraction of the image taken up by the structure.
+     */
+    private static final double FILL = 0.9;
+
+    private int width;
+    private int height;
+    private double rotateX;
+    private double rotateY;
+
+    private SubScene subScene;
+    private PerspectiveCamera camera;
+    private MyGraphView3D world;
+
+    /**
+     * The structure currently shown, null before the first one.
+     */
+    private PDBEntry shown;
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+
+    @Override
+    public void start(Stage stage) {
+        List<String> files = getParameters().getUnnamed();
+        Map<String, String> options = getParameters().getNamed();
+        if (files.size() != 2) {
+            System.err.println("Usage: BatchRenderer <input directory> <output directory> [--width=px] "
+                    + "[--height=px] [--rotate-x=degrees] [--rotate-y=degrees] [--workers=n]");
+            Platform.exit();
+            return;
+        }
+        File input = new File(files.get(0));
+        File output = new File(files.get(1));
+        width = Integer.parseInt(options.getOrDefault("width", "512"));
+        height = Integer.parseInt(options.getOrDefault("height", "512"));
+        rotateX = Double.parseDouble(options.getOrDefault("rotate-x", "0"));
+        rotateY = Double.parseDouble(options.getOrDefault("rotate-y", "0"));
+        int workers = Integer.parseInt(options.getOrDefault("workers",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        File[] pdbFiles = input.listFiles((directory, name) -> name.toLowerCase().endsWith(".pdb"));
+        if (pdbFiles == null || !(output.isDirectory() || output.mkdirs())) {
+            System.err.println("Cannot read " + input + " or write to " + output);
+            Platform.exit();
+            return;
+        }
+
+        // One scene for all structures, drawn with many atoms per mesh instead of one node per atom
+        world = new MyGraphView3D();
+        world.batchedAtomsProperty().set(true);
+        world.batchedBondsProperty().set(true);
+        camera = new PerspectiveCamera(true);
+        camera.setNearClip(0.1);
+        camera.setFarClip(PANEDEPTH * 2);
+        camera.setTranslateZ(-PANEDEPTH / 2);
+        subScene = new SubScene(world, width, height, true, SceneAntialiasing.BALANCED);
+        subScene.setFill(Color.WHITE);
+        subScene.setCamera(camera);
+        stage.setScene(new Scene(new Group(subScene)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "batch-renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Bounds the parsed structures waiting for the scene or being written
+        Semaphore inFlight = new Semaphore(2 * workers);
+        AtomicInteger failed = new AtomicInteger();
+
+        Thread submitter = new Thread(() -> {
+            List<CompletableFuture<Void>> renders = new ArrayList<>();
+            for (File file : pdbFiles) {
+                inFlight.acquireUninterruptibly();
+                File image = new File(output, file.getName().replaceFirst("(?i)\\.pdb$", ".png"));
+                renders.add(CompletableFuture.supplyAsync(() -> parse(file), executor)
+                        .thenApplyAsync(this::render, Platform::runLater)
+                        .thenAcceptAsync(snapshot -> write(snapshot, image), executor)
+                        .whenComplete((result, exception) -> {
+                            inFlight.release();
+                            if (exception != null) {
+                                failed.incrementAndGet();
+                                System.err.println("Could not render " + file + ": " + exception.getCause());
+                            }
+                        }));
+            }
+            CompletableFuture.allOf(renders.toArray(new CompletableFuture<?>[0]))
+                    .handle((result, exception) -> {
+                        System.out.println("Rendered " + (pdbFiles.length - failed.get()) + " of "
+                                + pdbFiles.length + " files to " + output);
+                        Platform.exit();
+                        return null;
+                    });
+        }, "batch-renderer-submitter");
+        submitter.setDaemon(true);
+        submitter.start();
+    }
+
+    /**
+     * Parse a PDB file into a new model, on a worker thread.
+     *
+     * @param file The PDB file.
+     * @return The parsed structure.
+     */
+    private PDBEntry parse(File file) {
+        PDBEntry entry = new PDBEntry();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            PDBParser.parse(entry, reader);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return entry;
+    }
+
+    /**
+     * Swap the structure into the scene and take a snapshot. Must be called on the JavaFX application thread.
+     *
+     * @param entry The structure to be shown.
+     * @return Snapshot of the sub scene.
+     */
+    private WritableImage render(PDBEntry entry) {
+        if (shown != null) {
+            shown.edgesProperty().forEach((Bond bond) -> world.removeEdge(bond));
+            shown.nodesProperty().forEach((Atom atom) -> world.removeNode(atom));
+        }
+        shown = entry;
+        entry.nodesProperty().forEach((Atom atom) -> world.addNode(atom));
+        entry.edgesProperty().forEach((Bond bond) -> world.addEdge(bond));
+        fitToView(entry);
+        // The hidden scene is never rendered by itself, so the meshes are only built on the next pulse otherwise
+        world.applyPendingUpdates();
+        return subScene.snapshot(null, new WritableImage(width, height));
+    }
+
+    /**
+     * Turn the structure to the requested orientation, and center and scale it to fill the image.
+     *
+     * @param entry The structure shown.
+     */
+    private void fitToView(PDBEntry entry) {
+        double[] coordinates = entry.getCoordinates();
+        int atoms = coordinates.length / 3;
+        double centerX = 0, centerY = 0, centerZ = 0;
+        for (int i = 0; i < atoms; i++) {
+            centerX += coordinates[3 * i] / atoms;
+            centerY += coordinates[3 * i + 1] / atoms;
+            centerZ += coordinates[3 * i + 2] / atoms;
+        }
+        double radius = 0;
+        for (int i = 0; i < atoms; i++) {
+            Atom atom = entry.getNode(i);
+            double dx = coordinates[3 * i] - centerX;
+            double dy = coordinates[3 * i + 1] - centerY;
+            double dz = coordinates[3 * i + 2] - centerZ;
+            radius = Math.max(radius, Math.sqrt(dx * dx + dy * dy + dz * dz) + atom.radiusProperty().get());
+        }
+        // The enclosing sphere fits the narrower of the two viewing angles, the field of view being vertical
+        double halfAngle = Math.toRadians(camera.getFieldOfView() / 2);
+        if (width < height)
+            halfAngle = Math.atan(Math.tan(halfAngle) * width / height);
+        double scale = radius > 0 ? FILL * PANEDEPTH / 2 * Math.sin(halfAngle) / radius : 1;
+        world.getTransforms().setAll(new Scale(scale, scale, scale), new Rotate(rotateX, Rotate.X_AXIS),
+                new Rotate(rotateY, Rotate.Y_AXIS), new Translate(-centerX, -centerY, -centerZ));
+    }
+
+    /**
+     * Write a snapshot to a PNG file, on a worker thread.
+     *
+     * @param snapshot The snapshot.
+     * @param file     The file to be written.
+     */
+    private void write(WritableImage snapshot, File file) {
+        try {
+            ImageIO.write(SwingFXUtils.fromFXImage(snapshot, null), "png", file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -13,45 +13,47 @@ import javafx.scene.paint.Color;
 public class Atom {
 
     public enum ChemicalElement {
-        CA, CB, N, O, C;
+        // Radii ratio: chemically correct ratio between radii of the elements, can be multiplied with some final
+        // constant. Van der Waals radii in Angstrom.
+        CA(12 / 1.5, 1.7, Color.web("202020")),
+        CB(12 / 1.5, 1.7, Color.web("202020")),
+        N(14 / 1.5, 1.55, Color.web("2060ff")),
+        O(16 / 1.5, 1.52, Color.web("ee2010")),
+        C(12 / 1.5, 1.7, Color.web("202020"));
+
+        private final double radius;
+        private final double vanDerWaalsRadius;
+        private final Color color;
+
+        ChemicalElement(double radius, double vanDerWaalsRadius, Color color) {
+            this.radius = radius;
+            this.vanDerWaalsRadius = vanDerWaalsRadius;
+            this.color = color;
+        }
 
         /**
          * Get the chemically correct ratio between radii of the elements.
          * @return correct ratio between the radii of the elements. Can be multiplied with some final constant.
          */
-         public double getRadius(){
-             switch (this){
-                 case CA:
-                 case CB:
-                 case C:
-                     return 12/1.5;
-                 case N:
-                     return 14/1.5;
-                 case O:
-                     return 16/1.5;
-                 default:
-                     return 5/1.5;
-             }
-         }
+        public double getRadius(){
+            return radius;
+        }
 
         /**
-         * Get the correct color for each element.
+         * Get the van der Waals radius of the element.
+         * @return van der Waals radius in Angstrom.
+         */
+        public double getVanDerWaalsRadius(){
+            return vanDerWaalsRadius;
+        }
+
+        /**
+         * Get the correct color for each element. The color is shared by all atoms of the element.
          * @return Correct color for each element.
          */
         public Color getColor(){
-             switch (this){
-                 case CA:
-                 case CB:
-                 case C:
-                     return Color.web("202020"); //
-                 case N:
-                     return Color.web("2060ff");
-                 case O:
-                     return Color.web("ee2010");
-                 default:
-                     return Color.GREEN;
-             }
-         }
+            return color;
+        }
     }
 
     /**
@@ -102,6 +104,11 @@ public class Atom {
      */
     private ObjectProperty<ChemicalElement> chemicalElement;
 
+    /**
+     * The temperature factor as defined by PDB, 0 if unknown.
+     */
+    private DoubleProperty bFactor;
+
 
     /**
      * Constructor
@@ -116,10 +123,12 @@ public class Atom {
         residue = new SimpleObjectProperty<>();
         chemicalElement = new SimpleObjectProperty<>();
         color = new SimpleObjectProperty<>();
+        bFactor = new SimpleDoubleProperty();
 
-        xCoordinate = new SimpleDoubleProperty();
-        yCoordinate = new SimpleDoubleProperty();
-        zCoordinate = new SimpleDoubleProperty();
+        // The atom is the coordinates' bean, so shared listeners can tell which atom moved
+        xCoordinate = new SimpleDoubleProperty(this, "xCoordinate");
+        yCoordinate = new SimpleDoubleProperty(this, "yCoordinate");
+        zCoordinate = new SimpleDoubleProperty(this, "zCoordinate");
     }
 
     /**
@@ -187,6 +196,19 @@ public class Atom {
         return this.residue;
     }
 
+    /**
+     * Get a text describing the atom to the user, naming its element, residue and amino acid. Built on each call,
+     * so it is only built for atoms actually shown to the user.
+     *
+     * @return Description of the atom.
+     */
+    public String getDescription() {
+        Residue res = residue.getValue();
+        if (res == null)
+            return chemicalElement.getValue().toString();
+        return chemicalElement.getValue() + ", residue: " + res.getResNum() + ", amino acid: " + res.getName();
+    }
+
     /**
      * Get the atom's chemical element property.
      *
@@ -223,6 +245,15 @@ public class Atom {
         return zCoordinate;
     }
 
+    /**
+     * Get the atom's temperature factor property.
+     *
+     * @return the atom's temperature factor property, 0 if the file did not define one.
+     */
+    public DoubleProperty bFactorProperty() {
+        return bFactor;
+    }
+
     /**
      * Get the atom's color.
      * @return The color of the atom.
@@ -0,0 +1,110 @@
+package pdbmodel;
+
+/**
+ * A steric clash: two atoms, which are not bonded to each other, whose van der Waals spheres overlap more than
+ * tolerated.
+ *
+ * @author Patrick Grupp
+ */
+public class Clash {
+
+    /**
+     * Indices of the atoms in {@link PDBEntry#nodesProperty()}, first is smaller than second.
+     */
+    private final int firstIndex, secondIndex;
+
+    /**
+     * The clashing atoms.
+     */
+    private final Atom first, second;
+
+    /**
+     * Distance of the atom centers in Angstrom.
+     */
+    private final double distance;
+
+    /**
+     * Overlap of the van der Waals spheres in Angstrom.
+     */
+    private final double overlap;
+
+    Clash(int firstIndex, int secondIndex, Atom first, Atom second, double distance, double overlap) {
+        this.firstIndex = firstIndex;
+        this.secondIndex = secondIndex;
+        this.first = first;
+        this.second = second;
+        this.distance = distance;
+        this.overlap = overlap;
+    }
+
+    /**
+     * Get the index of the first atom.
+     *
+     * @return Index of the first atom in the entry's atoms.
+     */
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    /**
+     * Get the index of the second atom.
+     *
+     * @return Index of the second atom in the entry's atoms.
+     */
+    public int getSecondIndex() {
+        return secondIndex;
+    }
+
+    /**
+     * Get the first atom.
+     *
+     * @return The first atom.
+     */
+    public Atom getFirst() {
+        return first;
+    }
+
+    /**
+     * Get the second atom.
+     *
+     * @return The second atom.
+     */
+    public Atom getSecond() {
+        return second;
+    }
+
+    /**
+     * Get the distance of the atoms.
+     *
+     * @return Distance of the atom centers in Angstrom.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Get the overlap of the atoms' van der Waals spheres.
+     *
+     * @return Sum of the radii minus the distance in Angstrom.
+     */
+    public double getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * Human readable description of the clash, e.g. "ALA 12 CA - GLY 40 O: 2.61 A (overlap 0.61 A)".
+     *
+     * @return Description of the clash.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s - %s: %.2f Å (overlap %.2f Å)", describe(first), describe(second),
+                distance, overlap);
+    }
+
+    private static String describe(Atom atom) {
+        Residue residue = atom.residueProperty().getValue();
+        String element = atom.chemicalElementProperty().getValue().toString();
+        return residue == null ? element : residue.getAminoAcid() + " " + residue.getResNum() + " " + element;
+    }
+}
@@ -0,0 +1,232 @@
+package pdbmodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finds steric clashes: pairs of atoms closer than the sum of their van der Waals radii minus a tolerance. Atoms
+ * separated by at most {@link #EXCLUDED_BOND_SEPARATION} bonds are never reported, since their distance is given by
+ * the covalent geometry (e.g. O(i) and CA(i+1) are only 2.8 Angstrom apart in every peptide bond).
+ * <p>
+ * The detector takes a snapshot of the entry's coordinates and bonds when it is constructed, so {@link #detect()}
+ * may run on a background thread while the entry stays untouched.
+ *
+ * @author Patrick Grupp
+ */
+public class ClashDetector {
+
+    /**
+     * Overlap of van der Waals spheres in Angstrom, which is still tolerated.
+     */
+    public static final double DEFAULT_TOLERANCE = 0.4;
+
+    /**
+     * Atoms separated by this number of bonds or less are not checked against each other.
+     */
+    public static final int EXCLUDED_BOND_SEPARATION = 3;
+
+    /**
+     * Number of atoms whose clashes are handed to the consumer at once.
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    private final double tolerance;
+
+    /**
+     * The atoms of the entry in the order of {@link PDBEntry#nodesProperty()}.
+     */
+    private final Atom[] atoms;
+
+    /**
+     * Packed coordinates in Angstrom.
+     */
+    private final double[] coordinates;
+
+    /**
+     * Van der Waals radius of each atom.
+     */
+    private final double[] radii;
+
+    private final double maxRadius;
+
+    /**
+     * Bond adjacency in compressed form: the neighbours of atom i are adjacency[adjacencyStart[i]] to
+     * adjacency[adjacencyStart[i + 1] - 1].
+     */
+    private final int[] adjacencyStart;
+    private final int[] adjacency;
+
+    /**
+     * Detector with the default tolerance.
+     *
+     * @param pdbEntry The entry to take the snapshot of.
+     */
+    public ClashDetector(PDBEntry pdbEntry) {
+        this(pdbEntry, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Detector with a custom tolerance.
+     *
+     * @param pdbEntry  The entry to take the snapshot of.
+     * @param tolerance Tolerated overlap of the van der Waals spheres in Angstrom.
+     */
+    public ClashDetector(PDBEntry pdbEntry, double tolerance) {
+        this.tolerance = tolerance;
+        List<Atom> nodes = pdbEntry.nodesProperty();
+        int n = nodes.size();
+        atoms = nodes.toArray(new Atom[n]);
+        coordinates = pdbEntry.getCoordinates();
+        radii = new double[n];
+        double max = 0;
+        Map<Atom, Integer> index = new IdentityHashMap<>(2 * n);
+        for (int i = 0; i < n; i++) {
+            coordinates[3 * i] /= PDBParser.ATOM_DISTANCE_FACTOR;
+            coordinates[3 * i + 1] /= PDBParser.ATOM_DISTANCE_FACTOR;
+            coordinates[3 * i + 2] /= PDBParser.ATOM_DISTANCE_FACTOR;
+            radii[i] = atoms[i].chemicalElementProperty().getValue().getVanDerWaalsRadius();
+            max = Math.max(max, radii[i]);
+            index.put(atoms[i], i);
+        }
+        maxRadius = max;
+
+        // Degree of each atom, then fill the neighbours (counting sort, like the spatial grid)
+        adjacencyStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            adjacencyStart[i + 1] = adjacencyStart[i] + atoms[i].inEdgesProperty().size() +
+                    atoms[i].outEdgesProperty().size();
+        }
+        adjacency = new int[adjacencyStart[n]];
+        for (int i = 0; i < n; i++) {
+            int k = adjacencyStart[i];
+            for (Bond bond : atoms[i].inEdgesProperty()) {
+                Integer source = index.get(bond.getSource());
+                adjacency[k++] = source == null ? i : source;
+            }
+            for (Bond bond : atoms[i].outEdgesProperty()) {
+                Integer target = index.get(bond.getTarget());
+                adjacency[k++] = target == null ? i : target;
+            }
+        }
+    }
+
+    /**
+     * Find all clashes.
+     *
+     * @return All clashes, ordered by their first atom.
+     */
+    public List<Clash> detect() {
+        return detect(batch -> {
+        });
+    }
+
+    /**
+     * Find all clashes, handing them to the consumer batch by batch as they are found. Atoms of a batch are checked
+     * in parallel.
+     *
+     * @param batchConsumer Called with the clashes of each batch of atoms, in the calling thread.
+     * @return All clashes, ordered by their first atom.
+     */
+    public List<Clash> detect(Consumer<List<Clash>> batchConsumer) {
+        return detect(batchConsumer, () -> false);
+    }
+
+    /**
+     * Find all clashes, handing them to the consumer batch by batch as they are found, and stop between two batches
+     * once the detection was cancelled, e.g. because the task running it was replaced.
+     *
+     * @param batchConsumer Called with the clashes of each batch of atoms, in the calling thread.
+     * @param cancelled     Checked before each batch, true to stop.
+     * @return The clashes found until then, ordered by their first atom.
+     */
+    public List<Clash> detect(Consumer<List<Clash>> batchConsumer, BooleanSupplier cancelled) {
+        List<Clash> clashes = new ArrayList<>();
+        if (atoms.length == 0)
+            return clashes;
+        double cutoff = 2 * maxRadius - tolerance;
+        SpatialGrid grid = new SpatialGrid(coordinates, Math.max(cutoff, 1));
+        for (int from = 0; from < atoms.length && !cancelled.getAsBoolean(); from += BATCH_SIZE) {
+            List<Clash> batch = IntStream.range(from, Math.min(from + BATCH_SIZE, atoms.length)).parallel()
+                    .mapToObj(i -> clashesOf(i, grid, cutoff))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+            if (!batch.isEmpty()) {
+                clashes.addAll(batch);
+                batchConsumer.accept(batch);
+            }
+        }
+        return clashes;
+    }
+
+    /**
+     * Get the clashes of atom i with all atoms of a higher index.
+     */
+    private List<Clash> clashesOf(int i, SpatialGrid grid, double cutoff) {
+        double x = coordinates[3 * i], y = coordinates[3 * i + 1], z = coordinates[3 * i + 2];
+        List<Clash> result = new ArrayList<>(0);
+        // Bonded atoms are only looked up for pairs which are close enough, which are few
+        int[][] excluded = new int[1][];
+        grid.forEachWithin(x, y, z, cutoff, j -> {
+            if (j <= i)
+                return;
+            double dx = coordinates[3 * j] - x, dy = coordinates[3 * j + 1] - y, dz = coordinates[3 * j + 2] - z;
+            double limit = radii[i] + radii[j] - tolerance;
+            double distanceSquared = dx * dx + dy * dy + dz * dz;
+            if (distanceSquared < limit * limit) {
+                if (excluded[0] == null)
+                    excluded[0] = bondedWithin(i);
+                if (!contains(excluded[0], j)) {
+                    double distance = Math.sqrt(distanceSquared);
+                    result.add(new Clash(i, j, atoms[i], atoms[j], distance, radii[i] + radii[j] - distance));
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Get all atoms reachable from atom i over at most {@link #EXCLUDED_BOND_SEPARATION} bonds. Atoms have at most
+     * four bonds, so this is a handful of atoms and a plain array is faster than any set.
+     */
+    private int[] bondedWithin(int i) {
+        int[] reached = new int[16];
+        reached[0] = i;
+        int size = 1;
+        int levelStart = 0;
+        for (int depth = 0; depth < EXCLUDED_BOND_SEPARATION; depth++) {
+            int levelEnd = size;
+            for (int r = levelStart; r < levelEnd; r++) {
+                int atom = reached[r];
+                for (int k = adjacencyStart[atom]; k < adjacencyStart[atom + 1]; k++) {
+                    int neighbour = adjacency[k];
+                    if (!contains(reached, size, neighbour)) {
+                        if (size == reached.length)
+                            reached = Arrays.copyOf(reached, size * 2);
+                        reached[size++] = neighbour;
+                    }
+                }
+            }
+            levelStart = levelEnd;
+        }
+        return Arrays.copyOf(reached, size);
+    }
+
+    private static boolean contains(int[] values, int value) {
+        return contains(values, values.length, value);
+    }
+
+    private static boolean contains(int[] values, int size, int value) {
+        for (int k = 0; k < size; k++) {
+            if (values[k] == value)
+                return true;
+        }
+        return false;
+    }
+}
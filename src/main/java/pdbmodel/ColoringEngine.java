@@ -0,0 +1,254 @@
+package pdbmodel;
+
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+/**
+ * Computes the colors of all atoms and bonds of an entry for a coloring scheme into primitive arrays of ARGB
+ * values, index i holding the color of the i-th atom or bond. The arrays are applied to the view in one batch, instead
+ * of the atoms and bonds being recolored one by one while walking the residues.
+ * <p>
+ * Bonds within a residue take the residue's color in residue based schemes, all other bonds are shown in
+ * {@link #BOND_COLOR}.
+ *
+ * @author Patrick Grupp
+ */
+public class ColoringEngine {
+
+    public enum Scheme {
+        ELEMENT(false),
+        RESIDUE(true),
+        SECONDARY_STRUCTURE(true),
+        B_FACTOR(false);
+
+        private final boolean residueBased;
+
+        Scheme(boolean residueBased) {
+            this.residueBased = residueBased;
+        }
+
+        /**
+         * Check whether all atoms of a residue get the same color, so the bonds within a residue take it as well.
+         *
+         * @return True if the color is determined per residue.
+         */
+        public boolean isResidueBased() {
+            return residueBased;
+        }
+    }
+
+    /**
+     * Color of bonds not colored by their residue.
+     */
+    public static final int BOND_COLOR = toArgb(Color.LIGHTGRAY);
+
+    /**
+     * Colors of alpha helices and beta sheets in the secondary structure scheme.
+     */
+    private static final int HELIX_COLOR = toArgb(Color.RED);
+    private static final int SHEET_COLOR = toArgb(Color.CORNFLOWERBLUE);
+
+    /**
+     * Colors of the lowest, medium and highest temperature factors.
+     */
+    private static final Color LOW_B_FACTOR_COLOR = Color.BLUE;
+    private static final Color MEDIUM_B_FACTOR_COLOR = Color.WHITE;
+    private static final Color HIGH_B_FACTOR_COLOR = Color.RED;
+
+    private final List<Atom> atoms;
+    private final List<Bond> bonds;
+    private final Random random;
+
+    /**
+     * Index of each atom's residue in the entry's residues, -1 for none.
+     */
+    private final int[] atomResidues;
+    private final List<Residue> residues;
+
+    /**
+     * Indices of the atoms of each bond.
+     */
+    private final int[] bondSources;
+    private final int[] bondTargets;
+
+    /**
+     * Create an engine for the current atoms and bonds of the entry.
+     *
+     * @param entry  The entry to be colored.
+     * @param random Source of the random colors of residues.
+     */
+    public ColoringEngine(PDBEntry entry, Random random) {
+        this.random = random;
+        atoms = new ArrayList<>(entry.nodesProperty());
+        bonds = new ArrayList<>(entry.edgesProperty());
+        residues = new ArrayList<>(entry.residuesProperty());
+
+        Map<Residue, Integer> residueIndices = new IdentityHashMap<>();
+        for (int r = 0; r < residues.size(); r++) {
+            residueIndices.put(residues.get(r), r);
+        }
+        Map<Atom, Integer> atomIndices = new IdentityHashMap<>();
+        atomResidues = new int[atoms.size()];
+        for (int i = 0; i < atoms.size(); i++) {
+            Atom atom = atoms.get(i);
+            atomIndices.put(atom, i);
+            atomResidues[i] = residueIndices.getOrDefault(atom.residueProperty().getValue(), -1);
+        }
+        bondSources = new int[bonds.size()];
+        bondTargets = new int[bonds.size()];
+        for (int b = 0; b < bonds.size(); b++) {
+            bondSources[b] = atomIndices.getOrDefault(bonds.get(b).getSource(), -1);
+            bondTargets[b] = atomIndices.getOrDefault(bonds.get(b).getTarget(), -1);
+        }
+    }
+
+    /**
+     * Get the atoms in the order of the computed colors.
+     *
+     * @return The entry's atoms when the engine was created.
+     */
+    public List<Atom> getAtoms() {
+        return atoms;
+    }
+
+    /**
+     * Get the bonds in the order of the computed colors.
+     *
+     * @return The entry's bonds when the engine was created.
+     */
+    public List<Bond> getBonds() {
+        return bonds;
+    }
+
+    /**
+     * Compute the colors of all atoms in the given scheme.
+     *
+     * @param scheme The coloring scheme.
+     * @return ARGB color of each atom.
+     */
+    public int[] colorAtoms(Scheme scheme) {
+        switch (scheme) {
+            case RESIDUE:
+                return colorByResidue(randomColors(residues.size()));
+            case SECONDARY_STRUCTURE:
+                int[] residueColors = randomColors(residues.size());
+                for (int r = 0; r < residues.size(); r++) {
+                    SecondaryStructure structure = residues.get(r).getSecondaryStructure();
+                    if (structure != null)
+                        residueColors[r] = structure.getSecondaryStructureType() ==
+                                SecondaryStructure.StructureType.alphahelix ? HELIX_COLOR : SHEET_COLOR;
+                }
+                return colorByResidue(residueColors);
+            case B_FACTOR:
+                return colorByBFactor();
+            default:
+                return colorAtoms(atom -> toArgb(atom.chemicalElementProperty().getValue().getColor()));
+        }
+    }
+
+    /**
+     * Compute the colors of all atoms by a custom scheme.
+     *
+     * @param scheme Determines the ARGB color of an atom.
+     * @return ARGB color of each atom.
+     */
+    public int[] colorAtoms(ToIntFunction<Atom> scheme) {
+        int[] colors = new int[atoms.size()];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = scheme.applyAsInt(atoms.get(i));
+        }
+        return colors;
+    }
+
+    /**
+     * Compute the colors of all bonds.
+     *
+     * @param atomColors   The colors of the atoms, as computed by this engine.
+     * @param residueBased Whether bonds within a residue take the color of its atoms, see
+     *                     {@link Scheme#isResidueBased()}.
+     * @return ARGB color of each bond.
+     */
+    public int[] colorBonds(int[] atomColors, boolean residueBased) {
+        int[] colors = new int[bonds.size()];
+        for (int b = 0; b < colors.length; b++) {
+            int source = bondSources[b];
+            int target = bondTargets[b];
+            boolean withinResidue = residueBased && source >= 0 && target >= 0 && atomResidues[source] >= 0 &&
+                    atomResidues[source] == atomResidues[target];
+            colors[b] = withinResidue ? atomColors[source] : BOND_COLOR;
+        }
+        return colors;
+    }
+
+    /**
+     * Color each atom like its residue, atoms without a residue by their element.
+     */
+    private int[] colorByResidue(int[] residueColors) {
+        int[] colors = new int[atoms.size()];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = atomResidues[i] >= 0 ? residueColors[atomResidues[i]] :
+                    toArgb(atoms.get(i).chemicalElementProperty().getValue().getColor());
+        }
+        return colors;
+    }
+
+    /**
+     * Color the atoms on a gradient from the lowest to the highest temperature factor of the entry.
+     */
+    private int[] colorByBFactor() {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (Atom atom : atoms) {
+            min = Math.min(min, atom.bFactorProperty().get());
+            max = Math.max(max, atom.bFactorProperty().get());
+        }
+        // Shades are computed once, so atoms only look them up
+        int[] shades = new int[256];
+        for (int s = 0; s < shades.length; s++) {
+            double t = s / (shades.length - 1.);
+            shades[s] = toArgb(t < 0.5 ? LOW_B_FACTOR_COLOR.interpolate(MEDIUM_B_FACTOR_COLOR, 2 * t) :
+                    MEDIUM_B_FACTOR_COLOR.interpolate(HIGH_B_FACTOR_COLOR, 2 * t - 1));
+        }
+        int[] colors = new int[atoms.size()];
+        for (int i = 0; i < colors.length; i++) {
+            double t = max > min ? (atoms.get(i).bFactorProperty().get() - min) / (max - min) : 0.5;
+            colors[i] = shades[(int) Math.round(t * (shades.length - 1))];
+        }
+        return colors;
+    }
+
+    private int[] randomColors(int count) {
+        int[] colors = new int[count];
+        for (int c = 0; c < count; c++) {
+            colors[c] = toArgb(new Color(random.nextFloat(), random.nextFloat(), random.nextFloat(), 1.));
+        }
+        return colors;
+    }
+
+    /**
+     * Convert a color into an ARGB value, 8 bits per channel.
+     *
+     * @param color The color.
+     * @return ARGB value of the color.
+     */
+    public static int toArgb(Color color) {
+        return (int) Math.round(color.getOpacity() * 255) << 24 | (int) Math.round(color.getRed() * 255) << 16 |
+                (int) Math.round(color.getGreen() * 255) << 8 | (int) Math.round(color.getBlue() * 255);
+    }
+
+    /**
+     * Convert an ARGB value into a color.
+     *
+     * @param argb ARGB value, 8 bits per channel.
+     * @return The color.
+     */
+    public static Color toColor(int argb) {
+        return Color.rgb(argb >> 16 & 0xFF, argb >> 8 & 0xFF, argb & 0xFF, (argb >>> 24) / 255.);
+    }
+}
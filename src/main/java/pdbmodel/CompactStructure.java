@@ -0,0 +1,308 @@
+package pdbmodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, immutable copy of a {@link PDBEntry}, kept in a {@link Workspace}. Instead of atom, residue and bond
+ * objects with their properties it only holds primitive arrays: coordinates as floats, chemical elements, amino
+ * acids and secondary structures as enum ordinals and the atoms of each residue as indices. Metadata of elements
+ * and amino acids is shared through their enums, residue numbers and names are interned by the workspace.
+ * <p>
+ * A compact structure can be restored into a full entry at any time in order to be shown.
+ *
+ * @author Patrick Grupp
+ */
+public class CompactStructure {
+
+    /**
+     * Atoms of a residue in the order stored in {@link #residueAtoms}.
+     */
+    private static final int N = 0, C_ALPHA = 1, C = 2, O = 3, C_BETA = 4, ATOMS_PER_RESIDUE = 5;
+
+    private final String pdbCode;
+    private final String title;
+
+    /**
+     * Where the structure was loaded from, e.g. a file path, null if unknown.
+     */
+    private final String source;
+
+    /**
+     * Packed coordinates of the atoms as in the entry's model space.
+     */
+    private final float[] coordinates;
+
+    /**
+     * Ordinal of each atom's {@link Atom.ChemicalElement}.
+     */
+    private final byte[] elements;
+
+    /**
+     * Temperature factor of each atom.
+     */
+    private final float[] bFactors;
+
+    /**
+     * Ordinal of each residue's {@link Residue.AminoAcid}.
+     */
+    private final byte[] aminoAcids;
+
+    /**
+     * PDB number of each residue, interned.
+     */
+    private final String[] residueNumbers;
+
+    /**
+     * Indices of the N, C alpha, C, O and C beta atom of each residue, -1 if missing.
+     */
+    private final int[] residueAtoms;
+
+    /**
+     * Ordinal of the type of each secondary structure and its first and last residue index.
+     */
+    private final byte[] structureTypes;
+    private final int[] structureStart;
+    private final int[] structureEnd;
+
+    /**
+     * Coordinates of all models of an ensemble, packed like {@link #coordinates}. Empty for a single model.
+     */
+    private final float[][] models;
+
+    /**
+     * Copy the given entry.
+     *
+     * @param entry   The entry to be copied.
+     * @param source  Where the entry was loaded from, null if unknown.
+     * @param strings Pool of strings shared between the structures of a workspace.
+     */
+    CompactStructure(PDBEntry entry, String source, Map<String, String> strings) {
+        this.source = source;
+        pdbCode = intern(strings, entry.pdbCodeProperty().getValue());
+        title = intern(strings, entry.titleProperty().getValue());
+
+        List<Atom> atoms = entry.nodesProperty();
+        coordinates = new float[3 * atoms.size()];
+        elements = new byte[atoms.size()];
+        bFactors = new float[atoms.size()];
+        for (int i = 0; i < atoms.size(); i++) {
+            Atom a = atoms.get(i);
+            coordinates[3 * i] = (float) a.xCoordinateProperty().get();
+            coordinates[3 * i + 1] = (float) a.yCoordinateProperty().get();
+            coordinates[3 * i + 2] = (float) a.zCoordinateProperty().get();
+            elements[i] = (byte) a.chemicalElementProperty().getValue().ordinal();
+            bFactors[i] = (float) a.bFactorProperty().get();
+        }
+
+        List<Residue> residues = entry.residuesProperty();
+        aminoAcids = new byte[residues.size()];
+        residueNumbers = new String[residues.size()];
+        residueAtoms = new int[ATOMS_PER_RESIDUE * residues.size()];
+        for (int r = 0; r < residues.size(); r++) {
+            Residue residue = residues.get(r);
+            aminoAcids[r] = (byte) residue.getAminoAcid().ordinal();
+            residueNumbers[r] = intern(strings, residue.getResNum());
+            // Atoms of a residue are next to each other, so only look close to the last found one
+            int hint = r > 0 ? Math.max(0, residueAtoms[ATOMS_PER_RESIDUE * (r - 1)]) : 0;
+            residueAtoms[ATOMS_PER_RESIDUE * r + N] = indexOf(atoms, residue.getNAtom(), hint);
+            residueAtoms[ATOMS_PER_RESIDUE * r + C_ALPHA] = indexOf(atoms, residue.getCAlphaAtom(), hint);
+            residueAtoms[ATOMS_PER_RESIDUE * r + C] = indexOf(atoms, residue.getCAtom(), hint);
+            residueAtoms[ATOMS_PER_RESIDUE * r + O] = indexOf(atoms, residue.getOAtom(), hint);
+            residueAtoms[ATOMS_PER_RESIDUE * r + C_BETA] = indexOf(atoms, residue.getCBetaAtom(), hint);
+        }
+
+        List<SecondaryStructure> structures = entry.secondaryStructuresProperty();
+        structureTypes = new byte[structures.size()];
+        structureStart = new int[structures.size()];
+        structureEnd = new int[structures.size()];
+        for (int s = 0; s < structures.size(); s++) {
+            SecondaryStructure structure = structures.get(s);
+            structureTypes[s] = (byte) structure.getSecondaryStructureType().ordinal();
+            structureStart[s] = residues.indexOf(structure.getFirstResidue());
+            structureEnd[s] = residues.indexOf(structure.getLastResidue());
+        }
+
+        models = new float[entry.getNumberOfModels() > 1 ? entry.getNumberOfModels() : 0][];
+        for (int m = 0; m < models.length; m++) {
+            double[] model = entry.getModelCoordinates(m);
+            models[m] = new float[model.length];
+            for (int i = 0; i < model.length; i++) {
+                models[m][i] = (float) model[i];
+            }
+        }
+    }
+
+    /**
+     * Rebuild the full model of this structure in the given entry, replacing its contents. Atoms, secondary
+     * structures, residues and bonds are added in the same order the {@link PDBParser} adds them, so views listening
+     * to the entry do not see a difference to loading the file.
+     *
+     * @param entry The entry to be filled.
+     */
+    public void restore(PDBEntry entry) {
+        entry.reset();
+        entry.pdbCodeProperty().setValue(pdbCode);
+        entry.titleProperty().setValue(title);
+
+        Atom.ChemicalElement[] elementValues = Atom.ChemicalElement.values();
+        Residue.AminoAcid[] aminoAcidValues = Residue.AminoAcid.values();
+        Atom[] atoms = new Atom[elements.length];
+        for (int i = 0; i < atoms.length; i++) {
+            atoms[i] = new Atom(coordinates[3 * i], coordinates[3 * i + 1], coordinates[3 * i + 2],
+                    elementValues[elements[i]].name(), "");
+            atoms[i].bFactorProperty().set(bFactors[i]);
+        }
+
+        Residue[] residues = new Residue[aminoAcids.length];
+        for (int r = 0; r < residues.length; r++) {
+            Residue residue = new Residue(residueNumbers[r], aminoAcidValues[aminoAcids[r]].name());
+            residue.setNAtom(atomOrNull(atoms, r, N));
+            residue.setCAlphaAtom(atomOrNull(atoms, r, C_ALPHA));
+            residue.setCAtom(atomOrNull(atoms, r, C));
+            residue.setOAtom(atomOrNull(atoms, r, O));
+            residue.setCBetaAtom(atomOrNull(atoms, r, C_BETA));
+            for (int k = 0; k < ATOMS_PER_RESIDUE; k++) {
+                Atom atom = atomOrNull(atoms, r, k);
+                if (atom != null)
+                    atom.residueProperty().setValue(residue);
+            }
+            residues[r] = residue;
+        }
+        entry.nodesProperty().addAll(atoms);
+
+        for (int s = 0; s < structureTypes.length; s++) {
+            SecondaryStructure structure =
+                    new SecondaryStructure(SecondaryStructure.StructureType.values()[structureTypes[s]]);
+            for (int r = structureStart[s]; r >= 0 && r <= structureEnd[s]; r++) {
+                residues[r].setSecondaryStructure(structure);
+                structure.addResidue(residues[r]);
+            }
+            entry.secondaryStructuresProperty().add(structure);
+        }
+
+        entry.residuesProperty().addAll(residues);
+        PDBParser.setUpBonds(entry);
+
+        List<double[]> restoredModels = new ArrayList<>(models.length);
+        for (float[] model : models) {
+            double[] restoredModel = new double[model.length];
+            for (int i = 0; i < model.length; i++) {
+                restoredModel[i] = model[i];
+            }
+            restoredModels.add(restoredModel);
+        }
+        entry.setModelCoordinates(restoredModels);
+    }
+
+    /**
+     * Get the PDB code.
+     *
+     * @return The four letter PDB code, may be empty.
+     */
+    public String getPdbCode() {
+        return pdbCode;
+    }
+
+    /**
+     * Get the title.
+     *
+     * @return The title from the PDB header, may be empty.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Get where the structure was loaded from.
+     *
+     * @return The source, e.g. a file path, null if unknown.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Put the strings of this structure into the given pool again, e.g. when the pool of a workspace is rebuilt.
+     *
+     * @param strings Pool of strings shared between the structures of a workspace.
+     */
+    void poolStrings(Map<String, String> strings) {
+        intern(strings, pdbCode);
+        intern(strings, title);
+        for (String residueNumber : residueNumbers) {
+            intern(strings, residueNumber);
+        }
+    }
+
+    /**
+     * Get the number of atoms.
+     *
+     * @return Number of atoms.
+     */
+    public int getNumberOfAtoms() {
+        return elements.length;
+    }
+
+    /**
+     * Get the number of residues.
+     *
+     * @return Number of residues.
+     */
+    public int getNumberOfResidues() {
+        return aminoAcids.length;
+    }
+
+    /**
+     * Get the sequence in one letter code.
+     *
+     * @return The sequence.
+     */
+    public String getSequence() {
+        StringBuilder sequence = new StringBuilder(aminoAcids.length);
+        Residue.AminoAcid[] aminoAcidValues = Residue.AminoAcid.values();
+        for (byte aminoAcid : aminoAcids) {
+            sequence.append(aminoAcidValues[aminoAcid].getOneLetterCode());
+        }
+        return sequence.toString();
+    }
+
+    /**
+     * Name of the structure for lists.
+     *
+     * @return PDB code, title and size.
+     */
+    @Override
+    public String toString() {
+        return (pdbCode == null || pdbCode.isEmpty() ? "(no PDB code)" : pdbCode) +
+                (title == null || title.isEmpty() ? "" : " " + title) +
+                " (" + aminoAcids.length + " residues)";
+    }
+
+    private Atom atomOrNull(Atom[] atoms, int residue, int role) {
+        int index = residueAtoms[ATOMS_PER_RESIDUE * residue + role];
+        return index < 0 ? null : atoms[index];
+    }
+
+    /**
+     * Find an atom by identity, starting at the hint and wrapping around.
+     */
+    private static int indexOf(List<Atom> atoms, Atom atom, int hint) {
+        if (atom == null)
+            return -1;
+        for (int k = 0; k < atoms.size(); k++) {
+            int i = (hint + k) % atoms.size();
+            if (atoms.get(i) == atom)
+                return i;
+        }
+        return -1;
+    }
+
+    private static String intern(Map<String, String> strings, String value) {
+        if (value == null)
+            return null;
+        String pooled = strings.putIfAbsent(value, value);
+        return pooled == null ? value : pooled;
+    }
+}
@@ -0,0 +1,396 @@
+package pdbmodel;
+
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Point3D;
+
+import java.util.List;
+
+/**
+ * Geometric descriptors of a set of atoms: centroid, radius of gyration, inertia tensor with its principal axes and
+ * an axis-aligned as well as an oriented bounding box. All atoms have unit mass.
+ * <p>
+ * Everything is derived from first and second order coordinate moments and the axis-aligned bounds, which are
+ * gathered in a single fused pass over the atoms. The moments are additive, so moving, adding or removing an atom
+ * updates them in constant time. Only the axis-aligned box may need another pass, if an atom on its border moved
+ * inwards, and the oriented box needs one projection pass, since its axes are only known after the moments.
+ *
+ * @author Patrick Grupp
+ */
+public class GeometricDescriptors {
+
+    /**
+     * The atoms described.
+     */
+    private final List<Atom> atoms;
+
+    /**
+     * Number of atoms accumulated in the moments.
+     */
+    private int count;
+
+    /**
+     * First order moments (sums of the coordinates).
+     */
+    private double sumX, sumY, sumZ;
+
+    /**
+     * Second order moments (sums of the coordinate products).
+     */
+    private double sumXX, sumYY, sumZZ, sumXY, sumXZ, sumYZ;
+
+    /**
+     * Axis-aligned bounds.
+     */
+    private double minX, minY, minZ, maxX, maxY, maxZ;
+
+    /**
+     * False, if an atom on the border of the axis-aligned bounds moved inwards or was removed.
+     */
+    private boolean boundsValid;
+
+    /**
+     * Cached principal axes and moments, null if outdated.
+     */
+    private Point3D[] principalAxes;
+    private double[] principalMoments;
+
+    /**
+     * Cached oriented bounding box, null if outdated.
+     */
+    private OrientedBox orientedBox;
+
+    /**
+     * Compute the descriptors of the given atoms in one pass.
+     *
+     * @param atoms The atoms to describe. The list is kept in order to recompute the bounds if necessary.
+     */
+    public GeometricDescriptors(List<Atom> atoms) {
+        this.atoms = atoms;
+        recompute();
+    }
+
+    /**
+     * Recompute all descriptors from scratch in a single pass over the atoms.
+     */
+    public void recompute() {
+        count = 0;
+        sumX = sumY = sumZ = 0;
+        sumXX = sumYY = sumZZ = sumXY = sumXZ = sumYZ = 0;
+        resetBounds();
+        for (Atom a : atoms) {
+            double x = a.xCoordinateProperty().get();
+            double y = a.yCoordinateProperty().get();
+            double z = a.zCoordinateProperty().get();
+            accumulate(x, y, z, 1);
+            extendBounds(x, y, z);
+        }
+        boundsValid = true;
+        invalidateDerived();
+    }
+
+    /**
+     * Update the descriptors after an atom was added to the described list.
+     *
+     * @param atom The added atom.
+     */
+    void atomAdded(Atom atom) {
+        double x = atom.xCoordinateProperty().get();
+        double y = atom.yCoordinateProperty().get();
+        double z = atom.zCoordinateProperty().get();
+        accumulate(x, y, z, 1);
+        if (boundsValid)
+            extendBounds(x, y, z);
+        invalidateDerived();
+    }
+
+    /**
+     * Update the descriptors after an atom was removed from the described list.
+     *
+     * @param atom The removed atom.
+     */
+    void atomRemoved(Atom atom) {
+        accumulate(atom.xCoordinateProperty().get(), atom.yCoordinateProperty().get(),
+                atom.zCoordinateProperty().get(), -1);
+        boundsValid = false;
+        invalidateDerived();
+    }
+
+    /**
+     * Update the descriptors after one coordinate of an atom changed.
+     *
+     * @param atom     The moved atom, already holding the new value.
+     * @param axis     0 for x, 1 for y and 2 for z.
+     * @param oldValue The coordinate before the change.
+     * @param newValue The coordinate after the change.
+     */
+    void coordinateChanged(Atom atom, int axis, double oldValue, double newValue) {
+        double delta = newValue - oldValue;
+        double squares = newValue * newValue - oldValue * oldValue;
+        double x = atom.xCoordinateProperty().get();
+        double y = atom.yCoordinateProperty().get();
+        double z = atom.zCoordinateProperty().get();
+        switch (axis) {
+            case 0:
+                sumX += delta;
+                sumXX += squares;
+                sumXY += delta * y;
+                sumXZ += delta * z;
+                boundsValid &= !movedInwards(oldValue, newValue, minX, maxX);
+                break;
+            case 1:
+                sumY += delta;
+                sumYY += squares;
+                sumXY += delta * x;
+                sumYZ += delta * z;
+                boundsValid &= !movedInwards(oldValue, newValue, minY, maxY);
+                break;
+            default:
+                sumZ += delta;
+                sumZZ += squares;
+                sumXZ += delta * x;
+                sumYZ += delta * y;
+                boundsValid &= !movedInwards(oldValue, newValue, minZ, maxZ);
+        }
+        if (boundsValid)
+            extendBounds(x, y, z);
+        invalidateDerived();
+    }
+
+    /**
+     * Get the number of described atoms.
+     *
+     * @return Number of atoms.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the centroid (center of mass with unit masses).
+     *
+     * @return The centroid, or the origin if there are no atoms.
+     */
+    public Point3D getCentroid() {
+        if (count == 0)
+            return Point3D.ZERO;
+        return new Point3D(sumX / count, sumY / count, sumZ / count);
+    }
+
+    /**
+     * Get the radius of gyration, the root mean square distance of the atoms to the centroid.
+     *
+     * @return Radius of gyration in model coordinates.
+     */
+    public double getRadiusOfGyration() {
+        double[][] c = getCovariance();
+        return Math.sqrt(Math.max(0, c[0][0] + c[1][1] + c[2][2]));
+    }
+
+    /**
+     * Get the inertia tensor of the atoms with unit masses relative to the centroid.
+     *
+     * @return Symmetric 3x3 inertia tensor.
+     */
+    public double[][] getInertiaTensor() {
+        double[][] c = getCovariance();
+        double trace = c[0][0] + c[1][1] + c[2][2];
+        double[][] inertia = new double[3][3];
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                inertia[i][j] = count * ((i == j ? trace : 0) - c[i][j]);
+            }
+        }
+        return inertia;
+    }
+
+    /**
+     * Get the principal axes, sorted from the axis the atoms are spread along the most to the least.
+     *
+     * @return Three orthonormal axes.
+     */
+    public Point3D[] getPrincipalAxes() {
+        computePrincipalAxes();
+        return principalAxes.clone();
+    }
+
+    /**
+     * Get the principal moments of inertia belonging to the principal axes (smallest first, since the atoms are
+     * spread the most along the first axis).
+     *
+     * @return The three principal moments of inertia.
+     */
+    public double[] getPrincipalMoments() {
+        computePrincipalAxes();
+        return principalMoments.clone();
+    }
+
+    /**
+     * Get the axis-aligned bounding box of the atom centers.
+     *
+     * @return The bounding box, empty at the origin if there are no atoms.
+     */
+    public BoundingBox getBoundingBox() {
+        if (count == 0)
+            return new BoundingBox(0, 0, 0, 0, 0, 0);
+        if (!boundsValid) {
+            resetBounds();
+            for (Atom a : atoms) {
+                extendBounds(a.xCoordinateProperty().get(), a.yCoordinateProperty().get(), a.zCoordinateProperty().get());
+            }
+            boundsValid = true;
+        }
+        return new BoundingBox(minX, minY, minZ, maxX - minX, maxY - minY, maxZ - minZ);
+    }
+
+    /**
+     * Get the bounding box of the atom centers aligned to the principal axes.
+     *
+     * @return The oriented bounding box.
+     */
+    public OrientedBox getOrientedBoundingBox() {
+        if (orientedBox == null) {
+            computePrincipalAxes();
+            double[] lo = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+            double[] hi = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            for (Atom a : atoms) {
+                double x = a.xCoordinateProperty().get();
+                double y = a.yCoordinateProperty().get();
+                double z = a.zCoordinateProperty().get();
+                for (int k = 0; k < 3; k++) {
+                    double projection = x * principalAxes[k].getX() + y * principalAxes[k].getY() +
+                            z * principalAxes[k].getZ();
+                    lo[k] = Math.min(lo[k], projection);
+                    hi[k] = Math.max(hi[k], projection);
+                }
+            }
+            Point3D center = Point3D.ZERO;
+            double[] halfExtents = new double[3];
+            if (count > 0) {
+                for (int k = 0; k < 3; k++) {
+                    center = center.add(principalAxes[k].multiply((lo[k] + hi[k]) / 2));
+                    halfExtents[k] = (hi[k] - lo[k]) / 2;
+                }
+            }
+            orientedBox = new OrientedBox(center, principalAxes.clone(), halfExtents);
+        }
+        return orientedBox;
+    }
+
+    /**
+     * Get the covariance matrix of the coordinates.
+     */
+    private double[][] getCovariance() {
+        double[][] c = new double[3][3];
+        if (count == 0)
+            return c;
+        double mx = sumX / count, my = sumY / count, mz = sumZ / count;
+        c[0][0] = sumXX / count - mx * mx;
+        c[1][1] = sumYY / count - my * my;
+        c[2][2] = sumZZ / count - mz * mz;
+        c[0][1] = c[1][0] = sumXY / count - mx * my;
+        c[0][2] = c[2][0] = sumXZ / count - mx * mz;
+        c[1][2] = c[2][1] = sumYZ / count - my * mz;
+        return c;
+    }
+
+    private void computePrincipalAxes() {
+        if (principalAxes != null)
+            return;
+        double[] spread = new double[3];
+        double[][] vectors = new double[3][3];
+        double[][] covariance = getCovariance();
+        SymmetricEigenSolver.decompose(covariance, spread, vectors);
+        double trace = covariance[0][0] + covariance[1][1] + covariance[2][2];
+        principalAxes = new Point3D[3];
+        principalMoments = new double[3];
+        for (int k = 0; k < 3; k++) {
+            principalAxes[k] = new Point3D(vectors[0][k], vectors[1][k], vectors[2][k]);
+            // Moment of inertia around an axis is everything not spread along it
+            principalMoments[k] = count * (trace - spread[k]);
+        }
+        // Keep a right-handed frame
+        principalAxes[2] = principalAxes[0].crossProduct(principalAxes[1]);
+    }
+
+    private void accumulate(double x, double y, double z, int sign) {
+        count += sign;
+        sumX += sign * x;
+        sumY += sign * y;
+        sumZ += sign * z;
+        sumXX += sign * x * x;
+        sumYY += sign * y * y;
+        sumZZ += sign * z * z;
+        sumXY += sign * x * y;
+        sumXZ += sign * x * z;
+        sumYZ += sign * y * z;
+    }
+
+    private void resetBounds() {
+        minX = minY = minZ = Double.POSITIVE_INFINITY;
+        maxX = maxY = maxZ = Double.NEGATIVE_INFINITY;
+    }
+
+    private void extendBounds(double x, double y, double z) {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        minZ = Math.min(minZ, z);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        maxZ = Math.max(maxZ, z);
+    }
+
+    /**
+     * Did a coordinate on the border of the bounds move inwards, so the bounds might have to shrink.
+     */
+    private static boolean movedInwards(double oldValue, double newValue, double min, double max) {
+        return (oldValue <= min && newValue > oldValue) || (oldValue >= max && newValue < oldValue);
+    }
+
+    private void invalidateDerived() {
+        principalAxes = null;
+        principalMoments = null;
+        orientedBox = null;
+    }
+
+    /**
+     * Box aligned to arbitrary orthonormal axes.
+     */
+    public static class OrientedBox {
+        private final Point3D center;
+        private final Point3D[] axes;
+        private final double[] halfExtents;
+
+        OrientedBox(Point3D center, Point3D[] axes, double[] halfExtents) {
+            this.center = center;
+            this.axes = axes;
+            this.halfExtents = halfExtents;
+        }
+
+        /**
+         * Get the center of the box.
+         *
+         * @return The center of the box.
+         */
+        public Point3D getCenter() {
+            return center;
+        }
+
+        /**
+         * Get the box's axes.
+         *
+         * @return Three orthonormal axes.
+         */
+        public Point3D[] getAxes() {
+            return axes.clone();
+        }
+
+        /**
+         * Get half of the box's extent along each of its axes.
+         *
+         * @return Half extents along the axes.
+         */
+        public double[] getHalfExtents() {
+            return halfExtents.clone();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package pdbmodel;
+
+/**
+ * Result of a molecular surface generation: a closed triangle mesh with shared vertices, in the coordinates of the
+ * model's atoms. Each vertex belongs to the residue of the atom contributing most to the density there.
+ *
+ * @author Patrick Grupp
+ */
+public class MolecularSurface {
+
+    /**
+     * Coordinates of the vertices, x, y and z consecutively.
+     */
+    private final float[] points;
+
+    /**
+     * Vertex indices of the triangles, three per triangle, counter-clockwise seen from outside.
+     */
+    private final int[] triangles;
+
+    /**
+     * Index of each vertex's residue in {@link PDBEntry#residuesProperty()}, -1 if its atom has no residue.
+     */
+    private final int[] vertexResidues;
+
+    /**
+     * Spacing of the density grid in Angstrom.
+     */
+    private final double gridSpacing;
+
+    MolecularSurface(float[] points, int[] triangles, int[] vertexResidues, double gridSpacing) {
+        this.points = points;
+        this.triangles = triangles;
+        this.vertexResidues = vertexResidues;
+        this.gridSpacing = gridSpacing;
+    }
+
+    /**
+     * Get the vertices.
+     *
+     * @return Coordinates of the vertices, x, y and z consecutively. Shared, not to be modified.
+     */
+    public float[] getPoints() {
+        return points;
+    }
+
+    /**
+     * Get the triangles.
+     *
+     * @return Vertex indices, three per triangle, counter-clockwise seen from outside. Shared, not to be modified.
+     */
+    public int[] getTriangles() {
+        return triangles;
+    }
+
+    /**
+     * Get the residue of each vertex.
+     *
+     * @return Index of each vertex's residue in the entry's residues, -1 for none. Shared, not to be modified.
+     */
+    public int[] getVertexResidues() {
+        return vertexResidues;
+    }
+
+    /**
+     * Get the number of vertices.
+     *
+     * @return Number of vertices.
+     */
+    public int getNumberOfVertices() {
+        return points.length / 3;
+    }
+
+    /**
+     * Get the number of triangles.
+     *
+     * @return Number of triangles.
+     */
+    public int getNumberOfTriangles() {
+        return triangles.length / 3;
+    }
+
+    /**
+     * Get the resolution the surface was generated at.
+     *
+     * @return Spacing of the density grid in Angstrom.
+     */
+    public double getGridSpacing() {
+        return gridSpacing;
+    }
+}
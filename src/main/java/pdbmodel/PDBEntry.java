@@ -1,13 +1,19 @@
 package pdbmodel;
 
+import javafx.beans.property.ReadOnlyProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -48,6 +54,38 @@ public class PDBEntry {
      */
     private StringProperty pdbCode;
 
+    /**
+     * Solvent accessibility of the current atoms. Computed on first request, null if outdated.
+     */
+    private SolventAccessibility solventAccessibility;
+
+    /**
+     * The computation last handed out by {@link #prepareSolventAccessibility()}, null once the atoms changed after it
+     * was prepared.
+     */
+    private Supplier<SolventAccessibility> preparedSolventAccessibility;
+
+    /**
+     * Geometric descriptors of the atoms. Created on first request and updated incrementally afterwards.
+     */
+    private GeometricDescriptors geometricDescriptors;
+
+    /**
+     * Coordinates of all models of an ensemble, e.g. an NMR entry, each packed like {@link #getCoordinates()}. Empty if
+     * the entry has a single model.
+     */
+    private List<double[]> models;
+
+    /**
+     * Listeners shared by all atoms, updating the geometric descriptors when a coordinate changes.
+     */
+    private final ChangeListener<Number> xCoordinateListener = (observable, oldValue, newValue) ->
+            coordinateChanged(observable, 0, oldValue, newValue);
+    private final ChangeListener<Number> yCoordinateListener = (observable, oldValue, newValue) ->
+            coordinateChanged(observable, 1, oldValue, newValue);
+    private final ChangeListener<Number> zCoordinateListener = (observable, oldValue, newValue) ->
+            coordinateChanged(observable, 2, oldValue, newValue);
+
     /**
      * Constructor
      */
@@ -58,6 +96,28 @@ public class PDBEntry {
         residues = FXCollections.observableArrayList();
         title = new SimpleStringProperty();
         pdbCode = new SimpleStringProperty();
+        models = Collections.emptyList();
+        // Any change of the atoms outdates the computed solvent accessibility
+        nodes.addListener((ListChangeListener<Atom>) c -> {
+            invalidateSolventAccessibility();
+            while (c.next()) {
+                for (Atom a : c.getRemoved()) {
+                    a.xCoordinateProperty().removeListener(xCoordinateListener);
+                    a.yCoordinateProperty().removeListener(yCoordinateListener);
+                    a.zCoordinateProperty().removeListener(zCoordinateListener);
+                    if (geometricDescriptors != null)
+                        geometricDescriptors.atomRemoved(a);
+                }
+                for (Atom a : c.getAddedSubList()) {
+                    a.xCoordinateProperty().addListener(xCoordinateListener);
+                    a.yCoordinateProperty().addListener(yCoordinateListener);
+                    a.zCoordinateProperty().addListener(zCoordinateListener);
+                    if (geometricDescriptors != null)
+                        geometricDescriptors.atomAdded(a);
+                }
+            }
+        });
+        residues.addListener((ListChangeListener<Residue>) c -> invalidateSolventAccessibility());
     }
 
     /**
@@ -276,6 +336,137 @@ public class PDBEntry {
         residues.clear();
         titleProperty().setValue("");
         pdbCodeProperty().setValue("");
+        models = Collections.emptyList();
+    }
+
+    /**
+     * Get the number of models of the structure, more than one for ensembles like NMR entries.
+     *
+     * @return Number of models, at least 1.
+     */
+    public int getNumberOfModels() {
+        return Math.max(1, models.size());
+    }
+
+    /**
+     * Get the coordinates of all atoms in one model of the ensemble, in the order of {@link #nodesProperty()}. For
+     * entries with a single model, these are the atoms' current coordinates.
+     *
+     * @param model Index of the model, starting at 0 for the first model.
+     * @return Array holding x, y and z of each atom consecutively. Shared, not to be modified.
+     */
+    public double[] getModelCoordinates(int model) {
+        if (models.isEmpty() && model == 0)
+            return getCoordinates();
+        return models.get(model);
+    }
+
+    /**
+     * Set the coordinates of all models, replacing the ensemble.
+     *
+     * @param models The coordinates of each model, packed like {@link #getCoordinates()}, the first model first.
+     */
+    void setModelCoordinates(List<double[]> models) {
+        this.models = models.size() > 1 ? new ArrayList<>(models) : Collections.emptyList();
+    }
+
+    /**
+     * Get the coordinates of all atoms packed into one array, in the order of {@link #nodesProperty()}.
+     *
+     * @return New array holding x, y and z of each atom consecutively.
+     */
+    public double[] getCoordinates() {
+        double[] coordinates = new double[nodes.size() * 3];
+        for (int i = 0; i < nodes.size(); i++) {
+            Atom a = nodes.get(i);
+            coordinates[3 * i] = a.xCoordinateProperty().get();
+            coordinates[3 * i + 1] = a.yCoordinateProperty().get();
+            coordinates[3 * i + 2] = a.zCoordinateProperty().get();
+        }
+        return coordinates;
+    }
+
+    /**
+     * Get the solvent accessible surface area of all atoms and residues. It is computed on first request and kept
+     * until the atoms or residues change.
+     *
+     * @return SASA per atom and per residue.
+     */
+    public SolventAccessibility getSolventAccessibility() {
+        if (solventAccessibility == null) {
+            solventAccessibility = new SurfaceAreaCalculator().compute(this);
+        }
+        return solventAccessibility;
+    }
+
+    /**
+     * Prepare computing the solvent accessibility on another thread, e.g. in a background task. The atoms are copied
+     * now, so the returned computation does not touch the entry. Pass its result to
+     * {@link #cacheSolventAccessibility(Supplier, SolventAccessibility)} afterwards.
+     *
+     * @return Computation returning the cached solvent accessibility, or computing it from the atoms as they are now.
+     */
+    public Supplier<SolventAccessibility> prepareSolventAccessibility() {
+        if (solventAccessibility != null) {
+            SolventAccessibility cached = solventAccessibility;
+            return () -> cached;
+        }
+        preparedSolventAccessibility = new SurfaceAreaCalculator().prepare(this);
+        return preparedSolventAccessibility;
+    }
+
+    /**
+     * Keep the result of a computation prepared by {@link #prepareSolventAccessibility()}, unless the atoms or residues
+     * changed since it was prepared.
+     *
+     * @param computation The computation.
+     * @param result      Its result.
+     * @return Whether the result still matches the atoms, false if it is outdated.
+     */
+    public boolean cacheSolventAccessibility(Supplier<SolventAccessibility> computation, SolventAccessibility result) {
+        if (solventAccessibility == result)
+            return true;
+        if (computation != preparedSolventAccessibility)
+            return false;
+        solventAccessibility = result;
+        preparedSolventAccessibility = null;
+        return true;
+    }
+
+    private void invalidateSolventAccessibility() {
+        solventAccessibility = null;
+        preparedSolventAccessibility = null;
+    }
+
+    /**
+     * Get the geometric descriptors (centroid, radius of gyration, principal axes, bounding boxes) of all atoms.
+     * They are computed in one pass on first request and kept up to date incrementally when atoms move, are added
+     * or are removed.
+     *
+     * @return Geometric descriptors of the atoms.
+     */
+    public GeometricDescriptors getGeometricDescriptors() {
+        if (geometricDescriptors == null) {
+            geometricDescriptors = new GeometricDescriptors(nodes);
+        }
+        return geometricDescriptors;
+    }
+
+    /**
+     * Update the geometric descriptors after a coordinate of an atom changed.
+     *
+     * @param observable The changed coordinate property. Its bean is the atom.
+     * @param axis       0 for x, 1 for y and 2 for z.
+     * @param oldValue   The coordinate before the change.
+     * @param newValue   The coordinate after the change.
+     */
+    private void coordinateChanged(ObservableValue<? extends Number> observable, int axis, Number oldValue,
+                                   Number newValue) {
+        invalidateSolventAccessibility();
+        if (geometricDescriptors != null) {
+            Atom atom = (Atom) ((ReadOnlyProperty<?>) observable).getBean();
+            geometricDescriptors.coordinateChanged(atom, axis, oldValue.doubleValue(), newValue.doubleValue());
+        }
     }
 
     /**
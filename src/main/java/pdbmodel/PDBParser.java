@@ -5,7 +5,11 @@ import javafx.scene.transform.Rotate;
 import javafx.util.Pair;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Parser for PDB files.
@@ -16,7 +20,10 @@ public class PDBParser {
 
     private enum Status {header, remarks, helix, betasheet, atom, term}
 
-    private static final int ATOM_DISTANCE_FACTOR = 20;
+    /**
+     * Factor the PDB coordinates (Angstrom) are scaled with for the view.
+     */
+    static final int ATOM_DISTANCE_FACTOR = 20;
 
     /**
      * Parse the input in the given reader to the given pdbEntry model.
@@ -40,15 +47,19 @@ public class PDBParser {
             if (status.equals(Status.term))
                 break;
         }
+        // Ensembles, e.g. NMR entries, continue with further models of the same chain. Only their coordinates are kept
+        List<Map<String, double[]>> furtherModels = readFurtherModels(reader);
 
         // Post process to build up an actual model of the protein described by the PDB file.
         ArrayList<Residue> residues = postProcess(pdbEntry, atomArrayList, helices, betaSheets);
         // Get nice coordinate positions out of the file
-        normalizeCoordinates(residues);
+        Point3D centroid = normalizeCoordinates(residues);
         pdbEntry.residuesProperty().addAll(residues);
         // Bond the atoms together in a correct way, since a PDB dous not give awa information about
         // how the atoms are connected
         setUpBonds(pdbEntry);
+        if (!furtherModels.isEmpty())
+            setUpModels(pdbEntry, furtherModels, centroid);
 
         // Something went wrong, could not parse any nodes. Maybe wrong file format?
         if (pdbEntry.nodesProperty().size() == 0) {
@@ -101,7 +112,11 @@ public class PDBParser {
                 String residueName = line.substring(17, 20).trim();
                 String resSeqNum = line.substring(22, 27).trim();
 
-                atoms.add(new Atom(x, y, z, atomName, resSeqNum + "$" + residueName));
+                Atom atom = new Atom(x, y, z, atomName, resSeqNum + "$" + residueName);
+                // The temperature factor is optional in older files
+                if (line.length() >= 66 && !line.substring(60, 66).trim().isEmpty())
+                    atom.bFactorProperty().set(Double.parseDouble(line.substring(60, 66).trim()));
+                atoms.add(atom);
             }
             return Status.atom;
         } else if (line.startsWith("TER"))
@@ -113,6 +128,83 @@ public class PDBParser {
             return Status.remarks;
     }
 
+    /**
+     * Read the coordinates of the models following the first one, up to the end of each model's first chain, like the
+     * first model is read.
+     *
+     * @param reader The reader, positioned behind the first model's first chain.
+     * @return Per model, the coordinates of its atoms by residue sequence number, residue name and atom name. Empty
+     * if the file has a single model.
+     * @throws IOException If reading fails.
+     */
+    private static List<Map<String, double[]>> readFurtherModels(BufferedReader reader) throws IOException {
+        List<Map<String, double[]>> models = new ArrayList<>();
+        Map<String, double[]> current = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("MODEL")) {
+                current = new HashMap<>();
+                models.add(current);
+            } else if (line.startsWith("TER") || line.startsWith("ENDMDL")) {
+                current = null;
+            } else if (current != null && line.startsWith("ATOM")) {
+                String atomName = line.substring(12, 16).trim();
+                double x = Double.parseDouble(line.substring(30, 38).trim()) * ATOM_DISTANCE_FACTOR;
+                double y = Double.parseDouble(line.substring(38, 46).trim()) * ATOM_DISTANCE_FACTOR;
+                double z = Double.parseDouble(line.substring(46, 54).trim()) * ATOM_DISTANCE_FACTOR;
+                String residueName = line.substring(17, 20).trim();
+                String resSeqNum = line.substring(22, 27).trim();
+                current.put(modelKey(resSeqNum + "$" + residueName, atomName), new double[]{x, y, z});
+            }
+        }
+        return models;
+    }
+
+    private static String modelKey(String residue, String atomName) {
+        return residue + ":" + atomName;
+    }
+
+    /**
+     * Set up the coordinates of all models of the entry, the first being the parsed one. Atoms missing in a model,
+     * e.g. the interpolated C betas of glycines, move along with their residue's C alpha.
+     *
+     * @param pdbEntry      The entry, holding the atoms of the first model.
+     * @param furtherModels The coordinates of the further models, as read.
+     * @param centroid      The centroid subtracted from the first model's coordinates, subtracted from all models.
+     */
+    private static void setUpModels(PDBEntry pdbEntry, List<Map<String, double[]>> furtherModels, Point3D centroid) {
+        List<Atom> atoms = pdbEntry.nodesProperty();
+        double[] first = pdbEntry.getCoordinates();
+        List<double[]> models = new ArrayList<>(furtherModels.size() + 1);
+        models.add(first);
+        for (Map<String, double[]> model : furtherModels) {
+            double[] coordinates = new double[first.length];
+            for (int i = 0; i < atoms.size(); i++) {
+                Atom atom = atoms.get(i);
+                double[] position = model.get(modelKey(atom.textProperty().getValue(),
+                        atom.chemicalElementProperty().getValue().toString()));
+                if (position != null) {
+                    coordinates[3 * i] = position[0] - centroid.getX();
+                    coordinates[3 * i + 1] = position[1] - centroid.getY();
+                    coordinates[3 * i + 2] = position[2] - centroid.getZ();
+                    continue;
+                }
+                Atom cAlpha = atom.residueProperty().getValue() == null ? null :
+                        atom.residueProperty().getValue().getCAlphaAtom();
+                double[] cAlphaPosition = cAlpha == null || cAlpha == atom ? null :
+                        model.get(modelKey(cAlpha.textProperty().getValue(), "CA"));
+                System.arraycopy(first, 3 * i, coordinates, 3 * i, 3);
+                if (cAlphaPosition != null) {
+                    coordinates[3 * i] += cAlphaPosition[0] - centroid.getX() - cAlpha.xCoordinateProperty().get();
+                    coordinates[3 * i + 1] += cAlphaPosition[1] - centroid.getY() - cAlpha.yCoordinateProperty().get();
+                    coordinates[3 * i + 2] += cAlphaPosition[2] - centroid.getZ() - cAlpha.zCoordinateProperty().get();
+                }
+            }
+            models.add(coordinates);
+        }
+        pdbEntry.setModelCoordinates(models);
+    }
+
     /**
      * After having read in all the necessary lines from the PDB file. Use the data structures built up in order
      * to construct a proper model of the information.
@@ -240,6 +332,7 @@ public class PDBParser {
         // Set the results
         residue.setCBetaAtom(new Atom(resultingPoint.getX(), resultingPoint.getY(), resultingPoint.getZ(), "CB", ""));
         residue.getCBetaAtom().residueProperty().setValue(residue);
+        residue.getCBetaAtom().bFactorProperty().set(residue.getCAlphaAtom().bFactorProperty().get());
 
     }
 
@@ -279,34 +372,25 @@ public class PDBParser {
     /**
      * Normalize the coordinated given by PDB aound the (0,0,0) point in the 3d model, in order to have it
      * centered at all times.
+     *
+     * @return The centroid subtracted from all coordinates.
      */
-    private static void normalizeCoordinates(ArrayList<Residue> residues) {
-        double x = 0;
-        double y = 0;
-        double z = 0;
-
-        int atoms = 0;
+    private static Point3D normalizeCoordinates(ArrayList<Residue> residues) {
+        ArrayList<Atom> atoms = new ArrayList<>(residues.size() * 5);
         for (Residue res : residues) {
-            for (Atom a : res.getAtoms()) {
-                x += a.xCoordinateProperty().getValue();
-                y += a.yCoordinateProperty().getValue();
-                z += a.zCoordinateProperty().getValue();
-                atoms++;
-            }
+            atoms.addAll(res.getAtoms());
         }
-        x = x / atoms;
-        y = y / atoms;
-        z = z / atoms;
+        Point3D centroid = new GeometricDescriptors(atoms).getCentroid();
+        double x = centroid.getX();
+        double y = centroid.getY();
+        double z = centroid.getZ();
 
-        for (Residue res : residues) {
-            for (Atom a : res.getAtoms()) {
-                a.xCoordinateProperty().setValue(a.xCoordinateProperty().getValue() - x);
-                a.yCoordinateProperty().setValue(a.yCoordinateProperty().getValue() - y);
-                a.zCoordinateProperty().setValue(a.zCoordinateProperty().getValue() - z);
-                a.textProperty().setValue("Residue: " + a.residueProperty().getValue().getResNum() +
-                        ", amino acid: " + a.residueProperty().getValue().getName());
-            }
+        for (Atom a : atoms) {
+            a.xCoordinateProperty().setValue(a.xCoordinateProperty().getValue() - x);
+            a.yCoordinateProperty().setValue(a.yCoordinateProperty().getValue() - y);
+            a.zCoordinateProperty().setValue(a.zCoordinateProperty().getValue() - z);
         }
+        return centroid;
     }
 
     /**
@@ -314,7 +398,7 @@ public class PDBParser {
      *
      * @param pdbEntry The model instance for which bons should be built up.
      */
-    private static void setUpBonds(PDBEntry pdbEntry) {
+    static void setUpBonds(PDBEntry pdbEntry) {
         for (int i = 0; i < pdbEntry.residuesProperty().size(); i++) {
             Residue res = pdbEntry.residuesProperty().get(i);
             try {
@@ -1,7 +1,5 @@
 package pdbmodel;
 
-import javafx.util.Pair;
-
 import java.util.*;
 
 /**
@@ -10,34 +8,55 @@ import java.util.*;
 public class Residue {
 
     public enum AminoAcid {
-        ALA, ARG, ASN, ASP, CYS, GLU, GLN, GLY, HIS, ILE, LEU, LYS, MET, PHE, PRO, SER, THR, TRP, TYR, VAL;
-
-    }
+        ALA("A", "Alanine"),
+        ARG("R", "Arginine"),
+        ASN("N", "Asparagine"),
+        ASP("D", "Aspartic Acid"),
+        CYS("C", "Cysteine"),
+        GLU("E", "Glutamic Acid"),
+        GLN("Q", "Glutamine"),
+        GLY("G", "Glycine"),
+        HIS("H", "Histidine"),
+        ILE("I", "Isoleucine"),
+        LEU("L", "Leucine"),
+        LYS("K", "Lysine"),
+        MET("M", "Methionine"),
+        PHE("F", "Phenylalanine"),
+        PRO("P", "Proline"),
+        SER("S", "Serine"),
+        THR("T", "Threonine"),
+        TRP("W", "Tryptophan"),
+        TYR("Y", "Tyrosine"),
+        VAL("V", "Valine");
+
+        /**
+         * One letter code and human readable name, shared by all residues of the amino acid.
+         */
+        private final String oneLetterCode;
+        private final String fullName;
+
+        AminoAcid(String oneLetterCode, String fullName) {
+            this.oneLetterCode = oneLetterCode;
+            this.fullName = fullName;
+        }
 
-    private static Map<AminoAcid, Pair<String, String>> aminoAcidMap;
+        /**
+         * Get the one letter code of the amino acid.
+         *
+         * @return One letter code of the amino acid.
+         */
+        public String getOneLetterCode() {
+            return oneLetterCode;
+        }
 
-    static {
-        aminoAcidMap = new HashMap<>();
-        aminoAcidMap.put(AminoAcid.ALA, new Pair<>("A", "Alanine"));
-        aminoAcidMap.put(AminoAcid.ARG, new Pair<>("R", "Arginine"));
-        aminoAcidMap.put(AminoAcid.ASN, new Pair<>("N", "Asparagine"));
-        aminoAcidMap.put(AminoAcid.ASP, new Pair<>("D", "Aspartic Acid"));
-        aminoAcidMap.put(AminoAcid.CYS, new Pair<>("C", "Cysteine"));
-        aminoAcidMap.put(AminoAcid.GLU, new Pair<>("E", "Glutamic Acid"));
-        aminoAcidMap.put(AminoAcid.GLN, new Pair<>("Q", "Glutamine"));
-        aminoAcidMap.put(AminoAcid.GLY, new Pair<>("G", "Glycine"));
-        aminoAcidMap.put(AminoAcid.HIS, new Pair<>("H", "Histidine"));
-        aminoAcidMap.put(AminoAcid.ILE, new Pair<>("I", "Isoleucine"));
-        aminoAcidMap.put(AminoAcid.LEU, new Pair<>("L", "Leucine"));
-        aminoAcidMap.put(AminoAcid.LYS, new Pair<>("K", "Lysine"));
-        aminoAcidMap.put(AminoAcid.MET, new Pair<>("M", "Methionine"));
-        aminoAcidMap.put(AminoAcid.PHE, new Pair<>("F", "Phenylalanine"));
-        aminoAcidMap.put(AminoAcid.PRO, new Pair<>("P", "Proline"));
-        aminoAcidMap.put(AminoAcid.SER, new Pair<>("S", "Serine"));
-        aminoAcidMap.put(AminoAcid.THR, new Pair<>("T", "Threonine"));
-        aminoAcidMap.put(AminoAcid.TRP, new Pair<>("W", "Tryptophan"));
-        aminoAcidMap.put(AminoAcid.TYR, new Pair<>("Y", "Tyrosine"));
-        aminoAcidMap.put(AminoAcid.VAL, new Pair<>("V", "Valine"));
+        /**
+         * Get the human readable name of the amino acid.
+         *
+         * @return Human readable name of the amino acid.
+         */
+        public String getFullName() {
+            return fullName;
+        }
     }
 
     /**
@@ -168,7 +187,7 @@ public class Residue {
      * @return One letter code of the amino acid.
      */
     public String getOneLetterAminoAcidName() {
-        return aminoAcidMap.get(this.aminoAcid).getKey();
+        return this.aminoAcid.getOneLetterCode();
     }
 
     /**
@@ -177,7 +196,7 @@ public class Residue {
      * @return One letter code of the amino acid.
      */
     public static String getOneLetterAminoAcidName(AminoAcid aminoAcid) {
-        return aminoAcidMap.get(aminoAcid).getKey();
+        return aminoAcid.getOneLetterCode();
     }
 
     /**
@@ -195,7 +214,7 @@ public class Residue {
      * @return Human readable name of an amino acid residue.
      */
     public String getName() {
-        return aminoAcidMap.get(this.aminoAcid).getValue();
+        return this.aminoAcid.getFullName();
     }
 
     /**
@@ -204,7 +223,7 @@ public class Residue {
      * @return Human readable name of an amino acid residue.
      */
     public static String getName(AminoAcid aminoAcid) {
-        return aminoAcidMap.get(aminoAcid).getValue();
+        return aminoAcid.getFullName();
     }
 
     /**
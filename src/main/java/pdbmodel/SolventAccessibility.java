@@ -0,0 +1,72 @@
+package pdbmodel;
+
+/**
+ * Result of a solvent accessible surface area (SASA) computation. Values are in square Angstrom and are indexed like
+ * the atoms in {@link PDBEntry#nodesProperty()} and the residues in {@link PDBEntry#residuesProperty()}.
+ *
+ * @author Patrick Grupp
+ */
+public class SolventAccessibility {
+
+    /**
+     * SASA of each atom.
+     */
+    private final double[] atomAreas;
+
+    /**
+     * SASA of each residue, the sum of its atoms' areas.
+     */
+    private final double[] residueAreas;
+
+    /**
+     * Largest possible SASA of each atom, the surface of the isolated atom's probe sphere.
+     */
+    private final double[] atomMaximumAreas;
+
+    SolventAccessibility(double[] atomAreas, double[] atomMaximumAreas, double[] residueAreas) {
+        this.atomAreas = atomAreas;
+        this.atomMaximumAreas = atomMaximumAreas;
+        this.residueAreas = residueAreas;
+    }
+
+    /**
+     * Get the SASA per atom.
+     *
+     * @return SASA of each atom in square Angstrom, indexed like the entry's atoms.
+     */
+    public double[] getAtomAreas() {
+        return atomAreas;
+    }
+
+    /**
+     * Get the SASA per residue.
+     *
+     * @return SASA of each residue in square Angstrom, indexed like the entry's residues.
+     */
+    public double[] getResidueAreas() {
+        return residueAreas;
+    }
+
+    /**
+     * Get the exposed fraction of an atom's surface.
+     *
+     * @param atomIndex Index of the atom.
+     * @return Accessible area divided by the area of the isolated atom, between 0 (buried) and 1 (fully exposed).
+     */
+    public double getRelativeAtomArea(int atomIndex) {
+        return atomMaximumAreas[atomIndex] == 0 ? 0 : atomAreas[atomIndex] / atomMaximumAreas[atomIndex];
+    }
+
+    /**
+     * Get the SASA of all atoms.
+     *
+     * @return Total SASA in square Angstrom.
+     */
+    public double getTotalArea() {
+        double total = 0;
+        for (double area : atomAreas) {
+            total += area;
+        }
+        return total;
+    }
+}
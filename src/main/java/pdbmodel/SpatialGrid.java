@@ -0,0 +1,183 @@
+package pdbmodel;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform spatial grid over a packed coordinate array, allowing neighbour queries in constant time per cell. The atoms
+ * are sorted into their cells once (counting sort), so the grid itself only consists of two int arrays.
+ *
+ * @author Patrick Grupp
+ */
+public class SpatialGrid {
+
+    /**
+     * Packed coordinates (x, y, z per point) the grid was built for.
+     */
+    private final double[] coordinates;
+
+    /**
+     * Edge length of a cell.
+     */
+    private final double cellSize;
+
+    /**
+     * Minimum corner of the grid.
+     */
+    private final double minX, minY, minZ;
+
+    /**
+     * Number of cells in each dimension.
+     */
+    private final int dimX, dimY, dimZ;
+
+    /**
+     * Start offset of each cell in {@link #cellContent}. Cell c holds the points cellContent[cellStart[c]] to
+     * cellContent[cellStart[c + 1] - 1].
+     */
+    private final int[] cellStart;
+
+    /**
+     * Point indices sorted by cell.
+     */
+    private final int[] cellContent;
+
+    /**
+     * Build a grid for the given points.
+     *
+     * @param coordinates Packed coordinates, three consecutive values (x, y, z) per point.
+     * @param cellSize    The edge length of a cell. Should be at least the largest query radius.
+     */
+    public SpatialGrid(double[] coordinates, double cellSize) {
+        if (cellSize <= 0)
+            throw new IllegalArgumentException("Cell size must be positive.");
+        this.coordinates = coordinates;
+        this.cellSize = cellSize;
+        int n = coordinates.length / 3;
+
+        double loX = Double.POSITIVE_INFINITY, loY = Double.POSITIVE_INFINITY, loZ = Double.POSITIVE_INFINITY;
+        double hiX = Double.NEGATIVE_INFINITY, hiY = Double.NEGATIVE_INFINITY, hiZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            loX = Math.min(loX, coordinates[3 * i]);
+            loY = Math.min(loY, coordinates[3 * i + 1]);
+            loZ = Math.min(loZ, coordinates[3 * i + 2]);
+            hiX = Math.max(hiX, coordinates[3 * i]);
+            hiY = Math.max(hiY, coordinates[3 * i + 1]);
+            hiZ = Math.max(hiZ, coordinates[3 * i + 2]);
+        }
+        if (n == 0) {
+            loX = loY = loZ = hiX = hiY = hiZ = 0;
+        }
+        minX = loX;
+        minY = loY;
+        minZ = loZ;
+        dimX = (int) ((hiX - loX) / cellSize) + 1;
+        dimY = (int) ((hiY - loY) / cellSize) + 1;
+        dimZ = (int) ((hiZ - loZ) / cellSize) + 1;
+
+        // Counting sort of the points into their cells
+        int[] cellOfPoint = new int[n];
+        cellStart = new int[dimX * dimY * dimZ + 1];
+        for (int i = 0; i < n; i++) {
+            int cell = cellIndex(cellX(coordinates[3 * i]), cellY(coordinates[3 * i + 1]), cellZ(coordinates[3 * i + 2]));
+            cellOfPoint[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int c = 0; c < cellStart.length - 1; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellContent = new int[n];
+        int[] fill = new int[cellStart.length - 1];
+        for (int i = 0; i < n; i++) {
+            int cell = cellOfPoint[i];
+            cellContent[cellStart[cell] + fill[cell]++] = i;
+        }
+    }
+
+    /**
+     * Call the consumer for every point with a distance of at most radius to the given position.
+     *
+     * @param x        X coordinate of the query position.
+     * @param y        Y coordinate of the query position.
+     * @param z        Z coordinate of the query position.
+     * @param radius   The query radius.
+     * @param consumer Called with the index of every point within the radius.
+     */
+    public void forEachWithin(double x, double y, double z, double radius, IntConsumer consumer) {
+        double radiusSquared = radius * radius;
+        int loX = cellX(x - radius), hiX = cellX(x + radius);
+        int loY = cellY(y - radius), hiY = cellY(y + radius);
+        int loZ = cellZ(z - radius), hiZ = cellZ(z + radius);
+        for (int cz = loZ; cz <= hiZ; cz++) {
+            for (int cy = loY; cy <= hiY; cy++) {
+                for (int cx = loX; cx <= hiX; cx++) {
+                    int cell = cellIndex(cx, cy, cz);
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                        int j = cellContent[k];
+                        double dx = coordinates[3 * j] - x;
+                        double dy = coordinates[3 * j + 1] - y;
+                        double dz = coordinates[3 * j + 2] - z;
+                        if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+                            consumer.accept(j);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the packed coordinates this grid was built for.
+     *
+     * @return Packed coordinates, three values per point.
+     */
+    public double[] getCoordinates() {
+        return coordinates;
+    }
+
+    /**
+     * Get the number of points in the grid.
+     *
+     * @return Number of points.
+     */
+    public int size() {
+        return cellContent.length;
+    }
+
+    /**
+     * Get the edge length of a cell.
+     *
+     * @return The edge length of a cell.
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Get the cell column of an x coordinate, clamped to the grid.
+     */
+    private int cellX(double x) {
+        return clamp((int) Math.floor((x - minX) / cellSize), dimX);
+    }
+
+    /**
+     * Get the cell row of a y coordinate, clamped to the grid.
+     */
+    private int cellY(double y) {
+        return clamp((int) Math.floor((y - minY) / cellSize), dimY);
+    }
+
+    /**
+     * Get the cell layer of a z coordinate, clamped to the grid.
+     */
+    private int cellZ(double z) {
+        return clamp((int) Math.floor((z - minZ) / cellSize), dimZ);
+    }
+
+    private static int clamp(int value, int dim) {
+        return value < 0 ? 0 : (value >= dim ? dim - 1 : value);
+    }
+
+    private int cellIndex(int cx, int cy, int cz) {
+        return (cz * dimY + cy) * dimX + cx;
+    }
+}
@@ -0,0 +1,500 @@
+package pdbmodel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Structural alignment of two structures by their C-alpha atoms, following the TM-align procedure: initial
+ * alignments are seeded from gapless threading, the secondary structure and the sequence. Each is refined by
+ * alternating a superposition maximizing the TM-score with a dynamic programming alignment on the TM-score of the
+ * superposed residue pairs, until the alignment does not change anymore.
+ * <p>
+ * The aligner takes a snapshot of the query structure when it is constructed, so alignments may run on background
+ * threads. All matrices and index arrays are kept in buffers which only grow. A search hands each of its workers
+ * one set of buffers for all its comparisons, so searching one structure against many does not allocate per
+ * comparison and can run in parallel, and the buffers are released once the search is done.
+ *
+ * @author Patrick Grupp
+ */
+public class StructuralAligner {
+
+    /**
+     * Residue pairs further apart than this after superposition (in Angstrom) do not count as aligned.
+     */
+    public static final double DISTANCE_CUTOFF = 5.0;
+
+    /**
+     * Penalty for opening a gap in the TM-score based dynamic programming. Extending a gap is free.
+     */
+    private static final double GAP_OPEN_PENALTY = -0.6;
+
+    /**
+     * Penalty for opening a gap when seeding from sequence or secondary structure.
+     */
+    private static final double SEED_GAP_OPEN_PENALTY = -1;
+
+    /**
+     * Maximum number of rounds of superposition and dynamic programming per seed.
+     */
+    private static final int MAX_REFINEMENTS = 20;
+
+    /**
+     * Maximum number of superpositions when extending one fragment in the TM-score search.
+     */
+    private static final int MAX_SEARCH_ITERATIONS = 20;
+
+    /**
+     * Number of fragment lengths tried in the TM-score search, each half of the previous.
+     */
+    private static final int SEARCH_FRAGMENT_LEVELS = 3;
+
+    /**
+     * The structure aligned against others.
+     */
+    private final Chain query;
+
+    /**
+     * Aligner for the given query structure.
+     *
+     * @param query The structure superposed onto others. TM-scores are normalized by its length.
+     */
+    public StructuralAligner(PDBEntry query) {
+        this.query = new Chain(query, "query");
+    }
+
+    /**
+     * Align the query with another structure.
+     *
+     * @param other The fixed structure.
+     * @return The alignment.
+     */
+    public StructuralAlignment align(PDBEntry other) {
+        return align(query, new Chain(other, "other"), new Buffers());
+    }
+
+    /**
+     * Align the query against all given PDB files in parallel. Files which cannot be parsed are skipped.
+     *
+     * @param files   PDB files to be aligned against.
+     * @param skipped Receives the names of the skipped files with the reason, in the order of the files.
+     * @return The alignments, the best TM-score first.
+     */
+    public List<StructuralAlignment> search(List<File> files, List<String> skipped) {
+        // Buffers not used by any worker at the moment, at most one per worker is ever created
+        Queue<Buffers> idle = new ConcurrentLinkedQueue<>();
+        String[] failures = new String[files.size()];
+        List<StructuralAlignment> alignments = IntStream.range(0, files.size()).parallel()
+                .mapToObj(i -> {
+                    File file = files.get(i);
+                    Buffers idleBuffers = idle.poll();
+                    Buffers buffers = idleBuffers == null ? new Buffers() : idleBuffers;
+                    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                        PDBEntry entry = new PDBEntry();
+                        PDBParser.parse(entry, reader);
+                        return align(query, new Chain(entry, file.getName()), buffers);
+                    } catch (Exception e) {
+                        failures[i] = file.getName() + ": " + e.getMessage();
+                        return null;
+                    } finally {
+                        idle.add(buffers);
+                    }
+                })
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingDouble(StructuralAlignment::getTMScore).reversed())
+                .collect(Collectors.toList());
+        Arrays.stream(failures).filter(Objects::nonNull).forEach(skipped::add);
+        return alignments;
+    }
+
+    /**
+     * Align two chains.
+     */
+    private StructuralAlignment align(Chain a, Chain b, Buffers buffers) {
+        int l1 = a.length, l2 = b.length;
+        buffers.ensureCapacity(l1, l2);
+        double d0 = d0(l1);
+
+        int[] best = new int[l1];
+        Arrays.fill(best, -1);
+        double[] bestTransform = new double[12];
+        Superposition.setIdentity(bestTransform);
+        double bestScore = 0;
+
+        if (l1 >= 3 && l2 >= 3) {
+            gaplessSeed(a, b, buffers, d0, buffers.gaplessSeed);
+            // Secondary structure seed, coil aligned to coil counts as well
+            dynamicProgramming(l1, l2, fillScores(buffers, a.secondaryStructure, b.secondaryStructure),
+                    SEED_GAP_OPEN_PENALTY, buffers, buffers.structureSeed);
+            dynamicProgramming(l1, l2, fillScores(buffers, a.sequence, b.sequence),
+                    SEED_GAP_OPEN_PENALTY, buffers, buffers.sequenceSeed);
+
+            for (int[] current : buffers.seeds) {
+                int[] next = buffers.realigned;
+                for (int round = 0; round < MAX_REFINEMENTS; round++) {
+                    double score = searchSuperposition(a, b, current, d0, l1, buffers, buffers.transform);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        System.arraycopy(current, 0, best, 0, l1);
+                        System.arraycopy(buffers.transform, 0, bestTransform, 0, 12);
+                    }
+                    // Realign on the TM-score of all residue pairs in this superposition
+                    Superposition.apply(buffers.transform, a.coordinates, buffers.moved);
+                    double[] scores = buffers.scores;
+                    for (int i = 0; i < l1; i++) {
+                        for (int j = 0; j < l2; j++) {
+                            scores[i * l2 + j] = 1 / (1 + distanceSquared(buffers.moved, i, b.coordinates, j) / (d0 * d0));
+                        }
+                    }
+                    dynamicProgramming(l1, l2, scores, GAP_OPEN_PENALTY, buffers, next);
+                    if (startsEqual(next, current, l1))
+                        break;
+                    // The seed is not needed anymore, so it takes the next realignment in turn
+                    int[] swap = current;
+                    current = next;
+                    next = swap;
+                }
+            }
+        }
+
+        // Final statistics in the best superposition
+        Superposition.apply(bestTransform, a.coordinates, buffers.moved);
+        double d0Second = d0(l2);
+        double scoreSecond = 0;
+        int aligned = 0;
+        for (int i = 0; i < l1; i++) {
+            if (best[i] < 0)
+                continue;
+            double distanceSquared = distanceSquared(buffers.moved, i, b.coordinates, best[i]);
+            scoreSecond += 1 / (1 + distanceSquared / (d0Second * d0Second));
+            if (distanceSquared < DISTANCE_CUTOFF * DISTANCE_CUTOFF) {
+                buffers.pairsFirst[aligned] = i;
+                buffers.pairsSecond[aligned] = best[i];
+                aligned++;
+            }
+        }
+        double rmsd = Superposition.superpose(a.coordinates, b.coordinates, buffers.pairsFirst, buffers.pairsSecond,
+                aligned, buffers.candidate, buffers.superposition);
+        return new StructuralAlignment(a.name, b.name, new String(a.sequence), new String(b.sequence), best, aligned,
+                bestScore, l2 == 0 ? 0 : scoreSecond / l2, rmsd, bestTransform);
+    }
+
+    /**
+     * Find the superposition of the aligned residues with the highest TM-score, as in the TM-score program:
+     * superpose fragments of the alignment and iteratively extend them by all pairs which come close in the
+     * superposition.
+     *
+     * @param alignment  For each residue of a the aligned residue of b, or -1.
+     * @param d0         Distance scale of the TM-score.
+     * @param normLength Length the TM-score is normalized by.
+     * @param transform  Receives the best superposition.
+     * @return The best TM-score.
+     */
+    private double searchSuperposition(Chain a, Chain b, int[] alignment, double d0, int normLength,
+                                       Buffers buffers, double[] transform) {
+        int n = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (alignment[i] >= 0) {
+                buffers.pairsFirst[n] = i;
+                buffers.pairsSecond[n] = alignment[i];
+                n++;
+            }
+        }
+        Superposition.setIdentity(transform);
+        if (n < 3)
+            return 0;
+
+        double searchCutoff = Math.min(Math.max(d0, 4.5), 8);
+        double best = -1;
+        int[] subset = buffers.subset;
+        int[] nextSubset = buffers.nextSubset;
+        // Fragments of the full, half and quarter alignment length, overlapping by half their length
+        for (int level = 0, fragment = n; level < SEARCH_FRAGMENT_LEVELS && (level == 0 || fragment >= 4);
+             level++, fragment = n >> level) {
+            int step = Math.max(1, fragment / 2);
+            for (int start = 0; start + fragment <= n; start += step) {
+                int size = fragment;
+                for (int k = 0; k < size; k++) {
+                    subset[k] = start + k;
+                }
+                for (int iteration = 0; iteration < MAX_SEARCH_ITERATIONS; iteration++) {
+                    for (int k = 0; k < size; k++) {
+                        buffers.subsetFirst[k] = buffers.pairsFirst[subset[k]];
+                        buffers.subsetSecond[k] = buffers.pairsSecond[subset[k]];
+                    }
+                    Superposition.superpose(a.coordinates, b.coordinates, buffers.subsetFirst, buffers.subsetSecond,
+                            size, buffers.candidate, buffers.superposition);
+                    double score = evaluate(a, b, n, d0, normLength, buffers);
+                    if (score > best) {
+                        best = score;
+                        System.arraycopy(buffers.candidate, 0, transform, 0, 12);
+                    }
+                    // All pairs close in this superposition, widening the cutoff until there are at least three
+                    int nextSize = 0;
+                    for (double cutoff = searchCutoff; nextSize < 3 && cutoff < 1e3; cutoff += 0.5) {
+                        nextSize = 0;
+                        for (int k = 0; k < n; k++) {
+                            if (buffers.distances[k] < cutoff * cutoff)
+                                nextSubset[nextSize++] = k;
+                        }
+                    }
+                    if (nextSize == size && startsEqual(subset, nextSubset, size))
+                        break;
+                    int[] swap = subset;
+                    subset = nextSubset;
+                    nextSubset = swap;
+                    size = nextSize;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static boolean startsEqual(int[] first, int[] second, int length) {
+        for (int k = 0; k < length; k++) {
+            if (first[k] != second[k])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * TM-score of the first n pairs in the candidate superposition. Stores the squared pair distances.
+     */
+    private double evaluate(Chain a, Chain b, int n, double d0, int normLength, Buffers buffers) {
+        double[] t = buffers.candidate;
+        double score = 0;
+        for (int k = 0; k < n; k++) {
+            int i = 3 * buffers.pairsFirst[k], j = 3 * buffers.pairsSecond[k];
+            double x = a.coordinates[i], y = a.coordinates[i + 1], z = a.coordinates[i + 2];
+            double dx = t[0] * x + t[1] * y + t[2] * z + t[9] - b.coordinates[j];
+            double dy = t[3] * x + t[4] * y + t[5] * z + t[10] - b.coordinates[j + 1];
+            double dz = t[6] * x + t[7] * y + t[8] * z + t[11] - b.coordinates[j + 2];
+            double distanceSquared = dx * dx + dy * dy + dz * dz;
+            buffers.distances[k] = distanceSquared;
+            score += 1 / (1 + distanceSquared / (d0 * d0));
+        }
+        return score / normLength;
+    }
+
+    /**
+     * Seed from the best gapless alignment of the two chains shifted against each other. Each shift is only rated
+     * by one superposition and one refit on its close pairs.
+     *
+     * @param alignment Receives for each residue of a the aligned residue of b, or -1.
+     */
+    private void gaplessSeed(Chain a, Chain b, Buffers buffers, double d0, int[] alignment) {
+        int l1 = a.length, l2 = b.length;
+        int minOverlap = Math.max(3, Math.min(l1, l2) / 2);
+        int bestShift = 0;
+        double bestScore = -1;
+        for (int shift = minOverlap - l1; shift <= l2 - minOverlap; shift++) {
+            int n = 0;
+            for (int i = Math.max(0, -shift); i < l1 && i + shift < l2; i++) {
+                buffers.pairsFirst[n] = i;
+                buffers.pairsSecond[n] = i + shift;
+                n++;
+            }
+            Superposition.superpose(a.coordinates, b.coordinates, buffers.pairsFirst, buffers.pairsSecond, n,
+                    buffers.candidate, buffers.superposition);
+            double score = evaluate(a, b, n, d0, l1, buffers);
+            int close = 0;
+            for (int k = 0; k < n; k++) {
+                if (buffers.distances[k] < DISTANCE_CUTOFF * DISTANCE_CUTOFF) {
+                    buffers.subsetFirst[close] = buffers.pairsFirst[k];
+                    buffers.subsetSecond[close] = buffers.pairsSecond[k];
+                    close++;
+                }
+            }
+            if (close >= 3) {
+                Superposition.superpose(a.coordinates, b.coordinates, buffers.subsetFirst, buffers.subsetSecond,
+                        close, buffers.candidate, buffers.superposition);
+                score = Math.max(score, evaluate(a, b, n, d0, l1, buffers));
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                bestShift = shift;
+            }
+        }
+        for (int i = 0; i < l1; i++) {
+            int j = i + bestShift;
+            alignment[i] = j >= 0 && j < l2 ? j : -1;
+        }
+    }
+
+    /**
+     * Score matrix rewarding identical characters, e.g. of the sequence or secondary structure.
+     */
+    private static double[] fillScores(Buffers buffers, char[] first, char[] second) {
+        double[] scores = buffers.scores;
+        for (int i = 0; i < first.length; i++) {
+            for (int j = 0; j < second.length; j++) {
+                scores[i * second.length + j] = first[i] == second[j] ? 1 : 0;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Global alignment without end gap penalties, where only opening a gap is penalized (as in TM-align).
+     *
+     * @param scores    Row major l1 x l2 score matrix.
+     * @param alignment Receives for each residue of the first chain the aligned residue of the second, or -1.
+     */
+    private static void dynamicProgramming(int l1, int l2, double[] scores, double gapOpen, Buffers buffers,
+                                           int[] alignment) {
+        double[] value = buffers.value;
+        boolean[] diagonal = buffers.diagonal;
+        int width = l2 + 1;
+        for (int j = 0; j <= l2; j++) {
+            value[j] = 0;
+            diagonal[j] = false;
+        }
+        for (int i = 1; i <= l1; i++) {
+            value[i * width] = 0;
+            diagonal[i * width] = false;
+            for (int j = 1; j <= l2; j++) {
+                int cell = i * width + j;
+                double match = value[cell - width - 1] + scores[(i - 1) * l2 + j - 1];
+                double up = value[cell - width] + (diagonal[cell - width] ? gapOpen : 0);
+                double left = value[cell - 1] + (diagonal[cell - 1] ? gapOpen : 0);
+                if (match >= up && match >= left) {
+                    value[cell] = match;
+                    diagonal[cell] = true;
+                } else {
+                    value[cell] = Math.max(up, left);
+                    diagonal[cell] = false;
+                }
+            }
+        }
+
+        Arrays.fill(alignment, 0, l1, -1);
+        int i = l1, j = l2;
+        while (i > 0 && j > 0) {
+            int cell = i * width + j;
+            if (diagonal[cell]) {
+                alignment[i - 1] = j - 1;
+                i--;
+                j--;
+            } else {
+                double up = value[cell - width] + (diagonal[cell - width] ? gapOpen : 0);
+                double left = value[cell - 1] + (diagonal[cell - 1] ? gapOpen : 0);
+                if (left >= up)
+                    j--;
+                else
+                    i--;
+            }
+        }
+    }
+
+    /**
+     * Distance scale of the TM-score for a protein of the given length.
+     */
+    static double d0(int length) {
+        return length > 21 ? Math.max(0.5, 1.24 * Math.cbrt(length - 15) - 1.8) : 0.5;
+    }
+
+    private static double distanceSquared(double[] first, int i, double[] second, int j) {
+        double dx = first[3 * i] - second[3 * j];
+        double dy = first[3 * i + 1] - second[3 * j + 1];
+        double dz = first[3 * i + 2] - second[3 * j + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * The data of a structure needed for alignment, copied out of the entry.
+     */
+    private static final class Chain {
+        final String name;
+        final int length;
+        /**
+         * Packed C-alpha coordinates in Angstrom.
+         */
+        final double[] coordinates;
+        final char[] sequence;
+        final char[] secondaryStructure;
+
+        Chain(PDBEntry entry, String fallbackName) {
+            String code = entry.pdbCodeProperty().getValue();
+            name = code == null || code.isEmpty() ? fallbackName : code;
+            List<Residue> residues = entry.residuesProperty();
+            length = residues.size();
+            coordinates = new double[3 * length];
+            sequence = new char[length];
+            secondaryStructure = new char[length];
+            for (int r = 0; r < length; r++) {
+                Residue residue = residues.get(r);
+                Atom cAlpha = residue.getCAlphaAtom();
+                coordinates[3 * r] = cAlpha.xCoordinateProperty().get() / PDBParser.ATOM_DISTANCE_FACTOR;
+                coordinates[3 * r + 1] = cAlpha.yCoordinateProperty().get() / PDBParser.ATOM_DISTANCE_FACTOR;
+                coordinates[3 * r + 2] = cAlpha.zCoordinateProperty().get() / PDBParser.ATOM_DISTANCE_FACTOR;
+                sequence[r] = residue.getOneLetterAminoAcidName().charAt(0);
+                secondaryStructure[r] = residue.getOneLetterSecondaryStructureType().charAt(0);
+            }
+        }
+    }
+
+    /**
+     * Growing buffers for the alignments computed one after the other by one worker.
+     */
+    private static final class Buffers {
+        double[] value = new double[0];
+        boolean[] diagonal = new boolean[0];
+        double[] scores = new double[0];
+        double[] moved = new double[0];
+        double[] distances = new double[0];
+        int[] pairsFirst = new int[0];
+        int[] pairsSecond = new int[0];
+        int[] subsetFirst = new int[0];
+        int[] subsetSecond = new int[0];
+        int[] subset = new int[0];
+        int[] nextSubset = new int[0];
+        /**
+         * Alignments of the seeds, and of the realignments while refining them.
+         */
+        int[] gaplessSeed = new int[0];
+        int[] structureSeed = new int[0];
+        int[] sequenceSeed = new int[0];
+        int[] realigned = new int[0];
+        int[][] seeds = new int[0][];
+        final Superposition.Buffers superposition = new Superposition.Buffers();
+        final double[] transform = new double[12];
+        final double[] candidate = new double[12];
+
+        void ensureCapacity(int l1, int l2) {
+            int cells = (l1 + 1) * (l2 + 1);
+            if (value.length < cells) {
+                value = new double[cells];
+                diagonal = new boolean[cells];
+                scores = new double[cells];
+            }
+            // Gapless threading pairs up to the shorter length, all other pair lists up to l1
+            int pairs = Math.max(l1, l2);
+            if (pairsFirst.length < pairs) {
+                moved = new double[3 * pairs];
+                distances = new double[pairs];
+                pairsFirst = new int[pairs];
+                pairsSecond = new int[pairs];
+                subsetFirst = new int[pairs];
+                subsetSecond = new int[pairs];
+                subset = new int[pairs];
+                nextSubset = new int[pairs];
+            }
+            if (gaplessSeed.length < l1) {
+                gaplessSeed = new int[l1];
+                structureSeed = new int[l1];
+                sequenceSeed = new int[l1];
+                realigned = new int[l1];
+                seeds = new int[][]{gaplessSeed, structureSeed, sequenceSeed};
+            }
+        }
+    }
+}
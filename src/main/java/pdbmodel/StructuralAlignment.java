@@ -0,0 +1,176 @@
+package pdbmodel;
+
+/**
+ * Result of a structural alignment of two structures by the {@link StructuralAligner}. Residues are referred to by
+ * their index in the entries' {@link PDBEntry#residuesProperty()}.
+ *
+ * @author Patrick Grupp
+ */
+public class StructuralAlignment {
+
+    /**
+     * Names of the aligned structures.
+     */
+    private final String firstName, secondName;
+
+    /**
+     * One letter sequences of the structures.
+     */
+    private final String firstSequence, secondSequence;
+
+    /**
+     * For each residue of the first structure the index of the aligned residue of the second one, or -1.
+     */
+    private final int[] alignment;
+
+    /**
+     * Number of aligned residue pairs closer than the distance cutoff after superposition.
+     */
+    private final int alignedLength;
+
+    private final double tmScore;
+    private final double tmScoreSecond;
+    private final double rmsd;
+
+    /**
+     * Transformation superposing the first structure onto the second one, packed as the rotation matrix row by row
+     * followed by the translation, in Angstrom.
+     */
+    private final double[] transformation;
+
+    StructuralAlignment(String firstName, String secondName, String firstSequence, String secondSequence,
+                        int[] alignment, int alignedLength, double tmScore, double tmScoreSecond, double rmsd,
+                        double[] transformation) {
+        this.firstName = firstName;
+        this.secondName = secondName;
+        this.firstSequence = firstSequence;
+        this.secondSequence = secondSequence;
+        this.alignment = alignment;
+        this.alignedLength = alignedLength;
+        this.tmScore = tmScore;
+        this.tmScoreSecond = tmScoreSecond;
+        this.rmsd = rmsd;
+        this.transformation = transformation;
+    }
+
+    /**
+     * Get the name of the first structure.
+     *
+     * @return PDB code or file name of the first structure.
+     */
+    public String getFirstName() {
+        return firstName;
+    }
+
+    /**
+     * Get the name of the second structure.
+     *
+     * @return PDB code or file name of the second structure.
+     */
+    public String getSecondName() {
+        return secondName;
+    }
+
+    /**
+     * Get the TM-score normalized by the length of the first structure.
+     *
+     * @return TM-score between 0 and 1. Above 0.5 the structures generally share their fold.
+     */
+    public double getTMScore() {
+        return tmScore;
+    }
+
+    /**
+     * Get the TM-score normalized by the length of the second structure, with the superposition found for the first.
+     *
+     * @return TM-score between 0 and 1.
+     */
+    public double getTMScoreNormalizedBySecond() {
+        return tmScoreSecond;
+    }
+
+    /**
+     * Get the root mean square deviation of the aligned C-alpha atoms after superposition.
+     *
+     * @return RMSD in Angstrom.
+     */
+    public double getRMSD() {
+        return rmsd;
+    }
+
+    /**
+     * Get the number of aligned residue pairs, which are closer than 5 Angstrom after superposition.
+     *
+     * @return Number of aligned residues.
+     */
+    public int getAlignedLength() {
+        return alignedLength;
+    }
+
+    /**
+     * Get the aligned residue pairs.
+     *
+     * @return For each residue index of the first structure the index of the aligned residue of the second one, or
+     * -1 if it is not aligned.
+     */
+    public int[] getAlignment() {
+        return alignment.clone();
+    }
+
+    /**
+     * Get the transformation superposing the first structure onto the second.
+     *
+     * @return The rotation matrix row by row followed by the translation in Angstrom.
+     */
+    public double[] getTransformation() {
+        return transformation.clone();
+    }
+
+    /**
+     * Format the alignment in three lines: the first sequence, markers for aligned pairs and the second sequence.
+     * Gaps are shown as '-', identical aligned residues are marked with ':' and other aligned residues with '.'.
+     *
+     * @return The formatted alignment.
+     */
+    public String formatAlignment() {
+        StringBuilder top = new StringBuilder();
+        StringBuilder middle = new StringBuilder();
+        StringBuilder bottom = new StringBuilder();
+        int j = 0;
+        for (int i = 0; i < alignment.length; i++) {
+            if (alignment[i] < 0) {
+                top.append(firstSequence.charAt(i));
+                middle.append(' ');
+                bottom.append('-');
+                continue;
+            }
+            // Residues of the second structure skipped before this pair
+            for (; j < alignment[i]; j++) {
+                top.append('-');
+                middle.append(' ');
+                bottom.append(secondSequence.charAt(j));
+            }
+            top.append(firstSequence.charAt(i));
+            middle.append(firstSequence.charAt(i) == secondSequence.charAt(j) ? ':' : '.');
+            bottom.append(secondSequence.charAt(j));
+            j++;
+        }
+        for (; j < secondSequence.length(); j++) {
+            top.append('-');
+            middle.append(' ');
+            bottom.append(secondSequence.charAt(j));
+        }
+        return top + "\n" + middle + "\n" + bottom;
+    }
+
+    /**
+     * Summary of the alignment in one line.
+     *
+     * @return Names, TM-score, RMSD and aligned length.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s vs %s: TM-score %.3f, RMSD %.2f Å, %d aligned residues", firstName, secondName,
+                tmScore, rmsd, alignedLength);
+    }
+}
@@ -0,0 +1,159 @@
+package pdbmodel;
+
+/**
+ * Optimal rigid superposition of point pairs (Kabsch problem), solved with Horn's quaternion method: the rotation is
+ * the eigenvector of the largest eigenvalue of a symmetric 4x4 matrix built from the pairs' correlation matrix. This
+ * avoids the reflection special cases of the singular value decomposition.
+ * <p>
+ * Transformations are packed into 12 doubles: the rotation matrix row by row, followed by the translation.
+ *
+ * @author Patrick Grupp
+ */
+final class Superposition {
+
+    private Superposition() {
+    }
+
+    /**
+     * Find the rotation and translation mapping the selected points of x onto the paired points of y with the least
+     * root mean square deviation.
+     *
+     * @param x         Packed coordinates of the points to be moved.
+     * @param y         Packed coordinates of the fixed points.
+     * @param indicesX  Indices of the paired points in x.
+     * @param indicesY  Indices of the paired points in y, same order as indicesX.
+     * @param n         Number of pairs to use from the index arrays.
+     * @param transform Array of at least 12 doubles receiving the transformation.
+     * @return The RMSD of the pairs after superposition.
+     */
+    static double superpose(double[] x, double[] y, int[] indicesX, int[] indicesY, int n, double[] transform) {
+        return superpose(x, y, indicesX, indicesY, n, transform, new Buffers());
+    }
+
+    /**
+     * Find the superposition like {@link #superpose(double[], double[], int[], int[], int, double[])}, using given
+     * buffers for the quaternion matrix and its decomposition, so repeated superpositions do not allocate.
+     *
+     * @param x         Packed coordinates of the points to be moved.
+     * @param y         Packed coordinates of the fixed points.
+     * @param indicesX  Indices of the paired points in x.
+     * @param indicesY  Indices of the paired points in y, same order as indicesX.
+     * @param n         Number of pairs to use from the index arrays.
+     * @param transform Array of at least 12 doubles receiving the transformation.
+     * @param buffers   Buffers overwritten by the computation.
+     * @return The RMSD of the pairs after superposition.
+     */
+    static double superpose(double[] x, double[] y, int[] indicesX, int[] indicesY, int n, double[] transform,
+                            Buffers buffers) {
+        if (n == 0) {
+            setIdentity(transform);
+            return 0;
+        }
+        // Centroids
+        double cx1 = 0, cy1 = 0, cz1 = 0, cx2 = 0, cy2 = 0, cz2 = 0;
+        for (int k = 0; k < n; k++) {
+            int i = 3 * indicesX[k], j = 3 * indicesY[k];
+            cx1 += x[i];
+            cy1 += x[i + 1];
+            cz1 += x[i + 2];
+            cx2 += y[j];
+            cy2 += y[j + 1];
+            cz2 += y[j + 2];
+        }
+        cx1 /= n;
+        cy1 /= n;
+        cz1 /= n;
+        cx2 /= n;
+        cy2 /= n;
+        cz2 /= n;
+
+        // Correlation matrix of the centered points and their squared norms
+        double sxx = 0, sxy = 0, sxz = 0, syx = 0, syy = 0, syz = 0, szx = 0, szy = 0, szz = 0;
+        double normSum = 0;
+        for (int k = 0; k < n; k++) {
+            int i = 3 * indicesX[k], j = 3 * indicesY[k];
+            double ax = x[i] - cx1, ay = x[i + 1] - cy1, az = x[i + 2] - cz1;
+            double bx = y[j] - cx2, by = y[j + 1] - cy2, bz = y[j + 2] - cz2;
+            sxx += ax * bx;
+            sxy += ax * by;
+            sxz += ax * bz;
+            syx += ay * bx;
+            syy += ay * by;
+            syz += ay * bz;
+            szx += az * bx;
+            szy += az * by;
+            szz += az * bz;
+            normSum += ax * ax + ay * ay + az * az + bx * bx + by * by + bz * bz;
+        }
+
+        double[][] horn = buffers.horn;
+        setRow(horn[0], sxx + syy + szz, syz - szy, szx - sxz, sxy - syx);
+        setRow(horn[1], syz - szy, sxx - syy - szz, sxy + syx, szx + sxz);
+        setRow(horn[2], szx - sxz, sxy + syx, -sxx + syy - szz, syz + szy);
+        setRow(horn[3], sxy - syx, szx + sxz, syz + szy, -sxx - syy + szz);
+        double[] eigenvalues = buffers.eigenvalues;
+        double[][] eigenvectors = buffers.eigenvectors;
+        SymmetricEigenSolver.decompose(horn, eigenvalues, eigenvectors, buffers.work);
+        double q0 = eigenvectors[0][0], q1 = eigenvectors[1][0], q2 = eigenvectors[2][0], q3 = eigenvectors[3][0];
+
+        transform[0] = q0 * q0 + q1 * q1 - q2 * q2 - q3 * q3;
+        transform[1] = 2 * (q1 * q2 - q0 * q3);
+        transform[2] = 2 * (q1 * q3 + q0 * q2);
+        transform[3] = 2 * (q1 * q2 + q0 * q3);
+        transform[4] = q0 * q0 - q1 * q1 + q2 * q2 - q3 * q3;
+        transform[5] = 2 * (q2 * q3 - q0 * q1);
+        transform[6] = 2 * (q1 * q3 - q0 * q2);
+        transform[7] = 2 * (q2 * q3 + q0 * q1);
+        transform[8] = q0 * q0 - q1 * q1 - q2 * q2 + q3 * q3;
+        // Translation moves the rotated centroid of x onto the centroid of y
+        transform[9] = cx2 - (transform[0] * cx1 + transform[1] * cy1 + transform[2] * cz1);
+        transform[10] = cy2 - (transform[3] * cx1 + transform[4] * cy1 + transform[5] * cz1);
+        transform[11] = cz2 - (transform[6] * cx1 + transform[7] * cy1 + transform[8] * cz1);
+
+        return Math.sqrt(Math.max(0, (normSum - 2 * eigenvalues[0]) / n));
+    }
+
+    private static void setRow(double[] row, double a, double b, double c, double d) {
+        row[0] = a;
+        row[1] = b;
+        row[2] = c;
+        row[3] = d;
+    }
+
+    /**
+     * Apply a transformation to packed points.
+     *
+     * @param transform The transformation.
+     * @param points    Packed coordinates to be transformed.
+     * @param result    Array of at least the same length receiving the transformed points. May be points itself.
+     */
+    static void apply(double[] transform, double[] points, double[] result) {
+        for (int i = 0; i + 2 < points.length; i += 3) {
+            double x = points[i], y = points[i + 1], z = points[i + 2];
+            result[i] = transform[0] * x + transform[1] * y + transform[2] * z + transform[9];
+            result[i + 1] = transform[3] * x + transform[4] * y + transform[5] * z + transform[10];
+            result[i + 2] = transform[6] * x + transform[7] * y + transform[8] * z + transform[11];
+        }
+    }
+
+    /**
+     * Set the transformation to the identity.
+     *
+     * @param transform Array of at least 12 doubles.
+     */
+    static void setIdentity(double[] transform) {
+        for (int k = 0; k < 12; k++) {
+            transform[k] = k == 0 || k == 4 || k == 8 ? 1 : 0;
+        }
+    }
+
+    /**
+     * Quaternion matrix and decomposition of one superposition, reused by the next.
+     */
+    static final class Buffers {
+        final double[][] horn = new double[4][4];
+        final double[][] work = new double[4][4];
+        final double[] eigenvalues = new double[4];
+        final double[][] eigenvectors = new double[4][4];
+    }
+}
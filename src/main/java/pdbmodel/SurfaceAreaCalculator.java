@@ -0,0 +1,233 @@
+package pdbmodel;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the solvent accessible surface area (SASA) of the atoms of a {@link PDBEntry} with the Shrake-Rupley
+ * algorithm: a sphere of test points is placed around each atom (van der Waals radius plus probe radius) and the
+ * fraction of points not buried in any neighbouring sphere gives the atom's accessible area.
+ *
+ * @author Patrick Grupp
+ */
+public class SurfaceAreaCalculator {
+
+    /**
+     * Radius of a water molecule, the default solvent probe in Angstrom.
+     */
+    public static final double DEFAULT_PROBE_RADIUS = 1.4;
+
+    /**
+     * Default number of test points on each atom's sphere.
+     */
+    public static final int DEFAULT_SPHERE_POINTS = 240;
+
+    /**
+     * Unit sphere points for the default number of points, computed once.
+     */
+    private static final double[] DEFAULT_UNIT_SPHERE = goldenSpiral(DEFAULT_SPHERE_POINTS);
+
+    /**
+     * Radius of the solvent probe in Angstrom.
+     */
+    private final double probeRadius;
+
+    /**
+     * Packed unit sphere test points (x, y, z per point).
+     */
+    private final double[] unitSphere;
+
+    /**
+     * Calculator using a water probe and the default number of sphere points.
+     */
+    public SurfaceAreaCalculator() {
+        this(DEFAULT_PROBE_RADIUS, DEFAULT_SPHERE_POINTS);
+    }
+
+    /**
+     * Calculator with custom probe radius and resolution.
+     *
+     * @param probeRadius  Radius of the solvent probe in Angstrom.
+     * @param spherePoints Number of test points per atom. More points are more accurate but slower.
+     */
+    public SurfaceAreaCalculator(double probeRadius, int spherePoints) {
+        if (spherePoints < 1)
+            throw new IllegalArgumentException("At least one sphere point is needed.");
+        this.probeRadius = probeRadius;
+        this.unitSphere = spherePoints == DEFAULT_SPHERE_POINTS ? DEFAULT_UNIT_SPHERE : goldenSpiral(spherePoints);
+    }
+
+    /**
+     * Compute the SASA of all atoms and residues in the given entry. Atoms are evaluated in parallel.
+     *
+     * @param pdbEntry The entry to compute the SASA for.
+     * @return SASA per atom and per residue.
+     */
+    public SolventAccessibility compute(PDBEntry pdbEntry) {
+        return prepare(pdbEntry).get();
+    }
+
+    /**
+     * Copy the atoms' coordinates, radii and residues from the given entry, to compute their SASA later, e.g. on a
+     * background thread while the entry stays untouched.
+     *
+     * @param pdbEntry The entry to compute the SASA for.
+     * @return Computes the SASA per atom and per residue of the atoms as they were when this method was called.
+     */
+    public Supplier<SolventAccessibility> prepare(PDBEntry pdbEntry) {
+        List<Atom> atoms = pdbEntry.nodesProperty();
+        int n = atoms.size();
+        // Coordinates in the model are scaled for the view, the computation runs in Angstrom
+        double[] coordinates = pdbEntry.getCoordinates();
+        double[] radii = new double[n];
+        double maxRadius = 0;
+        for (int i = 0; i < n; i++) {
+            coordinates[3 * i] /= PDBParser.ATOM_DISTANCE_FACTOR;
+            coordinates[3 * i + 1] /= PDBParser.ATOM_DISTANCE_FACTOR;
+            coordinates[3 * i + 2] /= PDBParser.ATOM_DISTANCE_FACTOR;
+            radii[i] = atoms.get(i).chemicalElementProperty().getValue().getVanDerWaalsRadius() + probeRadius;
+            maxRadius = Math.max(maxRadius, radii[i]);
+        }
+
+        // Residue of each atom, -1 if it has none
+        List<Residue> residues = pdbEntry.residuesProperty();
+        Map<Residue, Integer> residueIndex = new IdentityHashMap<>();
+        for (int r = 0; r < residues.size(); r++) {
+            residueIndex.put(residues.get(r), r);
+        }
+        int[] residueOfAtom = new int[n];
+        for (int i = 0; i < n; i++) {
+            Integer r = residueIndex.get(atoms.get(i).residueProperty().getValue());
+            residueOfAtom[i] = r == null ? -1 : r;
+        }
+        int residueCount = residues.size();
+        double largestRadius = maxRadius;
+        return () -> compute(coordinates, radii, largestRadius, residueOfAtom, residueCount);
+    }
+
+    /**
+     * Compute the SASA of the given atoms.
+     *
+     * @param coordinates   Packed coordinates of the atoms in Angstrom.
+     * @param radii         Probe sphere radius of each atom.
+     * @param maxRadius     Largest probe sphere radius.
+     * @param residueOfAtom Index of each atom's residue, -1 if it has none.
+     * @param residueCount  Number of residues.
+     * @return SASA per atom and per residue.
+     */
+    private SolventAccessibility compute(double[] coordinates, double[] radii, double maxRadius, int[] residueOfAtom,
+                                         int residueCount) {
+        int n = radii.length;
+        double[] atomAreas = new double[n];
+        double[] maximumAreas = new double[n];
+        if (n > 0) {
+            SpatialGrid grid = new SpatialGrid(coordinates, 2 * maxRadius);
+            double cutoff = 2 * maxRadius;
+            IntStream.range(0, n).parallel().forEach(i -> {
+                maximumAreas[i] = 4 * Math.PI * radii[i] * radii[i];
+                atomAreas[i] = accessibleArea(i, coordinates, radii, grid, cutoff) * maximumAreas[i];
+            });
+        }
+
+        // Sum up the atoms' areas per residue
+        double[] residueAreas = new double[residueCount];
+        for (int i = 0; i < n; i++) {
+            if (residueOfAtom[i] >= 0) {
+                residueAreas[residueOfAtom[i]] += atomAreas[i];
+            }
+        }
+        return new SolventAccessibility(atomAreas, maximumAreas, residueAreas);
+    }
+
+    /**
+     * Get the accessible fraction of one atom's probe sphere.
+     *
+     * @param i           Index of the atom.
+     * @param coordinates Packed coordinates of all atoms.
+     * @param radii       Probe sphere radius of all atoms.
+     * @param grid        Grid over all atoms.
+     * @param cutoff      Largest possible distance of two overlapping probe spheres.
+     * @return The fraction of sphere points not buried by any neighbour.
+     */
+    private double accessibleArea(int i, double[] coordinates, double[] radii, SpatialGrid grid, double cutoff) {
+        double x = coordinates[3 * i], y = coordinates[3 * i + 1], z = coordinates[3 * i + 2];
+        double radius = radii[i];
+
+        // Neighbour list of all atoms whose probe sphere intersects this one's
+        NeighbourList neighbours = new NeighbourList();
+        grid.forEachWithin(x, y, z, cutoff, j -> {
+            if (j == i)
+                return;
+            double dx = coordinates[3 * j] - x, dy = coordinates[3 * j + 1] - y, dz = coordinates[3 * j + 2] - z;
+            double reach = radius + radii[j];
+            if (dx * dx + dy * dy + dz * dz < reach * reach) {
+                neighbours.add(j);
+            }
+        });
+        int[] list = neighbours.items;
+        int size = neighbours.size;
+
+        int accessible = 0;
+        // The neighbour burying the last point is very likely to bury the next one as well, so test it first
+        int lastOccluder = 0;
+        int points = unitSphere.length / 3;
+        for (int p = 0; p < points; p++) {
+            double px = x + radius * unitSphere[3 * p];
+            double py = y + radius * unitSphere[3 * p + 1];
+            double pz = z + radius * unitSphere[3 * p + 2];
+            boolean buried = false;
+            for (int k = 0; k < size && !buried; k++) {
+                int candidate = (k + lastOccluder) % size;
+                int j = list[candidate];
+                double dx = coordinates[3 * j] - px, dy = coordinates[3 * j + 1] - py, dz = coordinates[3 * j + 2] - pz;
+                if (dx * dx + dy * dy + dz * dz < radii[j] * radii[j]) {
+                    buried = true;
+                    lastOccluder = candidate;
+                }
+            }
+            if (!buried)
+                accessible++;
+        }
+        return (double) accessible / points;
+    }
+
+    /**
+     * Growable list of neighbour indices.
+     */
+    private static final class NeighbourList {
+        int[] items = new int[16];
+        int size = 0;
+
+        void add(int index) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = index;
+        }
+    }
+
+    /**
+     * Distribute points evenly on the unit sphere along a golden section spiral.
+     *
+     * @param count Number of points.
+     * @return Packed coordinates of the points.
+     */
+    static double[] goldenSpiral(int count) {
+        double[] points = new double[3 * count];
+        double increment = Math.PI * (3 - Math.sqrt(5));
+        double offset = 2.0 / count;
+        for (int k = 0; k < count; k++) {
+            double y = k * offset - 1 + offset / 2;
+            double r = Math.sqrt(1 - y * y);
+            double phi = k * increment;
+            points[3 * k] = Math.cos(phi) * r;
+            points[3 * k + 1] = y;
+            points[3 * k + 2] = Math.sin(phi) * r;
+        }
+        return points;
+    }
+}
@@ -0,0 +1,447 @@
+package pdbmodel;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a Gaussian molecular surface of the atoms of a {@link PDBEntry}. Each atom adds a Gaussian
+ * {@code exp(-k (d² / r² - 1))} of its distance d to the density on a regular grid, r being its van der Waals radius,
+ * so an isolated atom's surface at density 1 is its van der Waals sphere, and close atoms merge smoothly. The surface
+ * at density 1 is extracted with marching tetrahedra, each grid cube being split into six tetrahedra along its main
+ * diagonal. Vertices on grid edges shared by neighbouring tetrahedra are shared, so the mesh is closed.
+ * <p>
+ * The grid spacing grows with the number of atoms and the size of the structure, keeping the time and memory
+ * needed bounded. The density is splatted in parallel, over slabs of grid layers, each slab taking the atoms
+ * reaching into it, so no two threads write the same grid point.
+ * <p>
+ * The constructor copies what it needs from the model, so it has to be called on the thread owning the model, while
+ * the generation may run on any thread.
+ *
+ * @author Patrick Grupp
+ */
+public class SurfaceGenerator {
+
+    /**
+     * Default decay of the atoms' Gaussians. Smaller values give a smoother, more blobby surface.
+     */
+    public static final double DEFAULT_BLOBBINESS = 2;
+
+    /**
+     * Finest grid spacing in Angstrom, used for small structures.
+     */
+    private static final double MIN_SPACING = 0.7;
+
+    /**
+     * Number of atoms up to which the finest spacing is used.
+     */
+    private static final int FINE_ATOMS = 1000;
+
+    /**
+     * Largest number of grid points.
+     */
+    private static final int MAX_GRID_POINTS = 1 << 22;
+
+    /**
+     * Contributions below this fraction of the surface density are left out.
+     */
+    private static final double CUTOFF = 0.01;
+
+    /**
+     * Grid layers per slab splatted by one thread.
+     */
+    private static final int SLAB_LAYERS = 4;
+
+    /**
+     * Tetrahedra of a grid cube, by the cube's corners, bit 0 being x, bit 1 y and bit 2 z. All share the main
+     * diagonal from corner 0 to 7, so each edge runs from a corner to one with all of its bits and more.
+     */
+    private static final int[][] TETRAHEDRA = {{0, 7, 1, 3}, {0, 7, 3, 2}, {0, 7, 2, 6}, {0, 7, 6, 4}, {0, 7, 4, 5},
+            {0, 7, 5, 1}};
+
+    private final double blobbiness;
+
+    /**
+     * Coordinates in Angstrom, radii and residue index of each atom.
+     */
+    private final double[] coordinates;
+    private final double[] radii;
+    private final int[] atomResidues;
+
+    /**
+     * Grid origin, spacing and number of points per axis.
+     */
+    private double originX, originY, originZ;
+    private double spacing;
+    private int nx, ny, nz;
+
+    /**
+     * Density at each grid point, and the atom contributing most to it, -1 where no atom contributes.
+     */
+    private float[] density;
+    private float[] strongest;
+    private int[] owner;
+
+    /**
+     * Growing output of the extraction.
+     */
+    private float[] points;
+    private int pointCount;
+    private int[] triangles;
+    private int triangleCount;
+    private int[] vertexResidues;
+
+    /**
+     * Generator with the default blobbiness.
+     *
+     * @param pdbEntry The entry to take the snapshot of.
+     */
+    public SurfaceGenerator(PDBEntry pdbEntry) {
+        this(pdbEntry, DEFAULT_BLOBBINESS);
+    }
+
+    /**
+     * Generator with a custom blobbiness.
+     *
+     * @param pdbEntry   The entry to take the snapshot of.
+     * @param blobbiness Decay of the atoms' Gaussians, positive.
+     */
+    public SurfaceGenerator(PDBEntry pdbEntry, double blobbiness) {
+        if (blobbiness <= 0)
+            throw new IllegalArgumentException("The blobbiness has to be positive.");
+        this.blobbiness = blobbiness;
+        List<Atom> atoms = pdbEntry.nodesProperty();
+        int n = atoms.size();
+        coordinates = pdbEntry.getCoordinates();
+        radii = new double[n];
+        atomResidues = new int[n];
+        List<Residue> residues = pdbEntry.residuesProperty();
+        Map<Residue, Integer> residueIndex = new IdentityHashMap<>(2 * residues.size());
+        for (int r = 0; r < residues.size(); r++) {
+            residueIndex.put(residues.get(r), r);
+        }
+        for (int i = 0; i < n; i++) {
+            coordinates[3 * i] /= PDBParser.ATOM_DISTANCE_FACTOR;
+            coordinates[3 * i + 1] /= PDBParser.ATOM_DISTANCE_FACTOR;
+            coordinates[3 * i + 2] /= PDBParser.ATOM_DISTANCE_FACTOR;
+            radii[i] = atoms.get(i).chemicalElementProperty().getValue().getVanDerWaalsRadius();
+            atomResidues[i] = residueIndex.getOrDefault(atoms.get(i).residueProperty().getValue(), -1);
+        }
+    }
+
+    /**
+     * Generate the surface.
+     *
+     * @return The surface, without triangles if there are no atoms.
+     */
+    public MolecularSurface generate() {
+        return generate(progress -> {
+        });
+    }
+
+    /**
+     * Generate the surface, reporting the progress.
+     *
+     * @param progress Called with the fraction done, between 0 and 1, from any thread.
+     * @return The surface, without triangles if there are no atoms.
+     */
+    public MolecularSurface generate(DoubleConsumer progress) {
+        int n = radii.length;
+        if (n == 0)
+            return new MolecularSurface(new float[0], new int[0], new int[0], 0);
+        setUpGrid();
+        splat(progress);
+        extract(progress);
+        float[] modelPoints = new float[3 * pointCount];
+        for (int i = 0; i < modelPoints.length; i++) {
+            modelPoints[i] = points[i] * PDBParser.ATOM_DISTANCE_FACTOR;
+        }
+        MolecularSurface surface = new MolecularSurface(modelPoints, Arrays.copyOf(triangles, 3 * triangleCount),
+                Arrays.copyOf(vertexResidues, pointCount), spacing);
+        // Only the result is kept
+        density = strongest = null;
+        owner = null;
+        points = null;
+        triangles = vertexResidues = null;
+        return surface;
+    }
+
+    /**
+     * Distance from an atom's center beyond which its contribution is left out.
+     */
+    private double cutoffDistance(double radius) {
+        return radius * Math.sqrt(1 - Math.log(CUTOFF) / blobbiness);
+    }
+
+    /**
+     * Choose the spacing and lay the grid around all atoms' contributions, with a layer of empty points around them.
+     */
+    private void setUpGrid() {
+        int n = radii.length;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            double reach = cutoffDistance(radii[i]);
+            minX = Math.min(minX, coordinates[3 * i] - reach);
+            minY = Math.min(minY, coordinates[3 * i + 1] - reach);
+            minZ = Math.min(minZ, coordinates[3 * i + 2] - reach);
+            maxX = Math.max(maxX, coordinates[3 * i] + reach);
+            maxY = Math.max(maxY, coordinates[3 * i + 1] + reach);
+            maxZ = Math.max(maxZ, coordinates[3 * i + 2] + reach);
+        }
+        double volume = (maxX - minX) * (maxY - minY) * (maxZ - minZ);
+        spacing = Math.max(MIN_SPACING * Math.max(1, Math.cbrt((double) n / FINE_ATOMS)),
+                Math.cbrt(volume / MAX_GRID_POINTS));
+        originX = minX - spacing;
+        originY = minY - spacing;
+        originZ = minZ - spacing;
+        nx = (int) Math.ceil((maxX - minX) / spacing) + 3;
+        ny = (int) Math.ceil((maxY - minY) / spacing) + 3;
+        nz = (int) Math.ceil((maxZ - minZ) / spacing) + 3;
+        density = new float[nx * ny * nz];
+        strongest = new float[density.length];
+        owner = new int[density.length];
+        Arrays.fill(owner, -1);
+    }
+
+    /**
+     * Add the atoms' Gaussians to the grid, the slabs of layers in parallel. Reports the first half of the progress.
+     */
+    private void splat(DoubleConsumer progress) {
+        int n = radii.length;
+        int slabs = (nz + SLAB_LAYERS - 1) / SLAB_LAYERS;
+        // Atoms reaching into each slab: those of slab s are slabAtoms[slabStart[s]] to slabAtoms[slabStart[s + 1] - 1]
+        int[] slabStart = new int[slabs + 1];
+        int[] slabAtoms = null;
+        for (int pass = 0; pass < 2; pass++) {
+            int[] fill = pass == 0 ? null : slabStart.clone();
+            for (int i = 0; i < n; i++) {
+                double reach = cutoffDistance(radii[i]);
+                int first = layer(coordinates[3 * i + 2] - reach, originZ, nz) / SLAB_LAYERS;
+                int last = layer(coordinates[3 * i + 2] + reach, originZ, nz) / SLAB_LAYERS;
+                for (int s = first; s <= last; s++) {
+                    if (fill == null)
+                        slabStart[s + 1]++;
+                    else
+                        slabAtoms[fill[s]++] = i;
+                }
+            }
+            if (pass == 0) {
+                for (int s = 1; s <= slabs; s++) {
+                    slabStart[s] += slabStart[s - 1];
+                }
+                slabAtoms = new int[slabStart[slabs]];
+            }
+        }
+
+        int[] atomsOfSlabs = slabAtoms;
+        AtomicInteger done = new AtomicInteger();
+        IntStream.range(0, slabs).parallel().forEach(s -> {
+            int zLow = s * SLAB_LAYERS, zHigh = Math.min(nz, zLow + SLAB_LAYERS) - 1;
+            for (int k = slabStart[s]; k < slabStart[s + 1]; k++) {
+                splatAtom(atomsOfSlabs[k], zLow, zHigh);
+            }
+            progress.accept(0.5 * done.incrementAndGet() / slabs);
+        });
+    }
+
+    /**
+     * Add one atom's Gaussian to the grid points within its cutoff in the given layers.
+     */
+    private void splatAtom(int i, int zLow, int zHigh) {
+        double x = coordinates[3 * i], y = coordinates[3 * i + 1], z = coordinates[3 * i + 2];
+        double reach = cutoffDistance(radii[i]);
+        double reachSquared = reach * reach;
+        double factor = blobbiness / (radii[i] * radii[i]);
+        int x0 = layer(x - reach, originX, nx), x1 = layer(x + reach, originX, nx) + 1;
+        int y0 = layer(y - reach, originY, ny), y1 = layer(y + reach, originY, ny) + 1;
+        int z0 = Math.max(zLow, layer(z - reach, originZ, nz)), z1 = Math.min(zHigh, layer(z + reach, originZ, nz) + 1);
+        for (int gz = z0; gz <= z1; gz++) {
+            double dz = originZ + gz * spacing - z;
+            for (int gy = y0; gy <= Math.min(y1, ny - 1); gy++) {
+                double dy = originY + gy * spacing - y;
+                double dyz = dy * dy + dz * dz;
+                if (dyz > reachSquared)
+                    continue;
+                int row = (gz * ny + gy) * nx;
+                for (int gx = x0; gx <= Math.min(x1, nx - 1); gx++) {
+                    double dx = originX + gx * spacing - x;
+                    double d = dx * dx + dyz;
+                    if (d > reachSquared)
+                        continue;
+                    float contribution = (float) Math.exp(blobbiness - factor * d);
+                    int g = row + gx;
+                    density[g] += contribution;
+                    if (contribution > strongest[g]) {
+                        strongest[g] = contribution;
+                        owner[g] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Index of the grid layer at or below the given position, clamped to the grid.
+     */
+    private int layer(double position, double origin, int points) {
+        return Math.max(0, Math.min(points - 1, (int) Math.floor((position - origin) / spacing)));
+    }
+
+    /**
+     * Extract the surface at density 1 with marching tetrahedra, layer by layer. Reports the second half of the
+     * progress.
+     */
+    private void extract(DoubleConsumer progress) {
+        points = new float[3 * 1024];
+        triangles = new int[3 * 2048];
+        vertexResidues = new int[1024];
+        pointCount = triangleCount = 0;
+        // Vertices on the edges starting at the points of the cube layer's lower and upper grid layer, seven
+        // directions per point: the edges of each tetrahedron run from a corner to one with all of its bits and more
+        int[] lower = new int[nx * ny * 7];
+        int[] upper = new int[nx * ny * 7];
+        Arrays.fill(lower, -1);
+        Arrays.fill(upper, -1);
+        int[] corners = new int[8];
+        float[] values = new float[8];
+        int[] edgeVertices = new int[4];
+        for (int z = 0; z < nz - 1; z++) {
+            for (int y = 0; y < ny - 1; y++) {
+                for (int x = 0; x < nx - 1; x++) {
+                    boolean inside = false, outside = false;
+                    for (int c = 0; c < 8; c++) {
+                        corners[c] = ((z + (c >> 2)) * ny + y + ((c >> 1) & 1)) * nx + x + (c & 1);
+                        values[c] = density[corners[c]];
+                        if (values[c] > 1)
+                            inside = true;
+                        else
+                            outside = true;
+                    }
+                    if (!inside || !outside)
+                        continue;
+                    for (int[] tetrahedron : TETRAHEDRA) {
+                        polygonize(tetrahedron, x, y, z, corners, values, lower, upper, edgeVertices);
+                    }
+                }
+            }
+            int[] swap = lower;
+            lower = upper;
+            upper = swap;
+            Arrays.fill(upper, -1);
+            progress.accept(0.5 + 0.5 * (z + 1) / (nz - 1));
+        }
+    }
+
+    /**
+     * Add the triangles of the surface crossing a tetrahedron of the cube at the given grid position.
+     */
+    private void polygonize(int[] tetrahedron, int x, int y, int z, int[] corners, float[] values, int[] lower,
+                            int[] upper, int[] edgeVertices) {
+        int insideMask = 0;
+        for (int k = 0; k < 4; k++) {
+            if (values[tetrahedron[k]] > 1)
+                insideMask |= 1 << k;
+        }
+        int insideCount = Integer.bitCount(insideMask);
+        if (insideCount == 0 || insideCount == 4)
+            return;
+
+        // The triangles are oriented by the corners of the tetrahedron only, not by the vertices' positions, so
+        // neighbouring triangles are oriented alike even where they are almost flat
+        if (insideCount == 1 || insideCount == 3) {
+            // One corner is separated from the other three
+            int lone = Integer.numberOfTrailingZeros(insideCount == 1 ? insideMask : ~insideMask & 0xF);
+            int[] others = new int[3];
+            int v = 0;
+            for (int k = 0; k < 4; k++) {
+                if (k != lone) {
+                    others[v] = tetrahedron[k];
+                    edgeVertices[v++] = vertex(tetrahedron[lone], tetrahedron[k], x, y, z, corners, values, lower,
+                            upper);
+                }
+            }
+            // Positive if the triangle through the edges towards the others faces away from the lone corner
+            int orientation = determinant(tetrahedron[lone], others[0], others[1], others[2]);
+            boolean flip = insideCount == 1 ? orientation < 0 : orientation > 0;
+            addTriangle(edgeVertices[0], edgeVertices[1], edgeVertices[2], flip);
+        } else {
+            // Two corners inside, two outside: the surface is a quad around the tetrahedron
+            int a = -1, b = -1, c = -1, d = -1;
+            for (int k = 0; k < 4; k++) {
+                if ((insideMask & 1 << k) != 0) {
+                    if (a < 0) a = k;
+                    else b = k;
+                } else {
+                    if (c < 0) c = k;
+                    else d = k;
+                }
+            }
+            int ac = vertex(tetrahedron[a], tetrahedron[c], x, y, z, corners, values, lower, upper);
+            int ad = vertex(tetrahedron[a], tetrahedron[d], x, y, z, corners, values, lower, upper);
+            int bd = vertex(tetrahedron[b], tetrahedron[d], x, y, z, corners, values, lower, upper);
+            int bc = vertex(tetrahedron[b], tetrahedron[c], x, y, z, corners, values, lower, upper);
+            // The quad faces away from the inside corners if the tetrahedron a, b, c, d is positively oriented
+            boolean flip = determinant(tetrahedron[a], tetrahedron[b], tetrahedron[c], tetrahedron[d]) < 0;
+            addTriangle(ac, ad, bd, flip);
+            addTriangle(ac, bd, bc, flip);
+        }
+    }
+
+    /**
+     * Orientation of the tetrahedron of the given cube corners: the determinant of the edges from the first corner
+     * to the others.
+     */
+    private static int determinant(int origin, int p, int q, int r) {
+        int px = (p & 1) - (origin & 1), py = ((p >> 1) & 1) - ((origin >> 1) & 1), pz = (p >> 2) - (origin >> 2);
+        int qx = (q & 1) - (origin & 1), qy = ((q >> 1) & 1) - ((origin >> 1) & 1), qz = (q >> 2) - (origin >> 2);
+        int rx = (r & 1) - (origin & 1), ry = ((r >> 1) & 1) - ((origin >> 1) & 1), rz = (r >> 2) - (origin >> 2);
+        return px * (qy * rz - qz * ry) - py * (qx * rz - qz * rx) + pz * (qx * ry - qy * rx);
+    }
+
+    /**
+     * Get the vertex where the surface crosses the edge between two corners of the cube, adding it if it is new.
+     */
+    private int vertex(int cornerA, int cornerB, int x, int y, int z, int[] corners, float[] values, int[] lower,
+                       int[] upper) {
+        // Edges run from the corner with fewer bits
+        int from = Integer.bitCount(cornerA) < Integer.bitCount(cornerB) ? cornerA : cornerB;
+        int to = from == cornerA ? cornerB : cornerA;
+        int[] layer = (from >> 2) == 0 ? lower : upper;
+        int key = ((y + ((from >> 1) & 1)) * nx + x + (from & 1)) * 7 + (to ^ from) - 1;
+        if (layer[key] >= 0)
+            return layer[key];
+
+        float t = (1 - values[from]) / (values[to] - values[from]);
+        if (pointCount == vertexResidues.length) {
+            points = Arrays.copyOf(points, 2 * points.length);
+            vertexResidues = Arrays.copyOf(vertexResidues, 2 * vertexResidues.length);
+        }
+        int p = 3 * pointCount;
+        points[p] = (float) (originX + (x + (from & 1) + t * ((to & 1) - (from & 1))) * spacing);
+        points[p + 1] = (float) (originY + (y + ((from >> 1) & 1) + t * (((to >> 1) & 1) - ((from >> 1) & 1)))
+                * spacing);
+        points[p + 2] = (float) (originZ + (z + (from >> 2) + t * ((to >> 2) - (from >> 2))) * spacing);
+        // The vertex belongs to the residue dominating the inside end of the edge
+        int atom = owner[corners[values[from] > 1 ? from : to]];
+        vertexResidues[pointCount] = atom < 0 ? -1 : atomResidues[atom];
+        layer[key] = pointCount;
+        return pointCount++;
+    }
+
+    /**
+     * Add a triangle, the reverse one if flipped.
+     */
+    private void addTriangle(int a, int b, int c, boolean flip) {
+        if (3 * triangleCount == triangles.length)
+            triangles = Arrays.copyOf(triangles, 2 * triangles.length);
+        triangles[3 * triangleCount] = a;
+        triangles[3 * triangleCount + 1] = flip ? c : b;
+        triangles[3 * triangleCount + 2] = flip ? b : c;
+        triangleCount++;
+    }
+}
@@ -0,0 +1,113 @@
+package pdbmodel;
+
+/**
+ * Eigen decomposition of small symmetric matrices with the cyclic Jacobi method. Used for inertia tensors (3x3) and
+ * quaternion based superposition (4x4).
+ *
+ * @author Patrick Grupp
+ */
+final class SymmetricEigenSolver {
+
+    /**
+     * Maximum number of Jacobi sweeps. Small matrices converge in far less.
+     */
+    private static final int MAX_SWEEPS = 50;
+
+    private SymmetricEigenSolver() {
+    }
+
+    /**
+     * Decompose a symmetric matrix. Eigenvalues are sorted in descending order, eigenvector k is the column k of
+     * the vectors matrix.
+     *
+     * @param matrix       The symmetric n x n matrix. Not modified.
+     * @param eigenvalues  Array of length n receiving the eigenvalues.
+     * @param eigenvectors n x n matrix receiving the normalized eigenvectors as columns.
+     */
+    static void decompose(double[][] matrix, double[] eigenvalues, double[][] eigenvectors) {
+        decompose(matrix, eigenvalues, eigenvectors, new double[matrix.length][matrix.length]);
+    }
+
+    /**
+     * Decompose a symmetric matrix using a given working matrix, so repeated decompositions do not allocate.
+     *
+     * @param matrix       The symmetric n x n matrix. Not modified.
+     * @param eigenvalues  Array of length n receiving the eigenvalues.
+     * @param eigenvectors n x n matrix receiving the normalized eigenvectors as columns.
+     * @param a            n x n matrix overwritten during the decomposition.
+     */
+    static void decompose(double[][] matrix, double[] eigenvalues, double[][] eigenvectors, double[][] a) {
+        int n = matrix.length;
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(matrix[i], 0, a[i], 0, n);
+            for (int j = 0; j < n; j++) {
+                eigenvectors[i][j] = i == j ? 1 : 0;
+            }
+        }
+
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            double offDiagonal = 0;
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    offDiagonal += a[p][q] * a[p][q];
+                }
+            }
+            if (offDiagonal < 1e-22)
+                break;
+
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    if (a[p][q] == 0)
+                        continue;
+                    // Rotation annihilating a[p][q]
+                    double theta = (a[q][q] - a[p][p]) / (2 * a[p][q]);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    if (theta == 0)
+                        t = 1;
+                    double c = 1 / Math.sqrt(t * t + 1);
+                    double s = t * c;
+                    for (int k = 0; k < n; k++) {
+                        double akp = a[k][p];
+                        double akq = a[k][q];
+                        a[k][p] = c * akp - s * akq;
+                        a[k][q] = s * akp + c * akq;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double apk = a[p][k];
+                        double aqk = a[q][k];
+                        a[p][k] = c * apk - s * aqk;
+                        a[q][k] = s * apk + c * aqk;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double vkp = eigenvectors[k][p];
+                        double vkq = eigenvectors[k][q];
+                        eigenvectors[k][p] = c * vkp - s * vkq;
+                        eigenvectors[k][q] = s * vkp + c * vkq;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            eigenvalues[i] = a[i][i];
+        }
+        // Selection sort by descending eigenvalue, swapping the eigenvector columns accordingly
+        for (int i = 0; i < n - 1; i++) {
+            int max = i;
+            for (int j = i + 1; j < n; j++) {
+                if (eigenvalues[j] > eigenvalues[max])
+                    max = j;
+            }
+            if (max != i) {
+                double tmp = eigenvalues[i];
+                eigenvalues[i] = eigenvalues[max];
+                eigenvalues[max] = tmp;
+                for (int k = 0; k < n; k++) {
+                    tmp = eigenvectors[k][i];
+                    eigenvectors[k][i] = eigenvectors[k][max];
+                    eigenvectors[k][max] = tmp;
+                }
+            }
+        }
+    }
+}
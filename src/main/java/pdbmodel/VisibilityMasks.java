@@ -0,0 +1,198 @@
+package pdbmodel;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed visibility of all atoms and bonds of an entry in each representation, as bit sets over the indices of
+ * {@link PDBEntry#nodesProperty()} and {@link PDBEntry#edgesProperty()}. The masks are computed once per loaded
+ * structure, so switching the representation only combines two bit sets and applies the result in one pass.
+ *
+ * @author Patrick Grupp
+ */
+public class VisibilityMasks {
+
+    public enum Representation {
+        /**
+         * All atoms and bonds.
+         */
+        ATOMS,
+        /**
+         * Secondary structures drawn as cartoon, so only the backbone of coils and the bonds connecting them to the
+         * secondary structures remain. O atoms are hidden everywhere.
+         */
+        CARTOON
+    }
+
+    private final List<Atom> atoms;
+    private final List<Bond> bonds;
+    private final Map<Atom, Integer> atomIndices;
+    private final Map<Bond, Integer> bondIndices;
+
+    private final BitSet allAtoms;
+    private final BitSet allBonds;
+    private final BitSet cartoonAtoms;
+    private final BitSet cartoonBonds;
+
+    /**
+     * C beta atoms and the bonds to them.
+     */
+    private final BitSet cBetaAtoms;
+    private final BitSet cBetaBonds;
+
+    /**
+     * Compute the masks for the current atoms and bonds of the entry.
+     *
+     * @param entry The entry, with its secondary structures.
+     */
+    public VisibilityMasks(PDBEntry entry) {
+        atoms = new ArrayList<>(entry.nodesProperty());
+        bonds = new ArrayList<>(entry.edgesProperty());
+        atomIndices = new IdentityHashMap<>();
+        for (int i = 0; i < atoms.size(); i++) {
+            atomIndices.put(atoms.get(i), i);
+        }
+        bondIndices = new IdentityHashMap<>();
+        for (int b = 0; b < bonds.size(); b++) {
+            bondIndices.put(bonds.get(b), b);
+        }
+
+        allAtoms = new BitSet(atoms.size());
+        allAtoms.set(0, atoms.size());
+        allBonds = new BitSet(bonds.size());
+        allBonds.set(0, bonds.size());
+
+        cBetaAtoms = new BitSet(atoms.size());
+        for (int i = 0; i < atoms.size(); i++) {
+            if (atoms.get(i).chemicalElementProperty().getValue() == Atom.ChemicalElement.CB)
+                cBetaAtoms.set(i);
+        }
+        cBetaBonds = new BitSet(bonds.size());
+        for (int b = 0; b < bonds.size(); b++) {
+            if (isBond(bonds.get(b), Atom.ChemicalElement.CA, Atom.ChemicalElement.CB))
+                cBetaBonds.set(b);
+        }
+
+        cartoonAtoms = (BitSet) allAtoms.clone();
+        cartoonBonds = (BitSet) allBonds.clone();
+        for (int i = 0; i < atoms.size(); i++) {
+            if (atoms.get(i).chemicalElementProperty().getValue() == Atom.ChemicalElement.O)
+                cartoonAtoms.clear(i);
+        }
+        for (int b = 0; b < bonds.size(); b++) {
+            if (isBond(bonds.get(b), Atom.ChemicalElement.C, Atom.ChemicalElement.O))
+                cartoonBonds.clear(b);
+        }
+        for (SecondaryStructure structure : entry.secondaryStructuresProperty()) {
+            List<Residue> residues = structure.getResiduesContained();
+            // The cartoon replaces the backbone of the residues within the secondary structure
+            for (Residue r : residues) {
+                setAtom(r.getCAlphaAtom(), false);
+                setAtom(r.getCBetaAtom(), false);
+                setAtom(r.getCAtom(), false);
+                setAtom(r.getNAtom(), false);
+                setAtom(r.getOAtom(), false);
+                if (r.getCAlphaAtom() != null) {
+                    r.getCAlphaAtom().inEdgesProperty().forEach(bond -> setBond(bond, false));
+                    r.getCAlphaAtom().outEdgesProperty().forEach(bond -> setBond(bond, false));
+                }
+                if (r.getCAtom() != null)
+                    r.getCAtom().outEdgesProperty().forEach(bond -> setBond(bond, false));
+            }
+            if (residues.isEmpty())
+                continue;
+            Residue last = residues.get(residues.size() - 1);
+            // Beta sheets are drawn differently than alpha helices, the N -> C alpha bond of the first residue and the
+            // C alpha -> C bond of the last residue connect them to the coils
+            if (structure.getSecondaryStructureType() == SecondaryStructure.StructureType.betasheet) {
+                if (residues.get(0).getCAlphaAtom() != null) {
+                    for (Bond bond : residues.get(0).getCAlphaAtom().inEdgesProperty()) {
+                        setBond(bond, true);
+                        setAtom(bond.getSource(), true);
+                    }
+                }
+                if (last.getCAtom() != null) {
+                    for (Bond bond : last.getCAtom().inEdgesProperty()) {
+                        setBond(bond, true);
+                        setAtom(bond.getTarget(), true);
+                    }
+                }
+            }
+            // The peptide bond to the next residue connects the secondary structure with the following coil
+            if (last.getCAtom() != null) {
+                for (Bond bond : last.getCAtom().outEdgesProperty()) {
+                    if (isBond(bond, Atom.ChemicalElement.C, Atom.ChemicalElement.N))
+                        setBond(bond, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the atoms in the order of the masks' bits.
+     *
+     * @return The entry's atoms when the masks were computed.
+     */
+    public List<Atom> getAtoms() {
+        return atoms;
+    }
+
+    /**
+     * Get the bonds in the order of the masks' bits.
+     *
+     * @return The entry's bonds when the masks were computed.
+     */
+    public List<Bond> getBonds() {
+        return bonds;
+    }
+
+    /**
+     * Get the visible atoms.
+     *
+     * @param representation The representation shown.
+     * @param showCBeta      Whether C beta atoms are shown.
+     * @return New bit set, a set bit meaning the atom at that index is visible.
+     */
+    public BitSet getAtomMask(Representation representation, boolean showCBeta) {
+        return combine(representation == Representation.CARTOON ? cartoonAtoms : allAtoms, showCBeta, cBetaAtoms);
+    }
+
+    /**
+     * Get the visible bonds.
+     *
+     * @param representation The representation shown.
+     * @param showCBeta      Whether the bonds to C beta atoms are shown.
+     * @return New bit set, a set bit meaning the bond at that index is visible.
+     */
+    public BitSet getBondMask(Representation representation, boolean showCBeta) {
+        return combine(representation == Representation.CARTOON ? cartoonBonds : allBonds, showCBeta, cBetaBonds);
+    }
+
+    private static BitSet combine(BitSet representation, boolean showCBeta, BitSet cBeta) {
+        BitSet mask = (BitSet) representation.clone();
+        if (!showCBeta)
+            mask.andNot(cBeta);
+        return mask;
+    }
+
+    private static boolean isBond(Bond bond, Atom.ChemicalElement source, Atom.ChemicalElement target) {
+        // The source and target relation is always like that, since it is always set that way when parsing a PDB file.
+        return bond.getSource().chemicalElementProperty().getValue() == source &&
+                bond.getTarget().chemicalElementProperty().getValue() == target;
+    }
+
+    private void setAtom(Atom atom, boolean visible) {
+        Integer index = atom == null ? null : atomIndices.get(atom);
+        if (index != null)
+            cartoonAtoms.set(index, visible);
+    }
+
+    private void setBond(Bond bond, boolean visible) {
+        Integer index = bondIndices.get(bond);
+        if (index != null)
+            cartoonBonds.set(index, visible);
+    }
+}
@@ -0,0 +1,164 @@
+package pdbmodel;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.io.BufferedReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collection of loaded structures. Only one structure is shown at a time in the single {@link PDBEntry} the views
+ * listen to, all others are kept as {@link CompactStructure}s without their property graph, so many structures can be
+ * held at low memory cost. Strings, like residue numbers, are pooled for all structures of the workspace.
+ * <p>
+ * A structure added from the same source as one in the workspace, e.g. a file opened again, replaces that one.
+ * Pooled strings are released once no structure of the workspace uses them anymore.
+ *
+ * @author Patrick Grupp
+ */
+public class Workspace {
+
+    private final ObservableList<CompactStructure> structures;
+
+    private final Map<String, String> strings;
+
+    public Workspace() {
+        structures = FXCollections.observableArrayList();
+        strings = new HashMap<>();
+    }
+
+    /**
+     * Get the structures in the workspace.
+     *
+     * @return The structures in the order they were added.
+     */
+    public ObservableList<CompactStructure> structuresProperty() {
+        return structures;
+    }
+
+    /**
+     * Add a compact copy of the given entry to the workspace.
+     *
+     * @param entry The entry to be added, stays unchanged.
+     * @return The compact structure added.
+     */
+    public CompactStructure add(PDBEntry entry) {
+        return add(entry, null);
+    }
+
+    /**
+     * Add a compact copy of the given entry to the workspace, replacing a structure from the same source.
+     *
+     * @param entry  The entry to be added, stays unchanged.
+     * @param source Where the entry was loaded from, e.g. a file path, null if unknown.
+     * @return The compact structure added.
+     */
+    public CompactStructure add(PDBEntry entry, String source) {
+        CompactStructure structure = compact(entry, source);
+        add(structure);
+        return structure;
+    }
+
+    /**
+     * Parse a PDB file into a compact structure without adding it. The structure is parsed into a temporary entry,
+     * which is not listened to, so this may be called on a background thread. Add the result with
+     * {@link #add(CompactStructure)} on the application thread.
+     *
+     * @param reader Reader of the PDB file.
+     * @return The parsed structure.
+     * @throws Exception If the file could not be parsed.
+     */
+    public CompactStructure load(BufferedReader reader) throws Exception {
+        return load(reader, null);
+    }
+
+    /**
+     * Parse a PDB file into a compact structure without adding it, like {@link #load(BufferedReader)}.
+     *
+     * @param reader Reader of the PDB file.
+     * @param source Where the file was read from, e.g. its path, null if unknown.
+     * @return The parsed structure.
+     * @throws Exception If the file could not be parsed.
+     */
+    public CompactStructure load(BufferedReader reader, String source) throws Exception {
+        PDBEntry entry = new PDBEntry();
+        PDBParser.parse(entry, reader);
+        return compact(entry, source);
+    }
+
+    /**
+     * Add a structure created by {@link #load(BufferedReader, String)}, replacing a structure from the same source.
+     *
+     * @param structure The structure to be added.
+     */
+    public void add(CompactStructure structure) {
+        for (int i = 0; structure.getSource() != null && i < structures.size(); i++) {
+            if (structure.getSource().equals(structures.get(i).getSource())) {
+                structures.set(i, structure);
+                prunePool();
+                return;
+            }
+        }
+        structures.add(structure);
+    }
+
+    /**
+     * Remove a structure from the workspace and release the pooled strings only it used.
+     *
+     * @param structure The structure to be removed.
+     */
+    public void remove(CompactStructure structure) {
+        if (structures.remove(structure))
+            prunePool();
+    }
+
+    /**
+     * Remove all structures and release the pooled strings.
+     */
+    public void clear() {
+        structures.clear();
+        synchronized (strings) {
+            strings.clear();
+        }
+    }
+
+    /**
+     * Show the given structure by restoring it into the entry, replacing the entry's current contents.
+     *
+     * @param structure The structure to be shown.
+     * @param entry     The entry displayed by the views.
+     */
+    public void show(CompactStructure structure, PDBEntry entry) {
+        structure.restore(entry);
+    }
+
+    /**
+     * Get the number of pooled strings.
+     *
+     * @return Number of distinct strings used by the structures, or by structures loaded but not added yet.
+     */
+    int getNumberOfPooledStrings() {
+        synchronized (strings) {
+            return strings.size();
+        }
+    }
+
+    private CompactStructure compact(PDBEntry entry, String source) {
+        // Structures may be loaded in parallel, the pool is shared
+        synchronized (strings) {
+            return new CompactStructure(entry, source, strings);
+        }
+    }
+
+    /**
+     * Rebuild the string pool from the remaining structures. The pooled instances are kept, so the structures still
+     * share them.
+     */
+    private void prunePool() {
+        synchronized (strings) {
+            strings.clear();
+            structures.forEach(structure -> structure.poolStrings(strings));
+        }
+    }
+}
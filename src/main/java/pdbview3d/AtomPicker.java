@@ -0,0 +1,113 @@
+package pdbview3d;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.DoubleProperty;
+import pdbmodel.Atom;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Finds the atom hit by a ray, e.g. the one under the mouse cursor, without picking through the scene graph. The
+ * atoms' spheres are sorted into a {@link SphereGrid}, so picking takes about the same time for any number of atoms.
+ * <p>
+ * The grid is rebuilt on the next pick after atoms were added, removed, moved or resized.
+ *
+ * @author Patrick Grupp
+ */
+class AtomPicker {
+
+    private final Set<MyNodeView3D> nodes;
+    private final DoubleProperty radiusScaling;
+
+    /**
+     * Marks the grid as outdated, shared by all atoms.
+     */
+    private final InvalidationListener invalidator = observable -> stale = true;
+
+    private boolean stale;
+
+    /**
+     * Atoms in the order of the grid's spheres.
+     */
+    private MyNodeView3D[] indexed = new MyNodeView3D[0];
+    private SphereGrid grid;
+
+    /**
+     * Construct a picker without atoms.
+     *
+     * @param radiusScaling The scaling factor of the atoms' radius.
+     */
+    AtomPicker(DoubleProperty radiusScaling) {
+        nodes = new LinkedHashSet<>();
+        this.radiusScaling = radiusScaling;
+        radiusScaling.addListener(invalidator);
+    }
+
+    /**
+     * Add an atom to be picked.
+     *
+     * @param node The atom's node view, which has to be visible in order to be picked.
+     */
+    void add(MyNodeView3D node) {
+        nodes.add(node);
+        Atom atom = node.getModelNodeReference();
+        atom.xCoordinateProperty().addListener(invalidator);
+        atom.yCoordinateProperty().addListener(invalidator);
+        atom.zCoordinateProperty().addListener(invalidator);
+        atom.radiusProperty().addListener(invalidator);
+        stale = true;
+    }
+
+    /**
+     * Remove an atom.
+     *
+     * @param node The atom's node view.
+     */
+    void remove(MyNodeView3D node) {
+        if (!nodes.remove(node))
+            return;
+        Atom atom = node.getModelNodeReference();
+        atom.xCoordinateProperty().removeListener(invalidator);
+        atom.yCoordinateProperty().removeListener(invalidator);
+        atom.zCoordinateProperty().removeListener(invalidator);
+        atom.radiusProperty().removeListener(invalidator);
+        stale = true;
+    }
+
+    /**
+     * Find the nearest visible atom hit by a ray.
+     *
+     * @param ox Ray origin.
+     * @param oy Ray origin.
+     * @param oz Ray origin.
+     * @param dx Ray direction, need not be normalized.
+     * @param dy Ray direction.
+     * @param dz Ray direction.
+     * @return Node view of the nearest atom hit in front of the origin, null if none is hit.
+     */
+    MyNodeView3D pick(double ox, double oy, double oz, double dx, double dy, double dz) {
+        if (stale || grid == null)
+            rebuild();
+        int hit = grid.pick(ox, oy, oz, dx, dy, dz, i -> indexed[i].isVisible());
+        return hit < 0 ? null : indexed[hit];
+    }
+
+    /**
+     * Sort the atoms into a new grid.
+     */
+    private void rebuild() {
+        stale = false;
+        indexed = nodes.toArray(new MyNodeView3D[nodes.size()]);
+        double[] centers = new double[3 * indexed.length];
+        double[] radii = new double[indexed.length];
+        for (int i = 0; i < indexed.length; i++) {
+            Atom atom = indexed[i].getModelNodeReference();
+            centers[3 * i] = atom.xCoordinateProperty().get();
+            centers[3 * i + 1] = atom.yCoordinateProperty().get();
+            centers[3 * i + 2] = atom.zCoordinateProperty().get();
+            radii[i] = atom.radiusProperty().get() * radiusScaling.get();
+        }
+        grid = new SphereGrid(centers, radii);
+    }
+}
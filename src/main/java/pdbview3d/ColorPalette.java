@@ -0,0 +1,131 @@
+package pdbview3d;
+
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Colors of a batched mesh as pixels of one small texture. Each color gets a pixel when it is first used, and the
+ * parts of the mesh shown in that color use the texture coordinate of its pixel, so a mesh of any number of colors
+ * needs a single material, and recoloring only rewrites texture coordinates.
+ * <p>
+ * A second texture holds a brighter shade of each color as specular color, like the shared materials of single
+ * shapes, unless the palette is created with one specular color for all parts. The palette holds a fixed number of
+ * colors. Once it is full, the mesh clears it and adds the colors still in use again. A mesh may also give each of
+ * its parts a pixel of its own and {@link #set(int, Color) set} its color directly.
+ *
+ * @author Patrick Grupp
+ */
+class ColorPalette {
+
+    /**
+     * Width and height of the textures, the palette holds their number of pixels.
+     */
+    private static final int SIZE = 256;
+
+    /**
+     * Number of colors the palette holds.
+     */
+    static final int CAPACITY = SIZE * SIZE;
+
+    private final WritableImage diffuse;
+    private final WritableImage specular;
+    private final PhongMaterial material;
+    private final Map<Color, Integer> indices;
+
+    /**
+     * Create an empty palette.
+     */
+    ColorPalette() {
+        this(null);
+    }
+
+    /**
+     * Create an empty palette whose parts all have the same specular color, e.g. flat parts lit evenly.
+     *
+     * @param specularColor The specular color of all parts, null for a brighter shade of each color.
+     */
+    ColorPalette(Color specularColor) {
+        diffuse = new WritableImage(SIZE, SIZE);
+        material = new PhongMaterial(Color.WHITE);
+        material.setDiffuseMap(diffuse);
+        if (specularColor == null) {
+            specular = new WritableImage(SIZE, SIZE);
+            material.setSpecularMap(specular);
+        } else {
+            specular = null;
+            material.setSpecularColor(specularColor);
+        }
+        indices = new HashMap<>();
+    }
+
+    /**
+     * Get the material showing the palette's textures.
+     *
+     * @return The material, to be shared by all parts of the mesh.
+     */
+    PhongMaterial getMaterial() {
+        return material;
+    }
+
+    /**
+     * Get the index of a color, adding it to the palette if it is not in there yet.
+     *
+     * @param color The color.
+     * @return The color's index, -1 if the palette is full.
+     */
+    int indexOf(Color color) {
+        Integer index = indices.get(color);
+        if (index != null)
+            return index;
+        if (indices.size() == CAPACITY)
+            return -1;
+        int added = indices.size();
+        indices.put(color, added);
+        set(added, color);
+        return added;
+    }
+
+    /**
+     * Get the number of colors added by {@link #indexOf(Color)}.
+     *
+     * @return Number of colors, their indices are 0 to this number minus one.
+     */
+    int size() {
+        return indices.size();
+    }
+
+    /**
+     * Set the color of a pixel directly, for meshes giving each part a pixel of its own instead of looking up colors.
+     *
+     * @param index The pixel's index, less than {@link #CAPACITY}.
+     * @param color The color.
+     */
+    void set(int index, Color color) {
+        diffuse.getPixelWriter().setColor(index % SIZE, index / SIZE, color);
+        if (specular != null)
+            specular.getPixelWriter().setColor(index % SIZE, index / SIZE, color.brighter());
+    }
+
+    /**
+     * Remove all colors, e.g. before adding the colors still in use to a full palette again.
+     */
+    void clear() {
+        indices.clear();
+    }
+
+    /**
+     * Write the texture coordinate of a color's pixel.
+     *
+     * @param index  Index of the color.
+     * @param target Array receiving u and v.
+     * @param offset Index of u in the array.
+     */
+    static void writeTexCoord(int index, float[] target, int offset) {
+        target[offset] = (index % SIZE + 0.5f) / SIZE;
+        target[offset + 1] = (index / SIZE + 0.5f) / SIZE;
+    }
+}
@@ -0,0 +1,167 @@
+package pdbview3d;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import pdbmodel.Atom;
+import pdbmodel.PDBEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plays the models of an ensemble, e.g. an NMR entry, as a movie. On every pulse the atoms' positions are
+ * interpolated between the two models around the current playback position into one reused array, which the graph
+ * view writes into its batched meshes directly. The atoms' coordinates are only set when playback pauses, to the
+ * positions last shown, and the ribbon and cartoon are computed again then.
+ *
+ * @author Patrick Grupp
+ */
+public class EnsembleAnimator {
+
+    private final MyGraphView3D world;
+    private final BooleanProperty playing;
+    private final DoubleProperty modelsPerSecond;
+    private final ReadOnlyIntegerWrapper model;
+
+    private List<Atom> atoms = Collections.emptyList();
+    private List<double[]> models = Collections.emptyList();
+
+    /**
+     * Positions shown last, x, y and z of each atom consecutively.
+     */
+    private double[] frame = new double[0];
+
+    /**
+     * Playback position in models, the fraction being the progress towards the next model.
+     */
+    private double position;
+    private long lastPulse;
+    private boolean frameShown;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (lastPulse != 0)
+                position = (position + (now - lastPulse) / 1e9 * modelsPerSecond.get()) % models.size();
+            lastPulse = now;
+            showPosition();
+        }
+    };
+
+    /**
+     * Create an animator without models.
+     *
+     * @param world The graph view showing the atoms.
+     */
+    public EnsembleAnimator(MyGraphView3D world) {
+        this.world = world;
+        playing = new SimpleBooleanProperty(false);
+        modelsPerSecond = new SimpleDoubleProperty(5);
+        model = new ReadOnlyIntegerWrapper(0);
+        playing.addListener((observable, oldValue, play) -> {
+            if (play && models.size() < 2) {
+                playing.set(false);
+            } else if (play) {
+                lastPulse = 0;
+                timer.start();
+            } else {
+                timer.stop();
+                commitFrame();
+            }
+        });
+    }
+
+    /**
+     * Set the ensemble to be played, pausing playback and starting at its first model again.
+     *
+     * @param entry The entry whose models are played, its atoms being shown by the graph view.
+     */
+    public void setEnsemble(PDBEntry entry) {
+        playing.set(false);
+        atoms = new ArrayList<>(entry.nodesProperty());
+        models = new ArrayList<>(entry.getNumberOfModels());
+        for (int m = 0; m < entry.getNumberOfModels(); m++) {
+            models.add(entry.getModelCoordinates(m));
+        }
+        frame = new double[3 * atoms.size()];
+        position = 0;
+        model.set(0);
+    }
+
+    /**
+     * Property determining whether the models are played.
+     *
+     * @return Property, true while playing. Cannot be set while there are fewer than two models.
+     */
+    public BooleanProperty playingProperty() {
+        return playing;
+    }
+
+    /**
+     * Property determining the playback speed.
+     *
+     * @return Property holding the number of models passed per second.
+     */
+    public DoubleProperty modelsPerSecondProperty() {
+        return modelsPerSecond;
+    }
+
+    /**
+     * Property holding the model last passed during playback.
+     *
+     * @return Property holding the index of the model, starting at 0.
+     */
+    public ReadOnlyIntegerProperty modelProperty() {
+        return model.getReadOnlyProperty();
+    }
+
+    /**
+     * Get the number of models played.
+     *
+     * @return Number of models, 0 if no ensemble was set.
+     */
+    public int getNumberOfModels() {
+        return models.size();
+    }
+
+    /**
+     * Interpolate the positions at the playback position linearly, the last model turning back into the first one,
+     * and show them.
+     */
+    private void showPosition() {
+        int current = (int) position;
+        double t = position - current;
+        double[] from = models.get(current);
+        double[] to = models.get((current + 1) % models.size());
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = from[i] + t * (to[i] - from[i]);
+        }
+        world.showFrame(atoms, frame);
+        frameShown = true;
+        model.set(current);
+    }
+
+    /**
+     * Move the atoms to the positions last shown, so the views not following the frames catch up, and compute the
+     * ribbon and the beta sheets again for these positions.
+     */
+    private void commitFrame() {
+        if (!frameShown)
+            return;
+        frameShown = false;
+        world.endFrames();
+        for (int i = 0; i < atoms.size(); i++) {
+            Atom atom = atoms.get(i);
+            atom.xCoordinateProperty().set(frame[3 * i]);
+            atom.yCoordinateProperty().set(frame[3 * i + 1]);
+            atom.zCoordinateProperty().set(frame[3 * i + 2]);
+        }
+        world.updateStructureGeometry();
+    }
+}
@@ -0,0 +1,79 @@
+package pdbview3d;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Coalesces geometry updates to once per frame. Views whose geometry depends on several properties mark themselves
+ * dirty here on every change instead of recomputing right away, and are recomputed once before the next frame is
+ * rendered, however many of their properties changed in the meantime.
+ * <p>
+ * Must only be used on the JavaFX application thread.
+ *
+ * @author Patrick Grupp
+ */
+final class GeometryUpdateScheduler {
+
+    /**
+     * Pending updates in the order they were scheduled. An update scheduled several times is run once.
+     */
+    private static final Set<Runnable> pending = new LinkedHashSet<>();
+
+    /**
+     * Runs the pending updates on each pulse, only running while there are any.
+     */
+    private static final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            flush();
+        }
+    };
+
+    private static boolean running;
+
+    private GeometryUpdateScheduler() {
+    }
+
+    /**
+     * Schedule an update for the next frame. Pass the same instance each time, so repeated calls are coalesced.
+     *
+     * @param update The update to be run.
+     */
+    static void schedule(Runnable update) {
+        pending.add(update);
+        if (!running) {
+            running = true;
+            timer.start();
+        }
+    }
+
+    /**
+     * Run all pending updates now, e.g. before reading geometry which has to be up to date.
+     */
+    static void flush() {
+        if (pending.isEmpty()) {
+            timer.stop();
+            running = false;
+            return;
+        }
+        // Updates may schedule further updates, these run on the next pulse
+        List<Runnable> updates = new ArrayList<>(pending);
+        pending.clear();
+        PerformanceMonitor.time(PerformanceMonitor.Operation.MESH_BUILD, () -> updates.forEach(Runnable::run));
+    }
+
+    /**
+     * Run all pending updates now, including the ones scheduled by them, until none are left.
+     */
+    static void flushAll() {
+        while (!pending.isEmpty()) {
+            flush();
+        }
+        // Nothing left, so this stops the timer
+        flush();
+    }
+}
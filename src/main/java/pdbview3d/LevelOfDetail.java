@@ -0,0 +1,118 @@
+package pdbview3d;
+
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+
+/**
+ * Chooses how finely atoms and bonds are tessellated, from the number of atoms of the structure and from how large
+ * an atom currently appears on screen. Large structures and far away atoms get coarse geometry, small structures
+ * seen from close get smooth geometry.
+ *
+ * @author Patrick Grupp
+ */
+public class LevelOfDetail {
+
+    /**
+     * Tessellation of the geometry, from coarse to fine. Each level defines the divisions of sphere and cylinder
+     * nodes and the subdivisions and sides of the batched atom and bond meshes.
+     */
+    public enum Level {
+        LOW(10, 8, 0, 4, Integer.MAX_VALUE, 0),
+        MEDIUM(24, 16, 1, 6, 10000, 4),
+        HIGH(64, 32, 2, 12, 1000, 12);
+
+        private final int sphereDivisions;
+        private final int cylinderDivisions;
+        private final int meshSubdivisions;
+        private final int prismSides;
+        private final int maxAtoms;
+        private final double minAtomPixels;
+
+        Level(int sphereDivisions, int cylinderDivisions, int meshSubdivisions, int prismSides, int maxAtoms,
+              double minAtomPixels) {
+            this.sphereDivisions = sphereDivisions;
+            this.cylinderDivisions = cylinderDivisions;
+            this.meshSubdivisions = meshSubdivisions;
+            this.prismSides = prismSides;
+            this.maxAtoms = maxAtoms;
+            this.minAtomPixels = minAtomPixels;
+        }
+
+        /**
+         * Get the divisions of an atom's sphere node.
+         *
+         * @return Divisions of a {@link javafx.scene.shape.Sphere}.
+         */
+        public int getSphereDivisions() {
+            return sphereDivisions;
+        }
+
+        /**
+         * Get the divisions of a bond's cylinder node.
+         *
+         * @return Divisions of a {@link javafx.scene.shape.Cylinder}.
+         */
+        public int getCylinderDivisions() {
+            return cylinderDivisions;
+        }
+
+        /**
+         * Get how often the icosahedron of an atom in a batched mesh is subdivided.
+         *
+         * @return Number of subdivisions, 0 for the plain icosahedron.
+         */
+        public int getMeshSubdivisions() {
+            return meshSubdivisions;
+        }
+
+        /**
+         * Get the number of sides of a bond's prism in a batched mesh.
+         *
+         * @return Number of sides.
+         */
+        public int getPrismSides() {
+            return prismSides;
+        }
+    }
+
+    /**
+     * Relative margin an atom's size has to pass a level's threshold by, before the level changes. Avoids switching
+     * back and forth while zooming around a threshold.
+     */
+    private static final double HYSTERESIS = 0.25;
+
+    private final ReadOnlyObjectWrapper<Level> level;
+
+    public LevelOfDetail() {
+        level = new ReadOnlyObjectWrapper<>(Level.HIGH);
+    }
+
+    /**
+     * Get the current level of detail.
+     *
+     * @return Property holding the current level.
+     */
+    public ReadOnlyObjectProperty<Level> levelProperty() {
+        return level.getReadOnlyProperty();
+    }
+
+    /**
+     * Choose the level for the current structure and view. The level is the finest one allowed both by the number
+     * of atoms and by the atoms' size on screen.
+     *
+     * @param atomCount   Number of atoms of the shown structure.
+     * @param atomPixels  Radius of an average atom on screen, in pixels.
+     */
+    public void update(int atomCount, double atomPixels) {
+        Level current = level.get();
+        Level chosen = Level.LOW;
+        for (Level candidate : Level.values()) {
+            // Getting finer needs a larger margin than staying, getting coarser a smaller one
+            double margin = candidate.compareTo(current) > 0 ? 1 + HYSTERESIS :
+                    candidate.compareTo(current) < 0 ? 1 - HYSTERESIS : 1;
+            if (atomCount <= candidate.maxAtoms && atomPixels >= candidate.minAtomPixels * margin)
+                chosen = candidate;
+        }
+        level.set(chosen);
+    }
+}
@@ -0,0 +1,92 @@
+package pdbview3d;
+
+import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out one shared material per pair of diffuse and specular color. Shapes of the same color show the same
+ * material instance instead of one copy each, and are recolored by showing another material instead of changing their
+ * own.
+ * <p>
+ * The registry only holds its materials weakly, so a material no shape shows anymore, e.g. one of a gradient color of
+ * a previous coloring, can be collected, and its entry is dropped with the next lookup.
+ * <p>
+ * The materials are shared, so they must never be modified. Must only be used on the JavaFX application thread.
+ *
+ * @author Patrick Grupp
+ */
+final class MaterialRegistry {
+
+    /**
+     * Weak reference to a material, remembering its key to drop the entry once the material was collected.
+     */
+    private static final class MaterialReference extends WeakReference<PhongMaterial> {
+        final List<Color> key;
+
+        MaterialReference(List<Color> key, PhongMaterial material, ReferenceQueue<PhongMaterial> queue) {
+            super(material, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Materials by diffuse and specular color.
+     */
+    private static final Map<List<Color>, MaterialReference> materials = new HashMap<>();
+
+    /**
+     * Receives the references of collected materials.
+     */
+    private static final ReferenceQueue<PhongMaterial> collected = new ReferenceQueue<>();
+
+    private MaterialRegistry() {
+    }
+
+    /**
+     * Get the material of the given color, highlighted with a brighter shade of it.
+     *
+     * @param diffuse The diffuse color.
+     * @return Shared material, not to be modified.
+     */
+    static PhongMaterial get(Color diffuse) {
+        return get(diffuse, diffuse.brighter());
+    }
+
+    /**
+     * Get the material with the given diffuse and specular color.
+     *
+     * @param diffuse  The diffuse color.
+     * @param specular The specular color.
+     * @return Shared material, not to be modified.
+     */
+    static PhongMaterial get(Color diffuse, Color specular) {
+        purge();
+        List<Color> key = Arrays.asList(diffuse, specular);
+        MaterialReference reference = materials.get(key);
+        PhongMaterial material = reference == null ? null : reference.get();
+        if (material == null) {
+            material = new PhongMaterial(diffuse);
+            material.setSpecularColor(specular);
+            materials.put(key, new MaterialReference(key, material, collected));
+        }
+        return material;
+    }
+
+    /**
+     * Drop the entries of collected materials.
+     */
+    private static void purge() {
+        MaterialReference reference;
+        while ((reference = (MaterialReference) collected.poll()) != null) {
+            // The key may already map to a newer material
+            materials.remove(reference.key, reference);
+        }
+    }
+}
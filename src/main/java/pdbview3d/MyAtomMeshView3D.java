@@ -0,0 +1,579 @@
+package pdbview3d;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.DoubleProperty;
+import javafx.scene.Group;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import javafx.scene.shape.VertexFormat;
+import pdbmodel.Atom;
+import pdbmodel.ColoringEngine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batched representation of all atoms: every atom is written as a low-poly sphere into one {@link TriangleMesh}, so
+ * the whole structure is drawn by a single {@link MeshView} instead of one sphere node per atom. The colors are pixels
+ * of a {@link ColorPalette}, and each sphere uses one texture coordinate pointing at its atom's color, so any number
+ * of colors needs one mesh and one material, and recoloring only rewrites texture coordinates.
+ * <p>
+ * Added atoms are appended, and changes of an atom's position, radius or color are written into the mesh's arrays in
+ * place, at most once per frame. When the coloring scheme is switched, the colors are written with one bulk write by
+ * {@link #writeColors(List, int[])}, while the listeners of the single atoms' colors are paused.
+ * <p>
+ * The {@link MyNodeView3D}s are still kept by the graph view for selection and bonds. Their visibility and material
+ * overrides are followed. Atoms are picked by the {@link AtomPicker}, not through the mesh.
+ *
+ * @author Patrick Grupp
+ */
+class MyAtomMeshView3D extends Group {
+
+    /**
+     * Unit sphere of an atom: an icosahedron subdivided a number of times.
+     */
+    private static final class SphereTemplate {
+        final float[] points;
+        final int[] faces;
+        final int vertices;
+
+        SphereTemplate(int subdivisions) {
+            List<float[]> vertexList = new ArrayList<>();
+            float t = (float) ((1 + Math.sqrt(5)) / 2);
+            float[][] icosahedron = {{-1, t, 0}, {1, t, 0}, {-1, -t, 0}, {1, -t, 0}, {0, -1, t}, {0, 1, t},
+                    {0, -1, -t}, {0, 1, -t}, {t, 0, -1}, {t, 0, 1}, {-t, 0, -1}, {-t, 0, 1}};
+            for (float[] v : icosahedron) {
+                vertexList.add(normalize(v));
+            }
+            int[] corners = {0, 11, 5, 0, 5, 1, 0, 1, 7, 0, 7, 10, 0, 10, 11, 1, 5, 9, 5, 11, 4, 11, 10, 2, 10, 7, 6,
+                    7, 1, 8, 3, 9, 4, 3, 4, 2, 3, 2, 6, 3, 6, 8, 3, 8, 9, 4, 9, 5, 2, 4, 11, 6, 2, 10, 8, 6, 7,
+                    9, 8, 1};
+            for (int level = 0; level < subdivisions; level++) {
+                // Split each triangle into four, sharing the midpoints of common edges
+                Map<Long, Integer> midpoints = new HashMap<>();
+                int[] subdivided = new int[corners.length * 4];
+                int f = 0;
+                for (int i = 0; i < corners.length; i += 3) {
+                    int a = midpoint(vertexList, midpoints, corners[i], corners[i + 1]);
+                    int b = midpoint(vertexList, midpoints, corners[i + 1], corners[i + 2]);
+                    int c = midpoint(vertexList, midpoints, corners[i + 2], corners[i]);
+                    int[] parts = {corners[i], a, c, corners[i + 1], b, a, corners[i + 2], c, b, a, b, c};
+                    for (int corner : parts) {
+                        subdivided[f++] = corner;
+                    }
+                }
+                corners = subdivided;
+            }
+            vertices = vertexList.size();
+            points = new float[3 * vertices];
+            for (int i = 0; i < vertices; i++) {
+                System.arraycopy(vertexList.get(i), 0, points, 3 * i, 3);
+            }
+            faces = corners;
+        }
+    }
+
+    /**
+     * Sphere templates by number of subdivisions, created on first use.
+     */
+    private static final SphereTemplate[] TEMPLATES = new SphereTemplate[3];
+
+    private static SphereTemplate getTemplate(int subdivisions) {
+        if (TEMPLATES[subdivisions] == null)
+            TEMPLATES[subdivisions] = new SphereTemplate(subdivisions);
+        return TEMPLATES[subdivisions];
+    }
+
+    /**
+     * An atom in the mesh and the slot it occupies there.
+     */
+    private static class Entry {
+        final Atom atom;
+        final MyNodeView3D node;
+
+        /**
+         * Index of the atom's sphere in the mesh, -1 while it waits to be appended.
+         */
+        int slot = -1;
+        InvalidationListener geometryListener;
+        InvalidationListener colorListener;
+
+        /**
+         * Index of the atom in the atoms of the frames shown, -1 if it keeps its model coordinates.
+         */
+        int frameIndex = -1;
+
+        Entry(MyNodeView3D node) {
+            this.node = node;
+            this.atom = node.getModelNodeReference();
+        }
+    }
+
+    /**
+     * Number of atoms changing their color in one frame, above which all texture coordinates are written at once
+     * instead of one by one.
+     */
+    private static final int REBUILD_THRESHOLD = 64;
+
+    private final TriangleMesh mesh;
+    private final ColorPalette palette;
+    private final Map<Atom, Entry> entries;
+
+    /**
+     * Atoms in the order of their slots.
+     */
+    private final List<Entry> slots;
+    private final DoubleProperty radiusScaling;
+
+    /**
+     * Sphere used for every atom, depending on the level of detail.
+     */
+    private SphereTemplate template;
+
+    /**
+     * Coordinates of one sphere, reused for every update.
+     */
+    private float[] buffer;
+
+    /**
+     * Atoms added since the last frame, appended to the mesh together.
+     */
+    private final List<Entry> added;
+
+    /**
+     * Atoms whose sphere changed since the last frame.
+     */
+    private final Set<Entry> dirty;
+
+    /**
+     * Atoms whose displayed color may have changed since the last frame.
+     */
+    private final Set<Entry> recolored;
+
+    /**
+     * Writes added, changed and recolored atoms, scheduled at most once per frame by the
+     * {@link GeometryUpdateScheduler}.
+     */
+    private final Runnable flushUpdate = this::flush;
+
+    /**
+     * Whether changes of the atoms' colors are ignored, since they are written as a whole afterwards.
+     */
+    private boolean colorUpdatesPaused;
+
+    /**
+     * Points of all spheres of a frame, see {@link #showFrame(List, double[])}.
+     */
+    private float[] frame = new float[0];
+
+    /**
+     * The atoms of the frames shown, null while the model coordinates are shown.
+     */
+    private List<Atom> frameAtoms;
+
+    /**
+     * Construct an empty atom mesh.
+     *
+     * @param radiusScaling The scaling factor, with which the radius of all atoms will be scaled.
+     */
+    MyAtomMeshView3D(DoubleProperty radiusScaling) {
+        this.radiusScaling = radiusScaling;
+        mesh = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
+        palette = new ColorPalette();
+        MeshView view = new MeshView(mesh);
+        view.setMaterial(palette.getMaterial());
+        getChildren().add(view);
+        entries = new HashMap<>();
+        slots = new ArrayList<>();
+        added = new ArrayList<>();
+        dirty = new LinkedHashSet<>();
+        recolored = new LinkedHashSet<>();
+        template = getTemplate(LevelOfDetail.Level.HIGH.getMeshSubdivisions());
+        buffer = new float[template.points.length];
+        radiusScaling.addListener(observable -> {
+            dirty.addAll(slots);
+            GeometryUpdateScheduler.schedule(flushUpdate);
+        });
+    }
+
+    /**
+     * Add an atom to the mesh. Atoms added within one frame are appended to the mesh together.
+     *
+     * @param node The node view of the atom, providing visibility and material override.
+     */
+    void addAtom(MyNodeView3D node) {
+        Entry entry = new Entry(node);
+        entries.put(entry.atom, entry);
+        // Look up the frame indices again on the next frame
+        frameAtoms = null;
+        added.add(entry);
+        GeometryUpdateScheduler.schedule(flushUpdate);
+
+        entry.geometryListener = observable -> {
+            if (entry.slot >= 0) {
+                dirty.add(entry);
+                GeometryUpdateScheduler.schedule(flushUpdate);
+            }
+        };
+        entry.colorListener = observable -> updateColor(entry);
+        entry.atom.xCoordinateProperty().addListener(entry.geometryListener);
+        entry.atom.yCoordinateProperty().addListener(entry.geometryListener);
+        entry.atom.zCoordinateProperty().addListener(entry.geometryListener);
+        entry.atom.radiusProperty().addListener(entry.geometryListener);
+        node.visibleProperty().addListener(entry.geometryListener);
+        entry.atom.colorProperty().addListener(entry.colorListener);
+    }
+
+    /**
+     * Remove an atom from the mesh.
+     *
+     * @param atom The atom to be removed.
+     */
+    void removeAtom(Atom atom) {
+        Entry entry = entries.remove(atom);
+        if (entry == null)
+            return;
+        removeListeners(entry);
+        dirty.remove(entry);
+        recolored.remove(entry);
+        if (entry.slot < 0)
+            added.remove(entry);
+        else
+            extract(entry);
+    }
+
+    /**
+     * Remove all atoms.
+     */
+    void clear() {
+        entries.values().forEach(this::removeListeners);
+        entries.clear();
+        slots.clear();
+        added.clear();
+        dirty.clear();
+        recolored.clear();
+        frameAtoms = null;
+        frame = new float[0];
+        mesh.getPoints().clear();
+        mesh.getTexCoords().clear();
+        mesh.getFaces().clear();
+        palette.clear();
+    }
+
+    private void removeListeners(Entry entry) {
+        entry.atom.xCoordinateProperty().removeListener(entry.geometryListener);
+        entry.atom.yCoordinateProperty().removeListener(entry.geometryListener);
+        entry.atom.zCoordinateProperty().removeListener(entry.geometryListener);
+        entry.atom.radiusProperty().removeListener(entry.geometryListener);
+        entry.node.visibleProperty().removeListener(entry.geometryListener);
+        entry.atom.colorProperty().removeListener(entry.colorListener);
+    }
+
+    /**
+     * Show all atoms in their displayed color again, e.g. after the material overrides of their node views changed
+     * without the model's color changing.
+     */
+    void updateColors() {
+        recolored.addAll(slots);
+        GeometryUpdateScheduler.schedule(flushUpdate);
+    }
+
+    /**
+     * Tessellate all atoms according to the given level of detail.
+     *
+     * @param level The level of detail.
+     */
+    void setLevelOfDetail(LevelOfDetail.Level level) {
+        SphereTemplate chosen = getTemplate(level.getMeshSubdivisions());
+        if (chosen == template)
+            return;
+        template = chosen;
+        buffer = new float[template.points.length];
+        // Every slot changes its size, so rewrite the mesh in one go
+        int count = slots.size();
+        float[] points = new float[count * buffer.length];
+        int[] faces = new int[count * template.faces.length * 2];
+        for (Entry entry : slots) {
+            fillBuffer(entry);
+            System.arraycopy(buffer, 0, points, entry.slot * buffer.length, buffer.length);
+            writeFaces(faces, entry.slot);
+        }
+        mesh.getPoints().setAll(points);
+        mesh.getFaces().setAll(faces);
+        dirty.clear();
+    }
+
+    /**
+     * Draw the atoms at the given positions instead of their model coordinates, e.g. while playing the models of an
+     * ensemble. The atoms' properties are not touched, and the mesh is rewritten with one bulk write.
+     *
+     * @param atoms     The atoms, in the order of the positions. Pass the same list for every frame.
+     * @param positions Position of each atom, x, y and z consecutively.
+     */
+    void showFrame(List<Atom> atoms, double[] positions) {
+        // Atoms added in the meantime need their slots first
+        flush();
+        if (atoms != frameAtoms) {
+            frameAtoms = atoms;
+            entries.values().forEach(entry -> entry.frameIndex = -1);
+            for (int i = 0; i < atoms.size(); i++) {
+                Entry entry = entries.get(atoms.get(i));
+                if (entry != null)
+                    entry.frameIndex = i;
+            }
+        }
+        int length = slots.size() * buffer.length;
+        if (frame.length != length)
+            frame = new float[length];
+        for (Entry entry : slots) {
+            int i = entry.frameIndex;
+            if (i < 0)
+                fillSphere(entry, entry.atom.xCoordinateProperty().get(), entry.atom.yCoordinateProperty().get(),
+                        entry.atom.zCoordinateProperty().get(), frame, entry.slot * buffer.length);
+            else
+                fillSphere(entry, positions[3 * i], positions[3 * i + 1], positions[3 * i + 2], frame,
+                        entry.slot * buffer.length);
+        }
+        mesh.getPoints().set(0, frame, 0, length);
+    }
+
+    /**
+     * Draw the atoms at their model coordinates again, after frames were shown.
+     */
+    void endFrames() {
+        frameAtoms = null;
+        for (Entry entry : slots) {
+            entry.frameIndex = -1;
+            writeGeometry(entry);
+        }
+        frame = new float[0];
+    }
+
+    /**
+     * Ignore changes of the atoms' colors, e.g. while a coloring sets the colors of all atoms, which are then passed to
+     * {@link #writeColors(List, int[])}.
+     *
+     * @param paused True to ignore color changes, false to follow them again.
+     */
+    void pauseColorUpdates(boolean paused) {
+        colorUpdatesPaused = paused;
+    }
+
+    /**
+     * Write the colors of the given atoms into the texture coordinates with one bulk write. Each distinct color is
+     * looked up in the palette once. Highlighted atoms and those with a material override keep their displayed color.
+     *
+     * @param atoms The atoms, their model colors already being set to the given colors.
+     * @param argb  ARGB color of each atom.
+     */
+    void writeColors(List<Atom> atoms, int[] argb) {
+        // Atoms added in the meantime need their slots first
+        flush();
+        float[] texCoords = mesh.getTexCoords().toArray(null);
+        Map<Integer, Integer> indices = new HashMap<>();
+        for (int i = 0; i < atoms.size(); i++) {
+            Entry entry = entries.get(atoms.get(i));
+            if (entry == null)
+                continue;
+            int index = entry.node.showsOwnColor() ?
+                    indices.computeIfAbsent(argb[i], color -> palette.indexOf(ColoringEngine.toColor(color))) :
+                    colorIndex(entry);
+            if (index < 0) {
+                // The palette is full, so it is filled with the colors still in use again
+                writeTexCoords();
+                return;
+            }
+            ColorPalette.writeTexCoord(index, texCoords, 2 * entry.slot);
+        }
+        mesh.getTexCoords().setAll(texCoords);
+    }
+
+    private void updateColor(Entry entry) {
+        if (entry.slot < 0 || colorUpdatesPaused)
+            return;
+        recolored.add(entry);
+        GeometryUpdateScheduler.schedule(flushUpdate);
+    }
+
+    /**
+     * Append the atoms added, then write the spheres and colors of all atoms changed since the last frame.
+     */
+    private void flush() {
+        if (!added.isEmpty())
+            append();
+        dirty.forEach(this::writeGeometry);
+        dirty.clear();
+        if (recolored.size() > REBUILD_THRESHOLD) {
+            recolored.clear();
+            writeTexCoords();
+        } else {
+            float[] texCoord = new float[2];
+            for (Entry entry : recolored) {
+                int index = colorIndex(entry);
+                if (index < 0) {
+                    // The palette is full, so it is filled with the colors still in use again
+                    writeTexCoords();
+                    break;
+                }
+                ColorPalette.writeTexCoord(index, texCoord, 0);
+                mesh.getTexCoords().set(2 * entry.slot, texCoord, 0, 2);
+            }
+            recolored.clear();
+        }
+    }
+
+    /**
+     * Append the spheres, colors and faces of all atoms added since the last frame to the mesh with one write each.
+     */
+    private void append() {
+        int first = slots.size();
+        int count = added.size();
+        float[] points = new float[count * buffer.length];
+        float[] texCoords = new float[2 * count];
+        int[] faces = new int[count * template.faces.length * 2];
+        boolean paletteFull = false;
+        for (int k = 0; k < count; k++) {
+            Entry entry = added.get(k);
+            entry.slot = first + k;
+            slots.add(entry);
+            fillBuffer(entry);
+            System.arraycopy(buffer, 0, points, k * buffer.length, buffer.length);
+            int index = colorIndex(entry);
+            paletteFull |= index < 0;
+            ColorPalette.writeTexCoord(Math.max(index, 0), texCoords, 2 * k);
+            writeFaces(faces, k * template.faces.length * 2, entry.slot);
+        }
+        added.clear();
+        mesh.getPoints().addAll(points);
+        mesh.getTexCoords().addAll(texCoords);
+        mesh.getFaces().addAll(faces);
+        if (paletteFull)
+            writeTexCoords();
+    }
+
+    /**
+     * Write the texture coordinates of all atoms with one bulk write, filling the palette with only the colors in use
+     * if it ran full.
+     */
+    private void writeTexCoords() {
+        float[] texCoords = new float[2 * slots.size()];
+        for (int attempt = 0; attempt < 2; attempt++) {
+            boolean paletteFull = false;
+            for (Entry entry : slots) {
+                int index = colorIndex(entry);
+                paletteFull |= index < 0;
+                ColorPalette.writeTexCoord(Math.max(index, 0), texCoords, 2 * entry.slot);
+            }
+            if (!paletteFull)
+                break;
+            // Colors no longer used are only dropped when the palette is filled again
+            palette.clear();
+        }
+        mesh.getTexCoords().setAll(texCoords);
+    }
+
+    /**
+     * Get the palette index of the atom's displayed color.
+     *
+     * @return The index, -1 if the palette is full.
+     */
+    private int colorIndex(Entry entry) {
+        Color color = entry.node.getDisplayedColor();
+        return palette.indexOf(color == null ? Color.LIGHTGRAY : color);
+    }
+
+    /**
+     * Write the faces of the sphere in the given slot, starting at the faces of that slot.
+     */
+    private void writeFaces(int[] faces, int slot) {
+        writeFaces(faces, slot * template.faces.length * 2, slot);
+    }
+
+    /**
+     * Write the faces of the sphere in the given slot into the array from the given index on. All vertices of a sphere
+     * use the slot's texture coordinate, which points at the atom's color.
+     */
+    private void writeFaces(int[] faces, int from, int slot) {
+        int offset = slot * template.vertices;
+        for (int i = 0; i < template.faces.length; i++) {
+            faces[from + 2 * i] = template.faces[i] + offset;
+            faces[from + 2 * i + 1] = slot;
+        }
+    }
+
+    /**
+     * Remove the atom's sphere from the mesh, moving the last sphere and its texture coordinate into the freed slot.
+     * The faces of each slot always reference that slot's vertices and texture coordinate, so only the last sphere's
+     * faces need to be dropped.
+     */
+    private void extract(Entry entry) {
+        int last = slots.size() - 1;
+        if (entry.slot != last) {
+            Entry moved = slots.get(last);
+            mesh.getPoints().copyTo(last * buffer.length, buffer, 0, buffer.length);
+            mesh.getPoints().set(entry.slot * buffer.length, buffer, 0, buffer.length);
+            float[] texCoord = new float[2];
+            mesh.getTexCoords().copyTo(2 * last, texCoord, 0, 2);
+            mesh.getTexCoords().set(2 * entry.slot, texCoord, 0, 2);
+            slots.set(entry.slot, moved);
+            moved.slot = entry.slot;
+        }
+        slots.remove(last);
+        mesh.getPoints().resize(last * buffer.length);
+        mesh.getTexCoords().resize(2 * last);
+        mesh.getFaces().resize(last * template.faces.length * 2);
+        entry.slot = -1;
+    }
+
+    private void writeGeometry(Entry entry) {
+        fillBuffer(entry);
+        mesh.getPoints().set(entry.slot * buffer.length, buffer, 0, buffer.length);
+    }
+
+    /**
+     * Write the atom's sphere into the buffer.
+     */
+    private void fillBuffer(Entry entry) {
+        fillSphere(entry, entry.atom.xCoordinateProperty().get(), entry.atom.yCoordinateProperty().get(),
+                entry.atom.zCoordinateProperty().get(), buffer, 0);
+    }
+
+    /**
+     * Write the atom's sphere at the given position into the array. Hidden atoms collapse to a point.
+     */
+    private void fillSphere(Entry entry, double centerX, double centerY, double centerZ, float[] target, int offset) {
+        float radius = entry.node.isVisible() ?
+                (float) (entry.atom.radiusProperty().get() * radiusScaling.get()) : 0;
+        float x = (float) centerX;
+        float y = (float) centerY;
+        float z = (float) centerZ;
+        float[] unit = template.points;
+        for (int i = 0; i < unit.length; i += 3) {
+            target[offset + i] = x + radius * unit[i];
+            target[offset + i + 1] = y + radius * unit[i + 1];
+            target[offset + i + 2] = z + radius * unit[i + 2];
+        }
+    }
+
+    private static float[] normalize(float[] v) {
+        float length = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        return new float[]{v[0] / length, v[1] / length, v[2] / length};
+    }
+
+    private static int midpoint(List<float[]> vertices, Map<Long, Integer> midpoints, int a, int b) {
+        long key = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+        Integer index = midpoints.get(key);
+        if (index == null) {
+            float[] p = vertices.get(a), q = vertices.get(b);
+            vertices.add(normalize(new float[]{p[0] + q[0], p[1] + q[1], p[2] + q[2]}));
+            index = vertices.size() - 1;
+            midpoints.put(key, index);
+        }
+        return index;
+    }
+}
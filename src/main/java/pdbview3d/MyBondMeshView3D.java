@@ -0,0 +1,495 @@
+package pdbview3d;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.DoubleProperty;
+import javafx.scene.Group;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import javafx.scene.shape.VertexFormat;
+import pdbmodel.Atom;
+import pdbmodel.ColoringEngine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batched representation of all bonds: every bond is written as a prism into one {@link TriangleMesh}, instead of one
+ * {@link MyLine3D} with its own cylinder, material and listeners per bond. The colors are pixels of a
+ * {@link ColorPalette}, each prism using one texture coordinate pointing at its bond's color, so recoloring only
+ * rewrites texture coordinates.
+ * <p>
+ * Changes of the bonded atoms' positions or a bond's visibility only mark the bond dirty, so a bond whose six endpoint
+ * coordinates all change is tessellated once. Dirty prisms and changed colors are written into plain float arrays,
+ * and the mesh is updated from these arrays with one bulk write each, at most once per frame by the
+ * {@link GeometryUpdateScheduler}, however many bonds changed.
+ *
+ * @author Patrick Grupp
+ */
+class MyBondMeshView3D extends Group {
+
+    /**
+     * A bond in the mesh and the slot it occupies there.
+     */
+    private static class Entry {
+        final MyEdgeView3D edge;
+        final Atom source;
+        final Atom target;
+        int slot;
+        InvalidationListener geometryListener;
+        InvalidationListener colorListener;
+
+        /**
+         * Indices of the bonded atoms in the atoms of the frames shown, -1 if they keep their model coordinates.
+         */
+        int sourceIndex = -1;
+        int targetIndex = -1;
+
+        Entry(MyEdgeView3D edge) {
+            this.edge = edge;
+            this.source = edge.getModelEdgeReference().getSource();
+            this.target = edge.getModelEdgeReference().getTarget();
+        }
+    }
+
+    private final TriangleMesh mesh;
+    private final ColorPalette palette;
+    private final Map<MyEdgeView3D, Entry> entries;
+
+    /**
+     * Bonds in the order of their slots.
+     */
+    private final List<Entry> slots;
+
+    /**
+     * Mirrors of the mesh's points and texture coordinates, copied into the mesh when they changed.
+     */
+    private float[] points = new float[0];
+    private float[] texCoords = new float[0];
+    private boolean pointsDirty;
+    private boolean texCoordsDirty;
+
+    /**
+     * Bonds whose prism has to be written again with the next frame.
+     */
+    private final Set<Entry> dirty;
+
+    /**
+     * Whether changes of the bonds' colors are ignored, since they are written as a whole afterwards.
+     */
+    private boolean colorUpdatesPaused;
+
+    /**
+     * Whether the faces do not match the number of sides of the prisms anymore.
+     */
+    private boolean facesStale;
+
+    /**
+     * Copies the mirrors into the mesh, scheduled at most once per frame.
+     */
+    private final Runnable flushUpdate = this::flush;
+
+    /**
+     * Number of sides of a prism, depending on the level of detail.
+     */
+    private int sides;
+
+    /**
+     * Floats of the vertices and ints of the faces of one prism: a ring of vertices at each end, two triangles per
+     * side.
+     */
+    private int prismFloats;
+    private int prismFaceInts;
+
+    private float[] cos;
+    private float[] sin;
+
+    /**
+     * The atoms of the frames shown, null while the model coordinates are shown.
+     */
+    private List<Atom> frameAtoms;
+
+    /**
+     * Construct an empty bond mesh.
+     *
+     * @param radiusScaling The scaling factor of the bonds' radius, all bonds are rewritten when it changes.
+     */
+    MyBondMeshView3D(DoubleProperty radiusScaling) {
+        mesh = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
+        palette = new ColorPalette();
+        MeshView view = new MeshView(mesh);
+        view.setMaterial(palette.getMaterial());
+        getChildren().add(view);
+        entries = new HashMap<>();
+        slots = new ArrayList<>();
+        dirty = new LinkedHashSet<>();
+        setSides(LevelOfDetail.Level.HIGH.getPrismSides());
+        radiusScaling.addListener(observable -> {
+            dirty.addAll(slots);
+            GeometryUpdateScheduler.schedule(flushUpdate);
+        });
+        // Bonds never catch clicks meant for the atoms, like the single bond views do not handle them either
+        setMouseTransparent(true);
+    }
+
+    /**
+     * Add a bond to the mesh.
+     *
+     * @param edge The edge view of the bond, providing radius, color and visibility.
+     */
+    void addBond(MyEdgeView3D edge) {
+        Entry entry = new Entry(edge);
+        entries.put(edge, entry);
+        // Look up the frame indices again on the next frame
+        frameAtoms = null;
+        entry.slot = slots.size();
+        slots.add(entry);
+        if (points.length < slots.size() * prismFloats) {
+            int capacity = Math.max(64, 2 * points.length / prismFloats);
+            points = Arrays.copyOf(points, capacity * prismFloats);
+            texCoords = Arrays.copyOf(texCoords, 2 * capacity);
+        }
+        writeGeometry(entry);
+        writeColor(entry);
+
+        entry.geometryListener = observable -> {
+            dirty.add(entry);
+            GeometryUpdateScheduler.schedule(flushUpdate);
+        };
+        entry.colorListener = observable -> {
+            if (!colorUpdatesPaused)
+                writeColor(entry);
+        };
+        for (Atom atom : new Atom[]{entry.source, entry.target}) {
+            atom.xCoordinateProperty().addListener(entry.geometryListener);
+            atom.yCoordinateProperty().addListener(entry.geometryListener);
+            atom.zCoordinateProperty().addListener(entry.geometryListener);
+        }
+        edge.visibleProperty().addListener(entry.geometryListener);
+        edge.displayedColorProperty().addListener(entry.colorListener);
+    }
+
+    /**
+     * Remove a bond from the mesh.
+     *
+     * @param edge The edge view of the bond to be removed.
+     */
+    void removeBond(MyEdgeView3D edge) {
+        Entry entry = entries.remove(edge);
+        if (entry == null)
+            return;
+        removeListeners(entry);
+        dirty.remove(entry);
+        extract(entry);
+    }
+
+    /**
+     * Remove all bonds.
+     */
+    void clear() {
+        entries.values().forEach(this::removeListeners);
+        entries.clear();
+        slots.clear();
+        dirty.clear();
+        frameAtoms = null;
+        points = new float[0];
+        texCoords = new float[0];
+        palette.clear();
+        mesh.getPoints().clear();
+        mesh.getTexCoords().clear();
+        mesh.getFaces().clear();
+        pointsDirty = texCoordsDirty = false;
+    }
+
+    private void removeListeners(Entry entry) {
+        for (Atom atom : new Atom[]{entry.source, entry.target}) {
+            atom.xCoordinateProperty().removeListener(entry.geometryListener);
+            atom.yCoordinateProperty().removeListener(entry.geometryListener);
+            atom.zCoordinateProperty().removeListener(entry.geometryListener);
+        }
+        entry.edge.visibleProperty().removeListener(entry.geometryListener);
+        entry.edge.displayedColorProperty().removeListener(entry.colorListener);
+    }
+
+    /**
+     * Tessellate all bonds according to the given level of detail.
+     *
+     * @param level The level of detail.
+     */
+    void setLevelOfDetail(LevelOfDetail.Level level) {
+        if (level.getPrismSides() == sides)
+            return;
+        int capacity = points.length / prismFloats;
+        setSides(level.getPrismSides());
+        points = new float[capacity * prismFloats];
+        facesStale = true;
+        dirty.addAll(slots);
+        GeometryUpdateScheduler.schedule(flushUpdate);
+    }
+
+    private void setSides(int sides) {
+        this.sides = sides;
+        prismFloats = 2 * sides * 3;
+        prismFaceInts = 2 * sides * 6;
+        cos = new float[sides];
+        sin = new float[sides];
+        for (int k = 0; k < sides; k++) {
+            cos[k] = (float) Math.cos(2 * Math.PI * k / sides);
+            sin[k] = (float) Math.sin(2 * Math.PI * k / sides);
+        }
+    }
+
+    /**
+     * Draw the bonds between the given positions of their atoms instead of the model coordinates, e.g. while playing
+     * the models of an ensemble. The atoms' properties are not touched, and the mesh is rewritten with one bulk write
+     * right away.
+     *
+     * @param atoms     The atoms, in the order of the positions. Pass the same list for every frame.
+     * @param positions Position of each atom, x, y and z consecutively.
+     */
+    void showFrame(List<Atom> atoms, double[] positions) {
+        if (atoms != frameAtoms) {
+            frameAtoms = atoms;
+            Map<Atom, Integer> indices = new HashMap<>();
+            for (int i = 0; i < atoms.size(); i++) {
+                indices.put(atoms.get(i), i);
+            }
+            for (Entry entry : slots) {
+                entry.sourceIndex = indices.getOrDefault(entry.source, -1);
+                entry.targetIndex = indices.getOrDefault(entry.target, -1);
+            }
+        }
+        // Every prism is written below
+        dirty.clear();
+        for (Entry entry : slots) {
+            if (entry.sourceIndex < 0 || entry.targetIndex < 0) {
+                writeGeometry(entry);
+                continue;
+            }
+            int s = 3 * entry.sourceIndex, t = 3 * entry.targetIndex;
+            writePrism(entry, positions[s], positions[s + 1], positions[s + 2], positions[t], positions[t + 1],
+                    positions[t + 2]);
+        }
+        flush();
+    }
+
+    /**
+     * Draw the bonds at their atoms' model coordinates again, after frames were shown.
+     */
+    void endFrames() {
+        frameAtoms = null;
+        for (Entry entry : slots) {
+            entry.sourceIndex = entry.targetIndex = -1;
+        }
+        dirty.addAll(slots);
+        GeometryUpdateScheduler.schedule(flushUpdate);
+    }
+
+    /**
+     * Ignore changes of the bonds' colors, e.g. while a coloring sets the colors of all bonds, which are then passed
+     * to {@link #writeColors(List, int[])}.
+     *
+     * @param paused True to ignore color changes, false to follow them again.
+     */
+    void pauseColorUpdates(boolean paused) {
+        colorUpdatesPaused = paused;
+    }
+
+    /**
+     * Write the colors of the given bonds into the texture coordinates, looking up each distinct color in the palette
+     * once. Highlighted bonds keep the highlight color.
+     *
+     * @param edges The edge views of the bonds, their colors already being set to the given colors. Edges not in the
+     *              mesh and null are skipped.
+     * @param argb  ARGB color of each bond.
+     */
+    void writeColors(List<MyEdgeView3D> edges, int[] argb) {
+        Map<Integer, Integer> indices = new HashMap<>();
+        for (int b = 0; b < edges.size(); b++) {
+            Entry entry = entries.get(edges.get(b));
+            if (entry == null)
+                continue;
+            if (!entry.edge.showsOwnColor()) {
+                writeColor(entry);
+                continue;
+            }
+            int index = indices.computeIfAbsent(argb[b], color -> palette.indexOf(ColoringEngine.toColor(color)));
+            if (index < 0) {
+                // Refills the palette with the colors in use
+                writeColor(entry);
+                indices.clear();
+                continue;
+            }
+            ColorPalette.writeTexCoord(index, texCoords, 2 * entry.slot);
+        }
+        markDirty(false);
+    }
+
+    /**
+     * Point the bond's texture coordinate at its displayed color.
+     */
+    private void writeColor(Entry entry) {
+        int index = palette.indexOf(entry.edge.displayedColorProperty().getValue());
+        if (index < 0) {
+            // The palette is full, so it is filled with the colors still in use again
+            palette.clear();
+            for (Entry other : slots) {
+                ColorPalette.writeTexCoord(Math.max(0, palette.indexOf(other.edge.displayedColorProperty().getValue())),
+                        texCoords, 2 * other.slot);
+            }
+        } else {
+            ColorPalette.writeTexCoord(index, texCoords, 2 * entry.slot);
+        }
+        markDirty(false);
+    }
+
+    /**
+     * Remove the bond's prism from the mesh, moving the last prism and its texture coordinate into the freed slot.
+     */
+    private void extract(Entry entry) {
+        int last = slots.size() - 1;
+        if (entry.slot != last) {
+            Entry moved = slots.get(last);
+            System.arraycopy(points, last * prismFloats, points, entry.slot * prismFloats, prismFloats);
+            System.arraycopy(texCoords, 2 * last, texCoords, 2 * entry.slot, 2);
+            slots.set(entry.slot, moved);
+            moved.slot = entry.slot;
+        }
+        slots.remove(last);
+        markDirty(true);
+        markDirty(false);
+    }
+
+    /**
+     * Write the prism of the bond into the points.
+     */
+    private void writeGeometry(Entry entry) {
+        writePrism(entry, entry.source.xCoordinateProperty().get(), entry.source.yCoordinateProperty().get(),
+                entry.source.zCoordinateProperty().get(), entry.target.xCoordinateProperty().get(),
+                entry.target.yCoordinateProperty().get(), entry.target.zCoordinateProperty().get());
+    }
+
+    /**
+     * Write the prism of the bond between the given positions into the points. Hidden bonds collapse to a line.
+     */
+    private void writePrism(Entry entry, double x1, double y1, double z1, double x2, double y2, double z2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double dz = z2 - z1;
+        double radius = entry.edge.isVisible() ? entry.edge.radiusProperty().get() : 0;
+
+        // Two unit vectors perpendicular to the bond, starting from the axis least aligned with it
+        double ux, uy, uz;
+        if (Math.abs(dx) <= Math.abs(dy) && Math.abs(dx) <= Math.abs(dz)) {
+            ux = 0;
+            uy = dz;
+            uz = -dy;
+        } else if (Math.abs(dy) <= Math.abs(dz)) {
+            ux = -dz;
+            uy = 0;
+            uz = dx;
+        } else {
+            ux = dy;
+            uy = -dx;
+            uz = 0;
+        }
+        double uLength = Math.sqrt(ux * ux + uy * uy + uz * uz);
+        if (uLength == 0) {
+            // Both atoms at the same position, nothing to show
+            radius = 0;
+            uLength = 1;
+        }
+        ux /= uLength;
+        uy /= uLength;
+        uz /= uLength;
+        double vx = dy * uz - dz * uy, vy = dz * ux - dx * uz, vz = dx * uy - dy * ux;
+        double vLength = Math.sqrt(vx * vx + vy * vy + vz * vz);
+        if (vLength > 0) {
+            vx /= vLength;
+            vy /= vLength;
+            vz /= vLength;
+        }
+
+        int p = entry.slot * prismFloats;
+        for (int k = 0; k < sides; k++) {
+            double ox = radius * (cos[k] * ux + sin[k] * vx);
+            double oy = radius * (cos[k] * uy + sin[k] * vy);
+            double oz = radius * (cos[k] * uz + sin[k] * vz);
+            int start = p + 3 * k, end = p + 3 * (k + sides);
+            points[start] = (float) (x1 + ox);
+            points[start + 1] = (float) (y1 + oy);
+            points[start + 2] = (float) (z1 + oz);
+            points[end] = (float) (x1 + dx + ox);
+            points[end + 1] = (float) (y1 + dy + oy);
+            points[end + 2] = (float) (z1 + dz + oz);
+        }
+        markDirty(true);
+    }
+
+    /**
+     * Mark the points or the texture coordinates to be copied into the mesh with the next frame.
+     */
+    private void markDirty(boolean geometry) {
+        if (geometry)
+            pointsDirty = true;
+        else
+            texCoordsDirty = true;
+        GeometryUpdateScheduler.schedule(flushUpdate);
+    }
+
+    /**
+     * Write the prisms of the dirty bonds, then copy the changed mirrors into the mesh and adapt the faces to the
+     * number of prisms.
+     */
+    private void flush() {
+        dirty.forEach(this::writeGeometry);
+        dirty.clear();
+        int count = slots.size();
+        if (pointsDirty) {
+            pointsDirty = false;
+            mesh.getPoints().setAll(points, 0, count * prismFloats);
+        }
+        if (texCoordsDirty) {
+            texCoordsDirty = false;
+            mesh.getTexCoords().setAll(texCoords, 0, 2 * count);
+        }
+        if (facesStale) {
+            facesStale = false;
+            mesh.getFaces().clear();
+        }
+        int faceCount = mesh.getFaces().size() / prismFaceInts;
+        if (faceCount > count) {
+            mesh.getFaces().resize(count * prismFaceInts);
+        } else if (faceCount < count) {
+            // Faces of a slot always reference that slot's vertices and texture coordinate, so only new slots need
+            // faces
+            int[] faces = new int[(count - faceCount) * prismFaceInts];
+            for (int slot = faceCount; slot < count; slot++) {
+                writeFaces(faces, (slot - faceCount) * prismFaceInts, slot);
+            }
+            mesh.getFaces().addAll(faces);
+        }
+    }
+
+    /**
+     * Write the side faces of the prism in the given slot.
+     */
+    private void writeFaces(int[] faces, int f, int slot) {
+        int offset = slot * 2 * sides;
+        for (int k = 0; k < sides; k++) {
+            int a = offset + k, b = offset + (k + 1) % sides;
+            int c = a + sides, d = b + sides;
+            int[] corners = {a, b, d, a, d, c};
+            for (int corner : corners) {
+                faces[f] = corner;
+                faces[f + 1] = slot;
+                f += 2;
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package pdbview3d;
+
+import javafx.scene.paint.Color;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.DrawMode;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import javafx.scene.shape.VertexFormat;
+import pdbmodel.Atom;
+import pdbmodel.Clash;
+
+import java.util.List;
+
+/**
+ * Shows steric clashes as lines between the clashing atoms. All lines are part of one single mesh drawn as
+ * wireframe, so any number of clashes costs one node in the scene graph.
+ */
+class MyClashView3D extends MeshView {
+
+    /**
+     * Width of the sliver triangle drawn for each line, in view coordinates.
+     */
+    private static final float LINE_WIDTH = 0.5f;
+
+    private final TriangleMesh mesh;
+
+    MyClashView3D() {
+        mesh = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
+        mesh.getTexCoords().addAll(0, 0);
+        setMesh(mesh);
+        setDrawMode(DrawMode.LINE);
+        setCullFace(CullFace.NONE);
+        setMaterial(MaterialRegistry.get(Color.MAGENTA));
+        // The lines should never catch clicks meant for the atoms
+        setMouseTransparent(true);
+    }
+
+    /**
+     * Replace the shown clashes.
+     *
+     * @param clashes The clashes to be shown, an empty list shows none.
+     */
+    void setClashes(List<Clash> clashes) {
+        // Each line is a thin triangle from the first atom to the second and back, slightly shifted. This always
+        // rasterizes, unlike a degenerate triangle with two equal corners.
+        float[] points = new float[clashes.size() * 9];
+        int[] faces = new int[clashes.size() * 6];
+        int p = 0;
+        int f = 0;
+        for (int c = 0; c < clashes.size(); c++) {
+            Atom first = clashes.get(c).getFirst();
+            Atom second = clashes.get(c).getSecond();
+            float x1 = (float) first.xCoordinateProperty().get();
+            float y1 = (float) first.yCoordinateProperty().get();
+            float z1 = (float) first.zCoordinateProperty().get();
+            points[p++] = x1;
+            points[p++] = y1;
+            points[p++] = z1;
+            points[p++] = (float) second.xCoordinateProperty().get();
+            points[p++] = (float) second.yCoordinateProperty().get();
+            points[p++] = (float) second.zCoordinateProperty().get();
+            points[p++] = x1 + LINE_WIDTH;
+            points[p++] = y1 + LINE_WIDTH;
+            points[p++] = z1;
+            faces[f++] = 3 * c;
+            faces[f++] = 0;
+            faces[f++] = 3 * c + 1;
+            faces[f++] = 0;
+            faces[f++] = 3 * c + 2;
+            faces[f++] = 0;
+        }
+        mesh.getPoints().setAll(points);
+        mesh.getFaces().setAll(faces);
+    }
+}
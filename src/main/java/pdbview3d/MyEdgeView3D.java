@@ -2,10 +2,13 @@ package pdbview3d;
 
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.value.ObservableValue;
 import javafx.scene.Group;
 import javafx.scene.paint.Color;
+import pdbmodel.Atom;
 import pdbmodel.Bond;
 
 /**
@@ -18,9 +21,12 @@ public class MyEdgeView3D extends Group {
     private MyLine3D line;
     private DoubleProperty radius;
     private ObjectProperty<Color> color;
+    private boolean highlighted;
+    private ReadOnlyObjectWrapper<Color> displayedColor;
     private Bond modelEdgeReference;
     private MyNodeView3D source;
     private MyNodeView3D target;
+    private int divisions;
 
     /**
      * Constructor
@@ -29,25 +35,61 @@ public class MyEdgeView3D extends Group {
      * @param source        The Source node
      * @param target        The Target node
      * @param radiusScaling The scaling factor with which the radius will be scaled.
+     * @param showLine      Whether the edge draws its own line. Edges drawn batched by {@link MyBondMeshView3D}
+     *                      do not need one.
+     * @param divisions     Divisions of the line's cylinder, see {@link LevelOfDetail}.
      */
-    MyEdgeView3D(Bond reference, MyNodeView3D source, MyNodeView3D target, DoubleProperty radiusScaling) {
+    MyEdgeView3D(Bond reference, MyNodeView3D source, MyNodeView3D target, DoubleProperty radiusScaling,
+                 boolean showLine, int divisions) {
 
         this.modelEdgeReference = reference;
         this.source = source;
         this.target = target;
         // color for this edge
         this.color = new SimpleObjectProperty<>(Color.LIGHTGRAY);
+        this.displayedColor = new ReadOnlyObjectWrapper<>(Color.LIGHTGRAY);
+        // Set directly instead of through a binding, so recoloring an edge only notifies the line or mesh once
+        color.addListener(observable -> updateDisplayedColor());
         this.radius = new SimpleDoubleProperty();
         radius.bind(radiusScaling.multiply(3));
+        this.divisions = divisions;
 
-        // Bind line start point to source node's start coordinates
-        // Bind line to end/target nodes coordinates
-        line = new MyLine3D(source.translateXProperty(), source.translateYProperty(), source.translateZProperty(),
-                target.translateXProperty(), target.translateYProperty(), target.translateZProperty(),
-                radius, color);
+        setLineShown(showLine);
+    }
+
+    /**
+     * Create or drop the edge's own line.
+     *
+     * @param shown Create the line if true, else drop it.
+     */
+    void setLineShown(boolean shown) {
+        if (shown && line == null) {
+            // Bind line start point to source atom's coordinates and the end point to the target atom's, since
+            // batched nodes are not placed themselves
+            Atom start = modelEdgeReference.getSource();
+            Atom end = modelEdgeReference.getTarget();
+            line = new MyLine3D(start.xCoordinateProperty(), start.yCoordinateProperty(), start.zCoordinateProperty(),
+                    end.xCoordinateProperty(), end.yCoordinateProperty(), end.zCoordinateProperty(),
+                    radius, displayedColor.getReadOnlyProperty(), divisions);
+
+            // Add line to scene graph/ this group
+            this.getChildren().add(line);
+        } else if (!shown && line != null) {
+            this.getChildren().remove(line);
+            line.dispose();
+            line = null;
+        }
+    }
 
-        // Add line to scene graph/ this group
-        this.getChildren().add(line);
+    /**
+     * Set the divisions of the line's cylinder, also used when the line is created later.
+     *
+     * @param divisions Divisions of the cylinder, see {@link LevelOfDetail}.
+     */
+    void setDivisions(int divisions) {
+        this.divisions = divisions;
+        if (line != null)
+            line.setDivisions(divisions);
     }
 
     /**
@@ -77,6 +119,38 @@ public class MyEdgeView3D extends Group {
         return this.color;
     }
 
+    /**
+     * Get the color the edge is shown in: the highlight color if it is highlighted, else its color.
+     *
+     * @return Shown color of the edge.
+     */
+    ObservableValue<Color> displayedColorProperty() {
+        return this.displayedColor.getReadOnlyProperty();
+    }
+
+    /**
+     * Show the edge in the highlight color instead of its color.
+     *
+     * @param highlighted Whether the edge is highlighted.
+     */
+    void setHighlighted(boolean highlighted) {
+        this.highlighted = highlighted;
+        updateDisplayedColor();
+    }
+
+    /**
+     * Check whether the edge is shown in its own color, i.e. is not highlighted.
+     *
+     * @return True if the displayed color is the edge's color.
+     */
+    boolean showsOwnColor() {
+        return !highlighted;
+    }
+
+    private void updateDisplayedColor() {
+        displayedColor.set(highlighted ? MyNodeView3D.HIGHLIGHT_COLOR : color.get());
+    }
+
     /**
      * Get the view's source node.
      *
@@ -98,7 +172,7 @@ public class MyEdgeView3D extends Group {
     /**
      * Get the edge's line shape.
      *
-     * @return The line of the edge.
+     * @return The line of the edge, null if the edge is drawn batched.
      */
     public MyLine3D getLine() {
         return this.line;
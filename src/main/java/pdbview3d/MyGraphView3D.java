@@ -1,20 +1,35 @@
 package pdbview3d;
 
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
 import pdbmodel.Atom;
 import pdbmodel.Bond;
+import pdbmodel.Clash;
+import pdbmodel.ColoringEngine;
+import pdbmodel.MolecularSurface;
 import javafx.scene.Group;
 import javafx.scene.Node;
+import javafx.geometry.Point3D;
 import pdbmodel.Residue;
 import pdbmodel.SecondaryStructure;
-import view.Presenter;
+import pdbmodel.SolventAccessibility;
+import pdbmodel.VisibilityMasks;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -43,6 +58,88 @@ public class MyGraphView3D extends Group {
      */
     private Group secondaryStructureViewGroup;
 
+    /**
+     * Lines between clashing atoms, all in one mesh.
+     */
+    private MyClashView3D clashView;
+
+    /**
+     * Holds the molecular surface, if one is shown. Can ONLY contain objects of type {@link MySurfaceView3D}.
+     */
+    private Group surfaceViewGroup;
+
+    /**
+     * All atoms merged into one mesh, colored through a palette texture. Only used in batched mode.
+     */
+    private MyAtomMeshView3D atomMeshView;
+
+    /**
+     * Property indicating if atoms are drawn batched into meshes instead of as one sphere node each.
+     */
+    private BooleanProperty batchedAtoms;
+
+    /**
+     * Whether the atoms were hidden by {@link #hideNodes(boolean)}.
+     */
+    private boolean nodesHidden;
+
+    /**
+     * Whether the bonds were hidden by {@link #hideEdges(boolean)}.
+     */
+    private boolean edgesHidden;
+
+    /**
+     * C alpha trace and atom quads shown instead of atoms and bonds for very large structures.
+     */
+    private MyTraceView3D traceView;
+
+    /**
+     * Property indicating if the lightweight trace is shown instead of the atoms and bonds.
+     */
+    private BooleanProperty lightweight;
+
+    /**
+     * Property indicating if the lightweight trace shows the atoms as quads besides the C alpha trace.
+     */
+    private BooleanProperty lightweightAtoms;
+
+    /**
+     * All bonds merged into one mesh, colored through a palette texture. Only used in batched mode.
+     */
+    private MyBondMeshView3D bondMeshView;
+
+    /**
+     * Property indicating if bonds are drawn batched into meshes instead of as one cylinder node each.
+     */
+    private BooleanProperty batchedBonds;
+
+    /**
+     * Residues to be highlighted, applied with the next frame, and the atoms and bonds currently highlighted.
+     */
+    private List<Residue> highlightedResidues;
+    private Set<MyNodeView3D> highlightedNodes;
+    private Set<MyEdgeView3D> highlightedEdges;
+
+    /**
+     * Applies the highlighted residues, scheduled at most once per frame however often they changed.
+     */
+    private final Runnable highlightUpdate = this::applyHighlight;
+
+    /**
+     * Finds the atom under the mouse cursor.
+     */
+    private AtomPicker atomPicker;
+
+    /**
+     * Tessellation of atoms and bonds.
+     */
+    private ObjectProperty<LevelOfDetail.Level> levelOfDetail;
+
+    /**
+     * Number of shades used to show the solvent accessibility of atoms.
+     */
+    private static final int ACCESSIBILITY_SHADES = 10;
+
     /**
      * Maps model to view of nodes.
      */
@@ -54,19 +151,47 @@ public class MyGraphView3D extends Group {
     private Map<Bond, MyEdgeView3D> modelToEdge;
 
     /**
-     * Maps model residues to view residues.
+     * Colors of bonds recolored before their view was built, e.g. by the progressive scene builder. Applied when the
+     * view is added.
      */
-    private Map<Residue, MyRibbonView3D> modelToResidue;
+    private Map<Bond, Color> pendingBondColors;
 
     /**
-     * Maps model SecondaryStructures to view's secondary structures {@link MySecondaryStructureView3D}.
+     * Material overrides of atoms whose view was not built yet when the overrides were shown. Applied when the view
+     * is added.
      */
-    private Map<SecondaryStructure, MySecondaryStructureView3D> modelToStructure;
+    private Map<Atom, PhongMaterial> pendingMaterialOverrides;
 
     /**
-     * The presenter to be called for queries.
+     * Residues of the ribbon, in the order of the chain.
      */
-    private Presenter presenter;
+    private List<Residue> ribbonResidues;
+
+    /**
+     * Whether the ribbon does not match the residues anymore and has to be rebuilt before it is shown.
+     */
+    private boolean ribbonStale;
+
+    /**
+     * Rebuilds the ribbon, scheduled at most once per frame however many residues were added or removed.
+     */
+    private final Runnable ribbonUpdate = this::rebuildRibbon;
+
+    /**
+     * Property holding the number of spline segments of the ribbon between two residues.
+     */
+    private IntegerProperty ribbonSubdivisions;
+
+    /**
+     * Largest distance of two consecutive C alpha atoms within a chain, 4.2 Angstrom at the model's scale. Consecutive
+     * residues further apart are not connected by the ribbon.
+     */
+    static final double MAX_C_ALPHA_DISTANCE = 84;
+
+    /**
+     * Maps model SecondaryStructures to view's secondary structures {@link MySecondaryStructureView3D}.
+     */
+    private Map<SecondaryStructure, MySecondaryStructureView3D> modelToStructure;
 
     /**
      * Property determining the radius of the bonds.
@@ -81,30 +206,86 @@ public class MyGraphView3D extends Group {
     /**
      * Constructor for the graph representation in the view. The model needs to make sure, that all nodes represented
      * by its edges are already persisted in the model. otherwise this will produce errors.
-     *
-     * @param presenter The view presenter
      */
-    public MyGraphView3D(Presenter presenter) {
-        this.presenter = presenter;
+    public MyGraphView3D() {
         modelToNode = new HashMap<>();
         modelToEdge = new HashMap<>();
-        modelToResidue = new HashMap<>();
+        pendingBondColors = new HashMap<>();
+        pendingMaterialOverrides = new HashMap<>();
+        ribbonResidues = new ArrayList<>();
+        ribbonSubdivisions = new SimpleIntegerProperty(8);
+        ribbonSubdivisions.addListener(observable -> markRibbonStale());
         modelToStructure = new HashMap<>();
         nodeViewGroup = new Group();
         edgeViewGroup = new Group();
         residueViewGroup = new Group();
         secondaryStructureViewGroup = new Group();
+        clashView = new MyClashView3D();
+        surfaceViewGroup = new Group();
         this.bondRadiusScaling = new SimpleDoubleProperty(1);
         this.atomRadiusScaling = new SimpleDoubleProperty(1);
+        atomMeshView = new MyAtomMeshView3D(atomRadiusScaling);
+        traceView = new MyTraceView3D(atomRadiusScaling);
+        lightweight = new SimpleBooleanProperty(false);
+        lightweight.addListener(observable -> {
+            updateNodeVisibility();
+            updateEdgeVisibility();
+        });
+        lightweightAtoms = new SimpleBooleanProperty(true);
+        lightweightAtoms.addListener(observable -> updateNodeVisibility());
+        atomPicker = new AtomPicker(atomRadiusScaling);
+        highlightedResidues = new ArrayList<>();
+        highlightedNodes = new HashSet<>();
+        highlightedEdges = new HashSet<>();
+        batchedAtoms = new SimpleBooleanProperty(false);
+        levelOfDetail = new SimpleObjectProperty<>(LevelOfDetail.Level.HIGH);
+        batchedAtoms.addListener((observable, oldValue, batched) -> {
+            // Batched nodes drop their own spheres, which are created again with the current divisions
+            modelToNode.values().forEach(node -> node.setSphereShown(!batched));
+            if (batched)
+                modelToNode.values().forEach(node -> atomMeshView.addAtom(node));
+            else
+                atomMeshView.clear();
+            updateNodeVisibility();
+        });
+        bondMeshView = new MyBondMeshView3D(bondRadiusScaling);
+        batchedBonds = new SimpleBooleanProperty(false);
+        batchedBonds.addListener((observable, oldValue, batched) -> {
+            for (MyEdgeView3D edge : modelToEdge.values()) {
+                edge.setLineShown(!batched);
+                if (batched)
+                    bondMeshView.addBond(edge);
+            }
+            if (!batched)
+                bondMeshView.clear();
+        });
+        levelOfDetail.addListener((observable, oldValue, level) -> {
+            atomMeshView.setLevelOfDetail(level);
+            bondMeshView.setLevelOfDetail(level);
+            // Batched nodes only store the divisions for when their sphere is created
+            modelToNode.values().forEach(node -> node.setDivisions(level.getSphereDivisions()));
+            // Batched edges only store the divisions for when their line is created
+            modelToEdge.values().forEach(edge -> edge.setDivisions(level.getCylinderDivisions()));
+        });
 
         this.getChildren().add(edgeViewGroup);
+        this.getChildren().add(bondMeshView);
         this.getChildren().add(nodeViewGroup);
+        this.getChildren().add(atomMeshView);
+        this.getChildren().add(traceView);
         this.getChildren().add(residueViewGroup);
         this.getChildren().add(secondaryStructureViewGroup);
+        this.getChildren().add(clashView);
+        // Added last, so the atoms inside are drawn before the surface
+        this.getChildren().add(surfaceViewGroup);
+
+        // Atoms are picked by the atom picker, so JavaFX does not need to pick through all shapes on mouse events
+        setMouseTransparent(true);
 
         // Make invisible on startup
         residueViewGroup.setVisible(false);
         secondaryStructureViewGroup.setVisible(false);
+        updateNodeVisibility();
     }
 
     /**
@@ -114,13 +295,21 @@ public class MyGraphView3D extends Group {
      */
     public void addNode(Atom atom) {
         // Create new view node
-        MyNodeView3D node = new MyNodeView3D(atom, this.atomRadiusScaling);
-        // Set up the view logic in the presenter for this node.
-        presenter.setUpNodeView(node);
+        MyNodeView3D node = new MyNodeView3D(atom, this.atomRadiusScaling,
+                levelOfDetail.get().getSphereDivisions(), !batchedAtoms.get());
         // Add the node to the scene graph
         nodeViewGroup.getChildren().add(node);
         // Add to mapping for later use
         modelToNode.put(atom, node);
+        atomPicker.add(node);
+        PhongMaterial override = pendingMaterialOverrides.remove(atom);
+        if (override != null)
+            node.setMaterialOverride(override);
+        if (batchedAtoms.get())
+            atomMeshView.addAtom(node);
+        // The node may belong to a highlighted residue, whose other views were built earlier
+        if (!highlightedResidues.isEmpty())
+            GeometryUpdateScheduler.schedule(highlightUpdate);
     }
 
     /**
@@ -135,6 +324,10 @@ public class MyGraphView3D extends Group {
             MyNodeView3D current = modelToNode.get(atom);
             nodeViewGroup.getChildren().remove(current);
             modelToNode.remove(atom);
+            atomPicker.remove(current);
+            highlightedNodes.remove(current);
+            atomMeshView.removeAtom(atom);
+            pendingMaterialOverrides.remove(atom);
         } else
             System.err.println("Error in node removal, list size is not equal to 1.");
 
@@ -157,10 +350,18 @@ public class MyGraphView3D extends Group {
         // source and target nodes found? then add the edge. else print an error
         if (source != null && target != null) {
             // Create new view edge
-            MyEdgeView3D tmp = new MyEdgeView3D(bond, source, target, this.bondRadiusScaling);
+            MyEdgeView3D tmp = new MyEdgeView3D(bond, source, target, this.bondRadiusScaling, !batchedBonds.get(),
+                    levelOfDetail.get().getCylinderDivisions());
             // Add edge to the scene graph
+            Color color = pendingBondColors.remove(bond);
+            if (color != null)
+                tmp.colorProperty().setValue(color);
             edgeViewGroup.getChildren().add(tmp);
             modelToEdge.put(bond, tmp);
+            if (batchedBonds.get())
+                bondMeshView.addBond(tmp);
+            if (!highlightedResidues.isEmpty())
+                GeometryUpdateScheduler.schedule(highlightUpdate);
         } else {
             System.err.println("Source or target node not found, could not create view edge.");
         }
@@ -177,6 +378,11 @@ public class MyGraphView3D extends Group {
         // Remove the found one -> should only be one
         edgeViewGroup.getChildren().remove(toBeRemoved);
         modelToEdge.remove(bond);
+        pendingBondColors.remove(bond);
+        if (toBeRemoved != null) {
+            highlightedEdges.remove(toBeRemoved);
+            bondMeshView.removeBond(toBeRemoved);
+        }
     }
 
     /**
@@ -184,9 +390,8 @@ public class MyGraphView3D extends Group {
      * @param residue Residue to be added to the continuous ribbon.
      */
     public void addResidue(Residue residue){
-        MyRibbonView3D ribbon = new MyRibbonView3D(residue);
-        residueViewGroup.getChildren().add(ribbon);
-        modelToResidue.put(residue, ribbon);
+        ribbonResidues.add(residue);
+        markRibbonStale();
     }
 
     /**
@@ -194,9 +399,56 @@ public class MyGraphView3D extends Group {
      * @param residue Residue to be removed.
      */
     public void removeResidue(Residue residue){
-        MyRibbonView3D ribbonToRemove = modelToResidue.get(residue);
-        residueViewGroup.getChildren().remove(ribbonToRemove);
-        modelToResidue.remove(residue);
+        ribbonResidues.remove(residue);
+        markRibbonStale();
+    }
+
+    /**
+     * Property holding the number of spline segments of the ribbon between two consecutive residues.
+     * @return Property holding the ribbon's subdivisions.
+     */
+    public IntegerProperty ribbonSubdivisionsProperty(){
+        return ribbonSubdivisions;
+    }
+
+    /**
+     * Mark the ribbon as outdated. A shown ribbon is rebuilt on the next frame, a hidden one when it is shown again.
+     */
+    private void markRibbonStale(){
+        ribbonStale = true;
+        if (residueViewGroup.isVisible())
+            GeometryUpdateScheduler.schedule(ribbonUpdate);
+    }
+
+    /**
+     * Rebuild the ribbon with one mesh per chain. Chains are split where consecutive C alpha atoms are too far apart
+     * to be bonded.
+     */
+    private void rebuildRibbon(){
+        if (!ribbonStale)
+            return;
+        ribbonStale = false;
+        List<MyRibbonView3D> ribbons = new ArrayList<>();
+        List<Residue> chain = new ArrayList<>();
+        for (Residue residue : ribbonResidues) {
+            if (!chain.isEmpty() && distance(chain.get(chain.size() - 1).getCAlphaAtom(),
+                    residue.getCAlphaAtom()) > MAX_C_ALPHA_DISTANCE) {
+                if (chain.size() > 1)
+                    ribbons.add(new MyRibbonView3D(chain, ribbonSubdivisions.get()));
+                chain = new ArrayList<>();
+            }
+            chain.add(residue);
+        }
+        if (chain.size() > 1)
+            ribbons.add(new MyRibbonView3D(chain, ribbonSubdivisions.get()));
+        residueViewGroup.getChildren().setAll(ribbons);
+    }
+
+    private static double distance(Atom a, Atom b){
+        double dx = a.xCoordinateProperty().get() - b.xCoordinateProperty().get();
+        double dy = a.yCoordinateProperty().get() - b.yCoordinateProperty().get();
+        double dz = a.zCoordinateProperty().get() - b.zCoordinateProperty().get();
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
     }
 
     /**
@@ -221,6 +473,25 @@ public class MyGraphView3D extends Group {
         modelToStructure.remove(structure);
     }
 
+    /**
+     * Compute the ribbon, the beta sheets and the lightweight trace again from the atoms' current positions, after all
+     * atoms were moved at once, e.g. to the model shown when ensemble playback paused. Helices follow the atoms by
+     * themselves.
+     */
+    public void updateStructureGeometry() {
+        traceView.updateCoordinates();
+        markRibbonStale();
+        for (Map.Entry<SecondaryStructure, MySecondaryStructureView3D> entry : modelToStructure.entrySet()) {
+            if (!entry.getKey().getSecondaryStructureType().equals(SecondaryStructure.StructureType.betasheet))
+                continue;
+            // The sheet's geometry was computed from the positions taken when its view was created
+            MySecondaryStructureView3D replacement = new MySecondaryStructureView3D(entry.getKey());
+            List<Node> children = secondaryStructureViewGroup.getChildren();
+            children.set(children.indexOf(entry.getValue()), replacement);
+            entry.setValue(replacement);
+        }
+    }
+
     /**
      * Get all node views.
      *
@@ -253,6 +524,61 @@ public class MyGraphView3D extends Group {
         return modelToNode.get(atom);
     }
 
+    /**
+     * Draw the atoms and bonds at the given positions instead of their model coordinates, e.g. while playing the
+     * models of an ensemble. Only the batched meshes and the lightweight trace follow the frames, each rewritten with
+     * one bulk write, so the atoms' coordinate properties do not fire for every atom and frame. Single node views, the
+     * ribbon, the cartoon and picking of the batched meshes keep using the model coordinates.
+     *
+     * @param atoms     The atoms, in the order of the positions. Pass the same list for every frame.
+     * @param positions Position of each atom, x, y and z consecutively.
+     */
+    public void showFrame(List<Atom> atoms, double[] positions) {
+        atomMeshView.showFrame(atoms, positions);
+        bondMeshView.showFrame(atoms, positions);
+        traceView.showFrame(atoms, positions);
+    }
+
+    /**
+     * Draw the atoms and bonds at their model coordinates again, after frames were shown.
+     */
+    public void endFrames() {
+        atomMeshView.endFrames();
+        bondMeshView.endFrames();
+        traceView.endFrames();
+    }
+
+    /**
+     * Apply all geometry updates pending for the next frame right away, e.g. before taking a snapshot of a scene which
+     * is never shown and therefore never rendered.
+     */
+    public void applyPendingUpdates() {
+        GeometryUpdateScheduler.flushAll();
+    }
+
+    /**
+     * Get the nearest shown atom hit by a ray, whether it is shown as its own sphere, as part of the batched mesh or as
+     * a quad of the lightweight representation.
+     *
+     * @param origin    Origin of the ray in this view's local coordinates, e.g. the camera's position.
+     * @param direction Direction of the ray in this view's local coordinates.
+     * @return The atom hit, null if no shown atom is hit.
+     */
+    public Atom pickAtom(Point3D origin, Point3D direction) {
+        if (nodesHidden)
+            return null;
+        if (lightweight.get()) {
+            // Only the quads of the lightweight representation show atoms, picked against its packed arrays
+            if (!lightweightAtoms.get())
+                return null;
+            return traceView.pick(origin.getX(), origin.getY(), origin.getZ(),
+                    direction.getX(), direction.getY(), direction.getZ());
+        }
+        MyNodeView3D node = atomPicker.pick(origin.getX(), origin.getY(), origin.getZ(),
+                direction.getX(), direction.getY(), direction.getZ());
+        return node == null ? null : node.getModelNodeReference();
+    }
+
 
     /**
      * Get the view edge by model edge.
@@ -270,7 +596,8 @@ public class MyGraphView3D extends Group {
      * @param hide Specifies if to hide, or to show the edges.
      */
     public void hideEdges(boolean hide) {
-        edgeViewGroup.setVisible(!hide);
+        edgesHidden = hide;
+        updateEdgeVisibility();
     }
 
     /**
@@ -279,7 +606,52 @@ public class MyGraphView3D extends Group {
      * @param hide Specifies if to hide, or to show the edges.
      */
     public void hideNodes(boolean hide) {
-        nodeViewGroup.setVisible(!hide);
+        nodesHidden = hide;
+        updateNodeVisibility();
+    }
+
+    /**
+     * Property to draw all atoms batched into one mesh instead of one sphere node per atom. The node views are kept
+     * for selection and bonds, but do not create their own sphere. Meant for large structures.
+     *
+     * @return Property, true if atoms are drawn batched.
+     */
+    public BooleanProperty batchedAtomsProperty() {
+        return batchedAtoms;
+    }
+
+    /**
+     * Property to draw all bonds batched into one mesh instead of one cylinder node per bond. The edge views are
+     * kept for their color and visibility, but do not create their own line. Meant for large structures.
+     *
+     * @return Property, true if bonds are drawn batched.
+     */
+    public BooleanProperty batchedBondsProperty() {
+        return batchedBonds;
+    }
+
+    /**
+     * Property determining how finely atoms and bonds are tessellated, both as single nodes and in batched meshes.
+     *
+     * @return Property holding the level of detail.
+     */
+    public ObjectProperty<LevelOfDetail.Level> levelOfDetailProperty() {
+        return levelOfDetail;
+    }
+
+    /**
+     * Show either the node views or the atom meshes, unless atoms are hidden.
+     */
+    private void updateNodeVisibility() {
+        nodeViewGroup.setVisible(!nodesHidden && !batchedAtoms.get() && !lightweight.get());
+        atomMeshView.setVisible(!nodesHidden && batchedAtoms.get() && !lightweight.get());
+        traceView.setPointsShown(!nodesHidden && lightweightAtoms.get());
+        traceView.setVisible(lightweight.get());
+    }
+
+    private void updateEdgeVisibility() {
+        edgeViewGroup.setVisible(!edgesHidden && !lightweight.get());
+        bondMeshView.setVisible(!edgesHidden && !lightweight.get());
     }
 
     /**
@@ -302,6 +674,261 @@ public class MyGraphView3D extends Group {
         edge.setVisible(!hide);
     }
 
+    /**
+     * Show exactly the atoms and bonds set in the given masks, e.g. those of a {@link VisibilityMasks}, in one pass.
+     *
+     * @param atoms    The atoms in the order of the atom mask's bits.
+     * @param atomMask Set bits mark the visible atoms.
+     * @param bonds    The bonds in the order of the bond mask's bits.
+     * @param bondMask Set bits mark the visible bonds.
+     */
+    public void applyVisibility(List<Atom> atoms, BitSet atomMask, List<Bond> bonds, BitSet bondMask) {
+        for (int i = 0; i < atoms.size(); i++) {
+            MyNodeView3D node = modelToNode.get(atoms.get(i));
+            if (node != null)
+                node.setVisible(atomMask.get(i));
+        }
+        for (int b = 0; b < bonds.size(); b++) {
+            MyEdgeView3D edge = modelToEdge.get(bonds.get(b));
+            if (edge != null)
+                edge.setVisible(bondMask.get(b));
+        }
+    }
+
+    /**
+     * Show lines between the given clashing atoms, replacing the previously shown clashes.
+     *
+     * @param clashes The clashes to be shown.
+     */
+    public void showClashes(List<Clash> clashes) {
+        clashView.setClashes(clashes);
+    }
+
+    /**
+     * Hides the clashes.
+     *
+     * @param hide Hide the clashes if true, else show them.
+     */
+    public void hideClashes(boolean hide) {
+        clashView.setVisible(!hide);
+    }
+
+    /**
+     * Recolor atoms and bonds in one batch, e.g. with the colors computed by a {@link ColoringEngine}. Each distinct
+     * color is converted once. The batched meshes ignore the single color changes and take the ARGB colors with one
+     * bulk write each instead. Bonds whose view is not built yet are shown in their color once it is.
+     *
+     * @param atoms      The atoms to be recolored.
+     * @param atomColors ARGB color of each atom.
+     * @param bonds      The bonds to be recolored.
+     * @param bondColors ARGB color of each bond.
+     */
+    public void applyColoring(List<Atom> atoms, int[] atomColors, List<Bond> bonds, int[] bondColors) {
+        Map<Integer, Color> colors = new HashMap<>();
+        List<MyEdgeView3D> edges = new ArrayList<>(bonds.size());
+        atomMeshView.pauseColorUpdates(true);
+        bondMeshView.pauseColorUpdates(true);
+        try {
+            for (int i = 0; i < atoms.size(); i++) {
+                atoms.get(i).colorProperty().setValue(colors.computeIfAbsent(atomColors[i], ColoringEngine::toColor));
+            }
+            for (int b = 0; b < bonds.size(); b++) {
+                MyEdgeView3D edge = modelToEdge.get(bonds.get(b));
+                edges.add(edge);
+                Color color = colors.computeIfAbsent(bondColors[b], ColoringEngine::toColor);
+                if (edge != null)
+                    edge.colorProperty().setValue(color);
+                else
+                    pendingBondColors.put(bonds.get(b), color);
+            }
+        } finally {
+            atomMeshView.pauseColorUpdates(false);
+            bondMeshView.pauseColorUpdates(false);
+        }
+        if (batchedAtoms.get())
+            atomMeshView.writeColors(atoms, atomColors);
+        if (batchedBonds.get())
+            bondMeshView.writeColors(edges, bondColors);
+        traceView.updateColors();
+    }
+
+    /**
+     * Set the structure shown by the lightweight trace. Its coordinates and radii are copied now, its colors when a
+     * coloring is applied. The trace is only built once it is shown.
+     *
+     * @param atoms    The atoms, shown as quads.
+     * @param residues The residues in the order of their chains, their C alpha atoms are connected by the trace.
+     */
+    public void setLightweightStructure(List<Atom> atoms, List<Residue> residues) {
+        traceView.setStructure(atoms, residues);
+    }
+
+    /**
+     * Property indicating if the lightweight representation is shown instead of the atoms and bonds: the C alpha
+     * trace as lines and optionally the atoms as flat quads, for structures too large for spheres and cylinders.
+     *
+     * @return Property, true if the lightweight representation is shown.
+     */
+    public BooleanProperty lightweightProperty() {
+        return lightweight;
+    }
+
+    /**
+     * Property indicating if the lightweight representation shows the atoms as quads besides the C alpha trace.
+     *
+     * @return Property, true if the atoms are shown. Default is true.
+     */
+    public BooleanProperty lightweightAtomsProperty() {
+        return lightweightAtoms;
+    }
+
+    /**
+     * Show the given molecular surface, replacing the previously shown one. The surface is colored per residue like
+     * the residues' C alpha atoms.
+     *
+     * @param surface  The surface to be shown.
+     * @param residues The residues the surface's vertices refer to by index.
+     */
+    public void showSurface(MolecularSurface surface, List<Residue> residues) {
+        clearSurface();
+        surfaceViewGroup.getChildren().add(new MySurfaceView3D(surface, residues));
+    }
+
+    /**
+     * Remove the molecular surface, if one is shown.
+     */
+    public void clearSurface() {
+        for (Node node : surfaceViewGroup.getChildren()) {
+            ((MySurfaceView3D) node).dispose();
+        }
+        surfaceViewGroup.getChildren().clear();
+    }
+
+    /**
+     * Hides the molecular surface.
+     *
+     * @param hide Hide the surface if true, else show it.
+     */
+    public void hideSurface(boolean hide) {
+        surfaceViewGroup.setVisible(!hide);
+    }
+
+    /**
+     * Check whether a molecular surface was set.
+     *
+     * @return True if {@link #showSurface(MolecularSurface, List)} was called since the last clear.
+     */
+    public boolean hasSurface() {
+        return !surfaceViewGroup.getChildren().isEmpty();
+    }
+
+    /**
+     * Color the atoms by their relative solvent accessibility. The atoms' colors in the model are kept, the nodes
+     * only show one of a few shared materials instead of their own until {@link #clearMaterialOverrides()} is called.
+     * Atoms whose view is not built yet get their material once it is.
+     *
+     * @param atoms         The atoms in the order the accessibility was computed for.
+     * @param accessibility Solvent accessibility of the given atoms.
+     */
+    public void showSolventAccessibility(List<Atom> atoms, SolventAccessibility accessibility) {
+        PhongMaterial[] shades = getAccessibilityMaterials();
+        for (int i = 0; i < atoms.size(); i++) {
+            MyNodeView3D node = modelToNode.get(atoms.get(i));
+            int shade = (int) (accessibility.getRelativeAtomArea(i) * ACCESSIBILITY_SHADES);
+            PhongMaterial material = shades[Math.min(shade, ACCESSIBILITY_SHADES - 1)];
+            if (node != null)
+                node.setMaterialOverride(material);
+            else
+                pendingMaterialOverrides.put(atoms.get(i), material);
+        }
+        if (batchedAtoms.get())
+            atomMeshView.updateColors();
+    }
+
+    /**
+     * Highlight the atoms of the given residues and the bonds between them by showing them in the highlight color,
+     * without adding anything to the scene graph. The residues are applied with the next frame, so many changes in a
+     * row, e.g. of a selection, are applied in one go. Views built later are highlighted with the frame they are added.
+     *
+     * @param residues The residues to be highlighted, an empty list highlights none. The list is read when applied.
+     */
+    public void highlightResidues(List<Residue> residues) {
+        highlightedResidues = residues;
+        GeometryUpdateScheduler.schedule(highlightUpdate);
+    }
+
+    /**
+     * Highlight exactly the atoms and bonds of the residues to be highlighted, only touching those which change.
+     */
+    private void applyHighlight() {
+        Set<MyNodeView3D> nodes = new HashSet<>();
+        for (Residue residue : highlightedResidues) {
+            for (Atom atom : new Atom[]{residue.getNAtom(), residue.getCAlphaAtom(), residue.getCBetaAtom(),
+                    residue.getCAtom(), residue.getOAtom()}) {
+                MyNodeView3D node = modelToNode.get(atom);
+                if (node != null)
+                    nodes.add(node);
+            }
+        }
+        Set<MyEdgeView3D> edges = new HashSet<>();
+        for (MyNodeView3D node : nodes) {
+            for (Bond bond : node.getModelNodeReference().outEdgesProperty()) {
+                MyEdgeView3D edge = modelToEdge.get(bond);
+                if (edge != null && nodes.contains(edge.getTargetNodeView()))
+                    edges.add(edge);
+            }
+        }
+
+        for (MyNodeView3D node : highlightedNodes) {
+            if (!nodes.contains(node))
+                node.setHighlighted(false);
+        }
+        for (MyNodeView3D node : nodes) {
+            if (!highlightedNodes.contains(node))
+                node.setHighlighted(true);
+        }
+        for (MyEdgeView3D edge : highlightedEdges) {
+            if (!edges.contains(edge))
+                edge.setHighlighted(false);
+        }
+        for (MyEdgeView3D edge : edges) {
+            if (!highlightedEdges.contains(edge))
+                edge.setHighlighted(true);
+        }
+        highlightedNodes = nodes;
+        highlightedEdges = edges;
+        if (batchedAtoms.get())
+            atomMeshView.updateColors();
+    }
+
+    /**
+     * Show all nodes with their own material, colored by the model's color, again.
+     */
+    public void clearMaterialOverrides() {
+        modelToNode.values().forEach(node -> node.setMaterialOverride(null));
+        pendingMaterialOverrides.clear();
+        if (batchedAtoms.get())
+            atomMeshView.updateColors();
+    }
+
+    /**
+     * Get the shared materials for coloring by solvent accessibility, from buried (blue) to exposed (red).
+     *
+     * @return Materials from buried to exposed.
+     */
+    private static PhongMaterial[] getAccessibilityMaterials() {
+        PhongMaterial[] materials = new PhongMaterial[ACCESSIBILITY_SHADES];
+        for (int i = 0; i < ACCESSIBILITY_SHADES; i++) {
+            double fraction = (double) i / (ACCESSIBILITY_SHADES - 1);
+            // buried -> white -> exposed
+            Color color = fraction < 0.5 ?
+                    Color.ROYALBLUE.interpolate(Color.WHITE, fraction * 2) :
+                    Color.WHITE.interpolate(Color.ORANGERED, fraction * 2 - 1);
+            materials[i] = MaterialRegistry.get(color);
+        }
+        return materials;
+    }
+
     /**
      * Property to scale the radius of a bond.
      * @return Property to scale the radius of a bond.
@@ -323,19 +950,17 @@ public class MyGraphView3D extends Group {
      * @param hide Hide the ribbon view if true, else show it.
      */
     public void ribbonView(boolean hide){
+        if (!hide)
+            rebuildRibbon();
         this.residueViewGroup.setVisible(!hide);
     }
 
     /**
-     * Hides and shows the cartoon view of the loaded PDB.
+     * Hides and shows the cartoon view of the loaded PDB. The cartoon's meshes are built in the background when the
+     * secondary structures are added, structures still being computed appear once they are done.
      * @param hide True if cartoon should be hidden, False if cartoon should be shown.
      */
     public void cartoonView(boolean hide){
-        this.secondaryStructureViewGroup.getChildren().stream().map(el -> (MySecondaryStructureView3D) el).forEach(structure ->{
-            if(!structure.wasComputed()){
-                structure.compute();
-            }
-        });
         this.secondaryStructureViewGroup.setVisible(!hide);
     }
 
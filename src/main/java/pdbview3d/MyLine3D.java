@@ -1,13 +1,11 @@
 package pdbview3d;
 
 import javafx.beans.InvalidationListener;
-import javafx.beans.Observable;
 import javafx.beans.property.DoubleProperty;
-import javafx.beans.property.ObjectProperty;
+import javafx.beans.value.ObservableValue;
 import javafx.geometry.Point3D;
 import javafx.scene.Group;
 import javafx.scene.paint.Color;
-import javafx.scene.paint.PhongMaterial;
 import javafx.scene.shape.Cylinder;
 
 /**
@@ -16,71 +14,45 @@ import javafx.scene.shape.Cylinder;
 class MyLine3D extends Group {
     private Cylinder cy;
 
+    /**
+     * Properties listened to, kept in order to stop listening in {@link #dispose()}.
+     */
+    private DoubleProperty[] endpoints;
+    private InvalidationListener endpointListener;
+    private Runnable update;
+    private ObservableValue<Color> color;
+    private InvalidationListener colorListener;
+    private DoubleProperty radiusProperty;
+
     MyLine3D(DoubleProperty startXProperty, DoubleProperty startYProperty, DoubleProperty startZProperty,
              DoubleProperty endXProperty, DoubleProperty endYProperty, DoubleProperty endZProperty,
-             DoubleProperty radiusProperty, ObjectProperty<Color> color) {
+             DoubleProperty radiusProperty, ObservableValue<Color> color, int divisions) {
         // Initialize the shape
-        cy = new Cylinder();
+        cy = new Cylinder(1, 1, divisions);
+        this.radiusProperty = radiusProperty;
 
         // Bind the radius to the EdgeView's radius property
         cy.radiusProperty().bind(radiusProperty);
-        // Set the shape's color and highlighting color
-        PhongMaterial mat = new PhongMaterial();
-        mat.diffuseColorProperty().bind(color);
-        color.addListener(event -> mat.setSpecularColor(color.getValue().brighter()));
-        cy.setMaterial(mat);
+        // Show the shared material of the color, swapped for another one when the color changes
+        this.color = color;
+        this.colorListener = event -> cy.setMaterial(MaterialRegistry.get(color.getValue()));
+        color.addListener(colorListener);
+        cy.setMaterial(MaterialRegistry.get(color.getValue()));
 
         // Add shape to scene graph
         this.getChildren().add(cy);
 
-        InvalidationListener listener = new InvalidationListener() {
-            @Override
-            public void invalidated(Observable observable) {
-
-                // create points of the start and end coordinates
-                Point3D startPoint =
-                        new Point3D(startXProperty.getValue(), startYProperty.getValue(), startZProperty.getValue());
-                Point3D endPoint =
-                        new Point3D(endXProperty.getValue(), endYProperty.getValue(), endZProperty.getValue());
-                // center where to set the cylinders center (midpoint between start and end)
-                Point3D centerOfCylinder = startPoint.midpoint(endPoint);
-                // y axis point
-                Point3D yAxis = new Point3D(0, 1, 0);
-
-                // Compute a point representing the direction the shape should represent
-                Point3D directionPoint = endPoint.subtract(startPoint);
-
-                // Compute the rotation axis
-                Point3D rotationAxis = directionPoint.crossProduct(yAxis);
-
-                // angle
-                double angle = -directionPoint.angle(yAxis);
-
-                // Compute the height of the cylinder
-                double heightOfCylinder = endPoint.distance(startPoint);
-
-
-                // Use the computed values in order to set the cylinders properties appropriately
-                cy.setRotationAxis(rotationAxis);
-                cy.setRotate(angle);
-                cy.setTranslateX(centerOfCylinder.getX());
-                cy.setTranslateY(centerOfCylinder.getY());
-                cy.setTranslateZ(centerOfCylinder.getZ());
-                cy.setHeight(heightOfCylinder);
-            }
-        };
-
-        // Add the listener to all properties in order to react to changes
-        startXProperty.addListener(listener);
-        startYProperty.addListener(listener);
-        startZProperty.addListener(listener);
-
-        endXProperty.addListener(listener);
-        endYProperty.addListener(listener);
-        endZProperty.addListener(listener);
-
-        // invalidate initially
-        listener.invalidated(startXProperty);
+        // Changes only mark the line dirty, the cylinder is placed once per frame however many end points moved
+        endpoints = new DoubleProperty[]{startXProperty, startYProperty, startZProperty,
+                endXProperty, endYProperty, endZProperty};
+        update = this::updateGeometry;
+        endpointListener = observable -> GeometryUpdateScheduler.schedule(update);
+        for (DoubleProperty endpoint : endpoints) {
+            endpoint.addListener(endpointListener);
+        }
+
+        // place initially
+        updateGeometry();
     }
 
     MyLine3D(double startX, double startY, double startZ, double endX, double endY, double endZ, double radius, Color color) {
@@ -90,44 +62,78 @@ class MyLine3D extends Group {
         // Bind the radius to the EdgeView's radius property
         cy.radiusProperty().setValue(radius);
         // Set the shape's color and highlighting color
-        PhongMaterial mat = new PhongMaterial();
-        mat.diffuseColorProperty().setValue(color);
-        mat.setSpecularColor(color.brighter());
-        cy.setMaterial(mat);
+        cy.setMaterial(MaterialRegistry.get(color));
 
         // Add shape to scene graph
         this.getChildren().add(cy);
 
+        place(startX, startY, startZ, endX, endY, endZ);
+    }
 
-        // create points of the start and end coordinates
-        Point3D startPoint = new Point3D(startX, startY, startZ);
-        Point3D endPoint =
-                new Point3D(endX, endY, endZ);
-        // center where to set the cylinders center (midpoint between start and end)
-        Point3D centerOfCylinder = startPoint.midpoint(endPoint);
-        // y axis point
-        Point3D yAxis = new Point3D(0, 1, 0);
-
-        // Compute a point representing the direction the shape should represent
-        Point3D directionPoint = endPoint.subtract(startPoint);
-
-        // Compute the rotation axis
-        Point3D rotationAxis = directionPoint.crossProduct(yAxis);
-
-        // angle
-        double angle = -directionPoint.angle(yAxis);
+    /**
+     * Place the cylinder between the current end points, unless the line was disposed in the meantime.
+     */
+    private void updateGeometry() {
+        if (endpoints == null)
+            return;
+        place(endpoints[0].get(), endpoints[1].get(), endpoints[2].get(),
+                endpoints[3].get(), endpoints[4].get(), endpoints[5].get());
+    }
 
+    /**
+     * Place the cylinder, which is centered on and aligned with the y axis, between the given points.
+     */
+    private void place(double startX, double startY, double startZ, double endX, double endY, double endZ) {
+        // Direction the cylinder should point to
+        double dx = endX - startX, dy = endY - startY, dz = endZ - startZ;
         // Compute the height of the cylinder
-        double heightOfCylinder = endPoint.distance(startPoint);
-
-
-        // Use the computed values in order to set the cylinders properties appropriately
-        cy.setRotationAxis(rotationAxis);
-        cy.setRotate(angle);
-        cy.setTranslateX(centerOfCylinder.getX());
-        cy.setTranslateY(centerOfCylinder.getY());
-        cy.setTranslateZ(centerOfCylinder.getZ());
+        double heightOfCylinder = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (heightOfCylinder > 0) {
+            // Rotate the y axis onto the direction, around the axis perpendicular to both
+            cy.setRotationAxis(new Point3D(-dz, 0, dx));
+            cy.setRotate(-Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, dy / heightOfCylinder)))));
+        }
+        // center where to set the cylinders center (midpoint between start and end)
+        cy.setTranslateX(startX + dx / 2);
+        cy.setTranslateY(startY + dy / 2);
+        cy.setTranslateZ(startZ + dz / 2);
         cy.setHeight(heightOfCylinder);
+    }
 
+    /**
+     * Replace the cylinder by one with the given number of divisions, if it has a different number. Position,
+     * orientation and material are taken over.
+     *
+     * @param divisions Divisions of the cylinder, see {@link LevelOfDetail}.
+     */
+    void setDivisions(int divisions) {
+        if (cy.getDivisions() == divisions)
+            return;
+        Cylinder replacement = new Cylinder(cy.getRadius(), cy.getHeight(), divisions);
+        if (radiusProperty != null)
+            replacement.radiusProperty().bind(radiusProperty);
+        replacement.setMaterial(cy.getMaterial());
+        replacement.setRotationAxis(cy.getRotationAxis());
+        replacement.setRotate(cy.getRotate());
+        replacement.setTranslateX(cy.getTranslateX());
+        replacement.setTranslateY(cy.getTranslateY());
+        replacement.setTranslateZ(cy.getTranslateZ());
+        cy.radiusProperty().unbind();
+        getChildren().set(getChildren().indexOf(cy), replacement);
+        cy = replacement;
+    }
+
+    /**
+     * Stop following the end points and radius, so the line can be dropped while the end points live on.
+     */
+    void dispose() {
+        if (endpoints != null) {
+            for (DoubleProperty endpoint : endpoints) {
+                endpoint.removeListener(endpointListener);
+            }
+            endpoints = null;
+            color.removeListener(colorListener);
+        }
+        cy.radiusProperty().unbind();
     }
 }
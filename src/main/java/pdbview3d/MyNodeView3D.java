@@ -1,11 +1,9 @@
 package pdbview3d;
 
 import javafx.beans.InvalidationListener;
-import javafx.beans.Observable;
 import javafx.beans.property.DoubleProperty;
 import pdbmodel.Atom;
 import javafx.scene.Group;
-import javafx.scene.control.Tooltip;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.PhongMaterial;
 import javafx.scene.shape.Sphere;
@@ -18,7 +16,20 @@ import javafx.scene.shape.Sphere;
 public class MyNodeView3D extends Group {
     private Sphere sphere;
     private Atom modelNodeReference;
-    PhongMaterial material;
+    private DoubleProperty radiusScaling;
+    private PhongMaterial materialOverride;
+    private boolean highlighted;
+    private int divisions;
+
+    /**
+     * Shows the material of the model's new color, only listening while the sphere exists.
+     */
+    private final InvalidationListener colorListener = observable -> updateMaterial();
+
+    /**
+     * Color of highlighted atoms and bonds, e.g. of selected residues.
+     */
+    static final Color HIGHLIGHT_COLOR = Color.GOLD;
 
 
     /**
@@ -26,37 +37,50 @@ public class MyNodeView3D extends Group {
      *
      * @param node          The model's node this view object represents.
      * @param radiusScaling The scaling factor, with which the radius will be scaled.
+     * @param divisions     Divisions of the sphere, see {@link LevelOfDetail}.
+     * @param showSphere    Whether the node draws its own sphere. Nodes drawn batched by {@link MyAtomMeshView3D}
+     *                      do not need one.
      */
-    MyNodeView3D(Atom node, DoubleProperty radiusScaling) {
+    MyNodeView3D(Atom node, DoubleProperty radiusScaling, int divisions, boolean showSphere) {
         // Set reference to model instance, in order to identify the node
         this.modelNodeReference = node;
+        this.radiusScaling = radiusScaling;
+        this.divisions = divisions;
 
-        // Install a tooltip with the nodes text
-        Tooltip tooltip = new Tooltip();
-        tooltip.textProperty().bind(node.textProperty());
-        Tooltip.install(this, tooltip);
-
-        // Draw the circular sphere which represents a node
-        sphere = new Sphere();
-        sphere.radiusProperty().bind(node.radiusProperty().multiply(radiusScaling));
-        // Get color from model
-
-        material = new PhongMaterial();
-        material.diffuseColorProperty().bindBidirectional(node.colorProperty());
-        // The listener listens on the models color property and adapts the specular color of the material accordingly
-
-        node.colorProperty().addListener( e -> material.setSpecularColor(node.colorProperty().getValue().brighter()));
+        setSphereShown(showSphere);
+    }
 
-        sphere.setMaterial(material);
+    /**
+     * Create or drop the node's own sphere, together with its bindings to the model's position, radius and color.
+     *
+     * @param shown Create the sphere if true, else drop it.
+     */
+    void setSphereShown(boolean shown) {
+        if (shown && sphere == null) {
+            // Draw the circular sphere which represents a node
+            sphere = new Sphere(1, divisions);
+            sphere.radiusProperty().bind(modelNodeReference.radiusProperty().multiply(radiusScaling));
+            // Get color from model. Recoloring the model shows the shared material of the new color
+            sphere.setMaterial(getMaterial());
+            modelNodeReference.colorProperty().addListener(colorListener);
 
-        // Add the sphere to the scene graph
-        this.getChildren().add(sphere);
+            // Add the sphere to the scene graph
+            this.getChildren().add(sphere);
 
-        // Set the position of the node in the two dimensional space. Placing is handled by the view.Presenter, therefore not
-        // computed here
-        this.translateXProperty().bind(node.xCoordinateProperty());
-        this.translateYProperty().bind(node.yCoordinateProperty());
-        this.translateZProperty().bind(node.zCoordinateProperty());
+            // Set the position of the node in the two dimensional space. Placing is handled by the view.Presenter,
+            // therefore not computed here
+            this.translateXProperty().bind(modelNodeReference.xCoordinateProperty());
+            this.translateYProperty().bind(modelNodeReference.yCoordinateProperty());
+            this.translateZProperty().bind(modelNodeReference.zCoordinateProperty());
+        } else if (!shown && sphere != null) {
+            this.getChildren().remove(sphere);
+            sphere.radiusProperty().unbind();
+            modelNodeReference.colorProperty().removeListener(colorListener);
+            this.translateXProperty().unbind();
+            this.translateYProperty().unbind();
+            this.translateZProperty().unbind();
+            sphere = null;
+        }
     }
 
     /**
@@ -74,9 +98,87 @@ public class MyNodeView3D extends Group {
      * @param col The color to be set.
      */
     void setColor(Color col) {
-        material.diffuseColorProperty().setValue(col);
+        modelNodeReference.colorProperty().setValue(col);
+    }
+
+    /**
+     * Get the shared material the node is shown with: the highlight, the override or the one of the model's color.
+     */
+    private PhongMaterial getMaterial() {
+        if (highlighted)
+            return MaterialRegistry.get(HIGHLIGHT_COLOR);
+        if (materialOverride != null)
+            return materialOverride;
+        return MaterialRegistry.get(modelNodeReference.colorProperty().getValue());
+    }
+
+    /**
+     * Show the node in the highlight color, taking precedence over the material override and the model's color.
+     *
+     * @param highlighted Whether the node is highlighted.
+     */
+    void setHighlighted(boolean highlighted) {
+        this.highlighted = highlighted;
+        updateMaterial();
     }
 
+    /**
+     * Show the node with the given material instead of the one of the model's color. The material is not modified, so
+     * it can be shared between many nodes.
+     *
+     * @param override Shared material to be shown, or null to show the node's own material again.
+     */
+    void setMaterialOverride(PhongMaterial override) {
+        materialOverride = override;
+        updateMaterial();
+    }
+
+    /**
+     * Check whether the node is shown in the model's color, i.e. is neither highlighted nor overridden.
+     *
+     * @return True if the displayed color is the model's color.
+     */
+    boolean showsOwnColor() {
+        return !highlighted && materialOverride == null;
+    }
+
+    private void updateMaterial() {
+        if (sphere != null)
+            sphere.setMaterial(getMaterial());
+    }
+
+    /**
+     * Get the color the node is currently shown in, taking highlighting and a material override into account.
+     *
+     * @return The shown diffuse color.
+     */
+    Color getDisplayedColor() {
+        return getMaterial().getDiffuseColor();
+    }
+
+    /**
+     * Replace the sphere by one with the given number of divisions, if it has a different number. The divisions are
+     * also used when the sphere is created later.
+     *
+     * @param divisions Divisions of the sphere, see {@link LevelOfDetail}.
+     */
+    void setDivisions(int divisions) {
+        this.divisions = divisions;
+        if (sphere == null || sphere.getDivisions() == divisions)
+            return;
+        Sphere replacement = new Sphere(1, divisions);
+        replacement.radiusProperty().bind(modelNodeReference.radiusProperty().multiply(radiusScaling));
+        replacement.setMaterial(sphere.getMaterial());
+        sphere.radiusProperty().unbind();
+        getChildren().set(getChildren().indexOf(sphere), replacement);
+        sphere = replacement;
+    }
+
+    /**
+     * Get the node's sphere.
+     *
+     * @return The sphere of the node, null if the node is drawn batched.
+     */
     Sphere getShape(){
         return sphere;
     }
@@ -1,98 +1,122 @@
 package pdbview3d;
 
-import javafx.geometry.Point3D;
-import javafx.scene.Group;
 import javafx.scene.paint.Color;
-import javafx.scene.paint.PhongMaterial;
-import javafx.scene.shape.*;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.DrawMode;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import javafx.scene.shape.VertexFormat;
+import pdbmodel.Atom;
 import pdbmodel.Residue;
 
+import java.util.List;
+
 /**
- * Mesh wrapper for ribbon view of residues.
+ * Ribbon of one continuous chain of residues in a single mesh. The ribbon follows a Catmull-Rom spline through the C
+ * alpha atoms and is as wide as the C beta atoms are away from them, turning with the direction of the C beta atoms.
+ *
+ * @author Patrick Grupp
  */
-public class MyRibbonView3D extends Group {
-    Residue modelSource;
-    Residue modelTarget;
-    TriangleMesh mesh;
-    static Residue lastResidue = null;
-
-    MyRibbonView3D(Residue residue) {
-        if (MyRibbonView3D.lastResidue != null) {
-            this.modelSource = lastResidue;
-            this.modelTarget = residue;
-            Point3D sourceAlpha = new Point3D(lastResidue.getCAlphaAtom().xCoordinateProperty().get(),
-                    lastResidue.getCAlphaAtom().yCoordinateProperty().get(),
-                    lastResidue.getCAlphaAtom().zCoordinateProperty().get());
-            Point3D sourceBeta = new Point3D(lastResidue.getCBetaAtom().xCoordinateProperty().get(),
-                    lastResidue.getCBetaAtom().yCoordinateProperty().get(),
-                    lastResidue.getCBetaAtom().zCoordinateProperty().get());
-            Point3D sourceMirrorBeta = sourceBeta.subtract(sourceAlpha).multiply(-1).add(sourceAlpha);
-            Point3D targetAlpha = new Point3D(residue.getCAlphaAtom().xCoordinateProperty().get(),
-                    residue.getCAlphaAtom().yCoordinateProperty().get(),
-                    residue.getCAlphaAtom().zCoordinateProperty().get());
-            Point3D targetBeta = new Point3D(residue.getCBetaAtom().xCoordinateProperty().get(),
-                    residue.getCBetaAtom().yCoordinateProperty().get(),
-                    residue.getCBetaAtom().zCoordinateProperty().get());
-            Point3D targetMirrorBeta = targetBeta.subtract(targetAlpha).multiply(-1).add(targetAlpha);
-
-
-            mesh = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
+class MyRibbonView3D extends MeshView {
 
-            float[] points = {
-                    (float) sourceBeta.getX(), (float) sourceBeta.getY(), (float) sourceBeta.getZ(),
-                    (float) sourceMirrorBeta.getX(), (float) sourceMirrorBeta.getY(), (float) sourceMirrorBeta.getZ(),
-                    (float) targetBeta.getX(), (float) targetBeta.getY(), (float) targetBeta.getZ(),
-                    (float) targetMirrorBeta.getX(), (float) targetMirrorBeta.getY(), (float) targetMirrorBeta.getZ(),
-            };
+    private final List<Residue> chain;
 
-            float[] texArray = {0, 0};
+    /**
+     * Build the ribbon of a chain.
+     *
+     * @param chain        Consecutive residues of the chain, at least two.
+     * @param subdivisions Number of spline segments between two residues.
+     */
+    MyRibbonView3D(List<Residue> chain, int subdivisions) {
+        this.chain = chain;
+        setMesh(buildMesh(chain, subdivisions));
+        setDrawMode(DrawMode.FILL);
+        // Both sides have their own faces, lit from their side
+        setCullFace(CullFace.BACK);
+        setMaterial(MaterialRegistry.get(Color.MEDIUMAQUAMARINE));
+    }
 
-            int[] faces;
+    /**
+     * Get the residues of the chain this ribbon represents.
+     *
+     * @return Residues of the chain.
+     */
+    List<Residue> getChain() {
+        return chain;
+    }
 
-            // Solve minimization problem in order to connect source's and target's c betas or source's cbeta and target's mirrored c beta
-            // This unwinds the planes in alphahelices significantly.
-            if ( sourceMirrorBeta.distance(targetBeta) + sourceBeta.distance(targetMirrorBeta) <
-                    sourceMirrorBeta.distance(targetMirrorBeta) + sourceBeta.distance(targetBeta)) {
-                // This is when mirrored and unmirrored  point wil each be the outer edge
-                faces = new int[] {
-                        0, 0, 1, 0, 2, 0, // First face connects sCB, sMCB and tCB
-                        0, 0, 2, 0, 1, 0, // The first face's back
-                        // (in order to be visible from both sides (when rotating)), connects sCB, tCB and sMCB
-                        0, 0, 2, 0, 3, 0, // Second face, connects sCB, tCB and tMCB
-                        0, 0, 3, 0, 2, 0  // Second face's back (same as above), connects sCB, tMCB and tCB
-                };
-            } else {
-                // This is when the two mirrored and the two unmirrored points will be the outer edges
-                faces = new int[] {
-                        0, 0, 1, 0, 3, 0, // First face connects sCB, sMCB and tMCB
-                        0, 0, 3, 0, 1, 0, // The first face's back
-                        // (in order to be visible from both sides (when rotating)), connects sCB, tMCB and sMCB
-                        0, 0, 3, 0, 2, 0, // Second face, connects sCB, tMCB and tCB
-                        0, 0, 2, 0, 3, 0  // Second face's back (same as above), connects sCB, tCB and tMCB
-                };
+    /**
+     * Sample the spline and fill the mesh arrays in one pass.
+     */
+    private static TriangleMesh buildMesh(List<Residue> chain, int subdivisions) {
+        int n = chain.size();
+        // C alpha positions and the side vectors from C alpha to C beta
+        double[] trace = new double[3 * n];
+        double[] side = new double[3 * n];
+        for (int i = 0; i < n; i++) {
+            Atom cAlpha = chain.get(i).getCAlphaAtom();
+            Atom cBeta = chain.get(i).getCBetaAtom();
+            trace[3 * i] = cAlpha.xCoordinateProperty().get();
+            trace[3 * i + 1] = cAlpha.yCoordinateProperty().get();
+            trace[3 * i + 2] = cAlpha.zCoordinateProperty().get();
+            if (cBeta != null) {
+                side[3 * i] = cBeta.xCoordinateProperty().get() - trace[3 * i];
+                side[3 * i + 1] = cBeta.yCoordinateProperty().get() - trace[3 * i + 1];
+                side[3 * i + 2] = cBeta.zCoordinateProperty().get() - trace[3 * i + 2];
+            } else if (i > 0) {
+                System.arraycopy(side, 3 * (i - 1), side, 3 * i, 3);
+            }
+            // C betas alternate sides e.g. in beta sheets. Flip to the side closer to the previous one, so the
+            // ribbon does not twist by half a turn between residues.
+            if (i > 0 && side[3 * i] * side[3 * i - 3] + side[3 * i + 1] * side[3 * i - 2] +
+                    side[3 * i + 2] * side[3 * i - 1] < 0) {
+                side[3 * i] = -side[3 * i];
+                side[3 * i + 1] = -side[3 * i + 1];
+                side[3 * i + 2] = -side[3 * i + 2];
             }
-
-            int[] smoothing = {
-                    1, 2, 1, 2
-            };
-            mesh.getPoints().addAll(points);
-            mesh.getFaces().addAll(faces);
-            mesh.getTexCoords().addAll(texArray);
-            mesh.getFaceSmoothingGroups().addAll(smoothing);
-
-            MeshView meshView = new MeshView(mesh);
-            meshView.setDrawMode(DrawMode.FILL);
-
-            PhongMaterial mat = new PhongMaterial(Color.MEDIUMAQUAMARINE);
-            mat.setSpecularColor(Color.MEDIUMAQUAMARINE.brighter());
-            meshView.setMaterial(mat);
-            this.getChildren().add(meshView);
         }
 
-        MyRibbonView3D.lastResidue = residue;
-    }
+        int samples = (n - 1) * subdivisions + 1;
+        // Two vertices per sample, four triangles (two per side) between consecutive samples
+        float[] points = new float[samples * 2 * 3];
+        int[] faces = new int[(samples - 1) * 4 * 6];
+        int[] smoothing = new int[(samples - 1) * 4];
+        int p = 0, f = 0, g = 0;
+        for (int s = 0; s < samples; s++) {
+            int i = Math.min(s / subdivisions, n - 2);
+            double t = (double) (s - i * subdivisions) / subdivisions;
+            int i0 = Math.max(i - 1, 0), i2 = i + 1, i3 = Math.min(i + 2, n - 1);
+            double t2 = t * t, t3 = t2 * t;
+            for (int k = 0; k < 3; k++) {
+                double p0 = trace[3 * i0 + k], p1 = trace[3 * i + k], p2 = trace[3 * i2 + k], p3 = trace[3 * i3 + k];
+                // Uniform Catmull-Rom spline between p1 and p2
+                double center = 0.5 * (2 * p1 + (p2 - p0) * t + (2 * p0 - 5 * p1 + 4 * p2 - p3) * t2 +
+                        (3 * p1 - p0 - 3 * p2 + p3) * t3);
+                double offset = (1 - t) * side[3 * i + k] + t * side[3 * i2 + k];
+                points[p + k] = (float) (center + offset);
+                points[p + 3 + k] = (float) (center - offset);
+            }
+            p += 6;
+            if (s > 0) {
+                int a = 2 * (s - 1), b = a + 1, c = a + 2, d = a + 3;
+                int[] corners = {a, b, c, b, d, c, a, c, b, b, c, d};
+                for (int corner : corners) {
+                    faces[f++] = corner;
+                    faces[f++] = 0;
+                }
+                // Front and back side are smoothed separately
+                smoothing[g++] = 1;
+                smoothing[g++] = 1;
+                smoothing[g++] = 2;
+                smoothing[g++] = 2;
+            }
+        }
 
-    public static void reset() {
-        lastResidue = null;
+        TriangleMesh mesh = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
+        mesh.getTexCoords().addAll(0, 0);
+        mesh.getPoints().setAll(points);
+        mesh.getFaces().setAll(faces);
+        mesh.getFaceSmoothingGroups().setAll(smoothing);
+        return mesh;
     }
 }
@@ -1,10 +1,10 @@
 package pdbview3d;
 
+import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
-import javafx.collections.FXCollections;
 import javafx.geometry.Point3D;
 import javafx.scene.Group;
 import javafx.scene.paint.Color;
@@ -13,27 +13,65 @@ import javafx.scene.shape.DrawMode;
 import javafx.scene.shape.MeshView;
 import javafx.scene.shape.TriangleMesh;
 import javafx.scene.shape.VertexFormat;
+import pdbmodel.Atom;
 import pdbmodel.Residue;
 import pdbmodel.SecondaryStructure;
 
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Allows for a cartoon-like display of secondary structures. Which can be both alphahelices or betasheets.
+ * <p>
+ * The geometry of a beta sheet is computed into plain arrays in the background as soon as the view is created, in
+ * parallel for all sheets. Only the meshes are then built on the JavaFX application thread and kept, so showing the
+ * cartoon view does not compute anything anymore.
  */
 class MySecondaryStructureView3D extends Group {
 
+    /**
+     * Computes the geometry of beta sheets, one daemon thread per core.
+     */
+    private static final ExecutorService GEOMETRY_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "cartoon-geometry");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     SecondaryStructure structure;
     DoubleProperty radius;
     ObjectProperty<Color> color;
     boolean wasComputed;
     List<Residue> listOfResidues;
     static final double BETA_SHEET_DEPTH = 0.2;
-    static String lastRef;
 
     /**
-     * Create a view of a secondary structure.
+     * Whether the last residue's C beta or mirrored C beta was referenced, while computing the geometry.
+     */
+    private String lastRef;
+
+    /**
+     * Positions of the residues' C alpha and C beta atoms, taken when the view was created. The geometry is computed
+     * from these, so the background computation does not touch the model.
+     */
+    private final Point3D[] cAlphas;
+    private final Point3D[] cBetas;
+
+    /**
+     * Computed geometry of the beta sheet: the sheet's mesh arrays and the arrow head's points and faces.
+     */
+    private float[] points;
+    private int[] faces;
+    private int[] smoothing;
+    private float[] arrowPoints;
+    private int[] arrowFaces;
+
+    /**
+     * Create a view of a secondary structure. A beta sheet's geometry is computed in the background, its meshes are
+     * added once that is done.
      *
      * @param structure The model structure for which a view structure should be created.
      */
@@ -41,397 +79,414 @@ class MySecondaryStructureView3D extends Group {
         this.structure = structure;
         listOfResidues = structure.getResiduesContained();
         wasComputed = false;
+        cAlphas = new Point3D[listOfResidues.size()];
+        cBetas = new Point3D[listOfResidues.size()];
+        for (int i = 0; i < listOfResidues.size(); i++) {
+            cAlphas[i] = toPoint(listOfResidues.get(i).getCAlphaAtom());
+            cBetas[i] = toPoint(listOfResidues.get(i).getCBetaAtom());
+        }
+        if (structure.getSecondaryStructureType().equals(SecondaryStructure.StructureType.betasheet)) {
+            CompletableFuture.runAsync(this::computeSheetGeometry, GEOMETRY_EXECUTOR)
+                    .thenRunAsync(this::buildSheetMeshes, Platform::runLater)
+                    .exceptionally(e -> {
+                        System.err.println("Could not compute beta sheet geometry: " + e.getMessage());
+                        return null;
+                    });
+        } else {
+            buildHelix();
+        }
     }
 
+    /**
+     * Whether the meshes of this structure are built.
+     *
+     * @return True if the structure is ready to be shown.
+     */
     boolean wasComputed() {
         return wasComputed;
     }
 
-    void compute() {
-        if (wasComputed) {
-            this.getChildren().clear();
-        }
-        wasComputed = true;
-        if (structure.getSecondaryStructureType().equals(SecondaryStructure.StructureType.betasheet)) {
-            // structure is alpha helix
-            TriangleMesh mesh = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
-
-            PhongMaterial material = new PhongMaterial(Color.CORNFLOWERBLUE);
-            material.setSpecularColor(Color.CORNFLOWERBLUE.brighter());
-
-            // set up the mesh arrays
-
-            // 3 coords per point four points per residue
-            float[] points = new float[listOfResidues.size() * 3 * 4];
-            float[] texArray = {0, 0};
-
-            // Six ints per face, eight triangles per residue
-            // (top rectangle, bottom rectangle and two sides of the depth of the two rectangles).
-            int[] faces = new int[listOfResidues.size() * 6 * 8];
-
-            // and eight triangles per residue
-            int[] smoothing = new int[listOfResidues.size() * 8];
-
-            // Compute the direction of shifting for 3D beta sheet. Need the second residue for determining
-            // which direction to shift the initial coordinates. For the following residues the for loop
-            // will do that based on its context.
-            Residue first = listOfResidues.get(0);
-            Residue second = listOfResidues.get(1);
-            Point3D tarCA = getCAlpha(second);
-            Point3D sourCA = getCAlpha(first);
-            Point3D sourMirCB = getMirroredCBeta(first);
-            // Subtract position vector of source C beta and target c alpha. then compute their crossproduct. Normalize the resulting vector and
-            // multiply it by 0.3 times the length of the C-C bond
-            Point3D direction = tarCA.subtract(sourCA).crossProduct(sourMirCB.subtract(sourCA)).normalize().multiply(sourCA.distance(sourMirCB)).multiply(BETA_SHEET_DEPTH);
-            lastRef = "CB";
-
-
-            // Set first source coordinates. This is important since otherwise for first element there is nothing to connect.
-            Point3D initialBeta = getCBeta(first);
-            Point3D initialMirrorBeta = getMirroredCBeta(first);
-            setPoints(0, points, initialBeta, initialMirrorBeta, direction);
-
-            // We need to take care of the open end in the sheet at the beginning (first residue between c beta,
-            // mirrored cbeta, shifted cbeta and shifted mirrored cbeta
-            TriangleMesh endCap = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
-            endCap.getTexCoords().addAll(0, 0);
-            endCap.getFaces().addAll(
-                    0, 0, 2, 0, 1, 0,
-                    1, 0, 2, 0, 3, 0
-            );
-            //Copy start points from other mesh
-            endCap.getPoints().addAll(points, 0, 12);
-            endCap.getFaceSmoothingGroups().addAll(1, 1);
-            MeshView endCapView = new MeshView(endCap);
-            endCapView.setMaterial(material);
-            this.getChildren().add(endCapView);
-
-            for (int i = 1; i < listOfResidues.size(); i++) {
-                Residue residue = listOfResidues.get(i);
-                Residue lastResidue = listOfResidues.get(i - 1);
-                // We need those for computation which points to connect.
-                Point3D lastBeta = getCBeta(lastResidue);
-                Point3D lastMirrorBeta = getMirroredCBeta(lastResidue);
-
-                // These are the currently important two points. They will be connected with the last ones by two triangles
-                Point3D currentBeta = getCBeta(residue);
-                Point3D currentMirrorBeta = getMirroredCBeta(residue);
-
-
-                // Solve minimization problem in order to connect source's and target's c betas or source's cbeta and target's mirrored c beta
-                // This unwinds the planes in alpha helices significantly.
-                boolean crossing = lastMirrorBeta.distance(currentBeta) + lastBeta.distance(currentMirrorBeta) <
-                        lastMirrorBeta.distance(currentMirrorBeta) + lastBeta.distance(currentBeta);
-
-                //Get the shifting direction vector for this residue's atoms
-                direction = computeDirection(lastResidue, residue, crossing);
-
-                // Set the current residues coordinates as points (the last residues points were set in the
-                // last step (or for the first element in the initialization step)
-                // four points per residue 3 coordinates per point
-                setPoints(i * 4 * 3, points, currentBeta, currentMirrorBeta, direction);
-
-                int positionInFaces = (i - 1) * 6 * 8;
-                if (crossing) {
-                    // Only use position 0, +2, +4, ... for the faces to link to point (the other 3 points are texcoords
-                    // which are by default initialized with 0 which is deterministic behaviour in Java and exactly
-                    // what we want.
-
-                    if (lastRef.equals("CBM")) {
-                        //Original topping
-
-                        // First face connects sCB, sMCB and tCB
-                        faces[positionInFaces] = i * 4 - 4;
-                        faces[positionInFaces + 2] = i * 4 - 3;
-                        faces[positionInFaces + 4] = i * 4;
-
-                        // Second face, connects sCB, tCB and tMCB
-                        faces[positionInFaces + 6] = i * 4 - 4;
-                        faces[positionInFaces + 8] = i * 4;
-                        faces[positionInFaces + 10] = i * 4 + 1;
-
-                        // Shifted topping (in the following four faces each node is the shifted one)
-
-                        // First face connects sCB, sMCB and tCB
-                        faces[positionInFaces + 12] = i * 4 - 2;
-                        faces[positionInFaces + 14] = i * 4 + 2;
-                        faces[positionInFaces + 16] = i * 4 - 1;
-
-                        // Second face, connects sCB, tCB and tMCB
-                        faces[positionInFaces + 18] = i * 4 - 2;
-                        faces[positionInFaces + 20] = i * 4 + 3;
-                        faces[positionInFaces + 22] = i * 4 + 2;
-
-                        //faces for the two sides:
-
-                        // first side, first triangle of two
-                        // source cb and shifted source cb with target mirrored cb (front and back)
-                        faces[positionInFaces + 24] = i * 4 - 4;
-                        faces[positionInFaces + 26] = i * 4 + 1;
-                        faces[positionInFaces + 28] = i * 4 - 2;
-
-                        //second triangle completing the first side rectangle
-                        //target mirrored cb, source shifted cb target mirrored shifted cb
-                        faces[positionInFaces + 30] = i * 4 + 1;
-                        faces[positionInFaces + 32] = i * 4 + 3;
-                        faces[positionInFaces + 34] = i * 4 - 2;
-
-
-                        //second side, first triangle of two
-                        //source mirrored cb, source shifted mirrored cb with target cb (front and back)
-                        faces[positionInFaces + 36] = i * 4 - 3;
-                        faces[positionInFaces + 38] = i * 4 - 1;
-                        faces[positionInFaces + 40] = i * 4;
-
-                        //second triangle completing the second side rectangle
-                        // target cb, source shifted mirrored cb to target shifted cb
-                        faces[positionInFaces + 42] = i * 4;
-                        faces[positionInFaces + 44] = i * 4 - 1;
-                        faces[positionInFaces + 46] = i * 4 + 2;
-
-                    } else {
-
-                        // First face connects sCB, sMCB and tCB
-                        faces[positionInFaces] = i * 4 - 4;
-                        faces[positionInFaces + 2] = i * 4;
-                        faces[positionInFaces + 4] = i * 4 - 3;
-
-                        // Second face, connects sCB, tCB and tMCB
-                        faces[positionInFaces + 6] = i * 4 - 4;
-                        faces[positionInFaces + 8] = i * 4 + 1;
-                        faces[positionInFaces + 10] = i * 4;
-
-                        // Shifted topping (in the following four faces each node is the shifted one)
-
-                        // First face connects sCB, sMCB and tCB
-                        faces[positionInFaces + 12] = i * 4 - 2;
-                        faces[positionInFaces + 14] = i * 4 - 1;
-                        faces[positionInFaces + 16] = i * 4 + 2;
-
-                        // Second face, connects sCB, tCB and tMCB
-                        faces[positionInFaces + 18] = i * 4 - 2;
-                        faces[positionInFaces + 20] = i * 4 + 2;
-                        faces[positionInFaces + 22] = i * 4 + 3;
-
-                        //faces for the two sides:
-
-                        // first side, first triangle of two
-                        // source cb and shifted source cb with target mirrored cb (front and back)
-                        faces[positionInFaces + 24] = i * 4 - 4;
-                        faces[positionInFaces + 26] = i * 4 - 2;
-                        faces[positionInFaces + 28] = i * 4 + 1;
-
-                        //second triangle completing the first side rectangle
-                        //target mirrored cb, source shifted cb target mirrored shifted cb
-                        faces[positionInFaces + 30] = i * 4 + 1;
-                        faces[positionInFaces + 32] = i * 4 - 2;
-                        faces[positionInFaces + 34] = i * 4 + 3;
-
-
-                        //second side, first triangle of two
-                        //source mirrored cb, source shifted mirrored cb with target cb (front and back)
-                        faces[positionInFaces + 36] = i * 4 - 3;
-                        faces[positionInFaces + 38] = i * 4;
-                        faces[positionInFaces + 40] = i * 4 - 1;
-
-                        //second triangle completing the second side rectangle
-                        // target cb, source shifted mirrored cb to target shifted cb
-                        faces[positionInFaces + 42] = i * 4;
-                        faces[positionInFaces + 44] = i * 4 + 2;
-                        faces[positionInFaces + 46] = i * 4 - 1;
-                    }
-
+    /**
+     * Compute the points, faces and smoothing groups of the beta sheet and its arrow head. Runs in the background and
+     * only reads the positions taken in the constructor.
+     */
+    private void computeSheetGeometry() {
+        // set up the mesh arrays
+
+        // 3 coords per point four points per residue
+        points = new float[listOfResidues.size() * 3 * 4];
+
+        // Six ints per face, eight triangles per residue
+        // (top rectangle, bottom rectangle and two sides of the depth of the two rectangles).
+        faces = new int[listOfResidues.size() * 6 * 8];
+
+        // and eight triangles per residue
+        smoothing = new int[listOfResidues.size() * 8];
+
+        // Compute the direction of shifting for 3D beta sheet. Need the second residue for determining
+        // which direction to shift the initial coordinates. For the following residues the for loop
+        // will do that based on its context.
+        Point3D tarCA = getCAlpha(1);
+        Point3D sourCA = getCAlpha(0);
+        Point3D sourMirCB = getMirroredCBeta(0);
+        // Subtract position vector of source C beta and target c alpha. then compute their crossproduct. Normalize the resulting vector and
+        // multiply it by 0.3 times the length of the C-C bond
+        Point3D direction = tarCA.subtract(sourCA).crossProduct(sourMirCB.subtract(sourCA)).normalize().multiply(sourCA.distance(sourMirCB)).multiply(BETA_SHEET_DEPTH);
+        lastRef = "CB";
+
+
+        // Set first source coordinates. This is important since otherwise for first element there is nothing to connect.
+        Point3D initialBeta = getCBeta(0);
+        Point3D initialMirrorBeta = getMirroredCBeta(0);
+        setPoints(0, points, initialBeta, initialMirrorBeta, direction);
+
+        for (int i = 1; i < listOfResidues.size(); i++) {
+            // We need those for computation which points to connect.
+            Point3D lastBeta = getCBeta(i - 1);
+            Point3D lastMirrorBeta = getMirroredCBeta(i - 1);
+
+            // These are the currently important two points. They will be connected with the last ones by two triangles
+            Point3D currentBeta = getCBeta(i);
+            Point3D currentMirrorBeta = getMirroredCBeta(i);
+
+
+            // Solve minimization problem in order to connect source's and target's c betas or source's cbeta and target's mirrored c beta
+            // This unwinds the planes in alpha helices significantly.
+            boolean crossing = lastMirrorBeta.distance(currentBeta) + lastBeta.distance(currentMirrorBeta) <
+                    lastMirrorBeta.distance(currentMirrorBeta) + lastBeta.distance(currentBeta);
+
+            //Get the shifting direction vector for this residue's atoms
+            direction = computeDirection(i - 1, i, crossing);
+
+            // Set the current residues coordinates as points (the last residues points were set in the
+            // last step (or for the first element in the initialization step)
+            // four points per residue 3 coordinates per point
+            setPoints(i * 4 * 3, points, currentBeta, currentMirrorBeta, direction);
+
+            int positionInFaces = (i - 1) * 6 * 8;
+            if (crossing) {
+                // Only use position 0, +2, +4, ... for the faces to link to point (the other 3 points are texcoords
+                // which are by default initialized with 0 which is deterministic behaviour in Java and exactly
+                // what we want.
+
+                if (lastRef.equals("CBM")) {
+                    //Original topping
+
+                    // First face connects sCB, sMCB and tCB
+                    faces[positionInFaces] = i * 4 - 4;
+                    faces[positionInFaces + 2] = i * 4 - 3;
+                    faces[positionInFaces + 4] = i * 4;
+
+                    // Second face, connects sCB, tCB and tMCB
+                    faces[positionInFaces + 6] = i * 4 - 4;
+                    faces[positionInFaces + 8] = i * 4;
+                    faces[positionInFaces + 10] = i * 4 + 1;
+
+                    // Shifted topping (in the following four faces each node is the shifted one)
+
+                    // First face connects sCB, sMCB and tCB
+                    faces[positionInFaces + 12] = i * 4 - 2;
+                    faces[positionInFaces + 14] = i * 4 + 2;
+                    faces[positionInFaces + 16] = i * 4 - 1;
+
+                    // Second face, connects sCB, tCB and tMCB
+                    faces[positionInFaces + 18] = i * 4 - 2;
+                    faces[positionInFaces + 20] = i * 4 + 3;
+                    faces[positionInFaces + 22] = i * 4 + 2;
+
+                    //faces for the two sides:
+
+                    // first side, first triangle of two
+                    // source cb and shifted source cb with target mirrored cb (front and back)
+                    faces[positionInFaces + 24] = i * 4 - 4;
+                    faces[positionInFaces + 26] = i * 4 + 1;
+                    faces[positionInFaces + 28] = i * 4 - 2;
+
+                    //second triangle completing the first side rectangle
+                    //target mirrored cb, source shifted cb target mirrored shifted cb
+                    faces[positionInFaces + 30] = i * 4 + 1;
+                    faces[positionInFaces + 32] = i * 4 + 3;
+                    faces[positionInFaces + 34] = i * 4 - 2;
+
+
+                    //second side, first triangle of two
+                    //source mirrored cb, source shifted mirrored cb with target cb (front and back)
+                    faces[positionInFaces + 36] = i * 4 - 3;
+                    faces[positionInFaces + 38] = i * 4 - 1;
+                    faces[positionInFaces + 40] = i * 4;
+
+                    //second triangle completing the second side rectangle
+                    // target cb, source shifted mirrored cb to target shifted cb
+                    faces[positionInFaces + 42] = i * 4;
+                    faces[positionInFaces + 44] = i * 4 - 1;
+                    faces[positionInFaces + 46] = i * 4 + 2;
 
                 } else {
-                    // This is when the two mirrored and the two unmirrored points will be the outer edges
-
-                    if (lastRef.equals("CBM")) {
-                        //Original topping
-
-                        // Same as above, but with slightly different connecting the nodes.
-                        // First face connects sCB, tMCB and sMCB
-                        faces[positionInFaces] = i * 4 - 4;
-                        faces[positionInFaces + 2] = i * 4 + 1;
-                        faces[positionInFaces + 4] = i * 4 - 3;
-                        // Second face, connects sCB, tCB and tMCB
-                        faces[positionInFaces + 6] = i * 4 - 4;
-                        faces[positionInFaces + 8] = i * 4;
-                        faces[positionInFaces + 10] = i * 4 + 1;
-
-                        // Shifted topping (in the following four faces each node is the shifted one)
-
-                        // First face connects sCB, tMCB and sMCB
-                        faces[positionInFaces + 12] = i * 4 - 2;
-                        faces[positionInFaces + 14] = i * 4 - 1;
-                        faces[positionInFaces + 16] = i * 4 + 3;
-                        // Second face, connects sCB, tCB and tMCB
-                        faces[positionInFaces + 18] = i * 4 - 2;
-                        faces[positionInFaces + 20] = i * 4 + 3;
-                        faces[positionInFaces + 22] = i * 4 + 2;
-
-
-                        //faces for the two sides:
-
-                        // first side, first triangle of two
-                        // source cb and shifted source cb with target cb (front and back)
-                        faces[positionInFaces + 24] = i * 4 - 4;
-                        faces[positionInFaces + 26] = i * 4 - 2;
-                        faces[positionInFaces + 28] = i * 4;
 
+                    // First face connects sCB, sMCB and tCB
+                    faces[positionInFaces] = i * 4 - 4;
+                    faces[positionInFaces + 2] = i * 4;
+                    faces[positionInFaces + 4] = i * 4 - 3;
+
+                    // Second face, connects sCB, tCB and tMCB
+                    faces[positionInFaces + 6] = i * 4 - 4;
+                    faces[positionInFaces + 8] = i * 4 + 1;
+                    faces[positionInFaces + 10] = i * 4;
+
+                    // Shifted topping (in the following four faces each node is the shifted one)
+
+                    // First face connects sCB, sMCB and tCB
+                    faces[positionInFaces + 12] = i * 4 - 2;
+                    faces[positionInFaces + 14] = i * 4 - 1;
+                    faces[positionInFaces + 16] = i * 4 + 2;
+
+                    // Second face, connects sCB, tCB and tMCB
+                    faces[positionInFaces + 18] = i * 4 - 2;
+                    faces[positionInFaces + 20] = i * 4 + 2;
+                    faces[positionInFaces + 22] = i * 4 + 3;
+
+                    //faces for the two sides:
+
+                    // first side, first triangle of two
+                    // source cb and shifted source cb with target mirrored cb (front and back)
+                    faces[positionInFaces + 24] = i * 4 - 4;
+                    faces[positionInFaces + 26] = i * 4 - 2;
+                    faces[positionInFaces + 28] = i * 4 + 1;
+
+                    //second triangle completing the first side rectangle
+                    //target mirrored cb, source shifted cb target mirrored shifted cb
+                    faces[positionInFaces + 30] = i * 4 + 1;
+                    faces[positionInFaces + 32] = i * 4 - 2;
+                    faces[positionInFaces + 34] = i * 4 + 3;
+
+
+                    //second side, first triangle of two
+                    //source mirrored cb, source shifted mirrored cb with target cb (front and back)
+                    faces[positionInFaces + 36] = i * 4 - 3;
+                    faces[positionInFaces + 38] = i * 4;
+                    faces[positionInFaces + 40] = i * 4 - 1;
+
+                    //second triangle completing the second side rectangle
+                    // target cb, source shifted mirrored cb to target shifted cb
+                    faces[positionInFaces + 42] = i * 4;
+                    faces[positionInFaces + 44] = i * 4 + 2;
+                    faces[positionInFaces + 46] = i * 4 - 1;
+                }
 
-                        //second triangle completing the first side rectangle
-                        //target cb, source shifted cb target shifted cb
-                        faces[positionInFaces + 30] = i * 4;
-                        faces[positionInFaces + 32] = i * 4 - 2;
-                        faces[positionInFaces + 34] = i * 4 + 2;
 
+            } else {
+                // This is when the two mirrored and the two unmirrored points will be the outer edges
 
-                        //second side, first triangle of two
-                        //source mirrored cb, source shifted mirrored cb with target mirrored cb (front and back)
-                        faces[positionInFaces + 36] = i * 4 - 3;
-                        faces[positionInFaces + 38] = i * 4 + 1;
-                        faces[positionInFaces + 40] = i * 4 - 1;
+                if (lastRef.equals("CBM")) {
+                    //Original topping
 
+                    // Same as above, but with slightly different connecting the nodes.
+                    // First face connects sCB, tMCB and sMCB
+                    faces[positionInFaces] = i * 4 - 4;
+                    faces[positionInFaces + 2] = i * 4 + 1;
+                    faces[positionInFaces + 4] = i * 4 - 3;
+                    // Second face, connects sCB, tCB and tMCB
+                    faces[positionInFaces + 6] = i * 4 - 4;
+                    faces[positionInFaces + 8] = i * 4;
+                    faces[positionInFaces + 10] = i * 4 + 1;
 
-                        //second triangle completing the second side rectangle
-                        // target mirrored cb, source shifted mirrored cb to target shifted mirrored cb
-                        faces[positionInFaces + 42] = i * 4 + 1;
-                        faces[positionInFaces + 44] = i * 4 + 3;
-                        faces[positionInFaces + 46] = i * 4 - 1;
+                    // Shifted topping (in the following four faces each node is the shifted one)
 
-                    } else {
-                        // LAST REF WAS CB SO SIMPLE THING TO DO IS TO SWITCH THE ORDER OF THE LAST TWO COORDINATES OF
-                        // EACH FACE IN ORDER TO SWITCH ITS ORIENTATION
-                        //Original topping
+                    // First face connects sCB, tMCB and sMCB
+                    faces[positionInFaces + 12] = i * 4 - 2;
+                    faces[positionInFaces + 14] = i * 4 - 1;
+                    faces[positionInFaces + 16] = i * 4 + 3;
+                    // Second face, connects sCB, tCB and tMCB
+                    faces[positionInFaces + 18] = i * 4 - 2;
+                    faces[positionInFaces + 20] = i * 4 + 3;
+                    faces[positionInFaces + 22] = i * 4 + 2;
 
-                        // Same as above, but with slightly different connecting the nodes.
-                        // First face connects sCB, tMCB and sMCB
-                        faces[positionInFaces] = i * 4 - 4;
-                        faces[positionInFaces + 2] = i * 4 - 3;
-                        faces[positionInFaces + 4] = i * 4 + 1;
-                        // Second face, connects sCB, tCB and tMCB
-                        faces[positionInFaces + 6] = i * 4 - 4;
-                        faces[positionInFaces + 8] = i * 4 + 1;
-                        faces[positionInFaces + 10] = i * 4;
 
-                        // Shifted topping (in the following four faces each node is the shifted one)
+                    //faces for the two sides:
 
-                        // First face connects sCB, tMCB and sMCB
-                        faces[positionInFaces + 12] = i * 4 - 2;
-                        faces[positionInFaces + 14] = i * 4 + 3;
-                        faces[positionInFaces + 16] = i * 4 - 1;
-                        // Second face, connects sCB, tCB and tMCB
-                        faces[positionInFaces + 18] = i * 4 - 2;
-                        faces[positionInFaces + 20] = i * 4 + 2;
-                        faces[positionInFaces + 22] = i * 4 + 3;
+                    // first side, first triangle of two
+                    // source cb and shifted source cb with target cb (front and back)
+                    faces[positionInFaces + 24] = i * 4 - 4;
+                    faces[positionInFaces + 26] = i * 4 - 2;
+                    faces[positionInFaces + 28] = i * 4;
 
 
-                        //faces for the two sides:
+                    //second triangle completing the first side rectangle
+                    //target cb, source shifted cb target shifted cb
+                    faces[positionInFaces + 30] = i * 4;
+                    faces[positionInFaces + 32] = i * 4 - 2;
+                    faces[positionInFaces + 34] = i * 4 + 2;
 
-                        // first side, first triangle of two
-                        // source cb and shifted source cb with target cb (front and back)
-                        faces[positionInFaces + 24] = i * 4 - 4;
-                        faces[positionInFaces + 26] = i * 4;
-                        faces[positionInFaces + 28] = i * 4 - 2;
 
+                    //second side, first triangle of two
+                    //source mirrored cb, source shifted mirrored cb with target mirrored cb (front and back)
+                    faces[positionInFaces + 36] = i * 4 - 3;
+                    faces[positionInFaces + 38] = i * 4 + 1;
+                    faces[positionInFaces + 40] = i * 4 - 1;
 
-                        //second triangle completing the first side rectangle
-                        //target cb, source shifted cb target shifted cb
-                        faces[positionInFaces + 30] = i * 4;
-                        faces[positionInFaces + 32] = i * 4 + 2;
-                        faces[positionInFaces + 34] = i * 4 - 2;
 
+                    //second triangle completing the second side rectangle
+                    // target mirrored cb, source shifted mirrored cb to target shifted mirrored cb
+                    faces[positionInFaces + 42] = i * 4 + 1;
+                    faces[positionInFaces + 44] = i * 4 + 3;
+                    faces[positionInFaces + 46] = i * 4 - 1;
 
-                        //second side, first triangle of two
-                        //source mirrored cb, source shifted mirrored cb with target mirrored cb (front and back)
-                        faces[positionInFaces + 36] = i * 4 - 3;
-                        faces[positionInFaces + 38] = i * 4 - 1;
-                        faces[positionInFaces + 40] = i * 4 + 1;
+                } else {
+                    // LAST REF WAS CB SO SIMPLE THING TO DO IS TO SWITCH THE ORDER OF THE LAST TWO COORDINATES OF
+                    // EACH FACE IN ORDER TO SWITCH ITS ORIENTATION
+                    //Original topping
+
+                    // Same as above, but with slightly different connecting the nodes.
+                    // First face connects sCB, tMCB and sMCB
+                    faces[positionInFaces] = i * 4 - 4;
+                    faces[positionInFaces + 2] = i * 4 - 3;
+                    faces[positionInFaces + 4] = i * 4 + 1;
+                    // Second face, connects sCB, tCB and tMCB
+                    faces[positionInFaces + 6] = i * 4 - 4;
+                    faces[positionInFaces + 8] = i * 4 + 1;
+                    faces[positionInFaces + 10] = i * 4;
+
+                    // Shifted topping (in the following four faces each node is the shifted one)
+
+                    // First face connects sCB, tMCB and sMCB
+                    faces[positionInFaces + 12] = i * 4 - 2;
+                    faces[positionInFaces + 14] = i * 4 + 3;
+                    faces[positionInFaces + 16] = i * 4 - 1;
+                    // Second face, connects sCB, tCB and tMCB
+                    faces[positionInFaces + 18] = i * 4 - 2;
+                    faces[positionInFaces + 20] = i * 4 + 2;
+                    faces[positionInFaces + 22] = i * 4 + 3;
+
+
+                    //faces for the two sides:
+
+                    // first side, first triangle of two
+                    // source cb and shifted source cb with target cb (front and back)
+                    faces[positionInFaces + 24] = i * 4 - 4;
+                    faces[positionInFaces + 26] = i * 4;
+                    faces[positionInFaces + 28] = i * 4 - 2;
+
+
+                    //second triangle completing the first side rectangle
+                    //target cb, source shifted cb target shifted cb
+                    faces[positionInFaces + 30] = i * 4;
+                    faces[positionInFaces + 32] = i * 4 + 2;
+                    faces[positionInFaces + 34] = i * 4 - 2;
+
+
+                    //second side, first triangle of two
+                    //source mirrored cb, source shifted mirrored cb with target mirrored cb (front and back)
+                    faces[positionInFaces + 36] = i * 4 - 3;
+                    faces[positionInFaces + 38] = i * 4 - 1;
+                    faces[positionInFaces + 40] = i * 4 + 1;
+
+
+                    //second triangle completing the second side rectangle
+                    // target mirrored cb, source shifted mirrored cb to target shifted mirrored cb
+                    faces[positionInFaces + 42] = i * 4 + 1;
+                    faces[positionInFaces + 44] = i * 4 - 1;
+                    faces[positionInFaces + 46] = i * 4 + 3;
+                }
 
 
-                        //second triangle completing the second side rectangle
-                        // target mirrored cb, source shifted mirrored cb to target shifted mirrored cb
-                        faces[positionInFaces + 42] = i * 4 + 1;
-                        faces[positionInFaces + 44] = i * 4 - 1;
-                        faces[positionInFaces + 46] = i * 4 + 3;
-                    }
-
+            }
 
-                }
+            // Set smoothing
+            // original topping
+            smoothing[(i - 1) * 8] = 1 << 1;
+            smoothing[(i - 1) * 8 + 1] = 1 << 1;
+            // shifted topping
+            smoothing[(i - 1) * 8 + 2] = 1 << 1;
+            smoothing[(i - 1) * 8 + 3] = 1 << 1;
+            //side 1
+            smoothing[(i - 1) * 8 + 4] = 1 << 2;
+            smoothing[(i - 1) * 8 + 5] = 1 << 2;
+            //side 2
+            smoothing[(i - 1) * 8 + 6] = 1 << 2;
+            smoothing[(i - 1) * 8 + 7] = 1 << 2;
 
-                // Set smoothing
-                // original topping
-                smoothing[(i - 1) * 8] = 1 << 1;
-                smoothing[(i - 1) * 8 + 1] = 1 << 1;
-                // shifted topping
-                smoothing[(i - 1) * 8 + 2] = 1 << 1;
-                smoothing[(i - 1) * 8 + 3] = 1 << 1;
-                //side 1
-                smoothing[(i - 1) * 8 + 4] = 1 << 2;
-                smoothing[(i - 1) * 8 + 5] = 1 << 2;
-                //side 2
-                smoothing[(i - 1) * 8 + 6] = 1 << 2;
-                smoothing[(i - 1) * 8 + 7] = 1 << 2;
+        }
 
-            }
+        computeArrowHead(listOfResidues.size() - 2, listOfResidues.size() - 1);
+    }
 
-            // Set the necessary arrays for the full mesh of the beta sheet.
-            mesh.getPoints().addAll(points);
-            mesh.getFaces().addAll(faces);
-            mesh.getTexCoords().addAll(texArray);
-            mesh.getFaceSmoothingGroups().addAll(smoothing);
-            // Convert as mesh view in order to have a node to add to the scene graph
-            MeshView meshView = new MeshView(mesh);
-            meshView.setDrawMode(DrawMode.FILL);
-            meshView.setMaterial(material);
+    /**
+     * Build the meshes of the beta sheet from the computed geometry and add them. Runs on the JavaFX application
+     * thread.
+     */
+    private void buildSheetMeshes() {
+        PhongMaterial material = MaterialRegistry.get(Color.CORNFLOWERBLUE);
+
+        // We need to take care of the open end in the sheet at the beginning (first residue between c beta,
+        // mirrored cbeta, shifted cbeta and shifted mirrored cbeta
+        TriangleMesh endCap = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
+        endCap.getTexCoords().addAll(0, 0);
+        endCap.getFaces().addAll(
+                0, 0, 2, 0, 1, 0,
+                1, 0, 2, 0, 3, 0
+        );
+        //Copy start points from other mesh
+        endCap.getPoints().addAll(points, 0, 12);
+        endCap.getFaceSmoothingGroups().addAll(1, 1);
+        MeshView endCapView = new MeshView(endCap);
+        endCapView.setMaterial(material);
+
+        // Set the necessary arrays for the full mesh of the beta sheet.
+        TriangleMesh mesh = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
+        mesh.getPoints().addAll(points);
+        mesh.getFaces().addAll(faces);
+        mesh.getTexCoords().addAll(0, 0);
+        mesh.getFaceSmoothingGroups().addAll(smoothing);
+        // Convert as mesh view in order to have a node to add to the scene graph
+        MeshView meshView = new MeshView(mesh);
+        meshView.setDrawMode(DrawMode.FILL);
+        meshView.setMaterial(material);
 
-            this.getChildren().add(meshView);
+        TriangleMesh arrowHead = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
+        arrowHead.getPoints().addAll(arrowPoints);
+        arrowHead.getFaces().addAll(arrowFaces);
+        arrowHead.getTexCoords().addAll(0,0);
+        arrowHead.getFaceSmoothingGroups().addAll(0,0,0,0,0,0,0,0,0,0);
+        MeshView arrowHeadMeshView = new MeshView(arrowHead);
+        arrowHeadMeshView.setMaterial(material);
 
-            createArrowHead(points, material,
-                    listOfResidues.get(listOfResidues.size() - 2),
-                    listOfResidues.get(listOfResidues.size() - 1)
-            );
+        this.getChildren().addAll(endCapView, meshView, arrowHeadMeshView);
+        wasComputed = true;
+    }
 
-        } else {
-            // structure is alphahelix. Simple case.
-            radius = new SimpleDoubleProperty(20);
-            color = new SimpleObjectProperty<>(Color.RED);
-            Residue start = structure.getFirstResidue();
-            Residue end = structure.getLastResidue();
-            // Start alphahelix from the starting residue's N atom and end at ending residue's C atom -> draw 3D line
-            MyLine3D shape = new MyLine3D(
-                    start.getNAtom().xCoordinateProperty(), start.getNAtom().yCoordinateProperty(), start.getNAtom().zCoordinateProperty(),
-                    end.getCAtom().xCoordinateProperty(), end.getCAtom().yCoordinateProperty(), end.getCAtom().zCoordinateProperty(),
-                    radius, color
-            );
-            this.getChildren().add(shape);
-        }
+    /**
+     * Build the line of an alpha helix. It follows the model, so nothing needs to be computed beforehand.
+     */
+    private void buildHelix() {
+        // structure is alphahelix. Simple case.
+        radius = new SimpleDoubleProperty(20);
+        color = new SimpleObjectProperty<>(Color.RED);
+        Residue start = structure.getFirstResidue();
+        Residue end = structure.getLastResidue();
+        // Start alphahelix from the starting residue's N atom and end at ending residue's C atom -> draw 3D line
+        MyLine3D shape = new MyLine3D(
+                start.getNAtom().xCoordinateProperty(), start.getNAtom().yCoordinateProperty(), start.getNAtom().zCoordinateProperty(),
+                end.getCAtom().xCoordinateProperty(), end.getCAtom().yCoordinateProperty(), end.getCAtom().zCoordinateProperty(),
+                radius, color, LevelOfDetail.Level.HIGH.getCylinderDivisions()
+        );
+        this.getChildren().add(shape);
+        wasComputed = true;
     }
 
     /**
-     * At the last residue of the beta sheet create a mesh structure which is pointing its direction in form of an
-     * arrowhead.
+     * At the last residue of the beta sheet compute a mesh structure which is pointing its direction in form of an
+     * arrowhead. The last four points of the sheet's points are the starting points for the arrow.
      *
-     * @param points     The points array of the mesh structure. The last four points are taken from there in order to
-     *                   get the starting points for the arrow.
-     * @param material   The material which will be set to the mesh structure.
-     * @param secondLast The residue before last. Used to get the direction of the arrow.
-     * @param last       The last residue in the structure. Used to get the direction of the arrow (using the C alphas).
+     * @param secondLast Index of the residue before last. Used to get the direction of the arrow.
+     * @param last       Index of the last residue in the structure. Used to get the direction of the arrow (using the
+     *                   C alphas).
      */
-    private void createArrowHead(float[] points, PhongMaterial material, Residue secondLast, Residue last) {
-        Point3D lastCAlpha = new Point3D(
-                secondLast.getCAlphaAtom().xCoordinateProperty().get(),
-                secondLast.getCAlphaAtom().yCoordinateProperty().get(),
-                secondLast.getCAlphaAtom().zCoordinateProperty().get()
-        );
-        Point3D cAlpha = new Point3D(
-                last.getCAlphaAtom().xCoordinateProperty().get(),
-                last.getCAlphaAtom().yCoordinateProperty().get(),
-                last.getCAlphaAtom().zCoordinateProperty().get()
-        );
+    private void computeArrowHead(int secondLast, int last) {
+        Point3D lastCAlpha = getCAlpha(secondLast);
+        Point3D cAlpha = getCAlpha(last);
         Point3D direction = cAlpha.subtract(lastCAlpha).multiply(0.5); // calpha - lastCalpha ^= lastCalpha -> calpha
 
-        float[] newPoints = new float[10 * 3]; // 10 points a 3 coordinates
+        float[] newPoints = arrowPoints = new float[10 * 3]; // 10 points a 3 coordinates
         // Points 0:cbeta, 1:cbeta mirrored, 2: cbeta shifted, 3:cbeta mirrored shifted
         System.arraycopy(points, points.length - 12, newPoints, 0, 12);
         Point3D cBeta = new Point3D(newPoints[0], newPoints[1], newPoints[2]);
@@ -479,7 +534,7 @@ class MySecondaryStructureView3D extends Group {
         newPoints[29] = (float) arrowTipShifted.getZ();
 
         // Define the faces
-        int[] faces = new int[10 * 6]; // Ten faces: 4 for  tip sides, four for each outer and two for upper and lower
+        int[] faces = arrowFaces = new int[10 * 6]; // Ten faces: 4 for  tip sides, four for each outer and two for upper and lower
         if(lastRef.equals("CBM")) {
             // to arrow side
             faces[0] = 0;
@@ -577,15 +632,6 @@ class MySecondaryStructureView3D extends Group {
             faces[56] = 8;
             faces[58] = 4;
         }
-
-        TriangleMesh arrowHead = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
-        arrowHead.getPoints().addAll(newPoints);
-        arrowHead.getFaces().addAll(faces);
-        arrowHead.getTexCoords().addAll(0,0);
-        arrowHead.getFaceSmoothingGroups().addAll(0,0,0,0,0,0,0,0,0,0);
-        MeshView arrowHeadMeshView = new MeshView(arrowHead);
-        arrowHeadMeshView.setMaterial(material);
-        this.getChildren().add(arrowHeadMeshView);
     }
 
     /**
@@ -622,14 +668,14 @@ class MySecondaryStructureView3D extends Group {
      * Get the direction (with appropriate length) to shift the target's points (C alpha, C beta and mirrored C beta)
      * in 3D space in order to create points to reference to in order to get a beta sheet with a depth.
      *
-     * @param source   the last residue
-     * @param target   The residue to get the shift for.
+     * @param source   Index of the last residue
+     * @param target   Index of the residue to get the shift for.
      * @param crossing Are the two C Betas of the two residues on 'the same side of the backbone' or crossing. Crossing
      *                 means that Cbeta of the source is connected to mirrored C Beta of the target and vice versa for
      *                 mirrored CBeta of the source.
      * @return The direction to shift the three reference points of the target by.
      */
-    private Point3D computeDirection(Residue source, Residue target, boolean crossing) {
+    private Point3D computeDirection(int source, int target, boolean crossing) {
         Point3D result;
         Point3D sourceAlpha = getCAlpha(source);
 
@@ -670,10 +716,10 @@ class MySecondaryStructureView3D extends Group {
     /**
      * Get the mirrored point of the given residue's c beta.
      *
-     * @param residue Reference residue
+     * @param residue Index of the reference residue
      * @return Point which is C beta mirrored at C alpha.
      */
-    private Point3D getMirroredCBeta(Residue residue) {
+    private Point3D getMirroredCBeta(int residue) {
         Point3D alpha = getCAlpha(residue);
         Point3D beta = getCBeta(residue);
         return beta.subtract(alpha).multiply(-1).add(alpha);
@@ -682,24 +728,36 @@ class MySecondaryStructureView3D extends Group {
     /**
      * Get a points C alpha in 3D space.
      *
-     * @param residue The residue to get C alpha from.
+     * @param residue Index of the residue to get C alpha from.
      * @return Position in 3D space of C alpha of the given residue.
      */
-    private Point3D getCAlpha(Residue residue) {
-        return new Point3D(residue.getCAlphaAtom().xCoordinateProperty().get(),
-                residue.getCAlphaAtom().yCoordinateProperty().get(),
-                residue.getCAlphaAtom().zCoordinateProperty().get());
+    private Point3D getCAlpha(int residue) {
+        return cAlphas[residue];
     }
 
     /**
      * Get the point in 3D space of C Beta of the given residue.
      *
-     * @param residue The residue to get C beta from.
+     * @param residue Index of the residue to get C beta from.
      * @return Position in 3D space of C beta of the given residue.
      */
-    private Point3D getCBeta(Residue residue) {
-        return new Point3D(residue.getCBetaAtom().xCoordinateProperty().get(),
-                residue.getCBetaAtom().yCoordinateProperty().get(),
-                residue.getCBetaAtom().zCoordinateProperty().get());
+    private Point3D getCBeta(int residue) {
+        if (cBetas[residue] == null)
+            throw new IllegalStateException("Residue " + listOfResidues.get(residue).getResNum() +
+                    " has no C beta atom");
+        return cBetas[residue];
+    }
+
+    /**
+     * Get the position of an atom in 3D space.
+     *
+     * @param atom The atom, may be null.
+     * @return Position of the atom, null if there is no atom.
+     */
+    private static Point3D toPoint(Atom atom) {
+        if (atom == null)
+            return null;
+        return new Point3D(atom.xCoordinateProperty().get(), atom.yCoordinateProperty().get(),
+                atom.zCoordinateProperty().get());
     }
 }
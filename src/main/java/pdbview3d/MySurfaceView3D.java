@@ -0,0 +1,102 @@
+package pdbview3d;
+
+import javafx.beans.InvalidationListener;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import pdbmodel.MolecularSurface;
+import pdbmodel.Residue;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Molecular surface drawn as one {@link TriangleMesh} with shared vertices, colored per residue. The colors of all
+ * residues are pixels of one {@link ColorPalette}, and each triangle takes the pixel of its first vertex's residue, so
+ * the whole surface needs a single mesh and material. The texture follows the colors of the residues' C alpha atoms,
+ * updated at most once per frame.
+ *
+ * @author Patrick Grupp
+ */
+class MySurfaceView3D extends MeshView {
+
+    /**
+     * Color of vertices without a residue.
+     */
+    private static final Color DEFAULT_COLOR = Color.LIGHTGRAY;
+
+    private final List<Residue> residues;
+    private final ColorPalette palette;
+    private final Runnable colorUpdate = this::updateColors;
+    private final InvalidationListener colorListener = observable -> GeometryUpdateScheduler.schedule(colorUpdate);
+
+    /**
+     * Build the surface's mesh.
+     *
+     * @param surface  The generated surface.
+     * @param residues The residues the surface's vertices refer to by index.
+     */
+    MySurfaceView3D(MolecularSurface surface, List<Residue> residues) {
+        this.residues = residues;
+        palette = new ColorPalette(Color.gray(0.3));
+        // One pixel per residue, the last pixel for vertices without a residue and residues beyond the palette
+        int colors = Math.min(residues.size() + 1, ColorPalette.CAPACITY);
+
+        TriangleMesh mesh = new TriangleMesh();
+        mesh.getPoints().setAll(surface.getPoints());
+        float[] texCoords = new float[2 * colors];
+        for (int c = 0; c < colors; c++) {
+            ColorPalette.writeTexCoord(c, texCoords, 2 * c);
+        }
+        mesh.getTexCoords().setAll(texCoords);
+        int[] triangles = surface.getTriangles();
+        int[] vertexResidues = surface.getVertexResidues();
+        int[] faces = new int[2 * triangles.length];
+        for (int t = 0; t < triangles.length; t += 3) {
+            int residue = vertexResidues[triangles[t]];
+            int color = residue < 0 || residue >= colors - 1 ? colors - 1 : residue;
+            for (int k = 0; k < 3; k++) {
+                faces[2 * (t + k)] = triangles[t + k];
+                faces[2 * (t + k) + 1] = color;
+            }
+        }
+        mesh.getFaces().setAll(faces);
+        // One smoothing group, so the shared vertices give smooth normals
+        int[] smoothing = new int[triangles.length / 3];
+        Arrays.fill(smoothing, 1);
+        mesh.getFaceSmoothingGroups().setAll(smoothing);
+        setMesh(mesh);
+
+        setMaterial(palette.getMaterial());
+        updateColors();
+        for (Residue residue : residues) {
+            if (residue.getCAlphaAtom() != null)
+                residue.getCAlphaAtom().colorProperty().addListener(colorListener);
+        }
+        setMouseTransparent(true);
+    }
+
+    /**
+     * Stop following the residues' colors.
+     */
+    void dispose() {
+        for (Residue residue : residues) {
+            if (residue.getCAlphaAtom() != null)
+                residue.getCAlphaAtom().colorProperty().removeListener(colorListener);
+        }
+    }
+
+    /**
+     * Write each residue's color into its pixel.
+     */
+    private void updateColors() {
+        int colors = Math.min(residues.size() + 1, ColorPalette.CAPACITY);
+        for (int r = 0; r < colors - 1; r++) {
+            Residue residue = residues.get(r);
+            Color color = residue.getCAlphaAtom() == null ? DEFAULT_COLOR :
+                    residue.getCAlphaAtom().colorProperty().getValue();
+            palette.set(r, color);
+        }
+        palette.set(colors - 1, DEFAULT_COLOR);
+    }
+}
@@ -0,0 +1,392 @@
+package pdbview3d;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.geometry.Point3D;
+import javafx.scene.Group;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.DrawMode;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+import javafx.scene.shape.VertexFormat;
+import javafx.scene.transform.NonInvertibleTransformException;
+import javafx.scene.transform.Transform;
+import pdbmodel.Atom;
+import pdbmodel.Residue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lightweight representation of very large structures: the C alpha trace as one line mesh and, optionally, every
+ * atom as a flat quad turned towards the camera, like a point sprite, in a second mesh. Both are built from packed
+ * coordinate arrays taken once from the atoms, and colored through one {@link ColorPalette} holding each distinct
+ * color, so the whole structure costs two mesh views.
+ * <p>
+ * The quads are turned towards the camera again at most once per frame when the view is rotated. The atoms' colors
+ * are read when {@link #updateColors()} is called, their positions when the structure is set or
+ * {@link #updateCoordinates()} is called. Frames of an ensemble are written into the packed arrays as well. Atoms are
+ * picked against the same packed arrays, so the lightweight representation needs no view per atom.
+ *
+ * @author Patrick Grupp
+ */
+class MyTraceView3D extends Group {
+
+    /**
+     * Width of the sliver triangle drawn for each line, in view coordinates.
+     */
+    private static final float LINE_WIDTH = 0.5f;
+
+    private final TriangleMesh traceMesh;
+    private final TriangleMesh pointMesh;
+    private final MeshView pointView;
+    private final ColorPalette palette;
+    private final DoubleProperty radiusScaling;
+
+    private List<Atom> atoms = Collections.emptyList();
+
+    /**
+     * Packed coordinates and radii of the atoms.
+     */
+    private float[] coordinates = new float[0];
+    private float[] radii = new float[0];
+
+    /**
+     * Indices of the atoms at both ends of each line of the trace.
+     */
+    private int[] traceAtoms = new int[0];
+
+    /**
+     * The atoms of the frames shown, null if none is shown, and the index of each of this view's atoms in them, -1 if
+     * it is not among them.
+     */
+    private List<Atom> frameAtoms;
+    private int[] frameIndices = new int[0];
+
+    /**
+     * Corners of all quads, reused each time they are turned.
+     */
+    private float[] quadPoints = new float[0];
+
+    /**
+     * Whether the structure changed since the meshes were built.
+     */
+    private boolean stale;
+
+    private final Runnable turnUpdate = this::turnQuads;
+
+    /**
+     * Grid of the atoms' spheres for picking, null if it has to be built again.
+     */
+    private SphereGrid grid;
+
+    /**
+     * Create an empty trace.
+     *
+     * @param radiusScaling The scaling factor of the atoms' radius, the quads are resized when it changes.
+     */
+    MyTraceView3D(DoubleProperty radiusScaling) {
+        this.radiusScaling = radiusScaling;
+        // Lines and quads are flat, so they are lit evenly from all sides
+        palette = new ColorPalette(Color.BLACK);
+
+        traceMesh = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
+        MeshView traceView = new MeshView(traceMesh);
+        traceView.setDrawMode(DrawMode.LINE);
+        traceView.setCullFace(CullFace.NONE);
+        traceView.setMaterial(palette.getMaterial());
+
+        pointMesh = new TriangleMesh(VertexFormat.POINT_TEXCOORD);
+        pointView = new MeshView(pointMesh);
+        pointView.setCullFace(CullFace.NONE);
+        pointView.setMaterial(palette.getMaterial());
+
+        getChildren().addAll(traceView, pointView);
+        setMouseTransparent(true);
+
+        localToSceneTransformProperty().addListener(observable -> {
+            if (isVisible() && pointView.isVisible())
+                GeometryUpdateScheduler.schedule(turnUpdate);
+        });
+        radiusScaling.addListener(observable -> {
+            grid = null;
+            if (isVisible() && pointView.isVisible())
+                GeometryUpdateScheduler.schedule(turnUpdate);
+        });
+        visibleProperty().addListener(observable -> update());
+        pointView.visibleProperty().addListener(observable -> update());
+    }
+
+    /**
+     * Set the structure to be shown. It is built once it is visible.
+     *
+     * @param atoms    The atoms, shown as quads.
+     * @param residues The residues in the order of their chains, their C alpha atoms are connected by the trace.
+     *                 Consecutive residues whose C alpha atoms are too far apart to be bonded are not connected.
+     */
+    void setStructure(List<Atom> atoms, List<Residue> residues) {
+        this.atoms = new ArrayList<>(atoms);
+        int n = atoms.size();
+        coordinates = new float[3 * n];
+        radii = new float[n];
+        Map<Atom, Integer> indices = new HashMap<>(2 * n);
+        for (int i = 0; i < n; i++) {
+            Atom atom = atoms.get(i);
+            coordinates[3 * i] = (float) atom.xCoordinateProperty().get();
+            coordinates[3 * i + 1] = (float) atom.yCoordinateProperty().get();
+            coordinates[3 * i + 2] = (float) atom.zCoordinateProperty().get();
+            radii[i] = (float) atom.radiusProperty().get();
+            indices.put(atom, i);
+        }
+        int[] trace = new int[2 * residues.size()];
+        int lines = 0;
+        int previous = -1;
+        for (Residue residue : residues) {
+            Integer current = residue.getCAlphaAtom() == null ? null : indices.get(residue.getCAlphaAtom());
+            if (current == null) {
+                previous = -1;
+                continue;
+            }
+            if (previous >= 0 && distance(previous, current) <= MyGraphView3D.MAX_C_ALPHA_DISTANCE) {
+                trace[2 * lines] = previous;
+                trace[2 * lines + 1] = current;
+                lines++;
+            }
+            previous = current;
+        }
+        traceAtoms = Arrays.copyOf(trace, 2 * lines);
+        quadPoints = new float[12 * n];
+        grid = null;
+        stale = true;
+        update();
+    }
+
+    /**
+     * Read the atoms' positions again, e.g. after all of them were moved at once.
+     */
+    void updateCoordinates() {
+        for (int i = 0; i < atoms.size(); i++) {
+            Atom atom = atoms.get(i);
+            coordinates[3 * i] = (float) atom.xCoordinateProperty().get();
+            coordinates[3 * i + 1] = (float) atom.yCoordinateProperty().get();
+            coordinates[3 * i + 2] = (float) atom.zCoordinateProperty().get();
+        }
+        moved();
+    }
+
+    /**
+     * Draw the atoms at the given positions instead of their model coordinates, e.g. while playing the models of an
+     * ensemble. Atoms not among the given ones keep their positions.
+     *
+     * @param atoms     The atoms, in the order of the positions. Pass the same list for every frame.
+     * @param positions Position of each atom, x, y and z consecutively.
+     */
+    void showFrame(List<Atom> atoms, double[] positions) {
+        if (atoms != frameAtoms) {
+            frameAtoms = atoms;
+            Map<Atom, Integer> indices = new HashMap<>(2 * atoms.size());
+            for (int i = 0; i < atoms.size(); i++) {
+                indices.put(atoms.get(i), i);
+            }
+            frameIndices = new int[this.atoms.size()];
+            for (int i = 0; i < frameIndices.length; i++) {
+                frameIndices[i] = indices.getOrDefault(this.atoms.get(i), -1);
+            }
+        }
+        for (int i = 0; i < frameIndices.length; i++) {
+            int f = frameIndices[i];
+            if (f >= 0) {
+                coordinates[3 * i] = (float) positions[3 * f];
+                coordinates[3 * i + 1] = (float) positions[3 * f + 1];
+                coordinates[3 * i + 2] = (float) positions[3 * f + 2];
+            }
+        }
+        moved();
+    }
+
+    /**
+     * Draw the atoms at their model coordinates again, after frames were shown.
+     */
+    void endFrames() {
+        frameAtoms = null;
+        frameIndices = new int[0];
+        updateCoordinates();
+    }
+
+    /**
+     * Show or hide the atoms' quads besides the trace.
+     *
+     * @param shown Show the atoms if true, else only the trace.
+     */
+    void setPointsShown(boolean shown) {
+        pointView.setVisible(shown);
+    }
+
+    /**
+     * Find the nearest atom hit by a ray, treating the atoms as spheres of the quads' size.
+     *
+     * @param ox Ray origin.
+     * @param oy Ray origin.
+     * @param oz Ray origin.
+     * @param dx Ray direction, need not be normalized.
+     * @param dy Ray direction.
+     * @param dz Ray direction.
+     * @return The nearest atom hit in front of the origin, null if none is hit.
+     */
+    Atom pick(double ox, double oy, double oz, double dx, double dy, double dz) {
+        if (grid == null) {
+            double[] centers = new double[coordinates.length];
+            double[] scaled = new double[radii.length];
+            for (int i = 0; i < radii.length; i++) {
+                centers[3 * i] = coordinates[3 * i];
+                centers[3 * i + 1] = coordinates[3 * i + 1];
+                centers[3 * i + 2] = coordinates[3 * i + 2];
+                scaled[i] = radii[i] * radiusScaling.get();
+            }
+            grid = new SphereGrid(centers, scaled);
+        }
+        int hit = grid.pick(ox, oy, oz, dx, dy, dz, i -> true);
+        return hit < 0 ? null : atoms.get(hit);
+    }
+
+    /**
+     * Read the atoms' colors again, e.g. after a new coloring was applied.
+     */
+    void updateColors() {
+        if (isVisible())
+            writeFaces();
+        else
+            stale = true;
+    }
+
+    /**
+     * Move the trace and the quads to the packed coordinates, which changed.
+     */
+    private void moved() {
+        grid = null;
+        if (!isVisible()) {
+            stale = true;
+        } else if (!stale) {
+            writeTracePoints();
+            if (pointView.isVisible())
+                turnQuads();
+        }
+    }
+
+    /**
+     * Build the meshes if the structure changed while they were hidden.
+     */
+    private void update() {
+        if (!isVisible())
+            return;
+        if (stale) {
+            stale = false;
+            writeTracePoints();
+            // Points first, so the faces never reference missing points
+            turnQuads();
+            writeFaces();
+        } else if (pointView.isVisible()) {
+            turnQuads();
+        }
+    }
+
+    private void writeTracePoints() {
+        // Each line is a thin triangle from one C alpha to the next and back, slightly shifted, like the clash lines
+        float[] points = new float[9 * (traceAtoms.length / 2)];
+        for (int l = 0; l < traceAtoms.length / 2; l++) {
+            int a = 3 * traceAtoms[2 * l];
+            int b = 3 * traceAtoms[2 * l + 1];
+            System.arraycopy(coordinates, a, points, 9 * l, 3);
+            System.arraycopy(coordinates, b, points, 9 * l + 3, 3);
+            points[9 * l + 6] = coordinates[a] + LINE_WIDTH;
+            points[9 * l + 7] = coordinates[a + 1] + LINE_WIDTH;
+            points[9 * l + 8] = coordinates[a + 2];
+        }
+        traceMesh.getPoints().setAll(points);
+    }
+
+    /**
+     * Write the palette of all distinct colors and the faces of both meshes, each face using the color of its atom.
+     * Atoms of colors beyond the palette's capacity take its first color.
+     */
+    private void writeFaces() {
+        palette.clear();
+        int[] colorIndices = new int[atoms.size()];
+        for (int i = 0; i < colorIndices.length; i++) {
+            Color color = atoms.get(i).colorProperty().getValue();
+            colorIndices[i] = Math.max(0, palette.indexOf(color == null ? Color.LIGHTGRAY : color));
+        }
+        int colors = Math.max(1, palette.size());
+        float[] texCoords = new float[2 * colors];
+        for (int c = 0; c < colors; c++) {
+            ColorPalette.writeTexCoord(c, texCoords, 2 * c);
+        }
+        traceMesh.getTexCoords().setAll(texCoords);
+        pointMesh.getTexCoords().setAll(texCoords);
+
+        int[] traceFaces = new int[6 * (traceAtoms.length / 2)];
+        for (int l = 0; l < traceAtoms.length / 2; l++) {
+            int color = colorIndices[traceAtoms[2 * l]];
+            for (int k = 0; k < 3; k++) {
+                traceFaces[6 * l + 2 * k] = 3 * l + k;
+                traceFaces[6 * l + 2 * k + 1] = color;
+            }
+        }
+        traceMesh.getFaces().setAll(traceFaces);
+
+        // Two triangles per quad, corners 0 to 3 going around it
+        int[] pointFaces = new int[12 * atoms.size()];
+        int[] corners = {0, 1, 2, 0, 2, 3};
+        for (int i = 0; i < atoms.size(); i++) {
+            for (int k = 0; k < corners.length; k++) {
+                pointFaces[12 * i + 2 * k] = 4 * i + corners[k];
+                pointFaces[12 * i + 2 * k + 1] = colorIndices[i];
+            }
+        }
+        pointMesh.getFaces().setAll(pointFaces);
+    }
+
+    /**
+     * Turn all quads towards the camera, which looks along the scene's z axis.
+     */
+    private void turnQuads() {
+        Transform transform = getLocalToSceneTransform();
+        Point3D right;
+        Point3D up;
+        try {
+            right = transform.inverseDeltaTransform(1, 0, 0).normalize();
+            up = transform.inverseDeltaTransform(0, 1, 0).normalize();
+        } catch (NonInvertibleTransformException e) {
+            // Scaled to nothing, e.g. while the graph is cleared
+            return;
+        }
+        float rx = (float) right.getX(), ry = (float) right.getY(), rz = (float) right.getZ();
+        float ux = (float) up.getX(), uy = (float) up.getY(), uz = (float) up.getZ();
+        float scaling = (float) radiusScaling.get();
+        for (int i = 0; i < radii.length; i++) {
+            float r = radii[i] * scaling;
+            float x = coordinates[3 * i], y = coordinates[3 * i + 1], z = coordinates[3 * i + 2];
+            int p = 12 * i;
+            // Corners in the order -right -up, +right -up, +right +up, -right +up
+            for (int k = 0; k < 4; k++) {
+                float sr = k == 0 || k == 3 ? -r : r;
+                float su = k < 2 ? -r : r;
+                quadPoints[p++] = x + sr * rx + su * ux;
+                quadPoints[p++] = y + sr * ry + su * uy;
+                quadPoints[p++] = z + sr * rz + su * uz;
+            }
+        }
+        pointMesh.getPoints().setAll(quadPoints);
+    }
+
+    private double distance(int a, int b) {
+        double dx = coordinates[3 * a] - coordinates[3 * b];
+        double dy = coordinates[3 * a + 1] - coordinates[3 * b + 1];
+        double dz = coordinates[3 * a + 2] - coordinates[3 * b + 2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+}
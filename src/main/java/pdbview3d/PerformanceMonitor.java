@@ -0,0 +1,287 @@
+package pdbview3d;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.Label;
+import javafx.scene.shape.Box;
+import javafx.scene.shape.Cylinder;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.Shape3D;
+import javafx.scene.shape.Sphere;
+import javafx.scene.shape.TriangleMesh;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures how fast the 3D view is drawn and how much it has to draw, shown on a label above it while enabled. Frame
+ * times are taken between pulses by an animation timer, and the graph view's nodes, shapes and triangles are counted.
+ * The durations of the last parse, geometry update and recoloring are recorded by the code doing them.
+ * <p>
+ * All numbers are also available from the getters, e.g. for benchmarks.
+ *
+ * @author Patrick Grupp
+ */
+public class PerformanceMonitor {
+
+    /**
+     * Operations whose last duration is recorded.
+     */
+    public enum Operation {
+        /**
+         * Parsing a PDB file into the model.
+         */
+        PARSE("Parse"),
+        /**
+         * Geometry updates applied before a frame, e.g. rebuilding the batched meshes or the ribbon.
+         */
+        MESH_BUILD("Mesh build"),
+        /**
+         * Coloring all atoms and bonds anew.
+         */
+        RECOLOR("Recolor");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Number of frames the percentiles are taken over.
+     */
+    private static final int FRAMES = 240;
+
+    /**
+     * Time between updates of the label, in nanoseconds.
+     */
+    private static final long LABEL_INTERVAL = 500_000_000L;
+
+    /**
+     * Last duration of each operation in nanoseconds, -1 if it was not done yet. Written from any thread.
+     */
+    private static final AtomicLongArray lastDurations = new AtomicLongArray(Operation.values().length);
+
+    static {
+        for (int i = 0; i < lastDurations.length(); i++) {
+            lastDurations.set(i, -1);
+        }
+    }
+
+    private final MyGraphView3D world;
+    private final Label label;
+    private final BooleanProperty enabled;
+
+    /**
+     * Ring buffer of the last frame times in nanoseconds, and the number of frames recorded.
+     */
+    private final long[] frameTimes = new long[FRAMES];
+    private int frames;
+
+    private long lastPulse;
+    private long lastLabelUpdate;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (lastPulse != 0)
+                frameTimes[frames++ % FRAMES] = now - lastPulse;
+            lastPulse = now;
+            if (now - lastLabelUpdate >= LABEL_INTERVAL) {
+                lastLabelUpdate = now;
+                label.setText(format());
+            }
+        }
+    };
+
+    /**
+     * Create the monitor, disabled.
+     *
+     * @param world The graph view to be measured.
+     * @param label The label showing the numbers, only visible while enabled.
+     */
+    public PerformanceMonitor(MyGraphView3D world, Label label) {
+        this.world = world;
+        this.label = label;
+        this.enabled = new SimpleBooleanProperty(false);
+        label.setVisible(false);
+        enabled.addListener((observable, oldValue, enable) -> {
+            label.setVisible(enable);
+            if (enable) {
+                frames = 0;
+                lastPulse = 0;
+                lastLabelUpdate = 0;
+                timer.start();
+            } else {
+                timer.stop();
+            }
+        });
+    }
+
+    /**
+     * Record the duration of an operation just done. May be called from any thread.
+     *
+     * @param operation The operation.
+     * @param nanos     Its duration in nanoseconds.
+     */
+    public static void record(Operation operation, long nanos) {
+        lastDurations.set(operation.ordinal(), nanos);
+    }
+
+    /**
+     * Run an operation and record its duration.
+     *
+     * @param operation The operation.
+     * @param action    The code doing the operation.
+     */
+    public static void time(Operation operation, Runnable action) {
+        long start = System.nanoTime();
+        action.run();
+        record(operation, System.nanoTime() - start);
+    }
+
+    /**
+     * Get the duration of the operation last done.
+     *
+     * @param operation The operation.
+     * @return Duration in milliseconds, NaN if it was not done yet.
+     */
+    public static double getLastDuration(Operation operation) {
+        long nanos = lastDurations.get(operation.ordinal());
+        return nanos < 0 ? Double.NaN : nanos / 1e6;
+    }
+
+    /**
+     * Property determining whether frames are measured and the label is shown.
+     *
+     * @return Property, true if enabled.
+     */
+    public BooleanProperty enabledProperty() {
+        return enabled;
+    }
+
+    /**
+     * Get the frame rate over the recorded frames.
+     *
+     * @return Frames per second, 0 if no frames were recorded while enabled.
+     */
+    public double getFramesPerSecond() {
+        int count = Math.min(frames, FRAMES);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += frameTimes[i];
+        }
+        return total == 0 ? 0 : count * 1e9 / total;
+    }
+
+    /**
+     * Get a percentile of the recorded frame times.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return Frame time in milliseconds, NaN if no frames were recorded while enabled.
+     */
+    public double getFrameTimePercentile(double percentile) {
+        int count = Math.min(frames, FRAMES);
+        if (count == 0)
+            return Double.NaN;
+        long[] sorted = Arrays.copyOf(frameTimes, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / 1e6;
+    }
+
+    /**
+     * Count the nodes of the graph view's scene graph, shown or not, including the view itself.
+     *
+     * @return Number of nodes.
+     */
+    public int getNodeCount() {
+        return countNodes(world);
+    }
+
+    /**
+     * Count the shown shapes of the graph view, each of which is drawn with its own mesh.
+     *
+     * @return Number of shown shapes.
+     */
+    public int getMeshCount() {
+        return (int) countShown(world, false);
+    }
+
+    /**
+     * Count the triangles of the shown shapes of the graph view.
+     *
+     * @return Number of triangles drawn.
+     */
+    public long getTriangleCount() {
+        return countShown(world, true);
+    }
+
+    private int countNodes(Node node) {
+        int count = 1;
+        if (node instanceof Parent) {
+            for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the shown shapes below a node, or their triangles.
+     */
+    private long countShown(Node node, boolean triangles) {
+        if (!node.isVisible())
+            return 0;
+        if (node instanceof Shape3D)
+            return triangles ? countTriangles((Shape3D) node) : 1;
+        long count = 0;
+        if (node instanceof Parent) {
+            for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+                count += countShown(child, triangles);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the triangles of a shape, as JavaFX tessellates the predefined ones.
+     */
+    private long countTriangles(Shape3D shape) {
+        if (shape instanceof MeshView && ((MeshView) shape).getMesh() instanceof TriangleMesh) {
+            TriangleMesh mesh = (TriangleMesh) ((MeshView) shape).getMesh();
+            return mesh.getFaces().size() / mesh.getFaceElementSize();
+        } else if (shape instanceof Sphere) {
+            // Divisions are rounded up to a multiple of four, each band of the sphere having two triangles per division
+            int divisions = (((Sphere) shape).getDivisions() + 3) / 4 * 4;
+            return (long) divisions * divisions;
+        } else if (shape instanceof Cylinder) {
+            // Two triangles per division on the side, one on each cap
+            return 4L * ((Cylinder) shape).getDivisions();
+        } else if (shape instanceof Box) {
+            return 12;
+        }
+        return 0;
+    }
+
+    /**
+     * Format all numbers for the label.
+     */
+    private String format() {
+        StringBuilder text = new StringBuilder(String.format("%.0f FPS%nFrame time p50 %.1f ms, p95 %.1f ms, p99 %.1f ms",
+                getFramesPerSecond(), getFrameTimePercentile(50), getFrameTimePercentile(95),
+                getFrameTimePercentile(99)));
+        text.append(String.format("%n%d nodes, %d meshes, %d triangles", getNodeCount(), getMeshCount(),
+                getTriangleCount()));
+        for (Operation operation : Operation.values()) {
+            double duration = getLastDuration(operation);
+            text.append(String.format("%n%s: %s", operation.label,
+                    Double.isNaN(duration) ? "-" : String.format("%.1f ms", duration)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,185 @@
+package pdbview3d;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import pdbmodel.Atom;
+import pdbmodel.Bond;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Adds atoms and bonds to the graph view in time sliced batches instead of all at once, so a large structure fills
+ * in over several frames while the view stays responsive, e.g. to rotation. Each pulse builds views for at most
+ * {@link #FRAME_BUDGET_NANOS} before handing the frame back for rendering.
+ * <p>
+ * The coarse shape comes first: all C alpha atoms are built before the other atoms, and bonds only once all atoms
+ * are, which also makes sure both atoms of a bond have their views when it is built. Removing an atom or bond whose
+ * view was not built yet only drops it from the queue.
+ * <p>
+ * While the graph view shows the lightweight representation, which needs no view per atom or bond, building pauses
+ * and the queue is kept. It resumes once the lightweight representation is switched off.
+ *
+ * @author Patrick Grupp
+ */
+public class ProgressiveSceneBuilder {
+
+    /**
+     * Time spent building views per frame.
+     */
+    private static final long FRAME_BUDGET_NANOS = 4_000_000;
+
+    /**
+     * Number of views built between two looks at the clock.
+     */
+    private static final int CLOCK_INTERVAL = 32;
+
+    private final MyGraphView3D world;
+
+    /**
+     * Atoms and bonds waiting for their views, in the order they are built.
+     */
+    private final Set<Atom> pendingCAlphaAtoms;
+    private final Set<Atom> pendingAtoms;
+    private final Set<Bond> pendingBonds;
+
+    private final ReadOnlyBooleanWrapper building;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            build(System.nanoTime() + FRAME_BUDGET_NANOS);
+        }
+    };
+
+    /**
+     * Create a builder for the given view.
+     *
+     * @param world The view the atoms and bonds are added to.
+     */
+    public ProgressiveSceneBuilder(MyGraphView3D world) {
+        this.world = world;
+        pendingCAlphaAtoms = new LinkedHashSet<>();
+        pendingAtoms = new LinkedHashSet<>();
+        pendingBonds = new LinkedHashSet<>();
+        building = new ReadOnlyBooleanWrapper(false);
+        world.lightweightProperty().addListener((observable, oldValue, lightweight) -> {
+            if (lightweight)
+                timer.stop();
+            else if (building.get())
+                timer.start();
+        });
+    }
+
+    /**
+     * Queue an atom to be added to the view.
+     *
+     * @param atom The atom.
+     */
+    public void addNode(Atom atom) {
+        if (atom.chemicalElementProperty().getValue() == Atom.ChemicalElement.CA)
+            pendingCAlphaAtoms.add(atom);
+        else
+            pendingAtoms.add(atom);
+        start();
+    }
+
+    /**
+     * Queue a bond to be added to the view, after all queued atoms.
+     *
+     * @param bond The bond.
+     */
+    public void addEdge(Bond bond) {
+        pendingBonds.add(bond);
+        start();
+    }
+
+    /**
+     * Remove an atom from the view, or from the queue if its view was not built yet.
+     *
+     * @param atom The atom.
+     */
+    public void removeNode(Atom atom) {
+        if (!pendingCAlphaAtoms.remove(atom) && !pendingAtoms.remove(atom))
+            world.removeNode(atom);
+        updateBuilding();
+    }
+
+    /**
+     * Remove a bond from the view, or from the queue if its view was not built yet.
+     *
+     * @param bond The bond.
+     */
+    public void removeEdge(Bond bond) {
+        if (!pendingBonds.remove(bond))
+            world.removeEdge(bond);
+        updateBuilding();
+    }
+
+    /**
+     * Build all queued views now, e.g. before the view is read, even while the lightweight representation is shown.
+     */
+    public void finish() {
+        build(Long.MAX_VALUE);
+    }
+
+    /**
+     * Property indicating whether views are still waiting to be built.
+     *
+     * @return Property, true while atoms or bonds are queued, also while building pauses.
+     */
+    public ReadOnlyBooleanProperty buildingProperty() {
+        return building.getReadOnlyProperty();
+    }
+
+    /**
+     * Get the number of atoms and bonds waiting for their views.
+     *
+     * @return Number of queued atoms and bonds.
+     */
+    public int getPendingCount() {
+        return pendingCAlphaAtoms.size() + pendingAtoms.size() + pendingBonds.size();
+    }
+
+    private void start() {
+        if (!building.get()) {
+            building.set(true);
+            if (!world.lightweightProperty().get())
+                timer.start();
+        }
+    }
+
+    /**
+     * Build queued views until the given time of {@link System#nanoTime()} is reached or none are left.
+     */
+    private void build(long deadline) {
+        int built = 0;
+        Iterator<Atom> cAlphaAtoms = pendingCAlphaAtoms.iterator();
+        while (cAlphaAtoms.hasNext() && (built++ % CLOCK_INTERVAL != 0 || System.nanoTime() < deadline)) {
+            world.addNode(cAlphaAtoms.next());
+            cAlphaAtoms.remove();
+        }
+        Iterator<Atom> atoms = pendingAtoms.iterator();
+        while (pendingCAlphaAtoms.isEmpty() && atoms.hasNext() &&
+                (built++ % CLOCK_INTERVAL != 0 || System.nanoTime() < deadline)) {
+            world.addNode(atoms.next());
+            atoms.remove();
+        }
+        Iterator<Bond> bonds = pendingBonds.iterator();
+        while (pendingCAlphaAtoms.isEmpty() && pendingAtoms.isEmpty() && bonds.hasNext() &&
+                (built++ % CLOCK_INTERVAL != 0 || System.nanoTime() < deadline)) {
+            world.addEdge(bonds.next());
+            bonds.remove();
+        }
+        updateBuilding();
+    }
+
+    private void updateBuilding() {
+        if (building.get() && getPendingCount() == 0) {
+            timer.stop();
+            building.set(false);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package pdbview3d;
+
+import javafx.geometry.Point2D;
+import javafx.geometry.Point3D;
+import javafx.scene.PerspectiveCamera;
+import javafx.scene.SubScene;
+import javafx.scene.transform.Transform;
+
+/**
+ * Perspective projection of a sub scene's camera, shared by picking, the level of detail and the selection boxes.
+ * The camera looks along the z axis of its parent, the center of the sub scene being on its axis. Points are given in
+ * the coordinates of the camera's parent, e.g. transformed by the graph view's local to parent transform.
+ *
+ * @author Patrick Grupp
+ */
+public class Projection {
+
+    private final SubScene subScene;
+    private final PerspectiveCamera camera;
+
+    /**
+     * Projection of the given camera onto the given sub scene.
+     *
+     * @param subScene The sub scene shown by the camera.
+     * @param camera   The camera, with its eye at its origin.
+     */
+    public Projection(SubScene subScene, PerspectiveCamera camera) {
+        this.subScene = subScene;
+        this.camera = camera;
+    }
+
+    /**
+     * Get the number of pixels a unit at distance 1 from the camera covers, from the vertical field of view.
+     *
+     * @return The camera's focal length in pixels.
+     */
+    public double getFocalLength() {
+        return subScene.getHeight() / 2 / Math.tan(Math.toRadians(camera.getFieldOfView() / 2));
+    }
+
+    /**
+     * Get the scaling of a transform made of rotations, translations and a uniform scaling, like the zoom.
+     *
+     * @param transform The transform.
+     * @return The factor lengths are scaled by.
+     */
+    public static double getScale(Transform transform) {
+        // Rotations keep the determinant, so it only holds the scaling
+        return Math.cbrt(Math.abs(transform.determinant()));
+    }
+
+    /**
+     * Get the camera's eye.
+     *
+     * @return The eye's position.
+     */
+    public Point3D getEye() {
+        return new Point3D(0, 0, camera.getTranslateZ());
+    }
+
+    /**
+     * Get the distance of a point in front of the camera along the camera's axis.
+     *
+     * @param point The point.
+     * @return Its depth, negative if it is behind the eye.
+     */
+    public double getDepth(Point3D point) {
+        return point.getZ() - camera.getTranslateZ();
+    }
+
+    /**
+     * Get the size of a length on screen, e.g. of an atom's radius.
+     *
+     * @param length The length, in the coordinates of the camera's parent.
+     * @param depth  The depth it lies at, see {@link #getDepth(Point3D)}.
+     * @return The length in pixels.
+     */
+    public double getScreenSize(double length, double depth) {
+        return length * getFocalLength() / depth;
+    }
+
+    /**
+     * Project a point in front of the camera onto the sub scene.
+     *
+     * @param point The point.
+     * @return The point's position in the sub scene's coordinates.
+     */
+    public Point2D project(Point3D point) {
+        double scaling = getFocalLength() / getDepth(point);
+        return new Point2D(subScene.getWidth() / 2 + point.getX() * scaling,
+                subScene.getHeight() / 2 + point.getY() * scaling);
+    }
+
+    /**
+     * Get the point at distance 1 in front of the eye which is shown at the given position of the sub scene, e.g. to
+     * cast a ray from the eye through the mouse cursor.
+     *
+     * @param x Position in the sub scene's coordinates.
+     * @param y Position in the sub scene's coordinates.
+     * @return The point, the ray from the eye through it passes the position.
+     */
+    public Point3D unproject(double x, double y) {
+        double focalLength = getFocalLength();
+        return getEye().add((x - subScene.getWidth() / 2) / focalLength, (y - subScene.getHeight() / 2) / focalLength,
+                1);
+    }
+}
@@ -0,0 +1,173 @@
+package pdbview3d;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.geometry.Point2D;
+import javafx.geometry.Point3D;
+import javafx.scene.PerspectiveCamera;
+import javafx.scene.SubScene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Transform;
+import pdbmodel.Atom;
+import pdbmodel.Residue;
+
+import java.util.Arrays;
+
+/**
+ * Marks the atoms of the selected residues with boxes on a single canvas above the 3D view. While residues are
+ * selected, the shown atoms are projected to the screen once per frame, and the canvas is only redrawn if a box moved.
+ *
+ * @author Patrick Grupp
+ */
+public class SelectionOverlay {
+
+    private static final Color STROKE = Color.CORNFLOWERBLUE;
+    private static final Color FILL = new Color(0.39215687f, 0.58431375f, 0.92941177f, 0.3);
+
+    private final Canvas canvas;
+    private final SubScene subScene;
+    private final PerspectiveCamera camera;
+    private final Projection projection;
+    private final MyGraphView3D world;
+    private final ObservableList<Residue> selection;
+    private final BooleanProperty enabled;
+
+    /**
+     * Boxes drawn last, four values (x, y, width, height) per box, and the number of values used.
+     */
+    private double[] drawn = new double[0];
+    private int drawnLength;
+    private double[] boxes = new double[0];
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            update();
+        }
+    };
+
+    /**
+     * Create the overlay, following the given selection.
+     *
+     * @param canvas    The canvas to draw on, lying above the sub scene.
+     * @param subScene  The sub scene showing the graph.
+     * @param camera    The camera of the sub scene, with its eye at its origin.
+     * @param world     The graph view, the root of the sub scene.
+     * @param selection The selected residues.
+     */
+    public SelectionOverlay(Canvas canvas, SubScene subScene, PerspectiveCamera camera, MyGraphView3D world,
+                            ObservableList<Residue> selection) {
+        this.canvas = canvas;
+        this.subScene = subScene;
+        this.camera = camera;
+        this.projection = new Projection(subScene, camera);
+        this.world = world;
+        this.selection = selection;
+        this.enabled = new SimpleBooleanProperty(true);
+        selection.addListener((ListChangeListener<Residue>) c -> updateTimer());
+        enabled.addListener(observable -> updateTimer());
+    }
+
+    /**
+     * Property determining whether the boxes are drawn.
+     *
+     * @return Property, true if the boxes are drawn.
+     */
+    public BooleanProperty enabledProperty() {
+        return enabled;
+    }
+
+    /**
+     * Only project while there is something to draw.
+     */
+    private void updateTimer() {
+        if (enabled.get() && !selection.isEmpty()) {
+            timer.start();
+        } else {
+            timer.stop();
+            clear();
+        }
+    }
+
+    /**
+     * Project the shown atoms of the selected residues and redraw the boxes, if any of them changed.
+     */
+    private void update() {
+        int length = project();
+        if (length == drawnLength && unchanged(length))
+            return;
+        GraphicsContext graphics = canvas.getGraphicsContext2D();
+        graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        graphics.setStroke(STROKE);
+        graphics.setFill(FILL);
+        for (int i = 0; i < length; i += 4) {
+            graphics.fillRect(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3]);
+            graphics.strokeRect(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3]);
+        }
+        // Keep the drawn boxes, reusing the other array for the next projection
+        double[] swap = drawn;
+        drawn = boxes;
+        boxes = swap;
+        drawnLength = length;
+    }
+
+    /**
+     * Project the shown atoms of the selected residues to boxes on the canvas.
+     *
+     * @return Number of values written to the boxes.
+     */
+    private int project() {
+        if (subScene.getHeight() <= 0 || selection.isEmpty())
+            return 0;
+        Transform transform = world.getLocalToParentTransform();
+        double scale = Projection.getScale(transform) * world.atomRadiusScalingProperty().get();
+        Point2D subSceneOrigin = subScene.localToScene(0, 0);
+        Point2D offset = canvas.sceneToLocal(subSceneOrigin);
+
+        int length = 0;
+        for (Residue residue : selection) {
+            for (Atom atom : new Atom[]{residue.getNAtom(), residue.getCAlphaAtom(), residue.getCBetaAtom(),
+                    residue.getCAtom(), residue.getOAtom()}) {
+                MyNodeView3D node = world.getNodeByModel(atom);
+                if (node == null || !node.isVisible())
+                    continue;
+                Point3D center = transform.transform(atom.xCoordinateProperty().get(),
+                        atom.yCoordinateProperty().get(), atom.zCoordinateProperty().get());
+                double depth = projection.getDepth(center);
+                if (depth <= camera.getNearClip())
+                    continue;
+                double radius = projection.getScreenSize(atom.radiusProperty().get() * scale, depth);
+                Point2D position = projection.project(center);
+                if (boxes.length < length + 4)
+                    boxes = Arrays.copyOf(boxes, Math.max(64, 2 * boxes.length));
+                boxes[length] = Math.floor(offset.getX() + position.getX() - radius);
+                boxes[length + 1] = Math.floor(offset.getY() + position.getY() - radius);
+                boxes[length + 2] = Math.floor(2 * radius);
+                boxes[length + 3] = Math.floor(2 * radius);
+                length += 4;
+            }
+        }
+        return length;
+    }
+
+    private boolean unchanged(int length) {
+        for (int i = 0; i < length; i++) {
+            if (boxes[i] != drawn[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remove all boxes.
+     */
+    private void clear() {
+        canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        drawnLength = 0;
+    }
+}
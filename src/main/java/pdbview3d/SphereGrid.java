@@ -0,0 +1,204 @@
+package pdbview3d;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform grid over packed spheres, finding the sphere hit by a ray without testing all of them. The ray walks
+ * through the grid cell by cell from its origin. Only the spheres of the cells passed are tested, and the walk stops
+ * at the first cell behind the nearest hit, so picking takes about the same time for any number of spheres.
+ * <p>
+ * The grid is built once from the arrays passed and does not follow later changes of them.
+ *
+ * @author Patrick Grupp
+ */
+final class SphereGrid {
+
+    private final double[] centers;
+    private final double[] radii;
+
+    /**
+     * Grid origin, cell size and number of cells per axis.
+     */
+    private double minX, minY, minZ;
+    private double cellSize;
+    private int cellsX, cellsY, cellsZ;
+
+    /**
+     * Spheres per cell: the indices of cell c's spheres are cellSpheres[cellStart[c]] to
+     * cellSpheres[cellStart[c + 1] - 1]. A sphere is in every cell its bounding box overlaps.
+     */
+    private int[] cellStart;
+    private int[] cellSpheres;
+
+    /**
+     * Sort the given spheres into a new grid.
+     *
+     * @param centers Center of each sphere, x, y and z consecutively.
+     * @param radii   Radius of each sphere.
+     */
+    SphereGrid(double[] centers, double[] radii) {
+        this.centers = centers;
+        this.radii = radii;
+        int n = radii.length;
+        if (n == 0)
+            return;
+
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        minX = minY = minZ = Double.POSITIVE_INFINITY;
+        double maxRadius = 0;
+        for (int i = 0; i < n; i++) {
+            maxRadius = Math.max(maxRadius, radii[i]);
+            minX = Math.min(minX, centers[3 * i] - radii[i]);
+            minY = Math.min(minY, centers[3 * i + 1] - radii[i]);
+            minZ = Math.min(minZ, centers[3 * i + 2] - radii[i]);
+            maxX = Math.max(maxX, centers[3 * i] + radii[i]);
+            maxY = Math.max(maxY, centers[3 * i + 1] + radii[i]);
+            maxZ = Math.max(maxZ, centers[3 * i + 2] + radii[i]);
+        }
+
+        // Cells about as large as a sphere, but not many more cells than spheres
+        double volume = Math.max(maxX - minX, 1) * Math.max(maxY - minY, 1) * Math.max(maxZ - minZ, 1);
+        cellSize = Math.max(Math.max(2 * maxRadius, Math.cbrt(volume / n)), 1);
+        cellsX = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+        cellsY = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+        cellsZ = Math.max(1, (int) Math.ceil((maxZ - minZ) / cellSize));
+
+        // Count the spheres per cell, then fill them in at the offsets summed up from the counts
+        cellStart = new int[cellsX * cellsY * cellsZ + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            int[] fill = pass == 0 ? null : cellStart.clone();
+            for (int i = 0; i < n; i++) {
+                int x0 = cellIndex(centers[3 * i] - radii[i], minX, cellsX);
+                int x1 = cellIndex(centers[3 * i] + radii[i], minX, cellsX);
+                int y0 = cellIndex(centers[3 * i + 1] - radii[i], minY, cellsY);
+                int y1 = cellIndex(centers[3 * i + 1] + radii[i], minY, cellsY);
+                int z0 = cellIndex(centers[3 * i + 2] - radii[i], minZ, cellsZ);
+                int z1 = cellIndex(centers[3 * i + 2] + radii[i], minZ, cellsZ);
+                for (int z = z0; z <= z1; z++) {
+                    for (int y = y0; y <= y1; y++) {
+                        for (int x = x0; x <= x1; x++) {
+                            int c = (z * cellsY + y) * cellsX + x;
+                            if (fill == null)
+                                cellStart[c + 1]++;
+                            else
+                                cellSpheres[fill[c]++] = i;
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int c = 1; c < cellStart.length; c++) {
+                    cellStart[c] += cellStart[c - 1];
+                }
+                cellSpheres = new int[cellStart[cellStart.length - 1]];
+            }
+        }
+    }
+
+    /**
+     * Find the nearest sphere hit by a ray.
+     *
+     * @param ox       Ray origin.
+     * @param oy       Ray origin.
+     * @param oz       Ray origin.
+     * @param dx       Ray direction, need not be normalized.
+     * @param dy       Ray direction.
+     * @param dz       Ray direction.
+     * @param pickable Tells whether the sphere of an index may be picked, e.g. whether it is visible.
+     * @return Index of the nearest pickable sphere hit in front of the origin, -1 if none is hit.
+     */
+    int pick(double ox, double oy, double oz, double dx, double dy, double dz, IntPredicate pickable) {
+        if (radii.length == 0 || (dx == 0 && dy == 0 && dz == 0))
+            return -1;
+
+        // Parameters of the ray where it enters and leaves the grid
+        double[] origin = {ox, oy, oz};
+        double[] direction = {dx, dy, dz};
+        double[] gridMin = {minX, minY, minZ};
+        int[] cells = {cellsX, cellsY, cellsZ};
+        double tEnter = 0, tLeave = Double.POSITIVE_INFINITY;
+        for (int axis = 0; axis < 3; axis++) {
+            double low = gridMin[axis], high = low + cells[axis] * cellSize;
+            if (direction[axis] == 0) {
+                if (origin[axis] < low || origin[axis] > high)
+                    return -1;
+            } else {
+                double t1 = (low - origin[axis]) / direction[axis];
+                double t2 = (high - origin[axis]) / direction[axis];
+                tEnter = Math.max(tEnter, Math.min(t1, t2));
+                tLeave = Math.min(tLeave, Math.max(t1, t2));
+            }
+        }
+        if (tEnter > tLeave)
+            return -1;
+
+        // Walk the cells along the ray, keeping the parameter where the ray leaves the current cell on each axis
+        int[] cell = new int[3];
+        int[] step = new int[3];
+        double[] tNext = new double[3];
+        double[] tDelta = new double[3];
+        for (int axis = 0; axis < 3; axis++) {
+            double position = origin[axis] + tEnter * direction[axis];
+            cell[axis] = Math.max(0, Math.min(cells[axis] - 1, (int) ((position - gridMin[axis]) / cellSize)));
+            if (direction[axis] > 0) {
+                step[axis] = 1;
+                tNext[axis] = (gridMin[axis] + (cell[axis] + 1) * cellSize - origin[axis]) / direction[axis];
+                tDelta[axis] = cellSize / direction[axis];
+            } else if (direction[axis] < 0) {
+                step[axis] = -1;
+                tNext[axis] = (gridMin[axis] + cell[axis] * cellSize - origin[axis]) / direction[axis];
+                tDelta[axis] = -cellSize / direction[axis];
+            } else {
+                tNext[axis] = Double.POSITIVE_INFINITY;
+                tDelta[axis] = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        double a = dx * dx + dy * dy + dz * dz;
+        double nearest = Double.POSITIVE_INFINITY;
+        int hit = -1;
+        while (true) {
+            int c = (cell[2] * cellsY + cell[1]) * cellsX + cell[0];
+            for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                int i = cellSpheres[k];
+                double t = intersect(i, ox, oy, oz, dx, dy, dz, a);
+                if (t < nearest && pickable.test(i)) {
+                    nearest = t;
+                    hit = i;
+                }
+            }
+            int axis = tNext[0] < tNext[1] ? (tNext[0] < tNext[2] ? 0 : 2) : (tNext[1] < tNext[2] ? 1 : 2);
+            // Spheres in later cells can only be hit further away
+            if (nearest <= tNext[axis])
+                return hit;
+            cell[axis] += step[axis];
+            if (cell[axis] < 0 || cell[axis] >= cells[axis])
+                return hit;
+            tNext[axis] += tDelta[axis];
+        }
+    }
+
+    /**
+     * Intersect the ray with a sphere.
+     *
+     * @return Ray parameter of the first intersection in front of the origin, infinity if there is none.
+     */
+    private double intersect(int i, double ox, double oy, double oz, double dx, double dy, double dz, double a) {
+        double cx = ox - centers[3 * i], cy = oy - centers[3 * i + 1], cz = oz - centers[3 * i + 2];
+        double b = cx * dx + cy * dy + cz * dz;
+        double c = cx * cx + cy * cy + cz * cz - radii[i] * radii[i];
+        double discriminant = b * b - a * c;
+        if (discriminant < 0)
+            return Double.POSITIVE_INFINITY;
+        double root = Math.sqrt(discriminant);
+        double t = (-b - root) / a;
+        if (t < 0)
+            // The origin is inside the sphere
+            t = (-b + root) / a;
+        return t < 0 ? Double.POSITIVE_INFINITY : t;
+    }
+
+    private int cellIndex(double position, double min, int cells) {
+        return Math.max(0, Math.min(cells - 1, (int) ((position - min) / cellSize)));
+    }
+}
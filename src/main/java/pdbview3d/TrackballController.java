@@ -0,0 +1,137 @@
+package pdbview3d;
+
+import javafx.geometry.Point3D;
+import javafx.scene.Node;
+import javafx.scene.transform.Affine;
+
+import java.util.function.Supplier;
+
+/**
+ * Rotates and zooms a node with the mouse, like a trackball. The node gets one {@link Affine}, which is modified in
+ * place, instead of a new transform being concatenated and set for every mouse event.
+ * <p>
+ * Mouse events only accumulate the dragged distance and the zoom factor, which are applied to the transform once per
+ * frame, however many events arrived in between. The pivot both turn around is the model's geometric center, which is
+ * cached until {@link #invalidatePivot()} is called, e.g. when atoms were added or removed.
+ *
+ * @author Patrick Grupp
+ */
+public class TrackballController {
+
+    /**
+     * Rotation in degrees per pixel dragged.
+     */
+    private static final double DEGREES_PER_PIXEL = 0.4;
+
+    private final Affine transform;
+    private final Supplier<Point3D> pivotSource;
+
+    /**
+     * The pivot in the node's coordinates, null if it has to be computed again.
+     */
+    private Point3D pivot;
+
+    /**
+     * Dragged distance and zoom factor not yet applied to the transform.
+     */
+    private double pendingX;
+    private double pendingY;
+    private double pendingScale = 1;
+
+    private final Runnable update = this::applyPending;
+
+    /**
+     * Create a controller transforming the given node.
+     *
+     * @param target      The node, its transforms are replaced by the controller's transform.
+     * @param pivotSource Computes the geometric center of the model, in the node's coordinates.
+     */
+    public TrackballController(Node target, Supplier<Point3D> pivotSource) {
+        this.pivotSource = pivotSource;
+        transform = new Affine();
+        target.getTransforms().setAll(transform);
+    }
+
+    /**
+     * Rotate by a dragged distance, around the axis perpendicular to it in the screen's plane.
+     *
+     * @param deltaX Distance dragged horizontally, in pixels.
+     * @param deltaY Distance dragged vertically, in pixels.
+     */
+    public void rotate(double deltaX, double deltaY) {
+        pendingX += deltaX;
+        pendingY += deltaY;
+        GeometryUpdateScheduler.schedule(update);
+    }
+
+    /**
+     * Zoom by a factor, larger than 1 enlarging the model.
+     *
+     * @param factor The factor the model is scaled by.
+     */
+    public void zoom(double factor) {
+        pendingScale *= factor;
+        GeometryUpdateScheduler.schedule(update);
+    }
+
+    /**
+     * Reset rotation and zoom, dropping pending mouse movements.
+     */
+    public void reset() {
+        pendingX = 0;
+        pendingY = 0;
+        pendingScale = 1;
+        transform.setToIdentity();
+    }
+
+    /**
+     * Compute the pivot again the next time it is used, since the model changed.
+     */
+    public void invalidatePivot() {
+        pivot = null;
+    }
+
+    /**
+     * Get the geometric center of the model, which rotation and zoom turn around.
+     *
+     * @return The cached pivot, in the node's coordinates.
+     */
+    public Point3D getPivot() {
+        if (pivot == null)
+            pivot = pivotSource.get();
+        return pivot;
+    }
+
+    /**
+     * Get the transform of the node. It is modified in place, so listen to the node's transform properties for
+     * changes.
+     *
+     * @return The transform.
+     */
+    public Affine getTransform() {
+        return transform;
+    }
+
+    /**
+     * Apply the accumulated mouse movements to the transform.
+     */
+    private void applyPending() {
+        double deltaX = pendingX;
+        double deltaY = pendingY;
+        double scale = pendingScale;
+        pendingX = 0;
+        pendingY = 0;
+        pendingScale = 1;
+
+        // Rotation and zoom happen after the transform so far, around where the pivot is currently shown
+        Point3D center = transform.transform(getPivot());
+        double distance = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+        if (distance > 0) {
+            // The axis is perpendicular to the dragged direction and the z axis
+            Point3D axis = new Point3D(deltaX, deltaY, 0).crossProduct(0, 0, 1);
+            transform.prependRotation(DEGREES_PER_PIXEL * distance, center, axis);
+        }
+        if (scale != 1)
+            transform.prependScale(scale, scale, scale, center);
+    }
+}
@@ -2,23 +2,28 @@ package view;
 
 import blast.BlastService;
 import javafx.animation.FadeTransition;
+import javafx.application.Platform;
 import javafx.animation.ParallelTransition;
 import javafx.animation.ScaleTransition;
-import javafx.beans.WeakInvalidationListener;
+import javafx.beans.InvalidationListener;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.IntegerBinding;
 import javafx.beans.binding.StringBinding;
 import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.Property;
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleBooleanProperty;
-import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.value.ObservableBooleanValue;
 import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.concurrent.Worker;
 import javafx.event.ActionEvent;
 import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
+import javafx.geometry.Point2D;
 import javafx.geometry.Point3D;
 import javafx.scene.*;
 import javafx.scene.control.Alert;
@@ -32,8 +37,6 @@ import javafx.scene.layout.BackgroundFill;
 import javafx.scene.layout.CornerRadii;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
-import javafx.scene.transform.Rotate;
-import javafx.scene.transform.Scale;
 import javafx.scene.transform.Transform;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
@@ -42,11 +45,15 @@ import pdbmodel.*;
 import pdbview3d.*;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.Callable;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 /**
  * view.Presenter
@@ -94,6 +101,16 @@ public class Presenter {
      */
     private final double PANEDEPTH = 5000;
 
+    /**
+     * Number of atoms from which on atoms and bonds are merged into meshes when a structure is loaded.
+     */
+    private static final int BATCHED_ATOMS_THRESHOLD = 5000;
+
+    /**
+     * Number of atoms from which on only the lightweight C alpha trace is shown when a structure is loaded.
+     */
+    private final IntegerProperty lightweightThreshold = new SimpleIntegerProperty(100_000);
+
     /**
      * view.View representation of the graph.
      */
@@ -114,15 +131,90 @@ public class Presenter {
      */
     private double pressedY;
 
+    /**
+     * Atom currently described by the hover label, null if none.
+     */
+    private Atom hoveredAtom;
+
     /**
      * The Blast service, handling querying the current sequence to BLAST.
      */
     private final BlastService blastService;
 
     /**
-     * Rotation of the graph on y axis.
+     * Rotates and zooms the graph when dragging and scrolling.
+     */
+    private final TrackballController trackball;
+
+    /**
+     * Steric clashes of the loaded structure, filled by the clash detection task.
+     */
+    private final ObservableList<Clash> clashes = FXCollections.observableArrayList();
+
+    /**
+     * The currently running clash detection, null if none was started.
+     */
+    private Task<List<Clash>> clashDetectionTask;
+
+    /**
+     * The currently running surface generation, null if none is running.
+     */
+    private Task<MolecularSurface> surfaceTask;
+
+    /**
+     * The currently running solvent accessibility computation, null if none is running.
+     */
+    private Task<SolventAccessibility> solventAccessibilityTask;
+
+    /**
+     * Visibility of the atoms and bonds of the loaded structure in each representation, computed once per load.
+     */
+    private VisibilityMasks visibilityMasks;
+
+    /**
+     * All loaded structures. The one shown is restored into the model from here.
+     */
+    private final Workspace workspace;
+
+    /**
+     * The camera showing the 3D view.
+     */
+    private PerspectiveCamera perspectiveCamera;
+
+    /**
+     * Projection of the camera onto the 3D view, for picking and the level of detail.
      */
-    private final Property<Transform> worldTransformProperty = new SimpleObjectProperty<>(new Rotate());
+    private Projection projection;
+
+    /**
+     * Measures the 3D view, shown on the performance overlay.
+     */
+    private PerformanceMonitor performanceMonitor;
+
+    /**
+     * Adds the views of loaded atoms and bonds over several frames.
+     */
+    private ProgressiveSceneBuilder sceneBuilder;
+
+    /**
+     * Plays the models of an ensemble in the 3D view.
+     */
+    private EnsembleAnimator ensembleAnimator;
+
+    /**
+     * Whether atoms and bonds were merged into meshes before playback, which needs the meshes.
+     */
+    private boolean batchedBeforePlayback;
+
+    /**
+     * Whether clashes were detected before playback, which are detected again for the model shown after playback.
+     */
+    private boolean clashesBeforePlayback;
+
+    /**
+     * Chooses the tessellation of atoms and bonds from the structure's size and the zoom.
+     */
+    private final LevelOfDetail levelOfDetail = new LevelOfDetail();
 
     private Random randomGenerator;
 
@@ -136,6 +228,7 @@ public class Presenter {
     public Presenter(View view, PDBEntry graph, Stage primaryStage) {
         this.selectionModel = new MySelectionModel<>();
         this.blastService = new BlastService();
+        this.workspace = new Workspace();
         // initial last clicked positions for X and Y coordinate
         pressedX = 0.0;
         pressedY = 0.0;
@@ -152,7 +245,11 @@ public class Presenter {
 
         animationRunning = new SimpleBooleanProperty(false);
         // initialize the view of the Graph, which in turn initialized the views of edges and nodes
-        world = new MyGraphView3D(this);
+        world = new MyGraphView3D();
+        sceneBuilder = new ProgressiveSceneBuilder(world);
+        trackball = new TrackballController(world, this::computePivot);
+        ensembleAnimator = new EnsembleAnimator(world);
+        visibilityMasks = new VisibilityMasks(pdbModel);
         // Set depthBuffer to true, since view is 3D
         this.subScene3d = new SubScene(world, PANEWIDTH, PANEHEIGHT, true, SceneAntialiasing.BALANCED);
         setUpPerspectiveCamera();
@@ -169,6 +266,353 @@ public class Presenter {
         view.set3DGraphScene(this.subScene3d);
         setUpTabPane();
         setUpBlastService();
+        setUpClashDetection();
+        setUpSurface();
+        setUpStructuralAlignment();
+        setUpWorkspace();
+        setUpPerformanceMonitor();
+        setUpEnsemblePlayback();
+    }
+
+    /**
+     * Set up the workspace tab, switching between loaded structures, and adding files to the workspace.
+     */
+    private void setUpWorkspace() {
+        view.workspaceListView.setItems(workspace.structuresProperty());
+        view.showStructureButton.disableProperty().bind(
+                view.workspaceListView.getSelectionModel().selectedItemProperty().isNull().or(animationRunning));
+        view.removeStructureButton.disableProperty().bind(
+                view.workspaceListView.getSelectionModel().selectedItemProperty().isNull());
+
+        view.showStructureButton.setOnAction(event ->
+                showStructure(view.workspaceListView.getSelectionModel().getSelectedItem()));
+        view.workspaceListView.setOnMouseClicked(event -> {
+            CompactStructure structure = view.workspaceListView.getSelectionModel().getSelectedItem();
+            if (event.getClickCount() == 2 && structure != null && !animationRunning.getValue())
+                showStructure(structure);
+        });
+        view.removeStructureButton.setOnAction(event ->
+                workspace.remove(view.workspaceListView.getSelectionModel().getSelectedItem()));
+        view.clearWorkspaceButton.disableProperty().bind(Bindings.isEmpty(workspace.structuresProperty()));
+        view.clearWorkspaceButton.setOnAction(event -> workspace.clear());
+
+        view.addToWorkspaceMenuItem.setOnAction(event -> {
+            List<File> files = view.tgfFileChooser.showOpenMultipleDialog(primaryStage);
+            if (files == null || files.isEmpty())
+                return;
+            // Files are parsed into their own entries in the background, only adding them is done on the FX thread
+            Task<List<CompactStructure>> task = new Task<List<CompactStructure>>() {
+                @Override
+                protected List<CompactStructure> call() throws Exception {
+                    List<CompactStructure> structures = new ArrayList<>();
+                    for (File file : files) {
+                        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                            structures.add(workspace.load(reader, file.getAbsolutePath()));
+                        }
+                    }
+                    return structures;
+                }
+            };
+            showStatus("Adding " + files.size() + " files to the workspace...");
+            task.setOnSucceeded(finished -> {
+                task.getValue().forEach(workspace::add);
+                showStatus("Added " + files.size() + " files to the workspace.");
+                view.contentTabPane.getSelectionModel().select(view.workspaceTab);
+            });
+            task.setOnFailed(failed -> showStatus("Adding files failed: " + task.getException().getMessage()));
+            Thread thread = new Thread(task, "Workspace loading");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Show a structure of the workspace, replacing the one currently shown.
+     *
+     * @param structure The structure to be shown.
+     */
+    private void showStructure(CompactStructure structure) {
+        if (abortLoadBecauseOfBlastService()) return;
+        prepareModelForLoading();
+        workspace.show(structure, pdbModel);
+        initializeLoadedModel();
+    }
+
+    /**
+     * Set up the structural alignment of the loaded structure with a PDB file or all PDB files in a directory.
+     */
+    private void setUpStructuralAlignment() {
+        view.alignWithFileMenuItem.setOnAction(event -> {
+            File file = view.tgfFileChooser.showOpenDialog(primaryStage);
+            if (file == null)
+                return;
+            // The aligner copies the loaded structure here, on the FX thread
+            StructuralAligner aligner = new StructuralAligner(pdbModel);
+            runStructuralAlignment("Aligning with " + file.getName() + "...", () -> {
+                PDBEntry other = new PDBEntry();
+                try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                    PDBParser.parse(other, reader);
+                }
+                StructuralAlignment alignment = aligner.align(other);
+                return alignment + "\n\n" + alignment.formatAlignment();
+            });
+        });
+
+        view.searchDirectoryMenuItem.setOnAction(event -> {
+            File directory = view.pdbDirectoryChooser.showDialog(primaryStage);
+            if (directory == null)
+                return;
+            File[] files = directory.listFiles((dir, name) -> name.toLowerCase().endsWith(".pdb"));
+            if (files == null || files.length == 0) {
+                showStatus("No PDB files found in " + directory.getName() + ".");
+                return;
+            }
+            StructuralAligner aligner = new StructuralAligner(pdbModel);
+            runStructuralAlignment("Aligning with " + files.length + " structures...", () -> {
+                StringBuilder result = new StringBuilder();
+                List<String> skipped = new ArrayList<>();
+                for (StructuralAlignment alignment : aligner.search(Arrays.asList(files), skipped)) {
+                    result.append(alignment).append('\n');
+                }
+                if (!skipped.isEmpty()) {
+                    result.append("\nSkipped ").append(skipped.size()).append(" files which could not be aligned:\n");
+                    skipped.forEach(file -> result.append(file).append('\n'));
+                }
+                return result.toString();
+            });
+        });
+    }
+
+    /**
+     * Show a message in the status bar, unless the status is bound to the running BLAST service.
+     *
+     * @param message The message to be shown.
+     */
+    private void showStatus(String message) {
+        if (!view.status.textProperty().isBound())
+            view.status.setText(message);
+    }
+
+    /**
+     * Run a structural alignment in the background and show its result in the alignment tab.
+     *
+     * @param title     Status shown while running.
+     * @param alignment Computes the text to be shown.
+     */
+    private void runStructuralAlignment(String title, Callable<String> alignment) {
+        Task<String> task = new Task<String>() {
+            @Override
+            protected String call() throws Exception {
+                return alignment.call();
+            }
+        };
+        // The progress bar may be in use by the BLAST service
+        boolean showProgress = !view.progressBar.progressProperty().isBound();
+        if (showProgress) {
+            view.progressBar.setProgress(-1);
+            view.progressBar.setVisible(true);
+        }
+        showStatus(title);
+        task.setOnSucceeded(event -> {
+            if (showProgress)
+                view.progressBar.setVisible(false);
+            showStatus("Structural alignment finished.");
+            view.alignmentText.setText(task.getValue());
+            view.contentTabPane.getSelectionModel().select(view.alignmentTab);
+        });
+        task.setOnFailed(event -> {
+            if (showProgress)
+                view.progressBar.setVisible(false);
+            showStatus("Structural alignment failed.");
+            Alert alert = new Alert(Alert.AlertType.ERROR,
+                    "Structural alignment failed: " + task.getException().getMessage(), ButtonType.OK);
+            alert.show();
+        });
+        Thread thread = new Thread(task, "Structural alignment");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Set up the clash tab and the highlighting of clashes in the 3D view.
+     */
+    private void setUpClashDetection() {
+        view.clashListView.setItems(clashes);
+        view.numberOfClashesLabel.textProperty().bind(
+                new StatViewerBinding("# clashes: ", Bindings.size(clashes)));
+        view.detectClashesButton.disableProperty().bind(Bindings.equal(0, Bindings.size(pdbModel.nodesProperty())));
+        view.detectClashesButton.setOnAction(event -> runClashDetection());
+
+        view.showClashesMenuItem.selectedProperty().addListener((observable, oldValue, newValue) ->
+                world.hideClashes(!newValue));
+
+        // Selecting a clash selects both residues involved
+        view.clashListView.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, clash) -> {
+            if (clash != null) {
+                selectionModel.clearSelection();
+                for (Atom atom : new Atom[]{clash.getFirst(), clash.getSecond()}) {
+                    Residue residue = atom.residueProperty().getValue();
+                    if (residue != null && !selectionModel.isSelected(residue))
+                        selectionModel.select(residue);
+                }
+            }
+        });
+    }
+
+    /**
+     * Detect the clashes of the current model in the background. Clashes are added to the clash list batch by batch
+     * as they are found, the 3D view is updated once all are known. A still running detection is cancelled.
+     */
+    private void runClashDetection() {
+        clearClashes();
+        // The detector copies what it needs from the model here, on the FX thread
+        ClashDetector detector = new ClashDetector(pdbModel);
+        Task<List<Clash>> task = new Task<List<Clash>>() {
+            @Override
+            protected List<Clash> call() throws Exception {
+                Task<List<Clash>> self = this;
+                return detector.detect(batch -> Platform.runLater(() -> {
+                    // Drop batches of a detection which was replaced in the meantime
+                    if (clashDetectionTask == self)
+                        clashes.addAll(batch);
+                }), this::isCancelled);
+            }
+        };
+        task.setOnSucceeded(event -> {
+            world.showClashes(task.getValue());
+            showStatus("Found " + task.getValue().size() + " clashes.");
+        });
+        task.setOnFailed(event -> showStatus("Clash detection failed: " + task.getException().getMessage()));
+        clashDetectionTask = task;
+        Thread thread = new Thread(task, "Clash detection");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Cancel a running clash detection and remove all shown clashes.
+     */
+    private void clearClashes() {
+        if (clashDetectionTask != null) {
+            clashDetectionTask.cancel();
+            clashDetectionTask = null;
+        }
+        clashes.clear();
+        world.showClashes(clashes);
+    }
+
+    /**
+     * Set up showing the molecular surface. It is generated when first shown and kept until the model changes.
+     */
+    private void setUpSurface() {
+        view.showSurfaceMenuItem.disableProperty().bind(Bindings.equal(0, Bindings.size(pdbModel.nodesProperty())));
+        view.showSurfaceMenuItem.selectedProperty().addListener((observable, oldValue, show) -> {
+            if (show && !world.hasSurface() && surfaceTask == null)
+                runSurfaceGeneration();
+            world.hideSurface(!show);
+        });
+    }
+
+    /**
+     * Generate the molecular surface of the current model in the background, showing its progress in the progress
+     * bar unless that is in use by the BLAST service.
+     */
+    private void runSurfaceGeneration() {
+        // The generator copies what it needs from the model here, on the FX thread
+        SurfaceGenerator generator = new SurfaceGenerator(pdbModel);
+        List<Residue> residues = new ArrayList<>(pdbModel.residuesProperty());
+        Task<MolecularSurface> task = new Task<MolecularSurface>() {
+            @Override
+            protected MolecularSurface call() throws Exception {
+                return generator.generate(fraction -> updateProgress(fraction, 1));
+            }
+        };
+        boolean showProgress = !view.progressBar.progressProperty().isBound();
+        if (showProgress) {
+            view.progressBar.progressProperty().bind(task.progressProperty());
+            view.progressBar.setVisible(true);
+        }
+        showStatus("Generating molecular surface...");
+        task.stateProperty().addListener((observable, oldState, state) -> {
+            if (task.isDone() && showProgress) {
+                view.progressBar.progressProperty().unbind();
+                view.progressBar.setVisible(false);
+            }
+        });
+        task.setOnSucceeded(event -> {
+            surfaceTask = null;
+            MolecularSurface surface = task.getValue();
+            world.showSurface(surface, residues);
+            world.hideSurface(!view.showSurfaceMenuItem.isSelected());
+            showStatus("Generated molecular surface of " + surface.getNumberOfTriangles() + " triangles.");
+        });
+        task.setOnFailed(event -> {
+            surfaceTask = null;
+            view.showSurfaceMenuItem.setSelected(false);
+            showStatus("Surface generation failed: " + task.getException().getMessage());
+        });
+        surfaceTask = task;
+        Thread thread = new Thread(task, "Surface generation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Compute the solvent accessibility of the loaded structure in the background and color the atoms by it once done.
+     */
+    private void runSolventAccessibility() {
+        if (solventAccessibilityTask != null) {
+            solventAccessibilityTask.cancel();
+        }
+        // The atoms are copied here, on the FX thread
+        Supplier<SolventAccessibility> computation = pdbModel.prepareSolventAccessibility();
+        List<Atom> atoms = new ArrayList<>(pdbModel.nodesProperty());
+        Task<SolventAccessibility> task = new Task<SolventAccessibility>() {
+            @Override
+            protected SolventAccessibility call() throws Exception {
+                return computation.get();
+            }
+        };
+        showStatus("Computing solvent accessibility...");
+        task.setOnSucceeded(event -> {
+            if (solventAccessibilityTask != task)
+                return;
+            solventAccessibilityTask = null;
+            // Outdated if the atoms changed meanwhile
+            if (!pdbModel.cacheSolventAccessibility(computation, task.getValue()))
+                return;
+            PerformanceMonitor.time(PerformanceMonitor.Operation.RECOLOR, () -> {
+                world.showSolventAccessibility(atoms, task.getValue());
+                // Gray all bonds in one batch, leaving the atoms' colors alone
+                int[] bondColors = new int[pdbModel.edgesProperty().size()];
+                Arrays.fill(bondColors, ColoringEngine.BOND_COLOR);
+                world.applyColoring(Collections.emptyList(), new int[0], pdbModel.edgesProperty(), bondColors);
+            });
+            showStatus("Colored " + atoms.size() + " atoms by solvent accessibility.");
+        });
+        task.setOnFailed(event -> {
+            if (solventAccessibilityTask != task)
+                return;
+            solventAccessibilityTask = null;
+            view.coloringBySolventAccessibilityMenuItem.setSelected(false);
+            showStatus("Solvent accessibility computation failed: " + task.getException().getMessage());
+        });
+        solventAccessibilityTask = task;
+        Thread thread = new Thread(task, "Solvent accessibility");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Cancel a running surface generation and remove the shown surface.
+     */
+    private void clearSurface() {
+        if (surfaceTask != null) {
+            surfaceTask.cancel();
+            surfaceTask = null;
+        }
+        world.clearSurface();
+        view.showSurfaceMenuItem.setSelected(false);
     }
 
     private void setUpBlastService() {
@@ -330,53 +774,8 @@ public class Presenter {
                     a.colorProperty().setValue(Color.LIGHTGRAY);
                     a.radiusProperty().setValue(1);
                 }
-                // Hide O atoms
-                for (Atom a : pdbModel.getAllOAtoms()) {
-                    world.getNodeByModel(a).setVisible(false);
-                }
-                // Hide C=O bonds
-                for (Bond bond : pdbModel.getAllCOBonds()) {
-                    world.getEdgeByModel(bond).setVisible(false);
-                }
-                // For all secondary structures hide the coil structure of all residues contained by the sec struc
-                for (SecondaryStructure structure : pdbModel.secondaryStructuresProperty()) {
-                    for (Residue r : structure.getResiduesContained()) {
-                        // Hide all nodes within a residue which is contained by a secondary structure
-                        world.getNodeByModel(r.getCAlphaAtom()).setVisible(false);
-                        world.getNodeByModel(r.getCBetaAtom()).setVisible(false);
-                        world.getNodeByModel(r.getCAtom()).setVisible(false);
-                        world.getNodeByModel(r.getNAtom()).setVisible(false);
-                        world.getNodeByModel(r.getOAtom()).setVisible(false);
-                        // Hide all edges within a residue which is contained by a secondary structure
-                        // When alphaHelix hide the edge to calpha. Beta sheets are shown a little differently therefore do not hide the edges there
-                        r.getCAlphaAtom().inEdgesProperty().forEach(edge -> world.getEdgeByModel(edge).setVisible(false));
-                        r.getCAlphaAtom().outEdgesProperty().forEach(edge -> world.getEdgeByModel(edge).setVisible(false));
-                        r.getCAtom().outEdgesProperty().forEach(edge -> world.getEdgeByModel(edge).setVisible(false));
-                    }
-                    // Betasheets are shown differently than alpha helices therefore we need to show additional bonds:
-                    // for the first residue in the structure show the N-> CA bond and for the last residue
-                    // show C-N and N-CA bonds.
-                    if (structure.getSecondaryStructureType().equals(SecondaryStructure.StructureType.betasheet)) {
-                        structure.getResiduesContained().get(0).getCAlphaAtom().inEdgesProperty().forEach(edge -> {
-                            world.getEdgeByModel(edge).setVisible(true);
-                            world.getEdgeByModel(edge).getSourceNodeView().setVisible(true);
-                        });
-                        structure.getResiduesContained().get(structure.getResiduesContained().size() - 1).getCAtom().inEdgesProperty().forEach(edge -> {
-                            world.getEdgeByModel(edge).setVisible(true);
-                            world.getNodeByModel(edge.getTarget()).setVisible(true);
-                        });
-                    }
-                    // Make the last C-N bond in the structure visible since it connnects the sec structure with a coil
-                    List<Bond> lastPeptideBondList =
-                            structure.getResiduesContained().get(structure.getResiduesContained().size() - 1).getCAtom().outEdgesProperty().stream().filter(
-                                    edge -> edge.getSource().chemicalElementProperty().getValue().equals(Atom.ChemicalElement.C) &&
-                                            edge.getTarget().chemicalElementProperty().getValue().equals(Atom.ChemicalElement.N)).collect(Collectors.toList());
-                    // Else the secondary structure also ends the protein sequence, so threre is no bond to set visible,
-                    // since there is no peptide bond with the N of the next residue in sequence
-                    if (lastPeptideBondList.size() == 1)
-                        world.getEdgeByModel(lastPeptideBondList.get(0)).setVisible(true);
-
-                }
+                // Hide O atoms, C=O bonds and the backbone within secondary structures
+                applyVisibility();
             } else {
                 world.cartoonView(true);
                 view.topPane.setVisible(true);
@@ -385,29 +784,7 @@ public class Presenter {
                     a.colorProperty().setValue(a.chemicalElementProperty().getValue().getColor());
                     a.radiusProperty().setValue(a.chemicalElementProperty().getValue().getRadius());
                 }
-                // Show O atoms
-                for (Atom a : pdbModel.getAllOAtoms()) {
-                    world.getNodeByModel(a).setVisible(true);
-                }
-                // Show C=O bonds
-                for (Bond bond : pdbModel.getAllCOBonds()) {
-                    world.getEdgeByModel(bond).setVisible(true);
-                }
-
-                for (SecondaryStructure structure : pdbModel.secondaryStructuresProperty()) {
-                    for (Residue r : structure.getResiduesContained()) {
-                        // Hide all nodes within a residue which is contained by a secondary structure
-                        world.getNodeByModel(r.getCAlphaAtom()).setVisible(true);
-                        world.getNodeByModel(r.getCBetaAtom()).setVisible(true);
-                        world.getNodeByModel(r.getCAtom()).setVisible(true);
-                        world.getNodeByModel(r.getNAtom()).setVisible(true);
-                        world.getNodeByModel(r.getOAtom()).setVisible(true);
-                        // Hide all edges within a residue which is contained by a secondary structure
-                        r.getCAlphaAtom().inEdgesProperty().forEach(edge -> world.getEdgeByModel(edge).setVisible(true));
-                        r.getCAlphaAtom().outEdgesProperty().forEach(edge -> world.getEdgeByModel(edge).setVisible(true));
-                        r.getCAtom().outEdgesProperty().forEach(edge -> world.getEdgeByModel(edge).setVisible(true));
-                    }
-                }
+                applyVisibility();
                 view.scaleNodesSlider.setValue(1);
                 view.scaleEdgesSlider.setValue(1);
             }
@@ -428,109 +805,131 @@ public class Presenter {
             view.topPane.setVisible(view.showAtomsMenuItem.isSelected());
         });
 
-        view.showCBetaMenuItem.selectedProperty().addListener((observable, oldValue, newValue) -> {
-            // Run through all Calpha -> Cbeta bonds and show or hide them
-            pdbModel.getAllCAlphaCBetaBonds().forEach(bond ->
-                    world.hideEdge(world.getEdgeByModel(bond), !newValue)
-            );
-            // Run through all Cbeta atoms and show or hide them
-            pdbModel.getAllCBetaAtoms().forEach(node ->
-                    world.hideNode(world.getNodeByModel(node), !newValue)
-            );
-        });
+        view.showCBetaMenuItem.selectedProperty().addListener(observable -> applyVisibility());
 
         // Color by chemical element and make edges gray
         view.coloringByElementRadioButton.selectedProperty().addListener(event -> {
-            if (view.coloringByElementRadioButton.isSelected()) {
-                for (Atom a : pdbModel.nodesProperty()) {
-                    a.colorProperty().setValue(a.chemicalElementProperty().getValue().getColor());
-                }
-                for (Node edge : world.getEdgeViews()) {
-                    ((MyEdgeView3D) edge).colorProperty().setValue(Color.LIGHTGRAY);
-                }
-            }
+            if (view.coloringByElementRadioButton.isSelected())
+                applyColoring(ColoringEngine.Scheme.ELEMENT);
         });
 
         // Color each residue with its own random color
         view.coloringByResidueMenuItem.selectedProperty().addListener(event -> {
-            if (view.coloringByResidueMenuItem.isSelected()) {
-                for (Residue residue : pdbModel.residuesProperty()) {
-                    float r = randomGenerator.nextFloat();
-                    float g = randomGenerator.nextFloat();
-                    float b = randomGenerator.nextFloat();
-                    Color col = new Color(r, g, b, 1.);
-                    residue.getCBetaAtom().colorProperty().setValue(col);
-                    residue.getCAlphaAtom().colorProperty().setValue(col);
-                    residue.getNAtom().colorProperty().setValue(col);
-                    residue.getCAtom().colorProperty().setValue(col);
-                    residue.getOAtom().colorProperty().setValue(col);
-                    pdbModel.getBondsOfResidue(residue).forEach(bond -> world.getEdgeByModel(bond).colorProperty().setValue(col));
-                }
-            }
+            if (view.coloringByResidueMenuItem.isSelected())
+                applyColoring(ColoringEngine.Scheme.RESIDUE);
         });
 
         // Color bonds and atoms by secondary structure
         view.coloringBySecondaryMenuItem.selectedProperty().addListener(event -> {
-            if (view.coloringBySecondaryMenuItem.isSelected()) {
-                float r,g,b;
-                Color col;
-                for (Residue residue : pdbModel.residuesProperty()) {
-                    if (residue.getSecondaryStructure() != null) {
-                        if (residue.getSecondaryStructure().getSecondaryStructureType().equals(SecondaryStructure.StructureType.alphahelix)) {
-                            col = Color.RED;
-                        } else {
-                            col = Color.CORNFLOWERBLUE;
-                        }
-                    } else {
-                        r = randomGenerator.nextFloat();
-                        g = randomGenerator.nextFloat();
-                        b = randomGenerator.nextFloat();
-                        col = new Color(r, g, b, 1.);
-                    }
+            if (view.coloringBySecondaryMenuItem.isSelected())
+                applyColoring(ColoringEngine.Scheme.SECONDARY_STRUCTURE);
+        });
 
-                    residue.getCBetaAtom().colorProperty().setValue(col);
-                    residue.getCAlphaAtom().colorProperty().setValue(col);
-                    residue.getNAtom().colorProperty().setValue(col);
-                    residue.getCAtom().colorProperty().setValue(col);
-                    residue.getOAtom().colorProperty().setValue(col);
-                    for(Bond bond : pdbModel.getBondsOfResidue(residue)){
-                        world.getEdgeByModel(bond).colorProperty().setValue(col);
-                    }
+        // Color atoms from blue to red by their temperature factor and make edges gray
+        view.coloringByBFactorMenuItem.selectedProperty().addListener(event -> {
+            if (view.coloringByBFactorMenuItem.isSelected())
+                applyColoring(ColoringEngine.Scheme.B_FACTOR);
+        });
+
+        // Color atoms by their solvent accessibility, keeping the model's colors and making edges gray
+        view.coloringBySolventAccessibilityMenuItem.selectedProperty().addListener(event -> {
+            if (view.coloringBySolventAccessibilityMenuItem.isSelected()) {
+                runSolventAccessibility();
+            } else {
+                if (solventAccessibilityTask != null) {
+                    solventAccessibilityTask.cancel();
+                    solventAccessibilityTask = null;
                 }
+                world.clearMaterialOverrides();
             }
         });
     }
 
     /**
-     * Set up the transformation property for rotating the graph
+     * Show the atoms and bonds of the selected representation, with or without C beta atoms, using the masks
+     * precomputed for the loaded structure.
+     */
+    private void applyVisibility() {
+        VisibilityMasks.Representation representation = view.cartoonViewMenuItem.isSelected() ?
+                VisibilityMasks.Representation.CARTOON : VisibilityMasks.Representation.ATOMS;
+        boolean showCBeta = view.showCBetaMenuItem.isSelected();
+        world.applyVisibility(visibilityMasks.getAtoms(), visibilityMasks.getAtomMask(representation, showCBeta),
+                visibilityMasks.getBonds(), visibilityMasks.getBondMask(representation, showCBeta));
+    }
+
+    /**
+     * Color all atoms and bonds of the model in the given scheme, computing the colors first and applying them to the
+     * view in one batch.
+     *
+     * @param scheme The coloring scheme.
+     */
+    private void applyColoring(ColoringEngine.Scheme scheme) {
+        PerformanceMonitor.time(PerformanceMonitor.Operation.RECOLOR, () -> {
+            ColoringEngine engine = new ColoringEngine(pdbModel, randomGenerator);
+            int[] atomColors = engine.colorAtoms(scheme);
+            world.applyColoring(engine.getAtoms(), atomColors, engine.getBonds(),
+                    engine.colorBonds(atomColors, scheme.isResidueBased()));
+        });
+    }
+
+    /**
+     * Set up the pivot of rotating and zooming the graph, which is recomputed once atoms were added or removed.
      */
     private void setUpTransforms() {
-        worldTransformProperty.addListener((e, o, n) -> world.getTransforms().setAll(n));
+        pdbModel.nodesProperty().addListener((InvalidationListener) observable -> trackball.invalidatePivot());
     }
 
     /**
      * Set up the perspective camera showing the subScene3d.
      */
     private void setUpPerspectiveCamera() {
-        PerspectiveCamera perspectiveCamera = new PerspectiveCamera(true);
+        perspectiveCamera = new PerspectiveCamera(true);
         perspectiveCamera.setNearClip(0.1);
         perspectiveCamera.setFarClip(PANEDEPTH * 2);
         perspectiveCamera.setTranslateZ(-PANEDEPTH / 2);
         this.subScene3d.setCamera(perspectiveCamera);
+        projection = new Projection(subScene3d, perspectiveCamera);
+
+        // Zooming scales the world, so its transform determines how far away the atoms appear
+        world.levelOfDetailProperty().bind(levelOfDetail.levelProperty());
+        InvalidationListener levelOfDetailUpdater = observable -> updateLevelOfDetail();
+        world.localToParentTransformProperty().addListener(levelOfDetailUpdater);
+        subScene3d.heightProperty().addListener(levelOfDetailUpdater);
+        world.atomRadiusScalingProperty().addListener(levelOfDetailUpdater);
+        pdbModel.nodesProperty().addListener(levelOfDetailUpdater);
+    }
+
+    /**
+     * Update the level of detail from the number of atoms and the size of an atom at the structure's center on
+     * screen.
+     */
+    private void updateLevelOfDetail() {
+        int atomCount = pdbModel.getNumberOfNodes();
+        if (atomCount == 0 || subScene3d.getHeight() <= 0) {
+            levelOfDetail.update(atomCount, Double.MAX_VALUE);
+            return;
+        }
+        Transform transform = trackball.getTransform();
+        Point3D center = transform.transform(trackball.getPivot());
+        double distance = Math.max(projection.getDepth(center), perspectiveCamera.getNearClip());
+        double atomRadius = Atom.ChemicalElement.C.getRadius() * world.atomRadiusScalingProperty().get() *
+                Projection.getScale(transform);
+        levelOfDetail.update(atomCount, projection.getScreenSize(atomRadius, distance));
     }
 
     /**
      * Set up listeners on the model in order to update the view's representation of it.
      */
     private void setUpModelListeners() {
+        // Views of atoms and bonds are built over several frames, so large structures do not block the UI
         pdbModel.edgesProperty().addListener((ListChangeListener<Bond>) c -> {
             while (c.next()) {
                 // Handle added edges
                 if (c.wasAdded())
-                    c.getAddedSubList().forEach((Consumer<Bond>) myEdge -> world.addEdge(myEdge));
+                    c.getAddedSubList().forEach((Consumer<Bond>) myEdge -> sceneBuilder.addEdge(myEdge));
                 // Handle removed edges
                 if (c.wasRemoved())
-                    c.getRemoved().forEach((Consumer<Bond>) myEdge -> world.removeEdge(myEdge));
+                    c.getRemoved().forEach((Consumer<Bond>) myEdge -> sceneBuilder.removeEdge(myEdge));
             }
         });
 
@@ -538,14 +937,20 @@ public class Presenter {
             while (c.next()) {
                 // Add nodes
                 if (c.wasAdded()) {
-                    c.getAddedSubList().forEach((Consumer<Atom>) myNode -> world.addNode(myNode));
+                    c.getAddedSubList().forEach((Consumer<Atom>) myNode -> sceneBuilder.addNode(myNode));
                 }
                 // Remove nodes
                 if (c.wasRemoved())
-                    c.getRemoved().forEach((Consumer<Atom>) myNode -> world.removeNode(myNode));
+                    c.getRemoved().forEach((Consumer<Atom>) myNode -> sceneBuilder.removeNode(myNode));
             }
         });
 
+        // Views built after the representation was switched still show the default visibility
+        sceneBuilder.buildingProperty().addListener((observable, oldValue, building) -> {
+            if (!building)
+                applyVisibility();
+        });
+
         pdbModel.secondaryStructuresProperty().addListener((ListChangeListener<SecondaryStructure>) c -> {
             while (c.next()) {
                 // Add structure
@@ -601,10 +1006,17 @@ public class Presenter {
         view.coloringByElementMenuItem.disableProperty().bind(disableAtomViewControls);
         view.coloringBySecondaryMenuItem.disableProperty().bind(disableAtomViewControls);
         view.coloringByResidueMenuItem.disableProperty().bind(disableAtomViewControls);
+        view.coloringBySolventAccessibilityMenuItem.disableProperty().bind(disableAtomViewControls);
+        view.coloringByBFactorMenuItem.disableProperty().bind(disableAtomViewControls);
 
         // Bind worlds radius scaling properties to the sliders in the view
         world.bondRadiusScalingProperty().bind(view.scaleEdgesSlider.valueProperty());
         world.atomRadiusScalingProperty().bind(view.scaleNodesSlider.valueProperty());
+        world.batchedAtomsProperty().bind(view.batchedMeshesMenuItem.selectedProperty());
+        world.batchedBondsProperty().bind(view.batchedMeshesMenuItem.selectedProperty());
+        world.lightweightProperty().bind(view.lightweightMenuItem.selectedProperty());
+        world.lightweightAtomsProperty().bind(view.lightweightAtomsMenuItem.selectedProperty());
+        view.lightweightAtomsMenuItem.disableProperty().bind(Bindings.not(view.lightweightMenuItem.selectedProperty()));
 
         view.lowerToolBar.managedProperty().bind(view.lowerToolBar.visibleProperty());
         view.lowerToolBar.visibleProperty().bind(Bindings.not(disableAtomViewControls));
@@ -640,8 +1052,12 @@ public class Presenter {
             parallelTransition.play();
             // when done reset opacity and scale properties and delete graph's contents (nodes and edges)
             parallelTransition.setOnFinished(finishedEvent -> {
+                clearClashes();
+                clearSurface();
                 pdbModel.reset();
-                worldTransformProperty.setValue(new Rotate());
+                visibilityMasks = new VisibilityMasks(pdbModel);
+                world.setLightweightStructure(Collections.emptyList(), Collections.emptyList());
+                trackball.reset();
                 world.setOpacity(1);
                 world.setScaleX(1);
                 world.setScaleY(1);
@@ -651,7 +1067,7 @@ public class Presenter {
             event.consume();
         });
 
-        view.resetRotationMenuItem.setOnAction(event -> worldTransformProperty.setValue(new Rotate()));
+        view.resetRotationMenuItem.setOnAction(event -> trackball.reset());
 
         //Blast service and MenuItems are set up in setUpBlastService()
     }
@@ -666,7 +1082,12 @@ public class Presenter {
         view.showCBetaMenuItem.selectedProperty().setValue(true);
         view.atomViewMenuItem.selectedProperty().setValue(true);
         view.showRibbonMenuItem.selectedProperty().setValue(false);
-        MyRibbonView3D.reset();
+        view.showClashesMenuItem.selectedProperty().setValue(true);
+        view.lightweightMenuItem.setSelected(false);
+        hoveredAtom = null;
+        view.hoverLabel.setVisible(false);
+        ensembleAnimator.playingProperty().set(false);
+        view.playModelsButton.setDisable(true);
         view.secondaryStructureContentStackedBarChart.reset();
     }
 
@@ -684,7 +1105,7 @@ public class Presenter {
             File graphFile = view.tgfFileChooser.showOpenDialog(primaryStage);
             try {
                 BufferedReader pdbFile = new BufferedReader(new InputStreamReader(new FileInputStream(graphFile)));
-                loadNewPDBFile(pdbFile);
+                loadNewPDBFile(pdbFile, graphFile.getAbsolutePath());
             } catch (IOException e) {
                 System.err.println(e.getMessage());
             } catch (NullPointerException e) {
@@ -698,7 +1119,7 @@ public class Presenter {
             if (abortLoadBecauseOfBlastService()) return;
             // Load file from resources
             BufferedReader pdbFile = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/2tga.pdb")));
-            loadNewPDBFile(pdbFile);
+            loadNewPDBFile(pdbFile, "/2tga.pdb");
         }));
 
         view.open2KL8MenuItem.setOnAction((event -> {
@@ -706,7 +1127,7 @@ public class Presenter {
             if (abortLoadBecauseOfBlastService()) return;
             // Load file from resources
             BufferedReader pdbFile = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/2kl8.pdb")));
-            loadNewPDBFile(pdbFile);
+            loadNewPDBFile(pdbFile, "/2kl8.pdb");
         }));
 
         view.open1EY4MenuItem.setOnAction((event -> {
@@ -714,7 +1135,7 @@ public class Presenter {
             if (abortLoadBecauseOfBlastService()) return;
             // Load file from resources
             BufferedReader pdbFile = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/1ey4.pdb")));
-            loadNewPDBFile(pdbFile);
+            loadNewPDBFile(pdbFile, "/1ey4.pdb");
         }));
     }
 
@@ -760,9 +1181,10 @@ public class Presenter {
      * listeners on view or presenter, but on single nodes and edges, since previously loaded data are destroyed.
      *
      * @param inputStreamReader The PDB file to be loaded.
+     * @param source            Where the file is read from, a structure of the workspace from there is replaced.
      */
 
-    private void loadNewPDBFile(BufferedReader inputStreamReader) {
+    private void loadNewPDBFile(BufferedReader inputStreamReader, String source) {
         // Report error
         if (inputStreamReader == null) {
             System.err.println("No file chosen. Model not touched");
@@ -770,29 +1192,61 @@ public class Presenter {
         }
 
         try {
-            resetSettings();
-            resetBLASTResult();
-            worldTransformProperty.setValue(new Rotate());
-            pdbModel.reset();
+            prepareModelForLoading();
             // parse the file and set up the model. The view listens to the model and handles everything else automatically
+            long start = System.nanoTime();
             PDBParser.parse(pdbModel, inputStreamReader);
-            // set the new selection model
-            Residue[] residues = new Residue[pdbModel.residuesProperty().size()];
-            pdbModel.residuesProperty().toArray(residues);
-            selectionModel.setItems(residues);
-            // Compute charts
-            view.secondaryStructureContentStackedBarChart.initialize(
-                    pdbModel.getAlphaHelixContent(),
-                    pdbModel.getBetaSheetContent(),
-                    pdbModel.getCoilContent(),
-                    view.contentTabPane.widthProperty(),
-                    view.contentTabPane.heightProperty()
-            );
+            PerformanceMonitor.record(PerformanceMonitor.Operation.PARSE, System.nanoTime() - start);
+            CompactStructure structure = workspace.add(pdbModel, source);
+            view.workspaceListView.getSelectionModel().select(structure);
+            initializeLoadedModel();
         } catch (Exception ex) {
             ex.printStackTrace();
         }
     }
 
+    /**
+     * Reset settings, results and the model before a structure is loaded into it.
+     */
+    private void prepareModelForLoading() {
+        world.setLightweightStructure(Collections.emptyList(), Collections.emptyList());
+        resetSettings();
+        resetBLASTResult();
+        trackball.reset();
+        clearClashes();
+        clearSurface();
+        pdbModel.reset();
+    }
+
+    /**
+     * Set up selection model, charts and clash detection for the structure just loaded into the model.
+     */
+    private void initializeLoadedModel() {
+        // One node per atom and bond does not scale to large structures, and merged spheres not to huge ones
+        world.setLightweightStructure(pdbModel.nodesProperty(), pdbModel.residuesProperty());
+        if (pdbModel.getNumberOfNodes() > lightweightThreshold.get())
+            view.lightweightMenuItem.setSelected(true);
+        // Also switched off again for a small structure loaded after a large one
+        view.batchedMeshesMenuItem.setSelected(pdbModel.getNumberOfNodes() > BATCHED_ATOMS_THRESHOLD);
+        visibilityMasks = new VisibilityMasks(pdbModel);
+        ensembleAnimator.setEnsemble(pdbModel);
+        view.playModelsButton.setDisable(ensembleAnimator.getNumberOfModels() < 2);
+        updateModelLabel();
+        // set the new selection model
+        Residue[] residues = new Residue[pdbModel.residuesProperty().size()];
+        pdbModel.residuesProperty().toArray(residues);
+        selectionModel.setItems(residues);
+        // Compute charts
+        view.secondaryStructureContentStackedBarChart.initialize(
+                pdbModel.getAlphaHelixContent(),
+                pdbModel.getBetaSheetContent(),
+                pdbModel.getCoilContent(),
+                view.contentTabPane.widthProperty(),
+                view.contentTabPane.heightProperty()
+        );
+        runClashDetection();
+    }
+
     /**
      * Clear the BLAST result tab, when settings are reset, due to e.g. a new file being loaded.
      */
@@ -838,21 +1292,6 @@ public class Presenter {
     }
 
 
-    /**
-     * Set up the view's nodes and edges to be click- and moveable.
-     *
-     * @param node The node to be registered.
-     */
-    public void setUpNodeView(MyNodeView3D node) {
-        node.setOnMouseClicked(event -> {
-            if (event.getButton().equals(MouseButton.PRIMARY)) {
-                Residue clickedResidue = node.getModelNodeReference().residueProperty().getValue();
-                selectInSelectionModel(clickedResidue, event);
-            }
-            event.consume();
-        });
-    }
-
     /**
      * Set up mouse events on 3D graph group.
      */
@@ -860,21 +1299,8 @@ public class Presenter {
         // This is dragging the graph and rotating it around itself.
         view.bottomPane.setOnMouseDragged(event -> {
 
-            double deltaX = event.getSceneX() - pressedX;
-            double deltaY = event.getSceneY() - pressedY;
-
-            // Get the perpendicular axis for the dragged point
-            Point3D direction = new Point3D(deltaX, deltaY, 0);
-            Point3D axis = direction.crossProduct(0, 0, 1);
-            double angle = 0.4 * (Math.sqrt(Math.pow(deltaX, 2) + Math.pow(deltaY, 2)));
-
-            //compute the main focus of the world and use it as pivot
-            Point3D focus = computePivot();
-
-            Rotate rotation = new Rotate(angle, focus.getX(), focus.getY(), focus.getZ(), axis);
-
-            // Apply the rotation as an additional transform, keeping earlier modifications
-            worldTransformProperty.setValue(rotation.createConcatenation(worldTransformProperty.getValue()));
+            // The rotation is applied once per frame, however many drag events arrive in between
+            trackball.rotate(event.getSceneX() - pressedX, event.getSceneY() - pressedY);
 
             // Set the variables new
             pressedX = event.getSceneX();
@@ -893,11 +1319,56 @@ public class Presenter {
 
         // Implement zooming, when scolling with the mouse wheel or on a trackpad
         view.bottomPane.setOnScroll(event -> {
-            double delta = 0.01 * event.getDeltaY() + 1;
-            Point3D focus = computePivot();
-            Scale scale = new Scale(delta, delta, delta, focus.getX(), focus.getY(), focus.getZ());
-            worldTransformProperty.setValue(scale.createConcatenation(worldTransformProperty.getValue()));
+            trackball.zoom(0.01 * event.getDeltaY() + 1);
+        });
+
+        // Select the residue of the clicked atom, unless the graph was dragged
+        view.bottomPane.setOnMouseClicked(event -> {
+            if (event.getButton().equals(MouseButton.PRIMARY) && event.isStillSincePress()) {
+                Atom atom = pickAtom(event);
+                if (atom != null && atom.residueProperty().getValue() != null)
+                    selectInSelectionModel(atom.residueProperty().getValue(), event);
+            }
+            event.consume();
+        });
+
+        // Describe the atom under the cursor in the single hover label, built only when another atom is hit
+        view.bottomPane.setOnMouseMoved(event -> {
+            Atom atom = pickAtom(event);
+            if (atom == null) {
+                hoveredAtom = null;
+                view.hoverLabel.setVisible(false);
+                return;
+            }
+            if (atom != hoveredAtom) {
+                hoveredAtom = atom;
+                view.hoverLabel.setText(atom.getDescription());
+            }
+            Point2D position = view.hoverPane.sceneToLocal(event.getSceneX(), event.getSceneY());
+            view.hoverLabel.relocate(position.getX() + 12, position.getY() + 12);
+            view.hoverLabel.setVisible(true);
         });
+        view.bottomPane.setOnMouseExited(event -> {
+            hoveredAtom = null;
+            view.hoverLabel.setVisible(false);
+        });
+    }
+
+    /**
+     * Get the atom under the mouse cursor, by casting a ray from the camera through the cursor's position.
+     *
+     * @param event The mouse event giving the cursor's position.
+     * @return The nearest shown atom under the cursor, null if there is none.
+     */
+    private Atom pickAtom(MouseEvent event) {
+        Point2D position = subScene3d.sceneToLocal(event.getSceneX(), event.getSceneY());
+        if (position == null || subScene3d.getHeight() <= 0)
+            return null;
+        Point3D eye = projection.getEye();
+        Point3D through = projection.unproject(position.getX(), position.getY());
+        // Transform the ray into the model's coordinates, where the atoms are indexed
+        Point3D origin = world.parentToLocal(eye);
+        return world.pickAtom(origin, world.parentToLocal(through).subtract(origin));
     }
 
     /**
@@ -970,41 +1441,81 @@ public class Presenter {
             }
         });
 
-        // Mark selected residues in the graph's atom/bond view. This adds and removes bounding
-        // boxes for each residue which is marked
-        selectionModel.getSelectedItems().addListener((ListChangeListener<Residue>) c -> {
-            while (c.next()) {
-                if (c.wasAdded()) {
-                    c.getAddedSubList().forEach(residue -> {
-                        // Find the nodes
-                        MyNodeView3D calpha = world.getNodeByModel(residue.getCAlphaAtom());
-                        MyNodeView3D cbeta = world.getNodeByModel(residue.getCBetaAtom());
-                        MyNodeView3D catom = world.getNodeByModel(residue.getCAtom());
-                        MyNodeView3D n = world.getNodeByModel(residue.getNAtom());
-                        MyNodeView3D o = world.getNodeByModel(residue.getOAtom());
-
-                        // Create a group of bounding boxes for the residue and add it to the topPane
-                        Group resGroup = new Group();
-                        BoundingBox2D bbca = new BoundingBox2D(view.bottomPane, calpha, worldTransformProperty, subScene3d);
-                        BoundingBox2D bbcb = new BoundingBox2D(view.bottomPane, cbeta, worldTransformProperty, subScene3d);
-                        // issue #2 fixed not showing bounding box if c beta are hidden
-                        view.showCBetaToolBarButton.selectedProperty().addListener(new WeakInvalidationListener(observable -> {
-                            bbcb.visibleProperty().setValue(view.showCBetaToolBarButton.isSelected());
-                        }));
-                        BoundingBox2D bbc = new BoundingBox2D(view.bottomPane, catom, worldTransformProperty, subScene3d);
-                        BoundingBox2D bbn = new BoundingBox2D(view.bottomPane, n, worldTransformProperty, subScene3d);
-                        BoundingBox2D bbo = new BoundingBox2D(view.bottomPane, o, worldTransformProperty, subScene3d);
-                        resGroup.getChildren().addAll(bbca, bbcb, bbc, bbn, bbo);
-
-                        view.topPane.getChildren().add(resGroup);
-                    });
-                }
-                if (c.wasRemoved()) {
-                    // Remove the correct element (Group of nodes) from the scene graph when unselected.
-                    view.topPane.getChildren().remove(c.getFrom(), c.getTo() + c.getRemovedSize());
-                }
+        // Mark the atoms of selected residues in the graph's atom/bond view with boxes on the top pane's canvas.
+        // Hidden atoms, e.g. C betas when they are not shown, are not marked.
+        SelectionOverlay overlay = new SelectionOverlay(view.selectionCanvas, subScene3d, perspectiveCamera, world,
+                selectionModel.getSelectedItems());
+
+        // Alternatively highlight the selected residues' atoms and bonds in 3D, applied once per frame
+        overlay.enabledProperty().bind(view.highlightSelectionMenuItem.selectedProperty().not());
+        InvalidationListener highlighter = observable -> world.highlightResidues(
+                view.highlightSelectionMenuItem.isSelected() ? selectionModel.getSelectedItems() :
+                        Collections.emptyList());
+        selectionModel.getSelectedItems().addListener(highlighter);
+        view.highlightSelectionMenuItem.selectedProperty().addListener(highlighter);
+    }
+
+    /**
+     * Set up the playback controls for the models of an ensemble. Only the merged meshes follow the played models, so
+     * atoms and bonds are merged while playing. Surface and clashes are dropped while playing, and the clashes are
+     * detected again for the model shown once playback pauses.
+     */
+    private void setUpEnsemblePlayback() {
+        ensembleAnimator.playingProperty().bindBidirectional(view.playModelsButton.selectedProperty());
+        ensembleAnimator.modelsPerSecondProperty().bind(view.modelSpeedSlider.valueProperty());
+        ensembleAnimator.playingProperty().addListener((observable, oldValue, playing) -> {
+            if (playing) {
+                // The surface does not follow the atoms, it is generated again for the positions shown after playback
+                clearSurface();
+                // Neither do the clash lines
+                clashesBeforePlayback = clashDetectionTask != null;
+                clearClashes();
+                batchedBeforePlayback = view.batchedMeshesMenuItem.isSelected();
+                view.batchedMeshesMenuItem.setSelected(true);
+            } else {
+                view.batchedMeshesMenuItem.setSelected(batchedBeforePlayback);
+                // The animator moved the atoms to the model shown before this listener was notified
+                if (clashesBeforePlayback)
+                    runClashDetection();
             }
+            view.batchedMeshesMenuItem.setDisable(playing);
         });
+        ensembleAnimator.modelProperty().addListener(observable -> updateModelLabel());
+        updateModelLabel();
+    }
+
+    private void updateModelLabel() {
+        int models = ensembleAnimator.getNumberOfModels();
+        view.modelLabel.setText(models < 2 ? "" :
+                "Model " + (ensembleAnimator.modelProperty().get() + 1) + "/" + models);
+    }
+
+    /**
+     * Set up the performance overlay, measuring the 3D view while it is shown.
+     */
+    private void setUpPerformanceMonitor() {
+        performanceMonitor = new PerformanceMonitor(world, view.performanceLabel);
+        performanceMonitor.enabledProperty().bindBidirectional(view.performanceMenuItem.selectedProperty());
+    }
+
+    /**
+     * Property holding the number of atoms from which on a loaded structure is shown as lightweight C alpha trace
+     * instead of atoms and bonds. The trace can still be toggled in the view menu.
+     *
+     * @return Property holding the number of atoms.
+     */
+    public IntegerProperty lightweightThresholdProperty() {
+        return lightweightThreshold;
+    }
+
+    /**
+     * Get the performance monitor of the 3D view, e.g. to read its numbers in benchmarks. It only measures frames
+     * while enabled.
+     *
+     * @return The performance monitor.
+     */
+    public PerformanceMonitor getPerformanceMonitor() {
+        return performanceMonitor;
     }
 
     /**
@@ -1047,8 +1558,9 @@ public class Presenter {
      * @return Focus of the world.
      */
     private Point3D computePivot() {
-        // Use the local bound for computation of the midpoint
-        Bounds b = world.getBoundsInLocal();
+        // Use the model's bounds for computation of the midpoint. They are kept up to date incrementally, unlike the
+        // scene graph's bounds, which would have to be recomputed over all nodes.
+        Bounds b = pdbModel.getGeometricDescriptors().getBoundingBox();
         double x = b.getMaxX() - (b.getWidth() / 2);
         double y = b.getMaxY() - (b.getHeight() / 2);
         double z = b.getMaxZ() - (b.getDepth() / 2);
@@ -2,11 +2,16 @@ package view;
 
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
 import javafx.scene.SubScene;
+import javafx.scene.canvas.Canvas;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.scene.text.Font;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
+import pdbmodel.Clash;
+import pdbmodel.CompactStructure;
 import pdbview3d.MyStackedBarChart;
 
 /**
@@ -44,6 +49,11 @@ public class View extends BorderPane {
      */
     MenuItem open2TGAMenuItem;
 
+    /**
+     * MenuItem to add several PDB files to the workspace without showing them.
+     */
+    MenuItem addToWorkspaceMenuItem;
+
     /**
      * The view menu
      */
@@ -60,6 +70,12 @@ public class View extends BorderPane {
     MenuItem runBlastMenuItem;
     MenuItem cancelBlastMenuItem;
 
+    /**
+     * MenuItems to structurally align the loaded structure with one PDB file or all PDB files in a directory.
+     */
+    MenuItem alignWithFileMenuItem;
+    MenuItem searchDirectoryMenuItem;
+
     /**
      * MenuItem to reset the rotation Transformations of the graph.
      */
@@ -74,10 +90,40 @@ public class View extends BorderPane {
     CheckMenuItem showAtomsMenuItem;
     CheckMenuItem showBondsMenuItem;
     CheckMenuItem showCBetaMenuItem;
+    CheckMenuItem showClashesMenuItem;
+
+    /**
+     * CheckMenuItem to show the molecular surface, generated in the background when first shown.
+     */
+    CheckMenuItem showSurfaceMenuItem;
+
+    /**
+     * CheckMenuItem to draw all atoms and bonds merged into a few meshes, for large structures.
+     */
+    CheckMenuItem batchedMeshesMenuItem;
+
+    /**
+     * CheckMenuItems to show the lightweight C alpha trace instead of atoms and bonds, for very large structures, and
+     * to show the atoms as points in it.
+     */
+    CheckMenuItem lightweightMenuItem;
+    CheckMenuItem lightweightAtomsMenuItem;
+
+    /**
+     * Highlight selected residues by coloring their atoms and bonds instead of drawing boxes around the atoms.
+     */
+    CheckMenuItem highlightSelectionMenuItem;
+
+    /**
+     * CheckMenuItem to show frame times, scene sizes and durations of expensive operations above the 3D view.
+     */
+    CheckMenuItem performanceMenuItem;
 
     RadioMenuItem coloringByElementMenuItem;
     RadioMenuItem coloringByResidueMenuItem;
     RadioMenuItem coloringBySecondaryMenuItem;
+    RadioMenuItem coloringBySolventAccessibilityMenuItem;
+    RadioMenuItem coloringByBFactorMenuItem;
     //RadioMenuItem coloringCustomizedMenuItem;
 
     /**
@@ -111,6 +157,14 @@ public class View extends BorderPane {
     CheckBox showCBetaToolBarButton;
     CheckBox showRibbonCheckBox;
 
+    /**
+     * Playback controls for the models of an ensemble, e.g. an NMR entry: play/pause, speed in models per second and
+     * the model currently passed.
+     */
+    ToggleButton playModelsButton;
+    Slider modelSpeedSlider;
+    Label modelLabel;
+
     ToolBar lowerToolBar;
     Button runBLASTToolBarButton;
     Slider scaleNodesSlider;
@@ -154,6 +208,26 @@ public class View extends BorderPane {
      */
     Pane topPane;
 
+    /**
+     * Canvas on the top pane, marking the selected atoms.
+     */
+    Canvas selectionCanvas;
+
+    /**
+     * Pane above all others, holding the label describing the atom under the cursor.
+     */
+    Pane hoverPane;
+
+    /**
+     * Label describing the atom under the cursor. Only one for all atoms, it is moved to the cursor.
+     */
+    Label hoverLabel;
+
+    /**
+     * Label in the upper left corner of the hover pane, showing the performance numbers.
+     */
+    Label performanceLabel;
+
     /**
      * Stacking two panes.
      */
@@ -183,12 +257,44 @@ public class View extends BorderPane {
     Button cancelBlastButton;
     TextArea blastText;
 
+    /**
+     * Tab listing steric clashes of the loaded structure.
+     */
+    Tab clashTab;
+    BorderPane clashBorderPane;
+    Button detectClashesButton;
+    Label numberOfClashesLabel;
+    ListView<Clash> clashListView;
+
+    /**
+     * Tab showing structural alignments.
+     */
+    Tab alignmentTab;
+    TextArea alignmentText;
+
+    /**
+     * Tab listing the structures of the workspace.
+     */
+    Tab workspaceTab;
+    BorderPane workspaceBorderPane;
+    Button showStructureButton;
+    Button removeStructureButton;
+    Button clearWorkspaceButton;
+    ListView<CompactStructure> workspaceListView;
+
+    /**
+     * DirectoryChooser for structural searches.
+     */
+    DirectoryChooser pdbDirectoryChooser;
+
 
     BorderPane graphTabContent;
 
     RadioButton coloringByElementRadioButton;
     RadioButton coloringByResidueRadioButton;
     RadioButton coloringBySecondaryRadioButton;
+    RadioButton coloringBySolventAccessibilityRadioButton;
+    RadioButton coloringByBFactorRadioButton;
     //RadioButton coloringCustomizedRadioButton;
 
     /**
@@ -224,10 +330,17 @@ public class View extends BorderPane {
         bottomPane = new Pane();
         topPane = new Pane();
         // this is in order to make the top pane transparent for mouse events etc. because the top pane should not do
-        // anything but show the BoundingBoxes2D -> Therefore no mouse events to be handled, these are passed to the
+        // anything but show the selection boxes -> Therefore no mouse events to be handled, these are passed to the
         // bottomPane of the stackPane
         topPane.setPickOnBounds(false);
         topPane.setMouseTransparent(true);
+        selectionCanvas = new Canvas();
+        hoverPane = new Pane();
+        hoverPane.setPickOnBounds(false);
+        hoverPane.setMouseTransparent(true);
+        hoverLabel = new Label();
+        hoverLabel.setVisible(false);
+        performanceLabel = new Label();
 
         contentTabPane = new TabPane();
         graphTab = new Tab("PDB Viewer");
@@ -240,6 +353,22 @@ public class View extends BorderPane {
         cancelBlastButton = new Button("Cancel BLAST");
         blastText = new TextArea();
 
+        clashTab = new Tab("Clashes");
+        clashBorderPane = new BorderPane();
+        detectClashesButton = new Button("Detect clashes");
+        numberOfClashesLabel = new Label();
+        clashListView = new ListView<>();
+
+        alignmentTab = new Tab("Alignment");
+        alignmentText = new TextArea();
+
+        workspaceTab = new Tab("Workspace");
+        workspaceBorderPane = new BorderPane();
+        showStructureButton = new Button("Show");
+        removeStructureButton = new Button("Remove");
+        clearWorkspaceButton = new Button("Clear");
+        workspaceListView = new ListView<>();
+
         setMenus();
         setUpInputFileChooser();
         setSceneGraphTree();
@@ -267,6 +396,9 @@ public class View extends BorderPane {
         coloringByElementRadioButton.selectedProperty().bindBidirectional(coloringByElementMenuItem.selectedProperty());
         coloringByResidueRadioButton.selectedProperty().bindBidirectional(coloringByResidueMenuItem.selectedProperty());
         coloringBySecondaryRadioButton.selectedProperty().bindBidirectional(coloringBySecondaryMenuItem.selectedProperty());
+        coloringBySolventAccessibilityRadioButton.selectedProperty().bindBidirectional(
+                coloringBySolventAccessibilityMenuItem.selectedProperty());
+        coloringByBFactorRadioButton.selectedProperty().bindBidirectional(coloringByBFactorMenuItem.selectedProperty());
 
         // DISABLE
         // bind the show(atoms,bonds,cbeta,ribbon) menuitems and buttons
@@ -279,6 +411,9 @@ public class View extends BorderPane {
         coloringByElementRadioButton.disableProperty().bind(coloringByElementMenuItem.disableProperty());
         coloringByResidueRadioButton.disableProperty().bind(coloringByResidueMenuItem.disableProperty());
         coloringBySecondaryRadioButton.disableProperty().bind(coloringBySecondaryMenuItem.disableProperty());
+        coloringBySolventAccessibilityRadioButton.disableProperty().bind(
+                coloringBySolventAccessibilityMenuItem.disableProperty());
+        coloringByBFactorRadioButton.disableProperty().bind(coloringByBFactorMenuItem.disableProperty());
 
         // MANAGED
         // bind the show(atoms,bonds,cbeta,ribbon) menuitems and buttons
@@ -291,6 +426,9 @@ public class View extends BorderPane {
         coloringByElementRadioButton.managedProperty().bind(coloringByElementRadioButton.visibleProperty());
         coloringByResidueRadioButton.managedProperty().bind(coloringByResidueRadioButton.visibleProperty());
         coloringBySecondaryRadioButton.managedProperty().bind(coloringBySecondaryRadioButton.visibleProperty());
+        coloringBySolventAccessibilityRadioButton.managedProperty().bind(
+                coloringBySolventAccessibilityRadioButton.visibleProperty());
+        coloringByBFactorRadioButton.managedProperty().bind(coloringByBFactorRadioButton.visibleProperty());
 
         scaleEdgesSlider.managedProperty().bind(scaleEdgesSlider.visibleProperty());
         scaleNodesSlider.managedProperty().bind(scaleNodesSlider.visibleProperty());
@@ -308,12 +446,15 @@ public class View extends BorderPane {
         open1EY4MenuItem = new MenuItem("Open 1EY4 PDB file");
         open2KL8MenuItem = new MenuItem("Open 2KL8 PDB file");
         open2TGAMenuItem = new MenuItem("Open 2TGA PDB file");
+        addToWorkspaceMenuItem = new MenuItem("Add files to workspace...");
 
         editMenu = new Menu("Edit");
         clearGraphMenuItem = new MenuItem("Clear PDB view");
         runBlastMenuItem = new MenuItem("Run BLAST");
         cancelBlastMenuItem = new MenuItem("Cancel BLAST");
         resetRotationMenuItem = new MenuItem("Reset Rotation");
+        alignWithFileMenuItem = new MenuItem("Align with PDB file...");
+        searchDirectoryMenuItem = new MenuItem("Search similar structures in directory...");
 
         viewMenu = new Menu("View");
         // View type sub menu
@@ -328,16 +469,28 @@ public class View extends BorderPane {
         coloringByElementMenuItem = new RadioMenuItem("Coloring by chemical element");
         coloringByResidueMenuItem = new RadioMenuItem("Coloring by residue");
         coloringBySecondaryMenuItem = new RadioMenuItem("Coloring by secondary structure");
+        coloringBySolventAccessibilityMenuItem = new RadioMenuItem("Coloring by solvent accessibility");
+        coloringByBFactorMenuItem = new RadioMenuItem("Coloring by B-factor");
         //coloringCustomizedMenuItem = new RadioMenuItem("Customized");
         coloringByElementMenuItem.setToggleGroup(coloringGroup);
         coloringByResidueMenuItem.setToggleGroup(coloringGroup);
         coloringBySecondaryMenuItem.setToggleGroup(coloringGroup);
+        coloringBySolventAccessibilityMenuItem.setToggleGroup(coloringGroup);
+        coloringByBFactorMenuItem.setToggleGroup(coloringGroup);
         //coloringCustomizedMenuItem.setToggleGroup(coloringGroup);
 
         showAtomsMenuItem = new CheckMenuItem("Show atoms");
         showBondsMenuItem = new CheckMenuItem("Show bonds");
         showCBetaMenuItem = new CheckMenuItem("Show C-Betas");
         showRibbonMenuItem = new CheckMenuItem("Show ribbon view");
+        showClashesMenuItem = new CheckMenuItem("Show clashes");
+        showSurfaceMenuItem = new CheckMenuItem("Show molecular surface");
+        batchedMeshesMenuItem = new CheckMenuItem("Merge atoms and bonds into meshes");
+        lightweightMenuItem = new CheckMenuItem("Show C-alpha trace only");
+        lightweightAtomsMenuItem = new CheckMenuItem("Show atoms as points");
+        lightweightAtomsMenuItem.setSelected(true);
+        highlightSelectionMenuItem = new CheckMenuItem("Highlight selection in 3D");
+        performanceMenuItem = new CheckMenuItem("Show performance overlay");
     }
 
     /**
@@ -358,16 +511,24 @@ public class View extends BorderPane {
         showBondsToolBarButton = new CheckBox("Show bonds");
         showCBetaToolBarButton = new CheckBox("Show C-Betas");
 
+        playModelsButton = new ToggleButton("Play models");
+        modelSpeedSlider = new Slider(1, 30, 5);
+        modelSpeedSlider.setPrefWidth(100);
+        modelLabel = new Label();
 
         // Initialize and set the toggle group for the buttons in the toolbar for selecting coloring
         ToggleGroup coloringToggleGroup = new ToggleGroup();
         coloringByElementRadioButton = new RadioButton("By Element");
         coloringByResidueRadioButton = new RadioButton("By Residue");
         coloringBySecondaryRadioButton = new RadioButton("By secondary structure");
+        coloringBySolventAccessibilityRadioButton = new RadioButton("By solvent accessibility");
+        coloringByBFactorRadioButton = new RadioButton("By B-factor");
         //coloringCustomizedRadioButton = new RadioButton("Customized");
         coloringByElementRadioButton.setToggleGroup(coloringToggleGroup);
         coloringByResidueRadioButton.setToggleGroup(coloringToggleGroup);
         coloringBySecondaryRadioButton.setToggleGroup(coloringToggleGroup);
+        coloringBySolventAccessibilityRadioButton.setToggleGroup(coloringToggleGroup);
+        coloringByBFactorRadioButton.setToggleGroup(coloringToggleGroup);
         //coloringCustomizedRadioButton.setToggleGroup(coloringToggleGroup);
         runBLASTToolBarButton = new Button("Run BLAST");
 
@@ -376,7 +537,9 @@ public class View extends BorderPane {
                 new Separator(Orientation.VERTICAL),
                 runBLASTToolBarButton,
                 new Separator(Orientation.VERTICAL),
-                showRibbonCheckBox, showAtomsToolBarButton, showBondsToolBarButton, showCBetaToolBarButton
+                showRibbonCheckBox, showAtomsToolBarButton, showBondsToolBarButton, showCBetaToolBarButton,
+                new Separator(Orientation.VERTICAL),
+                playModelsButton, modelSpeedSlider, modelLabel
         );
 
         lowerToolBar = new ToolBar();
@@ -391,7 +554,8 @@ public class View extends BorderPane {
         lowerToolBar.getItems().addAll(
                 scaleNodesLabel, scaleNodesSlider, scaleEdgesLabel, scaleEdgesSlider,
                 new Separator(Orientation.VERTICAL),
-                new Label("Coloring"), coloringByElementRadioButton, coloringByResidueRadioButton, coloringBySecondaryRadioButton
+                new Label("Coloring"), coloringByElementRadioButton, coloringByResidueRadioButton, coloringBySecondaryRadioButton,
+                coloringBySolventAccessibilityRadioButton, coloringByBFactorRadioButton
         );
 
     }
@@ -400,15 +564,23 @@ public class View extends BorderPane {
      * Set the menu bar's elements and their texts.
      */
     private void setMenus() {
-        fileMenu.getItems().addAll(loadFileMenuItem, open1EY4MenuItem, open2KL8MenuItem, open2TGAMenuItem);
+        fileMenu.getItems().addAll(loadFileMenuItem, open1EY4MenuItem, open2KL8MenuItem, open2TGAMenuItem,
+                new SeparatorMenuItem(), addToWorkspaceMenuItem);
         editMenu.getItems().addAll(
                 clearGraphMenuItem,
                 new Menu("BLAST", null, runBlastMenuItem, cancelBlastMenuItem),
+                new Menu("Structural alignment", null, alignWithFileMenuItem, searchDirectoryMenuItem),
                 resetRotationMenuItem
         );
         viewMenu.getItems().addAll(atomViewMenuItem, cartoonViewMenuItem, new SeparatorMenuItem(),
-                new Menu("Show elements", null, showRibbonMenuItem, showAtomsMenuItem, showBondsMenuItem, showCBetaMenuItem),
-                new Menu("Coloring", null, coloringByElementMenuItem, coloringByResidueMenuItem, coloringBySecondaryMenuItem)//, coloringCustomizedMenuItem)
+                new Menu("Show elements", null, showRibbonMenuItem, showAtomsMenuItem, showBondsMenuItem, showCBetaMenuItem,
+                        showClashesMenuItem, showSurfaceMenuItem),
+                batchedMeshesMenuItem,
+                new Menu("Large structures", null, lightweightMenuItem, lightweightAtomsMenuItem),
+                highlightSelectionMenuItem,
+                performanceMenuItem,
+                new Menu("Coloring", null, coloringByElementMenuItem, coloringByResidueMenuItem, coloringBySecondaryMenuItem,
+                        coloringBySolventAccessibilityMenuItem, coloringByBFactorMenuItem)//, coloringCustomizedMenuItem)
         );
 
         menuBar.getMenus().addAll(fileMenu, editMenu, viewMenu);
@@ -420,6 +592,8 @@ public class View extends BorderPane {
     private void setUpInputFileChooser() {
         tgfFileChooser = new FileChooser();
         tgfFileChooser.setTitle("Choose a PDB formatted file...");
+        pdbDirectoryChooser = new DirectoryChooser();
+        pdbDirectoryChooser.setTitle("Choose a directory containing PDB files...");
     }
 
     /**
@@ -430,7 +604,9 @@ public class View extends BorderPane {
         statusBar.getChildren().addAll(numberOfEdgesLabel, new Separator(Orientation.VERTICAL), numberOfNodesLabel,
                 new Separator(Orientation.VERTICAL), status, new Separator(Orientation.VERTICAL), progressBar);
         // Overlay 3D and 2D views of nodes.
-        stack2D3DPane.getChildren().addAll(bottomPane, topPane);
+        stack2D3DPane.getChildren().addAll(bottomPane, topPane, hoverPane);
+        topPane.getChildren().add(selectionCanvas);
+        hoverPane.getChildren().addAll(hoverLabel, performanceLabel);
 
         // TODO Set the menu bar to be used in OS provided menu
 //        final String os = System.getProperty("os.name");
@@ -452,11 +628,27 @@ public class View extends BorderPane {
         blastResult.setCenter(blastText);
         blastTab.setContent(blastResult);
 
+        //Clash tab
+        HBox clashControls = new HBox(10, detectClashesButton, numberOfClashesLabel);
+        clashControls.setAlignment(Pos.CENTER_LEFT);
+        clashBorderPane.setTop(clashControls);
+        clashBorderPane.setCenter(clashListView);
+        clashTab.setContent(clashBorderPane);
+
+        alignmentTab.setContent(alignmentText);
+
+        //Workspace tab
+        HBox workspaceControls = new HBox(10, showStructureButton, removeStructureButton,
+                clearWorkspaceButton);
+        workspaceBorderPane.setTop(workspaceControls);
+        workspaceBorderPane.setCenter(workspaceListView);
+        workspaceTab.setContent(workspaceBorderPane);
+
         this.setTop(menusVBox);
         this.setCenter(contentVBOX);
         this.setBottom(bottomVBox);
         // this.addColumn(0, menuBar, toolBar,sequenceScrollPane, contentTabPane, new Separator(Orientation.HORIZONTAL), statusBar);
-        contentTabPane.getTabs().addAll(graphTab, tableTab, blastTab);
+        contentTabPane.getTabs().addAll(graphTab, tableTab, blastTab, clashTab, alignmentTab, workspaceTab);
 
         tableBorderPane.setCenter(secondaryStructureContentStackedBarChart);
         tableTab.setContent(tableBorderPane);
@@ -481,6 +673,14 @@ public class View extends BorderPane {
 
         topPane.minWidthProperty().bind(stack2D3DPane.minWidthProperty());
         topPane.minHeightProperty().bind(stack2D3DPane.minHeightProperty());
+        selectionCanvas.widthProperty().bind(topPane.widthProperty());
+        selectionCanvas.heightProperty().bind(topPane.heightProperty());
+
+        // Looks like a tooltip
+        hoverLabel.setStyle("-fx-background-color: rgba(30, 30, 30, 0.8); -fx-text-fill: white; -fx-padding: 4;");
+        performanceLabel.setStyle("-fx-background-color: rgba(30, 30, 30, 0.6); -fx-text-fill: white; -fx-padding: 4; "
+                + "-fx-font-family: monospace;");
+        performanceLabel.relocate(8, 8);
 
         //stack2D3DPane.setMaxHeight(USE_COMPUTED_SIZE);
         VBox.setVgrow(contentTabPane, Priority.ALWAYS);
@@ -489,11 +689,16 @@ public class View extends BorderPane {
         VBox.setMargin(blastResult.getChildren().get(0), new Insets(5, 5, 5, 5));
         HBox.setMargin(runBlastButton, new Insets(5));
         HBox.setMargin(cancelBlastButton, new Insets(5));
+        BorderPane.setMargin(clashBorderPane.getTop(), new Insets(5));
+        BorderPane.setMargin(workspaceBorderPane.getTop(), new Insets(5));
 
         blastText.minHeightProperty().bind(stack2D3DPane.minHeightProperty());
         blastText.minWidthProperty().bind(stack2D3DPane.minWidthProperty());
         blastText.setFont(Font.font("Monospaced", 14));
 
+        alignmentText.setEditable(false);
+        alignmentText.setFont(Font.font("Monospaced", 14));
+
         sequenceScrollPane.setMinWidth(bottomPane.getMinWidth());
         sequenceScrollPane.setFitToWidth(true);
         sequenceScrollPane.setFitToHeight(false);
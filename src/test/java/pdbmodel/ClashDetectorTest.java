@@ -0,0 +1,86 @@
+package pdbmodel;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Testing for pdbmodel.ClashDetector class.
+ */
+public class ClashDetectorTest extends TestCase {
+
+	private static final double F = PDBParser.ATOM_DISTANCE_FACTOR;
+
+	public ClashDetectorTest(String name) {
+		super(name);
+	}
+
+	public void testCloseAtomsClash() {
+		PDBEntry g = new PDBEntry();
+		g.addNode(new Atom(0, 0, 0, "C", ""));
+		g.addNode(new Atom(2.5 * F, 0, 0, "O", ""));
+		// Far away from both
+		g.addNode(new Atom(20 * F, 0, 0, "N", ""));
+		List<Clash> clashes = new ClashDetector(g).detect();
+		assertEquals(1, clashes.size());
+		Clash clash = clashes.get(0);
+		assertEquals(0, clash.getFirstIndex());
+		assertEquals(1, clash.getSecondIndex());
+		assertEquals(2.5, clash.getDistance(), 1e-9);
+		assertEquals(1.7 + 1.52 - 2.5, clash.getOverlap(), 1e-9);
+	}
+
+	public void testToleranceIsRespected() {
+		PDBEntry g = new PDBEntry();
+		g.addNode(new Atom(0, 0, 0, "C", ""));
+		g.addNode(new Atom(3.1 * F, 0, 0, "C", ""));
+		assertTrue(new ClashDetector(g).detect().isEmpty());
+		assertEquals(1, new ClashDetector(g, 0).detect().size());
+	}
+
+	public void testBondedAtomsAreExcluded() throws GraphException {
+		PDBEntry g = new PDBEntry();
+		// Chain of five atoms 1.5 Angstrom apart: all pairs but the first and last atom are within three bonds
+		Atom[] chain = new Atom[5];
+		for (int i = 0; i < chain.length; i++) {
+			chain[i] = new Atom(i * 1.5 * F, 0, 0, "C", "");
+			g.addNode(chain[i]);
+		}
+		for (int i = 0; i < chain.length - 1; i++) {
+			g.connectNodes(chain[i], chain[i + 1]);
+		}
+		// First and last atom are four bonds apart, bend the chain to bring them close
+		chain[4].xCoordinateProperty().set(0);
+		chain[4].yCoordinateProperty().set(2 * F);
+		List<Clash> clashes = new ClashDetector(g).detect();
+		assertEquals(1, clashes.size());
+		assertSame(chain[0], clashes.get(0).getFirst());
+		assertSame(chain[4], clashes.get(0).getSecond());
+	}
+
+	public void testBatchesAndStructure() throws Exception {
+		PDBEntry g = new PDBEntry();
+		PDBParser.parse(g, new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/1ey4.pdb"))));
+		List<Clash> streamed = new ArrayList<>();
+		List<Clash> clashes = new ClashDetector(g).detect(streamed::addAll);
+		assertEquals(clashes.size(), streamed.size());
+		// A crystal structure has hardly any clashes
+		assertTrue(clashes.size() < g.getNumberOfNodes() / 20);
+		for (Clash clash : clashes) {
+			assertTrue(clash.getFirstIndex() < clash.getSecondIndex());
+			assertTrue(clash.getOverlap() > ClashDetector.DEFAULT_TOLERANCE);
+		}
+	}
+
+	public void testCancelledDetectionStops() {
+		PDBEntry g = new PDBEntry();
+		g.addNode(new Atom(0, 0, 0, "C", ""));
+		g.addNode(new Atom(2.5 * F, 0, 0, "O", ""));
+		List<Clash> streamed = new ArrayList<>();
+		assertTrue(new ClashDetector(g).detect(streamed::addAll, () -> true).isEmpty());
+		assertTrue(streamed.isEmpty());
+	}
+}
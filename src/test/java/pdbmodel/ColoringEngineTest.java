@@ -0,0 +1,106 @@
+package pdbmodel;
+
+import javafx.scene.paint.Color;
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Testing for pdbmodel.ColoringEngine class.
+ */
+public class ColoringEngineTest extends TestCase {
+
+	private PDBEntry g;
+
+	public ColoringEngineTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		g = new PDBEntry();
+		PDBParser.parse(g, new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/1ey4.pdb"))));
+	}
+
+	public void testArgbConversion() {
+		Color color = Color.web("2060ff");
+		assertEquals(0xFF2060FF, ColoringEngine.toArgb(color));
+		assertEquals(color, ColoringEngine.toColor(ColoringEngine.toArgb(color)));
+	}
+
+	public void testElementScheme() {
+		ColoringEngine engine = new ColoringEngine(g, new Random(1));
+		int[] atomColors = engine.colorAtoms(ColoringEngine.Scheme.ELEMENT);
+		List<Atom> atoms = engine.getAtoms();
+		assertEquals(g.getNumberOfNodes(), atomColors.length);
+		for (int i = 0; i < atomColors.length; i++) {
+			assertEquals(ColoringEngine.toArgb(atoms.get(i).chemicalElementProperty().getValue().getColor()),
+					atomColors[i]);
+		}
+		for (int color : engine.colorBonds(atomColors, false)) {
+			assertEquals(ColoringEngine.BOND_COLOR, color);
+		}
+	}
+
+	public void testResidueScheme() {
+		ColoringEngine engine = new ColoringEngine(g, new Random(1));
+		int[] atomColors = engine.colorAtoms(ColoringEngine.Scheme.RESIDUE);
+		int[] bondColors = engine.colorBonds(atomColors, true);
+		List<Atom> atoms = engine.getAtoms();
+		List<Bond> bonds = engine.getBonds();
+		for (int i = 0; i < atomColors.length; i++) {
+			Residue residue = atoms.get(i).residueProperty().getValue();
+			assertEquals(atomColors[atoms.indexOf(residue.getCAlphaAtom())], atomColors[i]);
+		}
+		// Bonds within a residue take its color, peptide bonds between residues are gray
+		for (int b = 0; b < bondColors.length; b++) {
+			Bond bond = bonds.get(b);
+			if (bond.getSource().residueProperty().getValue() == bond.getTarget().residueProperty().getValue())
+				assertEquals(atomColors[atoms.indexOf(bond.getSource())], bondColors[b]);
+			else
+				assertEquals(ColoringEngine.BOND_COLOR, bondColors[b]);
+		}
+	}
+
+	public void testSecondaryStructureScheme() {
+		ColoringEngine engine = new ColoringEngine(g, new Random(1));
+		int[] atomColors = engine.colorAtoms(ColoringEngine.Scheme.SECONDARY_STRUCTURE);
+		List<Atom> atoms = engine.getAtoms();
+		for (int i = 0; i < atomColors.length; i++) {
+			SecondaryStructure structure = atoms.get(i).residueProperty().getValue().getSecondaryStructure();
+			if (structure != null && structure.getSecondaryStructureType() == SecondaryStructure.StructureType.alphahelix)
+				assertEquals(ColoringEngine.toArgb(Color.RED), atomColors[i]);
+			else if (structure != null)
+				assertEquals(ColoringEngine.toArgb(Color.CORNFLOWERBLUE), atomColors[i]);
+		}
+	}
+
+	public void testBFactorScheme() {
+		// Temperature factors of the first residue as in the file
+		assertEquals(63.98, g.residuesProperty().get(0).getNAtom().bFactorProperty().get(), 1e-9);
+		assertEquals(75.73, g.residuesProperty().get(0).getCAlphaAtom().bFactorProperty().get(), 1e-9);
+		ColoringEngine engine = new ColoringEngine(g, new Random(1));
+		int[] atomColors = engine.colorAtoms(ColoringEngine.Scheme.B_FACTOR);
+		List<Atom> atoms = engine.getAtoms();
+		int lowest = 0, highest = 0;
+		for (int i = 0; i < atoms.size(); i++) {
+			if (atoms.get(i).bFactorProperty().get() < atoms.get(lowest).bFactorProperty().get())
+				lowest = i;
+			if (atoms.get(i).bFactorProperty().get() > atoms.get(highest).bFactorProperty().get())
+				highest = i;
+		}
+		assertEquals(ColoringEngine.toArgb(Color.BLUE), atomColors[lowest]);
+		assertEquals(ColoringEngine.toArgb(Color.RED), atomColors[highest]);
+	}
+
+	public void testCustomScheme() {
+		ColoringEngine engine = new ColoringEngine(g, new Random(1));
+		int[] atomColors = engine.colorAtoms(atom -> 0xFF00FF00);
+		for (int color : atomColors) {
+			assertEquals(0xFF00FF00, color);
+		}
+	}
+}
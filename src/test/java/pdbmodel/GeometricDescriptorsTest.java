@@ -0,0 +1,88 @@
+package pdbmodel;
+
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Point3D;
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+/**
+ * Testing for pdbmodel.GeometricDescriptors class.
+ */
+public class GeometricDescriptorsTest extends TestCase {
+
+	public GeometricDescriptorsTest(String name) {
+		super(name);
+	}
+
+	public void testCentroidAndRadiusOfGyration() {
+		PDBEntry g = new PDBEntry();
+		g.addNode(new Atom(-1, 0, 0, "C", ""));
+		g.addNode(new Atom(1, 0, 0, "C", ""));
+		g.addNode(new Atom(0, 2, 0, "C", ""));
+		g.addNode(new Atom(0, -2, 0, "C", ""));
+		GeometricDescriptors d = g.getGeometricDescriptors();
+		assertEquals(4, d.getCount());
+		assertEquals(0, d.getCentroid().distance(Point3D.ZERO), 1e-12);
+		// (1 + 1 + 4 + 4) / 4
+		assertEquals(Math.sqrt(2.5), d.getRadiusOfGyration(), 1e-12);
+	}
+
+	public void testPrincipalAxes() {
+		PDBEntry g = new PDBEntry();
+		// Atoms spread along the diagonal of the x-y plane
+		for (int i = -5; i <= 5; i++) {
+			g.addNode(new Atom(i + 0.1 * (i % 2), i, 0.05 * (i % 3), "C", ""));
+		}
+		GeometricDescriptors d = g.getGeometricDescriptors();
+		Point3D[] axes = d.getPrincipalAxes();
+		Point3D diagonal = new Point3D(1, 1, 0).normalize();
+		assertEquals(1, Math.abs(axes[0].dotProduct(diagonal)), 1e-2);
+		assertEquals(0, axes[0].dotProduct(axes[1]), 1e-9);
+		assertEquals(0, axes[0].dotProduct(axes[2]), 1e-9);
+		double[] moments = d.getPrincipalMoments();
+		assertTrue(moments[0] <= moments[1]);
+		assertTrue(moments[1] <= moments[2]);
+		// The oriented box is much thinner than the axis aligned one
+		GeometricDescriptors.OrientedBox box = d.getOrientedBoundingBox();
+		assertTrue(box.getHalfExtents()[1] < 1);
+		assertEquals(Math.sqrt(50), box.getHalfExtents()[0], 0.5);
+	}
+
+	public void testIncrementalUpdates() throws Exception {
+		PDBEntry g = new PDBEntry();
+		PDBParser.parse(g, new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/2kl8.pdb"))));
+		GeometricDescriptors d = g.getGeometricDescriptors();
+		// Centered by the parser
+		assertEquals(0, d.getCentroid().magnitude(), 1e-6);
+
+		// Move the atom with the largest x coordinate inwards, the bounds have to shrink
+		Atom outermost = g.nodesProperty().get(0);
+		for (Atom a : g.nodesProperty()) {
+			if (a.xCoordinateProperty().get() > outermost.xCoordinateProperty().get())
+				outermost = a;
+		}
+		outermost.xCoordinateProperty().set(0);
+		outermost.yCoordinateProperty().set(outermost.yCoordinateProperty().get() + 3);
+		g.removeNode(g.getNode(1));
+		g.addNode(new Atom(7, 8, 9, "O", ""));
+
+		GeometricDescriptors fresh = new GeometricDescriptors(g.nodesProperty());
+		assertEquals(fresh.getCount(), d.getCount());
+		assertEquals(0, fresh.getCentroid().distance(d.getCentroid()), 1e-6);
+		assertEquals(fresh.getRadiusOfGyration(), d.getRadiusOfGyration(), 1e-6);
+		BoundingBox expected = fresh.getBoundingBox();
+		BoundingBox actual = d.getBoundingBox();
+		assertEquals(expected.getMaxX(), actual.getMaxX(), 1e-9);
+		assertEquals(expected.getMinY(), actual.getMinY(), 1e-9);
+		assertEquals(expected.getDepth(), actual.getDepth(), 1e-9);
+		double[][] expectedTensor = fresh.getInertiaTensor();
+		double[][] actualTensor = d.getInertiaTensor();
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				assertEquals(expectedTensor[i][j], actualTensor[i][j], 1e-6 * Math.abs(expectedTensor[i][i]));
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package pdbmodel;
+
+import javafx.geometry.Point3D;
+import javafx.scene.transform.Rotate;
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Testing for pdbmodel.StructuralAligner class.
+ */
+public class StructuralAlignerTest extends TestCase {
+
+	public StructuralAlignerTest(String name) {
+		super(name);
+	}
+
+	private PDBEntry load(String resource) throws Exception {
+		PDBEntry g = new PDBEntry();
+		PDBParser.parse(g, new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(resource))));
+		return g;
+	}
+
+	public void testSelfAlignment() throws Exception {
+		PDBEntry g = load("/1ey4.pdb");
+		StructuralAlignment alignment = new StructuralAligner(g).align(g);
+		assertEquals(1, alignment.getTMScore(), 1e-9);
+		assertEquals(0, alignment.getRMSD(), 1e-4);
+		assertEquals(g.getNumberOfResidues(), alignment.getAlignedLength());
+		int[] pairs = alignment.getAlignment();
+		for (int i = 0; i < pairs.length; i++) {
+			assertEquals(i, pairs[i]);
+		}
+	}
+
+	public void testMovedCopy() throws Exception {
+		PDBEntry first = load("/2kl8.pdb");
+		PDBEntry second = load("/2kl8.pdb");
+		Rotate rotate = new Rotate(70, new Point3D(1, 2, 3));
+		for (Atom a : second.nodesProperty()) {
+			Point3D p = rotate.transform(a.xCoordinateProperty().get(), a.yCoordinateProperty().get(),
+					a.zCoordinateProperty().get()).add(100, -40, 7);
+			a.xCoordinateProperty().set(p.getX());
+			a.yCoordinateProperty().set(p.getY());
+			a.zCoordinateProperty().set(p.getZ());
+		}
+		StructuralAlignment alignment = new StructuralAligner(first).align(second);
+		assertEquals(1, alignment.getTMScore(), 1e-6);
+		assertEquals(0, alignment.getRMSD(), 1e-4);
+		// The found rotation is the one applied
+		double[] t = alignment.getTransformation();
+		assertEquals(rotate.getMxx(), t[0], 1e-6);
+		assertEquals(rotate.getMxy(), t[1], 1e-6);
+		assertEquals(rotate.getMzy(), t[7], 1e-6);
+	}
+
+	public void testSuperposition() {
+		double[] x = {0, 0, 0, 1, 0, 0, 0, 2, 0, 0, 0, 3};
+		// Rotated by 90 degrees around z and shifted
+		double[] y = {5, 5, 5, 5, 6, 5, 3, 5, 5, 5, 5, 8};
+		int[] indices = {0, 1, 2, 3};
+		double[] transform = new double[12];
+		assertEquals(0, Superposition.superpose(x, y, indices, indices, 4, transform), 1e-6);
+		double[] moved = new double[12];
+		Superposition.apply(transform, x, moved);
+		for (int k = 0; k < 12; k++) {
+			assertEquals(y[k], moved[k], 1e-9);
+		}
+	}
+
+	public void testDifferentProteins() throws Exception {
+		StructuralAlignment alignment = new StructuralAligner(load("/2kl8.pdb")).align(load("/2tga.pdb"));
+		assertTrue(alignment.getTMScore() > 0);
+		assertTrue(alignment.getTMScore() < 0.5);
+		// Formatted alignment has three lines of equal length
+		String[] lines = alignment.formatAlignment().split("\n");
+		assertEquals(3, lines.length);
+		assertEquals(lines[0].length(), lines[2].length());
+	}
+
+	public void testSearch() throws Exception {
+		List<File> files = Arrays.asList(
+				new File(getClass().getResource("/2kl8.pdb").toURI()),
+				new File(getClass().getResource("/1ey4.pdb").toURI()),
+				new File(getClass().getResource("/2tga.pdb").toURI()),
+				new File("missing.pdb"));
+		List<String> skipped = new ArrayList<>();
+		List<StructuralAlignment> hits = new StructuralAligner(load("/1ey4.pdb")).search(files, skipped);
+		assertEquals(3, hits.size());
+		assertEquals(1, skipped.size());
+		assertTrue(skipped.get(0).startsWith("missing.pdb"));
+		assertEquals(1, hits.get(0).getTMScore(), 1e-9);
+		assertTrue(hits.get(1).getTMScore() >= hits.get(2).getTMScore());
+	}
+}
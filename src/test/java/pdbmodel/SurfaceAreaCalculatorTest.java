@@ -0,0 +1,55 @@
+package pdbmodel;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+/**
+ * Testing for pdbmodel.SurfaceAreaCalculator class.
+ */
+public class SurfaceAreaCalculatorTest extends TestCase {
+
+	public SurfaceAreaCalculatorTest(String name) {
+		super(name);
+	}
+
+	public void testIsolatedAtom() {
+		PDBEntry g = new PDBEntry();
+		g.addNode(new Atom(0, 0, 0, "N", ""));
+		SolventAccessibility sasa = new SurfaceAreaCalculator().compute(g);
+		double radius = Atom.ChemicalElement.N.getVanDerWaalsRadius() + SurfaceAreaCalculator.DEFAULT_PROBE_RADIUS;
+		assertEquals(4 * Math.PI * radius * radius, sasa.getAtomAreas()[0], 1e-9);
+		assertEquals(1., sasa.getRelativeAtomArea(0), 1e-9);
+	}
+
+	public void testOverlappingAtoms() {
+		PDBEntry g = new PDBEntry();
+		// Two atoms 1.5 Angstrom apart (coordinates are scaled for the view)
+		g.addNode(new Atom(0, 0, 0, "C", ""));
+		g.addNode(new Atom(1.5 * PDBParser.ATOM_DISTANCE_FACTOR, 0, 0, "C", ""));
+		SolventAccessibility sasa = new SurfaceAreaCalculator().compute(g);
+		// Both atoms cover each other symmetrically
+		assertEquals(sasa.getAtomAreas()[0], sasa.getAtomAreas()[1], 1e-9);
+		assertTrue(sasa.getRelativeAtomArea(0) < 1);
+		assertTrue(sasa.getRelativeAtomArea(0) > 0.5);
+	}
+
+	public void testResidueAreas() throws Exception {
+		PDBEntry g = new PDBEntry();
+		PDBParser.parse(g, new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/2kl8.pdb"))));
+		SolventAccessibility sasa = g.getSolventAccessibility();
+		assertEquals(g.getNumberOfNodes(), sasa.getAtomAreas().length);
+		assertEquals(g.getNumberOfResidues(), sasa.getResidueAreas().length);
+		double residueSum = 0;
+		for (double area : sasa.getResidueAreas()) {
+			assertTrue(area >= 0);
+			residueSum += area;
+		}
+		assertEquals(sasa.getTotalArea(), residueSum, 1e-6);
+		// Result is cached until the atoms change
+		assertSame(sasa, g.getSolventAccessibility());
+		g.removeNode(g.getNode(0));
+		assertNotSame(sasa, g.getSolventAccessibility());
+	}
+}
@@ -0,0 +1,89 @@
+package pdbmodel;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Testing for pdbmodel.SurfaceGenerator and pdbmodel.MolecularSurface classes.
+ */
+public class SurfaceGeneratorTest extends TestCase {
+
+	public SurfaceGeneratorTest(String name) {
+		super(name);
+	}
+
+	public void testIsolatedAtom() {
+		PDBEntry g = new PDBEntry();
+		g.addNode(new Atom(0, 0, 0, "N", ""));
+		MolecularSurface surface = new SurfaceGenerator(g).generate();
+		assertTrue(surface.getNumberOfTriangles() > 0);
+		// The surface of an isolated atom is its van der Waals sphere, up to the grid's resolution
+		double radius = Atom.ChemicalElement.N.getVanDerWaalsRadius() * PDBParser.ATOM_DISTANCE_FACTOR;
+		double tolerance = surface.getGridSpacing() * PDBParser.ATOM_DISTANCE_FACTOR / 2;
+		float[] points = surface.getPoints();
+		for (int i = 0; i < points.length; i += 3) {
+			double distance = Math.sqrt(points[i] * points[i] + points[i + 1] * points[i + 1] +
+					points[i + 2] * points[i + 2]);
+			assertEquals(radius, distance, tolerance);
+		}
+		assertEquals(-1, surface.getVertexResidues()[0]);
+		assertClosed(surface);
+		// Facing outwards, the triangles enclose a positive volume
+		double sphere = 4. / 3 * Math.PI * radius * radius * radius;
+		assertEquals(sphere, volume(surface), 0.05 * sphere);
+	}
+
+	public void testProtein() throws Exception {
+		PDBEntry g = new PDBEntry();
+		PDBParser.parse(g, new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/1ey4.pdb"))));
+		double[] progress = {0};
+		MolecularSurface surface = new SurfaceGenerator(g).generate(fraction -> progress[0] = Math.max(progress[0],
+				fraction));
+		assertEquals(1., progress[0], 1e-9);
+		assertTrue(surface.getNumberOfTriangles() > 1000);
+		int residues = g.getNumberOfResidues();
+		for (int residue : surface.getVertexResidues()) {
+			assertTrue(residue >= -1 && residue < residues);
+		}
+		assertClosed(surface);
+	}
+
+	/**
+	 * Signed volume enclosed by the triangles, summing the tetrahedra between them and the origin.
+	 */
+	private double volume(MolecularSurface surface) {
+		float[] p = surface.getPoints();
+		int[] triangles = surface.getTriangles();
+		double volume = 0;
+		for (int t = 0; t < triangles.length; t += 3) {
+			int a = 3 * triangles[t], b = 3 * triangles[t + 1], c = 3 * triangles[t + 2];
+			volume += (p[a] * (p[b + 1] * p[c + 2] - p[b + 2] * p[c + 1])
+					- p[a + 1] * (p[b] * p[c + 2] - p[b + 2] * p[c])
+					+ p[a + 2] * (p[b] * p[c + 1] - p[b + 1] * p[c])) / 6;
+		}
+		return volume;
+	}
+
+	/**
+	 * Every edge of a closed, consistently oriented mesh is passed once in each direction.
+	 */
+	private void assertClosed(MolecularSurface surface) {
+		int[] triangles = surface.getTriangles();
+		Map<Long, Integer> edges = new HashMap<>();
+		for (int t = 0; t < triangles.length; t += 3) {
+			for (int k = 0; k < 3; k++) {
+				long from = triangles[t + k], to = triangles[t + (k + 1) % 3];
+				edges.merge(from << 32 | to, 1, Integer::sum);
+			}
+		}
+		for (Map.Entry<Long, Integer> edge : edges.entrySet()) {
+			assertEquals(Integer.valueOf(1), edge.getValue());
+			long reverse = (edge.getKey() & 0xFFFFFFFFL) << 32 | edge.getKey() >>> 32;
+			assertEquals(Integer.valueOf(1), edges.get(reverse));
+		}
+	}
+}
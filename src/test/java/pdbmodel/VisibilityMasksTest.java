@@ -0,0 +1,75 @@
+package pdbmodel;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Testing for pdbmodel.VisibilityMasks class.
+ */
+public class VisibilityMasksTest extends TestCase {
+
+	private PDBEntry g;
+	private VisibilityMasks masks;
+
+	public VisibilityMasksTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		g = new PDBEntry();
+		PDBParser.parse(g, new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/1ey4.pdb"))));
+		masks = new VisibilityMasks(g);
+	}
+
+	public void testAtomView() {
+		BitSet atoms = masks.getAtomMask(VisibilityMasks.Representation.ATOMS, true);
+		BitSet bonds = masks.getBondMask(VisibilityMasks.Representation.ATOMS, true);
+		assertEquals(g.getNumberOfNodes(), atoms.cardinality());
+		assertEquals(g.getNumberOfEdges(), bonds.cardinality());
+	}
+
+	public void testCBetaHidden() {
+		BitSet atoms = masks.getAtomMask(VisibilityMasks.Representation.ATOMS, false);
+		BitSet bonds = masks.getBondMask(VisibilityMasks.Representation.ATOMS, false);
+		assertEquals(g.getNumberOfNodes() - g.getAllCBetaAtoms().size(), atoms.cardinality());
+		assertEquals(g.getNumberOfEdges() - g.getAllCAlphaCBetaBonds().size(), bonds.cardinality());
+		for (Atom atom : g.getAllCBetaAtoms()) {
+			assertFalse(atoms.get(masks.getAtoms().indexOf(atom)));
+		}
+	}
+
+	public void testCartoon() {
+		BitSet atoms = masks.getAtomMask(VisibilityMasks.Representation.CARTOON, false);
+		BitSet bonds = masks.getBondMask(VisibilityMasks.Representation.CARTOON, false);
+		List<Atom> atomList = masks.getAtoms();
+		List<Bond> bondList = masks.getBonds();
+		for (Atom atom : g.getAllOAtoms()) {
+			assertFalse(atoms.get(atomList.indexOf(atom)));
+		}
+		for (Bond bond : g.getAllCOBonds()) {
+			assertFalse(bonds.get(bondList.indexOf(bond)));
+		}
+		int checked = 0;
+		for (Residue residue : g.residuesProperty()) {
+			SecondaryStructure structure = residue.getSecondaryStructure();
+			if (structure == null) {
+				// The backbone of coils stays visible
+				assertTrue(atoms.get(atomList.indexOf(residue.getCAlphaAtom())));
+			} else if (structure.getSecondaryStructureType() == SecondaryStructure.StructureType.alphahelix) {
+				assertFalse(atoms.get(atomList.indexOf(residue.getCAlphaAtom())));
+				checked++;
+			}
+		}
+		assertTrue(checked > 0);
+		// Beta sheets stay connected to the coils by the N atom of their first residue
+		for (SecondaryStructure structure : g.secondaryStructuresProperty()) {
+			if (structure.getSecondaryStructureType() == SecondaryStructure.StructureType.betasheet)
+				assertTrue(atoms.get(atomList.indexOf(structure.getFirstResidue().getNAtom())));
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package pdbmodel;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+/**
+ * Testing for pdbmodel.Workspace and pdbmodel.CompactStructure classes.
+ */
+public class WorkspaceTest extends TestCase {
+
+	public WorkspaceTest(String name) {
+		super(name);
+	}
+
+	private BufferedReader open(String resource) {
+		return new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(resource)));
+	}
+
+	public void testRestore() throws Exception {
+		PDBEntry original = new PDBEntry();
+		PDBParser.parse(original, open("/2tga.pdb"));
+		Workspace workspace = new Workspace();
+		CompactStructure structure = workspace.add(original);
+		assertEquals(original.getNumberOfNodes(), structure.getNumberOfAtoms());
+		assertEquals(original.getSequence(), structure.getSequence());
+
+		PDBEntry restored = new PDBEntry();
+		workspace.show(structure, restored);
+		assertEquals(original.pdbCodeProperty().getValue(), restored.pdbCodeProperty().getValue());
+		assertEquals(original.titleProperty().getValue(), restored.titleProperty().getValue());
+		assertEquals(original.getNumberOfNodes(), restored.getNumberOfNodes());
+		assertEquals(original.getNumberOfEdges(), restored.getNumberOfEdges());
+		assertEquals(original.getNumberOfResidues(), restored.getNumberOfResidues());
+		assertEquals(original.getNumberOfSecondaryStructures(), restored.getNumberOfSecondaryStructures());
+		assertEquals(original.getAlphaHelixContent(), restored.getAlphaHelixContent());
+		assertEquals(original.getBetaSheetContent(), restored.getBetaSheetContent());
+		for (int i = 0; i < original.getNumberOfNodes(); i++) {
+			Atom a = original.getNode(i), b = restored.getNode(i);
+			assertEquals(a.chemicalElementProperty().getValue(), b.chemicalElementProperty().getValue());
+			assertEquals(a.xCoordinateProperty().get(), b.xCoordinateProperty().get(), 1e-3);
+			assertEquals(a.zCoordinateProperty().get(), b.zCoordinateProperty().get(), 1e-3);
+			assertEquals(a.bFactorProperty().get(), b.bFactorProperty().get(), 1e-3);
+			assertEquals(a.getDescription(), b.getDescription());
+		}
+		Residue first = restored.residuesProperty().get(0);
+		assertSame(first, first.getCAlphaAtom().residueProperty().getValue());
+		assertEquals(original.residuesProperty().get(0).getResNum(), first.getResNum());
+	}
+
+	public void testModels() throws Exception {
+		PDBEntry nmr = new PDBEntry();
+		PDBParser.parse(nmr, open("/2kl8.pdb"));
+		assertEquals(20, nmr.getNumberOfModels());
+		double[] first = nmr.getModelCoordinates(0);
+		assertEquals(nmr.getCoordinates().length, first.length);
+		assertEquals(nmr.getCoordinates()[0], first[0], 1e-9);
+		double[] last = nmr.getModelCoordinates(19);
+		assertEquals(first.length, last.length);
+		// The models differ, but are superposed, so their atoms stay close
+		boolean moved = false;
+		for (int i = 0; i < first.length; i++) {
+			moved |= first[i] != last[i];
+			assertEquals(first[i], last[i], 20 * 20.);
+		}
+		assertTrue(moved);
+
+		Workspace workspace = new Workspace();
+		PDBEntry restored = new PDBEntry();
+		workspace.show(workspace.add(nmr), restored);
+		assertEquals(20, restored.getNumberOfModels());
+		assertEquals(last[7], restored.getModelCoordinates(19)[7], 1e-3);
+
+		PDBEntry single = new PDBEntry();
+		PDBParser.parse(single, open("/2tga.pdb"));
+		assertEquals(1, single.getNumberOfModels());
+	}
+
+	public void testSharedStrings() throws Exception {
+		Workspace workspace = new Workspace();
+		CompactStructure first = workspace.load(open("/1ey4.pdb"));
+		CompactStructure second = workspace.load(open("/1ey4.pdb"));
+		workspace.add(first);
+		workspace.add(second);
+		assertEquals(2, workspace.structuresProperty().size());
+		assertSame(first.getTitle(), second.getTitle());
+
+		PDBEntry a = new PDBEntry(), b = new PDBEntry();
+		workspace.show(first, a);
+		workspace.show(second, b);
+		assertSame(a.residuesProperty().get(5).getResNum(), b.residuesProperty().get(5).getResNum());
+
+		workspace.remove(first);
+		assertEquals(1, workspace.structuresProperty().size());
+	}
+
+	public void testReplaceBySource() throws Exception {
+		Workspace workspace = new Workspace();
+		workspace.add(workspace.load(open("/2tga.pdb"), "/2tga.pdb"));
+		CompactStructure first = workspace.load(open("/1ey4.pdb"), "/1ey4.pdb");
+		workspace.add(first);
+		CompactStructure again = workspace.load(open("/1ey4.pdb"), "/1ey4.pdb");
+		workspace.add(again);
+		assertEquals(2, workspace.structuresProperty().size());
+		assertSame(again, workspace.structuresProperty().get(1));
+	}
+
+	public void testPoolPrunedOnRemove() throws Exception {
+		Workspace workspace = new Workspace();
+		CompactStructure small = workspace.load(open("/2kl8.pdb"));
+		workspace.add(small);
+		int pooled = workspace.getNumberOfPooledStrings();
+		CompactStructure large = workspace.load(open("/1ey4.pdb"));
+		workspace.add(large);
+		assertTrue(workspace.getNumberOfPooledStrings() > pooled);
+
+		workspace.remove(large);
+		assertEquals(pooled, workspace.getNumberOfPooledStrings());
+		// Strings still used stay shared with newly loaded structures
+		CompactStructure reloaded = workspace.load(open("/2kl8.pdb"));
+		assertSame(small.getTitle(), reloaded.getTitle());
+
+		workspace.clear();
+		assertEquals(0, workspace.getNumberOfPooledStrings());
+	}
+
+	public void testEnumMetadata() {
+		assertEquals("W", Residue.AminoAcid.TRP.getOneLetterCode());
+		assertEquals("Tryptophan", Residue.AminoAcid.TRP.getFullName());
+		assertSame(Atom.ChemicalElement.CA.getColor(), Atom.ChemicalElement.CA.getColor());
+		assertEquals(1.52, Atom.ChemicalElement.O.getVanDerWaalsRadius(), 1e-9);
+	}
+}
@@ -0,0 +1,118 @@
+package pdbview3d;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Testing for pdbview3d.SphereGrid class.
+ */
+public class SphereGridTest extends TestCase {
+
+	private static final int SPHERES = 500;
+	private static final int RAYS = 2000;
+
+	private double[] centers;
+	private double[] radii;
+
+	public SphereGridTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() {
+		Random random = new Random(42);
+		centers = new double[3 * SPHERES];
+		radii = new double[SPHERES];
+		for (int i = 0; i < SPHERES; i++) {
+			centers[3 * i] = random.nextDouble() * 100;
+			centers[3 * i + 1] = random.nextDouble() * 100;
+			centers[3 * i + 2] = random.nextDouble() * 100;
+			radii[i] = 0.5 + random.nextDouble() * 2.5;
+		}
+	}
+
+	public void testRandomRays() {
+		assertRandomRays(i -> true);
+	}
+
+	public void testRandomRaysSkippingUnpickable() {
+		assertRandomRays(i -> i % 3 != 0);
+	}
+
+	public void testEmpty() {
+		SphereGrid grid = new SphereGrid(new double[0], new double[0]);
+		assertEquals(-1, grid.pick(0, 0, 0, 1, 0, 0, i -> true));
+	}
+
+	public void testZeroDirection() {
+		SphereGrid grid = new SphereGrid(centers, radii);
+		assertEquals(-1, grid.pick(centers[0], centers[1], centers[2], 0, 0, 0, i -> true));
+	}
+
+	/**
+	 * Pick along random rays, starting inside and outside of the grid, and compare with testing all spheres.
+	 */
+	private void assertRandomRays(IntPredicate pickable) {
+		SphereGrid grid = new SphereGrid(centers, radii);
+		Random random = new Random(7);
+		int hits = 0;
+		for (int r = 0; r < RAYS; r++) {
+			double ox = random.nextDouble() * 200 - 50;
+			double oy = random.nextDouble() * 200 - 50;
+			double oz = random.nextDouble() * 200 - 50;
+			double dx = random.nextGaussian(), dy = random.nextGaussian(), dz = random.nextGaussian();
+			if (r % 2 == 0) {
+				// Aim at a sphere, so about half of the rays hit one
+				int target = random.nextInt(SPHERES);
+				dx = centers[3 * target] - ox;
+				dy = centers[3 * target + 1] - oy;
+				dz = centers[3 * target + 2] - oz;
+			}
+			int expected = bruteForce(ox, oy, oz, dx, dy, dz, pickable);
+			int actual = grid.pick(ox, oy, oz, dx, dy, dz, pickable);
+			if (expected < 0) {
+				assertEquals(-1, actual);
+				continue;
+			}
+			hits++;
+			assertTrue(actual >= 0);
+			assertTrue(pickable.test(actual));
+			// Spheres hit at the same distance may be reported either way
+			assertEquals(intersect(expected, ox, oy, oz, dx, dy, dz), intersect(actual, ox, oy, oz, dx, dy, dz), 1e-9);
+		}
+		assertTrue(hits > RAYS / 4);
+	}
+
+	private int bruteForce(double ox, double oy, double oz, double dx, double dy, double dz, IntPredicate pickable) {
+		int nearest = -1;
+		double nearestT = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < SPHERES; i++) {
+			double t = intersect(i, ox, oy, oz, dx, dy, dz);
+			if (t < nearestT && pickable.test(i)) {
+				nearestT = t;
+				nearest = i;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Ray parameter of the first intersection with a sphere in front of the origin, infinity if there is none.
+	 */
+	private double intersect(int i, double ox, double oy, double oz, double dx, double dy, double dz) {
+		double cx = ox - centers[3 * i], cy = oy - centers[3 * i + 1], cz = oz - centers[3 * i + 2];
+		double a = dx * dx + dy * dy + dz * dz;
+		double b = cx * dx + cy * dy + cz * dz;
+		double c = cx * cx + cy * cy + cz * cz - radii[i] * radii[i];
+		double discriminant = b * b - a * c;
+		if (discriminant < 0)
+			return Double.POSITIVE_INFINITY;
+		double root = Math.sqrt(discriminant);
+		double t = (-b - root) / a;
+		if (t < 0)
+			t = (-b + root) / a;
+		return t < 0 ? Double.POSITIVE_INFINITY : t;
+	}
+}